@@ -0,0 +1,142 @@
+package fr.romainpc.bitmapproject.imageprocessing;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import fr.romainpc.bitmapproject.R;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumented test of the history and lazy effects of {@link Picture}, compared with effects applied at once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PictureTest {
+
+    private static final int SIZE = 200;
+
+    private Picture picture;
+    private Picture expected;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        picture = new Picture(context, R.drawable.colorfull, SIZE, SIZE);
+        expected = new Picture(picture);
+    }
+
+    private static int[] pixels(Bitmap bmp) {
+        return Utils.getPixels(bmp).getPixels();
+    }
+
+    @Test
+    public void undoRedo_sameAsEffects() {
+        int[] original = pixels(picture.getBitmap());
+        picture.apply(new EffectPipeline().add(Effects.EffectType.HUE_SHIFT, 90));
+        Effects.simpleBlurr(picture, 5);
+        picture.commit();
+        Effects.colorShift(expected, 90);
+        Effects.simpleBlurr(expected, 5);
+        assertArrayEquals(pixels(expected.getBitmap()), pixels(picture.getBitmap()));
+
+        assertTrue(picture.undo());
+        assertTrue(picture.undo());
+        assertArrayEquals(original, pixels(picture.getBitmap()));
+        assertFalse(picture.undo());
+        assertTrue(picture.redo());
+        assertTrue(picture.redo());
+        assertArrayEquals(pixels(expected.getBitmap()), pixels(picture.getBitmap()));
+    }
+
+    @Test
+    public void defer_computedWhenRead() {
+        long version = picture.getVersion();
+        picture.defer(new EffectPipeline().add(Effects.EffectType.GRAY, 0.3, 0.11, 0.59));
+        picture.defer(new EffectPipeline().add(Effects.EffectType.LINEAR_EXTENSION, Picture.Histogram.LUMINANCE));
+        assertEquals(version, picture.getVersion());
+        assertEquals(2, picture.getPendingCount());
+
+        Effects.grayLevel(expected, 0.3, 0.11, 0.59);
+        Effects.linearDynamicExtension(expected, Picture.Histogram.LUMINANCE);
+        //full resolution render is the same as the bitmap with effects:
+        assertArrayEquals(pixels(expected.getBitmap()), pixels(picture.render(0, 0)));
+        assertEquals(2, picture.getPendingCount());
+        assertArrayEquals(pixels(expected.getBitmap()), pixels(picture.getBitmap()));
+        assertEquals(0, picture.getPendingCount());
+    }
+
+    @Test
+    public void linearDynamicExtension_uniformKeepsVersion() {
+        Bitmap bmp = picture.getBitmap();
+        int[] uniform = new int[bmp.getWidth() * bmp.getHeight()];
+        Arrays.fill(uniform, 0xFF336699);
+        bmp.setPixels(uniform, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+        picture.notifyPixelsChanged();
+        long version = picture.getVersion();
+
+        Effects.linearDynamicExtension(picture, Picture.Histogram.RGB);
+        assertEquals(version, picture.getVersion());
+        //histograms counted by the effect are still in cache:
+        long misses = picture.getHistogramCacheMisses();
+        picture.getHistograms(Picture.Histogram.RGB);
+        assertEquals(misses, picture.getHistogramCacheMisses());
+    }
+
+    @Test
+    public void render_memoizedByLevel() {
+        int levelIndex = picture.getPyramid().levelFor(SIZE / 4, SIZE / 4);
+        PixelBuffer level = picture.getPyramid().getLevel(levelIndex).copy();
+        picture.defer(new EffectPipeline().add(Effects.EffectType.HUE, 120));
+        Bitmap first = picture.render(SIZE / 4, SIZE / 4);
+        assertSame(first, picture.render(SIZE / 4, SIZE / 4));
+        assertEquals(1, picture.getRenderHits());
+
+        //only the new effect is computed, the result is the same as both from the level:
+        picture.defer(new EffectPipeline().add(Effects.EffectType.SIMPLE_BLURRING, 3));
+        Bitmap second = picture.render(SIZE / 4, SIZE / 4);
+        new EffectPipeline().add(Effects.EffectType.HUE, 120).add(Effects.EffectType.SIMPLE_BLURRING, 3).apply(level, null);
+        assertArrayEquals(level.getPixels(), pixels(second));
+
+        //undo of a lazy effect only removes it:
+        picture.undo();
+        assertEquals(1, picture.getPendingCount());
+        assertTrue(picture.canRedo());
+    }
+
+    @Test
+    public void renderRegion_sameAsPartOfLevel() {
+        picture.defer(new EffectPipeline().add(Effects.EffectType.SIMPLE_BLURRING, 5).add(Effects.EffectType.KEEP_COLOR, 30, 60));
+        int width = picture.getWidth();
+        int height = picture.getHeight();
+        //level 1:
+        Bitmap level = picture.render((width + 1) / 2, (height + 1) / 2);
+        int[] levelPixels = pixels(level);
+
+        //even position and dimensions multiple of 4, so the region at level 1 has exactly half dimensions:
+        int left = width / 5 * 2;
+        int top = height / 5 * 2;
+        int regionWidth = width / 8 * 4;
+        int regionHeight = height / 8 * 4;
+        Bitmap region = picture.render(left, top, regionWidth, regionHeight, regionWidth / 2, regionHeight / 2);
+        int[] regionPixels = pixels(region);
+        for (int y = 0; y < region.getHeight(); y++)
+            for (int x = 0; x < region.getWidth(); x++)
+                assertEquals(levelPixels[(top / 2 + y) * level.getWidth() + left / 2 + x], regionPixels[y * region.getWidth() + x]);
+        assertEquals(regionWidth / 2, region.getWidth());
+        assertEquals(regionHeight / 2, region.getHeight());
+    }
+}
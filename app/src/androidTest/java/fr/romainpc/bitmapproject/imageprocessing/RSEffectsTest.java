@@ -0,0 +1,195 @@
+package fr.romainpc.bitmapproject.imageprocessing;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.renderscript.RenderScript;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import fr.romainpc.bitmapproject.R;
+import fr.romainpc.bitmapproject.imageprocessing.core.BorderMode;
+import fr.romainpc.bitmapproject.imageprocessing.core.Contrast;
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.RawArgbSink;
+import fr.romainpc.bitmapproject.imageprocessing.core.RawArgbSource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumented test, compare RenderScript effects with Java effects on the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RSEffectsTest {
+
+    private static final int SIZE = 200;
+
+    private Context context;
+    private RenderScript rs;
+    private RSPool pool;
+    private Picture javaPicture;
+    private Picture rsPicture;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        rs = RenderScript.create(context);
+        pool = new RSPool(rs);
+        javaPicture = new Picture(context, R.drawable.colorfull, SIZE, SIZE);
+        rsPicture = new Picture(context, R.drawable.colorfull, SIZE, SIZE);
+        rsPicture.setRSPool(pool);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+        rs.destroy();
+    }
+
+    private static int[] pixels(Picture picture) {
+        Bitmap bmp = picture.getBitmap();
+        int[] pixels = new int[bmp.getWidth() * bmp.getHeight()];
+        bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+        return pixels;
+    }
+
+    /**
+     * Each channel of each pixel may differ by "tolerance" (float operations on the device), alpha must be the same.
+     */
+    private static void assertPixels(Picture expected, Picture actual, int tolerance) {
+        int[] a = pixels(expected);
+        int[] b = pixels(actual);
+        assertEquals(a.length, b.length);
+        for (int i = 0; i < a.length; i++) {
+            assertEquals(a[i] >>> 24, b[i] >>> 24);
+            for (int shift = 0; shift < 24; shift += 8) {
+                int diff = Math.abs(((a[i] >> shift) & 0xFF) - ((b[i] >> shift) & 0xFF));
+                assertTrue("pixel " + i + " differs by " + diff, diff <= tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void histograms() {
+        for (Picture.Histogram type : Picture.Histogram.values()) {
+            List<int[]> expected = javaPicture.getHistograms(type);
+            List<int[]> actual = RSEffects.histograms(rsPicture, type);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++)
+                assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void linearDynamicExtension() {
+        for (Picture.Histogram type : Picture.Histogram.values()) {
+            Effects.linearDynamicExtension(javaPicture, type);
+            RSEffects.linearDynamicExtension(rsPicture, type);
+            assertPixels(javaPicture, rsPicture, type == Picture.Histogram.LUMINANCE ? 1 : 0);
+            javaPicture.reset();
+            rsPicture.reset();
+        }
+    }
+
+    @Test
+    public void histogramFlattening() {
+        for (Picture.Histogram type : Picture.Histogram.values()) {
+            Effects.histogramFlattening(javaPicture, type);
+            RSEffects.histogramFlattening(rsPicture, type);
+            assertPixels(javaPicture, rsPicture, type == Picture.Histogram.LUMINANCE ? 1 : 0);
+            javaPicture.reset();
+            rsPicture.reset();
+        }
+    }
+
+    @Test
+    public void histogramFlattening_bigPicture() throws IOException {
+        //more than 8.4 million pixels: cumu * 255 doesn't fit in an int.
+        int width = 3072;
+        int height = 2816;
+        File file = File.createTempFile("flattening", ".argb", context.getCacheDir());
+        try {
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                RawArgbSink sink = new RawArgbSink(output.getChannel(), width);
+                PixelBuffer rows = new PixelBuffer(width, 256);
+                for (int top = 0; top < height; top += rows.getHeight()) {
+                    for (int y = 0; y < rows.getHeight(); y++)
+                        for (int x = 0; x < width; x++)
+                            rows.set(x, y, 0xFF000000 | (((x + top + y) & 0xFF) << 16) | ((x * 3 & 0xFF) << 8) | ((top + y) * 5 & 0xFF));
+                    sink.write(0, top, rows);
+                }
+            } finally {
+                output.close();
+            }
+            RawArgbSource raw = RawArgbSource.map(file, width);
+
+            //Java flattening on the core, to keep one big picture in memory:
+            PixelBuffer expected = raw.read(0, 0, width, height);
+            Histograms.Counts counts = Histograms.count(expected, false, true, false, null);
+            Contrast.flattenGrayLevelNatural(expected, Histograms.cumulate(counts.grayLevelNatural), width * height);
+
+            Picture picture = new Picture(ImageSource.fromRaw(raw), width, height);
+            picture.setRSPool(pool);
+            RSEffects.histogramFlattening(picture, Picture.Histogram.GRAY_LEVEL_NATURAL);
+            Bitmap bmp = picture.getBitmap();
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                bmp.getPixels(row, 0, width, 0, y, width, 1);
+                for (int x = 0; x < width; x++)
+                    assertEquals("pixel " + x + ", " + y, expected.get(x, y), row[x]);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void contrast_usesHistogramCache() {
+        for (Picture.Histogram type : Picture.Histogram.values()) {
+            rsPicture.getHistograms(type);
+            long misses = rsPicture.getHistogramCacheMisses();
+            RSEffects.histogramFlattening(rsPicture, type);
+            assertEquals(misses, rsPicture.getHistogramCacheMisses());
+            //pixels changed, histograms are counted again:
+            RSEffects.linearDynamicExtension(rsPicture, type);
+            assertEquals(misses + 1, rsPicture.getHistogramCacheMisses());
+            rsPicture.reset();
+        }
+    }
+
+    @Test
+    public void simpleBlurr() {
+        for (BorderMode border : BorderMode.values()) {
+            for (int intensity : new int[]{1, 3, 11}) {
+                Effects.simpleBlurr(javaPicture, intensity, border);
+                RSEffects.simpleBlurr(rsPicture, intensity, border);
+                assertPixels(javaPicture, rsPicture, 0);
+                javaPicture.reset();
+                rsPicture.reset();
+            }
+        }
+    }
+
+    @Test
+    public void poolReused() {
+        RSEffects.simpleBlurr(rsPicture, 5);
+        int created = pool.getAllocationsCreated();
+        RSEffects.simpleBlurr(rsPicture, 5);
+        assertEquals(created, pool.getAllocationsCreated());
+        assertEquals(1, pool.getScriptsCreated());
+    }
+}
@@ -1,6 +1,8 @@
 package fr.romainpc.bitmapproject.activities;
 
+import android.graphics.Bitmap;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
@@ -11,10 +13,19 @@ import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.renderscript.RenderScript;
 
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
 import fr.romainpc.bitmapproject.R;
+import fr.romainpc.bitmapproject.imageprocessing.EffectPipeline;
 import fr.romainpc.bitmapproject.imageprocessing.Effects;
 import fr.romainpc.bitmapproject.imageprocessing.Picture;
 import fr.romainpc.bitmapproject.imageprocessing.RSEffects;
+import fr.romainpc.bitmapproject.imageprocessing.RSPool;
+import fr.romainpc.bitmapproject.imageprocessing.core.AdaptiveFlattening;
+import fr.romainpc.bitmapproject.imageprocessing.core.HueLUTCache;
+import fr.romainpc.bitmapproject.imageprocessing.core.LatestJobScheduler;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
 
 /**
  * Starting point of the application, manage all components and listeners.
@@ -25,6 +36,7 @@ public class MainActivity extends AppCompatActivity {
     private static final int PICTURE = R.drawable.low_contrast;
     private static final int MAX_SIZE = 3072;
     private static final int SAMPLE_SIZE = 384;
+    private static final int[] COARSE_PREVIEW_SIZES = {96, 192}; //drawn before the preview at SAMPLE_SIZE, from the coarsest.
 
 
     // private Bitmap bitmap;
@@ -32,6 +44,7 @@ public class MainActivity extends AppCompatActivity {
     private Picture pictureSample;
     private ImageView iv;
     RenderScript rs;
+    private RSPool rsPool;
 
     private FrameLayout underLayout;
     private View effectsLayout;
@@ -40,6 +53,10 @@ public class MainActivity extends AppCompatActivity {
     private SeekBar sB1, sB2, sB3;
     private Switch switchRS;
     private boolean sliding;
+    private LatestJobScheduler<Bitmap> previewScheduler;
+    //recipes of applied effects, the first appliedCount give the current state (next ones can be redone):
+    private final ArrayList<String> applied = new ArrayList<>();
+    private int appliedCount;
 
 
     @Override
@@ -72,11 +89,32 @@ public class MainActivity extends AppCompatActivity {
 
         //generateRenderScript
         rs = RenderScript.create(this);
-        picture.setRenderScript(rs);
-        pictureSample.setRenderScript(rs);
+        //allocations and scripts kept between slider moves, for both dimensions:
+        rsPool = new RSPool(rs);
+        picture.setRSPool(rsPool);
+        pictureSample.setRSPool(rsPool);
         switchRS = underLayout.findViewById(R.id.switch1);
         switchRS.setChecked(true);
 
+        //lookup tables for hue effects without RenderScript, only on the full picture:
+        //each slider tick of the previews has new parameters, their tables would never be reused.
+        picture.setHueLUTCache(new HueLUTCache());
+
+        //compute java effects on all cores:
+        picture.setTiledExecutor(TiledExecutor.getShared());
+        pictureSample.setTiledExecutor(TiledExecutor.getShared());
+
+        //integer gray levels without RenderScript (a gray can differ by 1):
+        picture.setFixedPointGray(true);
+        pictureSample.setFixedPointGray(true);
+
+        //previews of sliders are computed in background, only the last position matters:
+        previewScheduler = new LatestJobScheduler<>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                runOnUiThread(command);
+            }
+        });
 
         // Seekbar listeners:
         sB1 = effectSettingsLayout.findViewById(R.id.seekBar1);
@@ -88,11 +126,8 @@ public class MainActivity extends AppCompatActivity {
         sB1.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                if (sliding) { //security to avoid double effect apply, because setSeekBars() also call this function.
-                    pictureSample.quickLoad();
-                    applyEffect(pictureSample, currentEffect, switchRS.isChecked());
-                    iv.setImageBitmap(pictureSample.getBitmap());
-                }
+                if (sliding) //security to avoid double effect apply, because setSeekBars() also call this function.
+                    schedulePreview();
             }
 
             @Override
@@ -103,17 +138,15 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
                 sliding = false;
+                logPreviewMetrics();
             }
 
         });
         sB2.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                if (sliding) {
-                    pictureSample.quickLoad();
-                    applyEffect(pictureSample, currentEffect, switchRS.isChecked());
-                    iv.setImageBitmap(pictureSample.getBitmap());
-                }
+                if (sliding)
+                    schedulePreview();
             }
 
             @Override
@@ -124,17 +157,15 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
                 sliding = false;
+                logPreviewMetrics();
             }
 
         });
         sB3.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                if (sliding) {
-                    pictureSample.quickLoad();
-                    applyEffect(pictureSample, currentEffect, switchRS.isChecked());
-                    iv.setImageBitmap(pictureSample.getBitmap());
-                }
+                if (sliding)
+                    schedulePreview();
             }
 
             @Override
@@ -145,6 +176,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
                 sliding = false;
+                logPreviewMetrics();
             }
 
         });
@@ -152,13 +184,110 @@ public class MainActivity extends AppCompatActivity {
 
     }
 
+    /**
+     * Compute the preview of the current slider values in background, the previous preview not finished is cancelled.
+     * Coarse previews (levels of the pyramid of pictureSample) are drawn first, then refined until the preview at SAMPLE_SIZE if sliders don't move.
+     */
+    private void schedulePreview() {
+        final Effects.EffectType effect = currentEffect;
+        final boolean renderscript = switchRS.isChecked();
+        final int progress1 = sB1.getProgress();
+        final int progress2 = sB2.getProgress();
+        final int progress3 = sB3.getProgress();
+        previewScheduler.submit(new LatestJobScheduler.Job<Bitmap>() {
+            @Override
+            public Bitmap compute(LatestJobScheduler.Token token) {
+                pictureSample.quickLoad();
+                for (int size : COARSE_PREVIEW_SIZES) {
+                    if (token.isCancelled())
+                        return null;
+                    Picture coarse = new Picture(pictureSample, size, size);
+                    applyEffect(coarse, effect, renderscript, progress1, progress2, progress3);
+                    previewScheduler.publish(token, coarse.getBitmap());
+                }
+                if (token.isCancelled())
+                    return null;
+                applyEffect(pictureSample, effect, renderscript, progress1, progress2, progress3);
+                if (token.isCancelled())
+                    return null;
+                //displayed bitmap is a copy, so the next preview can modify the picture while this one is drawn.
+                return pictureSample.getBitmap().copy(pictureSample.getBitmap().getConfig(), false);
+            }
+        }, new LatestJobScheduler.Listener<Bitmap>() {
+            @Override
+            public void onResult(Bitmap frame) {
+                iv.setImageBitmap(frame);
+            }
+        });
+    }
+
+    private void logPreviewMetrics() {
+        Log.v("Preview", "submitted: " + previewScheduler.getSubmitted() + ", dropped: " + previewScheduler.getDropped()
+                + ", cancelled: " + previewScheduler.getCancelled() + ", max queue depth: " + previewScheduler.getMaxQueueDepth()
+                + ", time to first frame: " + previewScheduler.getLastTimeToFirstFrame() / 1000000 + " ms");
+    }
+
+    /**
+     * Log the recipe of the current state, it gives the same picture with {@link EffectPipeline#parse(String)}.
+     */
+    private void logRecipe() {
+        StringBuilder recipe = new StringBuilder();
+        for (String effect : applied.subList(0, appliedCount))
+            recipe.append(recipe.length() > 0 ? ";" : "").append(effect);
+        Log.v("Recipe", recipe.toString());
+    }
+
+    /**
+     * Cancel background previews and wait the end of the running one, before using pictureSample in the UI thread.
+     */
+    private void stopPreviews() {
+        try {
+            previewScheduler.cancelAndWait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Display picture with its lazy effects, computed on a level of its pyramid at least as big as the view.
+     */
+    private void showPicture() {
+        iv.setImageBitmap(picture.render(iv.getWidth() * 2, iv.getHeight() * 2));
+    }
+
     /**
      * Called when click on "Réinitialiser" button.
      */
     public void clickReset(View view) {
+        stopPreviews();
         picture.reset();
         pictureSample.reset();
-        iv.setImageBitmap(picture.getBitmap()); // Needed for refresh pixels on UI.
+        appliedCount = 0;
+        showPicture(); // Needed for refresh pixels on UI.
+    }
+
+    /**
+     * Called when click on undo button.
+     */
+    public void clickUndo(View view) {
+        stopPreviews();
+        if (picture.undo())
+            appliedCount--;
+        pictureSample.undo();
+        logRecipe();
+        showPicture();
+    }
+
+    /**
+     * Called when click on redo button.
+     */
+    public void clickRedo(View view) {
+        stopPreviews();
+        if (picture.redo())
+            appliedCount++;
+        pictureSample.redo();
+        logRecipe();
+        showPicture();
     }
 
     /**
@@ -167,6 +296,7 @@ public class MainActivity extends AppCompatActivity {
      * @param v Button which call the method
      */
     public void onClickEffect(View v) {
+        stopPreviews();
         // assign seekbars:
         switch (v.getId()) {
             case R.id.bGray:
@@ -196,10 +326,39 @@ public class MainActivity extends AppCompatActivity {
                 currentEffect = Effects.EffectType.FLATTENING;
                 setSeekBars(false, "", 1, false, "", 1, false, "", 1);
                 break;
+            case R.id.bAdaptiveContrast:
+                currentEffect = Effects.EffectType.ADAPTIVE_FLATTENING;
+                setSeekBars(true, "Zones", 16, true, "Limite", 100, false, "", 1);
+                sB1.setProgress(AdaptiveFlattening.DEFAULT_TILES);
+                sB2.setProgress((int) (AdaptiveFlattening.DEFAULT_CLIP_LIMIT * 10));
+                break;
             case R.id.bsimpleBlurr:
                 currentEffect = Effects.EffectType.SIMPLE_BLURRING;
                 setSeekBars(true, "Intensité", 2, false, "", 1, false, "", 1);
                 break;
+            case R.id.bGaussianBlur:
+                currentEffect = Effects.EffectType.GAUSSIAN_BLUR;
+                setSeekBars(true, "Intensité", 10, false, "", 1, false, "", 1);
+                sB1.setProgress(2);
+                break;
+            case R.id.bFastGaussianBlur:
+                currentEffect = Effects.EffectType.FAST_GAUSSIAN_BLUR;
+                setSeekBars(true, "Intensité", 50, false, "", 1, false, "", 1);
+                sB1.setProgress(5);
+                break;
+            case R.id.bSharpen:
+                currentEffect = Effects.EffectType.SHARPEN;
+                setSeekBars(true, "Intensité", 20, false, "", 1, false, "", 1);
+                sB1.setProgress(5);
+                break;
+            case R.id.bSobel:
+                currentEffect = Effects.EffectType.SOBEL;
+                setSeekBars(false, "", 1, false, "", 1, false, "", 1);
+                break;
+            case R.id.bEmboss:
+                currentEffect = Effects.EffectType.EMBOSS;
+                setSeekBars(false, "", 1, false, "", 1, false, "", 1);
+                break;
         }
         pictureSample.quickSave();
         applyEffect(pictureSample, currentEffect, switchRS.isChecked());
@@ -245,9 +404,10 @@ public class MainActivity extends AppCompatActivity {
      * @param v Button clicked
      */
     public void clickBack(View v) {
+        stopPreviews();
         //Change layout:
         pictureSample.quickLoad();
-        iv.setImageBitmap(picture.getBitmap());
+        showPicture();
         underLayout.removeAllViews();
         underLayout.addView(effectsLayout);
         currentEffect = null;
@@ -259,12 +419,27 @@ public class MainActivity extends AppCompatActivity {
      * @param v Button clicked
      */
     public void clickApply(View v) {
+        stopPreviews();
 
         pictureSample.quickLoad();
-        //Apply effect:
-        applyEffect(picture, currentEffect, switchRS.isChecked());
-        applyEffect(pictureSample, currentEffect, switchRS.isChecked());
-        iv.setImageBitmap(picture.getBitmap());
+        //the same effect without RenderScript, with the parameters of sliders:
+        EffectPipeline pipeline = pipeline(currentEffect, sB1.getProgress(), sB2.getProgress(), sB3.getProgress());
+        //Apply effect, added to the history of pictures for undo:
+        if (switchRS.isChecked()) {
+            applyEffect(picture, currentEffect, true);
+            applyEffect(pictureSample, currentEffect, true);
+            picture.commit();
+            pictureSample.commit();
+        } else {
+            //java effects are lazy: picture is only computed at the size of the view, pictureSample at the next preview:
+            picture.defer(pipeline);
+            pictureSample.defer(pipeline);
+        }
+        applied.subList(appliedCount, applied.size()).clear();
+        applied.add(pipeline.toRecipe());
+        appliedCount++;
+        logRecipe();
+        showPicture();
 
         //Change layout:
         underLayout.removeAllViews();
@@ -280,51 +455,143 @@ public class MainActivity extends AppCompatActivity {
      * @param renderscript  Use or not RenderScript accélération.
      */
     private void applyEffect(Picture picture, Effects.EffectType currentEffect, boolean renderscript) {
+        applyEffect(picture, currentEffect, renderscript, sB1.getProgress(), sB2.getProgress(), sB3.getProgress());
+    }
+
+    /**
+     * Apply an effect on a Picture with given slider values, doesn't use views so it can be called in background.
+     *
+     * @param picture       The picture to modify
+     * @param currentEffect Effect type to apply
+     * @param renderscript  Use or not RenderScript accélération.
+     * @param progress1     Value of the first slider.
+     * @param progress2     Value of the second slider.
+     * @param progress3     Value of the third slider.
+     */
+    private void applyEffect(Picture picture, Effects.EffectType currentEffect, boolean renderscript, int progress1, int progress2, int progress3) {
         //Apply effect:
         switch (currentEffect) {
             case GRAY:
                 if (renderscript)
-                    RSEffects.grayLevel(picture, sB1.getProgress() / 100f, sB2.getProgress() / 100f, sB3.getProgress() / 100f);
+                    RSEffects.grayLevel(picture, progress1 / 100f, progress2 / 100f, progress3 / 100f);
                 else
-                    Effects.grayLevel(picture, sB1.getProgress() / 100.0, sB2.getProgress() / 100.0, sB3.getProgress() / 100.0);
+                    Effects.grayLevel(picture, progress1 / 100.0, progress2 / 100.0, progress3 / 100.0);
                 break;
             case HUE:
                 if (renderscript)
-                    RSEffects.colorize(picture, sB1.getProgress());
+                    RSEffects.colorize(picture, progress1);
                 else
-                    Effects.colorize(picture, sB1.getProgress());
+                    Effects.colorize(picture, progress1);
                 break;
             case HUE_SHIFT:
                 if (renderscript)
-                    RSEffects.colorShift(picture, sB1.getProgress());
+                    RSEffects.colorShift(picture, progress1);
                 else
-                    Effects.colorShift(picture, sB1.getProgress());
+                    Effects.colorShift(picture, progress1);
                 break;
             case KEEP_COLOR:
                 if (renderscript)
-                    RSEffects.keepColor(picture, sB1.getProgress(), sB2.getProgress());
+                    RSEffects.keepColor(picture, progress1, progress2);
                 else
-                    Effects.keepColor(picture, sB1.getProgress(), sB2.getProgress());
+                    Effects.keepColor(picture, progress1, progress2);
                 break;
             case LINEAR_EXTENSION:
-                Effects.linearDynamicExtension(picture, Picture.Histogram.LUMINANCE);
+                if (renderscript)
+                    RSEffects.linearDynamicExtension(picture, Picture.Histogram.LUMINANCE);
+                else
+                    Effects.linearDynamicExtension(picture, Picture.Histogram.LUMINANCE);
                 break;
             case FLATTENING:
-                Effects.histogramFlattening(picture, Picture.Histogram.LUMINANCE);
+                if (renderscript)
+                    RSEffects.histogramFlattening(picture, Picture.Histogram.LUMINANCE);
+                else
+                    Effects.histogramFlattening(picture, Picture.Histogram.LUMINANCE);
+                break;
+            //adaptive flattening has no RenderScript version:
+            case ADAPTIVE_FLATTENING:
+                Effects.adaptiveFlattening(picture, Picture.Histogram.LUMINANCE, Math.max(1, progress1), progress2 / 10.0);
                 break;
             case SIMPLE_BLURRING:
-                Effects.simpleBlurr(picture, (sB1.getProgress() * 2) + 1);
+                if (renderscript)
+                    RSEffects.simpleBlurr(picture, (progress1 * 2) + 1);
+                else
+                    Effects.simpleBlurr(picture, (progress1 * 2) + 1);
+                break;
+            case FAST_GAUSSIAN_BLUR:
+                if (renderscript)
+                    RSEffects.fastGaussianBlur(picture, progress1);
+                else
+                    Effects.fastGaussianBlur(picture, progress1);
+                break;
+            //convolutions have no RenderScript version:
+            case GAUSSIAN_BLUR:
+                Effects.gaussianBlur(picture, progress1);
+                break;
+            case SHARPEN:
+                Effects.sharpen(picture, progress1 / 10.0);
+                break;
+            case SOBEL:
+                Effects.sobel(picture);
+                break;
+            case EMBOSS:
+                Effects.emboss(picture);
                 break;
         }
 
     }
 
+    /**
+     * Same effect as {@link #applyEffect(Picture, Effects.EffectType, boolean, int, int, int)} without RenderScript, as a pipeline.
+     *
+     * @param currentEffect Effect type to apply
+     * @param progress1     Value of the first slider.
+     * @param progress2     Value of the second slider.
+     * @param progress3     Value of the third slider.
+     * @return Pipeline with the effect.
+     */
+    private EffectPipeline pipeline(Effects.EffectType currentEffect, int progress1, int progress2, int progress3) {
+        EffectPipeline pipeline = new EffectPipeline();
+        switch (currentEffect) {
+            case GRAY:
+                return pipeline.add(currentEffect, progress1 / 100.0, progress2 / 100.0, progress3 / 100.0);
+            case HUE:
+            case HUE_SHIFT:
+                return pipeline.add(currentEffect, progress1);
+            case KEEP_COLOR:
+                return pipeline.add(currentEffect, progress1, progress2);
+            case LINEAR_EXTENSION:
+            case FLATTENING:
+                return pipeline.add(currentEffect, Picture.Histogram.LUMINANCE);
+            case ADAPTIVE_FLATTENING:
+                return pipeline.add(currentEffect, Picture.Histogram.LUMINANCE, Math.max(1, progress1), progress2 / 10.0);
+            case SIMPLE_BLURRING:
+                return pipeline.add(currentEffect, (progress1 * 2) + 1);
+            case GAUSSIAN_BLUR:
+            case FAST_GAUSSIAN_BLUR:
+                return pipeline.add(currentEffect, progress1);
+            case SHARPEN:
+                return pipeline.add(currentEffect, progress1 / 10.0);
+            case SOBEL:
+            case EMBOSS:
+                return pipeline.add(currentEffect);
+        }
+        return pipeline;
+    }
+
     @Override
     protected void onStop() {
         super.onStop();
+        stopPreviews();
+        rsPool.close();
         rs.destroy();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        previewScheduler.shutdown();
+    }
+
 
 }
 
@@ -0,0 +1,671 @@
+package fr.romainpc.bitmapproject.imageprocessing;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.AdaptiveFlattening;
+import fr.romainpc.bitmapproject.imageprocessing.core.BatchEngine;
+import fr.romainpc.bitmapproject.imageprocessing.core.BorderMode;
+import fr.romainpc.bitmapproject.imageprocessing.core.BoxBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.Contrast;
+import fr.romainpc.bitmapproject.imageprocessing.core.Convolution;
+import fr.romainpc.bitmapproject.imageprocessing.core.GaussianBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.GrayWeights;
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.Kernel;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.PointOperation;
+import fr.romainpc.bitmapproject.imageprocessing.core.ResultCache;
+import fr.romainpc.bitmapproject.imageprocessing.core.TileStream;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Ordered list of effects applied together on a picture, with only one copy of the pixels from and to the Bitmap.
+ * Consecutive effects computing each pixel from its own value are fused in one loop (see {@link PointOperation}).
+ * Loops are only separated before a contrast effect, which needs the histograms of the pixels at this step, and around a blur or a convolution, which needs neighbour pixels.
+ * The result is exactly the same as calling {@link Effects} methods one after the other.
+ * <p>
+ * Parameters of each effect type, in the order of the {@link Effects} method:
+ * GRAY (red, green, blue), HUE (hueAngle), HUE_SHIFT (hueShift), KEEP_COLOR (hueAngle, toleranceAngle), SIMPLE_BLURRING (intensity),
+ * GAUSSIAN_BLUR and FAST_GAUSSIAN_BLUR (sigma), SHARPEN (amount), SOBEL and EMBOSS (no parameter), LINEAR_EXTENSION and FLATTENING (histogram type),
+ * ADAPTIVE_FLATTENING (histogram type, tiles, clipLimit).
+ * <p>
+ * A pipeline is saved as a recipe, a text with the effects and their parameters (see {@link #toRecipe()}), for example
+ * {@code GRAY(0.3,0.59,0.11);FLATTENING[RGB];ADAPTIVE_FLATTENING[LUMINANCE](8,3)}.
+ */
+public class EffectPipeline {
+
+    /**
+     * An effect with its parameters.
+     */
+    private static class Step {
+        private final Effects.EffectType type;
+        private final double[] parameters;
+        private final Picture.Histogram histogram;
+
+        private Step(Effects.EffectType type, double[] parameters, Picture.Histogram histogram) {
+            this.type = type;
+            this.parameters = parameters;
+            this.histogram = histogram;
+        }
+    }
+
+    /**
+     * Results of the first passes on the whole image for an application by tiles, for each contrast step.
+     */
+    private static class Global {
+        private final List<List<int[]>> histograms;
+        private final List<AdaptiveFlattening> flattenings;
+        private final int pixelCount;
+
+        private Global(int steps, int pixelCount) {
+            histograms = new ArrayList<>(Collections.<List<int[]>>nCopies(steps, null));
+            flattenings = new ArrayList<>(Collections.<AdaptiveFlattening>nCopies(steps, null));
+            this.pixelCount = pixelCount;
+        }
+    }
+
+    private final ArrayList<Step> steps = new ArrayList<>();
+    private int passes;
+
+    /**
+     * Add an effect at the end of the pipeline.
+     *
+     * @param type       Effect type, except contrast effects, see {@link #add(Effects.EffectType, Picture.Histogram)}.
+     * @param parameters Parameters of the effect, see the class documentation.
+     * @return This pipeline.
+     */
+    public EffectPipeline add(Effects.EffectType type, double... parameters) {
+        int count;
+        switch (type) {
+            case GRAY:
+                count = 3;
+                break;
+            case KEEP_COLOR:
+                count = 2;
+                break;
+            case HUE:
+            case HUE_SHIFT:
+            case SIMPLE_BLURRING:
+            case GAUSSIAN_BLUR:
+            case FAST_GAUSSIAN_BLUR:
+            case SHARPEN:
+                count = 1;
+                break;
+            case SOBEL:
+            case EMBOSS:
+                count = 0;
+                break;
+            default:
+                throw new IllegalArgumentException(type + " needs an histogram type");
+        }
+        if (parameters.length != count)
+            throw new IllegalArgumentException(type + " needs " + count + " parameters");
+        steps.add(new Step(type, parameters.clone(), null));
+        return this;
+    }
+
+    /**
+     * Add a contrast effect at the end of the pipeline, computed from the histograms of the pixels at this step.
+     *
+     * @param type       LINEAR_EXTENSION, FLATTENING or ADAPTIVE_FLATTENING.
+     * @param histogram  Histogram type to egalize.
+     * @param parameters Parameters of the effect, see the class documentation.
+     * @return This pipeline.
+     */
+    public EffectPipeline add(Effects.EffectType type, Picture.Histogram histogram, double... parameters) {
+        int count;
+        switch (type) {
+            case LINEAR_EXTENSION:
+            case FLATTENING:
+                count = 0;
+                break;
+            case ADAPTIVE_FLATTENING:
+                count = 2;
+                break;
+            default:
+                throw new IllegalArgumentException(type + " is not a contrast effect");
+        }
+        if (histogram == null)
+            throw new IllegalArgumentException("Histogram type is needed");
+        if (parameters.length != count)
+            throw new IllegalArgumentException(type + " needs " + count + " parameters");
+        steps.add(new Step(type, parameters.clone(), histogram));
+        return this;
+    }
+
+    /**
+     * Pipeline of all effects of several pipelines, in order.
+     *
+     * @param pipelines Pipelines to join, not modified.
+     * @return New pipeline.
+     */
+    static EffectPipeline concat(List<EffectPipeline> pipelines) {
+        EffectPipeline pipeline = new EffectPipeline();
+        for (EffectPipeline other : pipelines)
+            pipeline.steps.addAll(other.steps);
+        return pipeline;
+    }
+
+    /**
+     * Recipe of the pipeline: effects separated by ';', each effect is its type, its histogram type between brackets for contrast effects,
+     * and its parameters between parentheses if it has some. Parameters are written exactly, {@link #parse(String)} gives the same pipeline.
+     *
+     * @return The recipe, empty for an empty pipeline.
+     */
+    public String toRecipe() {
+        return recipe(steps.size());
+    }
+
+    /**
+     * @return Recipe of the first steps.
+     */
+    private String recipe(int end) {
+        StringBuilder recipe = new StringBuilder();
+        for (int i = 0; i < end; i++) {
+            Step step = steps.get(i);
+            if (i > 0)
+                recipe.append(';');
+            recipe.append(step.type.name());
+            if (step.histogram != null)
+                recipe.append('[').append(step.histogram.name()).append(']');
+            if (step.parameters.length > 0) {
+                recipe.append('(');
+                for (int k = 0; k < step.parameters.length; k++) {
+                    double value = step.parameters[k];
+                    if (k > 0)
+                        recipe.append(',');
+                    //integers without decimals, others with the shortest exact representation:
+                    if (value == Math.rint(value) && Math.abs(value) < 1e15)
+                        recipe.append((long) value);
+                    else
+                        recipe.append(value);
+                }
+                recipe.append(')');
+            }
+        }
+        return recipe.toString();
+    }
+
+    /**
+     * Read a recipe written by {@link #toRecipe()}.
+     *
+     * @param recipe The recipe, spaces around effects are ignored.
+     * @return New pipeline.
+     * @throws IllegalArgumentException If the recipe is not valid (unknown effect, wrong number of parameters...).
+     */
+    public static EffectPipeline parse(String recipe) {
+        EffectPipeline pipeline = new EffectPipeline();
+        if (recipe.trim().isEmpty())
+            return pipeline;
+        for (String effect : recipe.split(";")) {
+            effect = effect.trim();
+            int parenthesis = effect.indexOf('(');
+            double[] parameters = new double[0];
+            if (parenthesis >= 0) {
+                if (!effect.endsWith(")"))
+                    throw new IllegalArgumentException("Missing ) in " + effect);
+                String[] values = effect.substring(parenthesis + 1, effect.length() - 1).split(",");
+                parameters = new double[values.length];
+                try {
+                    for (int k = 0; k < values.length; k++)
+                        parameters[k] = Double.parseDouble(values[k].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid parameter in " + effect);
+                }
+                effect = effect.substring(0, parenthesis);
+            }
+            int bracket = effect.indexOf('[');
+            try {
+                if (bracket >= 0) {
+                    if (!effect.endsWith("]"))
+                        throw new IllegalArgumentException("Missing ] in " + effect);
+                    Picture.Histogram histogram = Picture.Histogram.valueOf(effect.substring(bracket + 1, effect.length() - 1));
+                    pipeline.add(Effects.EffectType.valueOf(effect.substring(0, bracket)), histogram, parameters);
+                } else {
+                    pipeline.add(Effects.EffectType.valueOf(effect), parameters);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid effect " + effect + ": " + e.getMessage());
+            }
+        }
+        return pipeline;
+    }
+
+    /**
+     * @return True if an effect needs histograms of all pixels (the result of a part of the image depends on the whole image).
+     */
+    boolean hasContrast() {
+        for (Step step : steps)
+            if (step.histogram != null)
+                return true;
+        return false;
+    }
+
+    /**
+     * @return Number of effects in the pipeline.
+     */
+    public int size() {
+        return steps.size();
+    }
+
+    /**
+     * @return Number of loops on all pixels done by the last application (fused effects, histograms and blurs),
+     * or number of reads of all tiles for an application by tiles.
+     */
+    public int getPasses() {
+        return passes;
+    }
+
+    /**
+     * Apply all effects on the Bitmap.
+     *
+     * @param bmp Bitmap
+     */
+    public void apply(Bitmap bmp) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        apply(buffer, null, null, steps.size(), null, 0, 0, null);
+        Utils.setPixels(bmp, buffer);
+    }
+
+    /**
+     * Apply all effects on the Picture, computed in parallel if the picture has a {@link TiledExecutor}.
+     * Histograms cached by the picture are used while its pixels are not modified yet.
+     * Gray levels are computed in fixed point if the picture asks it (see {@link Picture#setFixedPointGray(boolean)}).
+     *
+     * @param p Picture to modify
+     */
+    public void apply(Picture p) {
+        PixelBuffer buffer = Utils.getPixels(p.getBitmap());
+        apply(buffer, p.getTiledExecutor(), p, steps.size(), null, 0, 0, p.getNaturalGrayWeights());
+        Utils.setPixels(p.getBitmap(), buffer);
+        p.notifyPixelsChanged();
+    }
+
+    /**
+     * Apply all effects on pixels.
+     *
+     * @param buffer   Pixels to modify
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     */
+    public void apply(PixelBuffer buffer, TiledExecutor executor) {
+        apply(buffer, executor, null);
+    }
+
+    /**
+     * Apply all effects on pixels.
+     *
+     * @param buffer   Pixels to modify
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     * @param natural  Tables of the natural gray level to compute all gray levels in fixed point, null to compute them with doubles.
+     */
+    void apply(PixelBuffer buffer, TiledExecutor executor, GrayWeights natural) {
+        apply(buffer, executor, null, steps.size(), null, 0, 0, natural);
+    }
+
+    /**
+     * Apply all effects on pixels, reusing results of previous applications on the same source.
+     * Results are cached after each effect which is not a point effect (contrast, blur, convolution) and at the end:
+     * the longest cached prefix of the recipe is copied, only the next effects are computed.
+     * For example after GRAY;GAUSSIAN_BLUR(3);HUE_SHIFT(90), the recipe GRAY;GAUSSIAN_BLUR(3);SOBEL only computes SOBEL.
+     *
+     * @param buffer   Pixels to modify
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     * @param cache    Results of the source.
+     * @param source   Hash of the pixels before effects, see {@link ResultCache#hash(PixelBuffer)}.
+     */
+    public void apply(PixelBuffer buffer, TiledExecutor executor, ResultCache cache, long source) {
+        apply(buffer, executor, cache, source, null);
+    }
+
+    /**
+     * See {@link #apply(PixelBuffer, TiledExecutor, ResultCache, long)}.
+     *
+     * @param natural Tables of the natural gray level to compute all gray levels in fixed point, null to compute them with doubles.
+     */
+    void apply(PixelBuffer buffer, TiledExecutor executor, ResultCache cache, long source, GrayWeights natural) {
+        //ends of the cached prefixes:
+        ArrayList<Integer> ends = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++)
+            if (i == steps.size() - 1 || !isPointEffect(steps.get(i).type))
+                ends.add(i + 1);
+        //fixed point gray levels can differ by 1, they have their own results:
+        String suffix = natural != null ? "#fixed" : "";
+
+        ArrayList<String> prefixes = new ArrayList<>();
+        for (int end : ends)
+            prefixes.add(recipe(end) + suffix);
+
+        int start = 0;
+        int next = 0;
+        if (!ends.isEmpty()) {
+            int found = cache.copyLongest(source, prefixes, buffer);
+            if (found >= 0) {
+                start = ends.get(found);
+                next = found + 1;
+            }
+        }
+        for (int k = next; k < ends.size(); k++) {
+            int end = ends.get(k);
+            EffectPipeline part = new EffectPipeline();
+            part.steps.addAll(steps.subList(start, end));
+            part.apply(buffer, executor, natural);
+            cache.put(source, prefixes.get(k), buffer);
+            start = end;
+        }
+    }
+
+    /**
+     * @return True for effects computing each pixel from its own value, fused with the next effects and not cached alone.
+     */
+    private static boolean isPointEffect(Effects.EffectType type) {
+        switch (type) {
+            case GRAY:
+            case HUE:
+            case HUE_SHIFT:
+            case KEEP_COLOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Process stage of a {@link BatchEngine} applying all effects, images of the batch can be processed at the same time
+     * (then {@link #getPasses()} is not reliable).
+     *
+     * @param executor Executor splitting rows of each image, null to compute in the worker thread.
+     * @return The stage.
+     */
+    public BatchEngine.Effect toBatchEffect(final TiledExecutor executor) {
+        return new BatchEngine.Effect() {
+            @Override
+            public PixelBuffer apply(PixelBuffer buffer) {
+                EffectPipeline.this.apply(buffer, executor);
+                return buffer;
+            }
+        };
+    }
+
+    /**
+     * Process stage of a {@link BatchEngine} reusing results of the cache, when images or recipes are processed again.
+     *
+     * @param executor Executor splitting rows of each image, null to compute in the worker thread.
+     * @param cache    Results, keyed by the hash of each decoded image.
+     * @return The stage.
+     */
+    public BatchEngine.Effect toBatchEffect(final TiledExecutor executor, final ResultCache cache) {
+        return new BatchEngine.Effect() {
+            @Override
+            public PixelBuffer apply(PixelBuffer buffer) {
+                EffectPipeline.this.apply(buffer, executor, cache, ResultCache.hash(buffer));
+                return buffer;
+            }
+        };
+    }
+
+    /**
+     * Apply all effects on an image read and written by tiles, for images too big to be in memory.
+     * Tiles are read with a halo of the sum of blur radius, so blurs give the same result as on the whole image.
+     * Each contrast effect needs histograms of the whole image at its step: a first pass on all tiles counts them before the final pass
+     * (histograms of the grid of tiles at their position for ADAPTIVE_FLATTENING).
+     *
+     * @param stream   Tiles of the image.
+     * @param source   Give pixels of regions of the image.
+     * @param sink     Receive result of tiles.
+     * @param executor Executor splitting rows of each tile, null to compute in the calling thread.
+     * @throws IOException If the source or the sink fails.
+     */
+    public void apply(TileStream stream, TileStream.Source source, TileStream.Sink sink, TiledExecutor executor) throws IOException {
+        apply(stream, source, sink, executor, null);
+    }
+
+    /**
+     * See {@link #apply(TileStream, TileStream.Source, TileStream.Sink, TiledExecutor)}.
+     *
+     * @param natural Tables of the natural gray level to compute all gray levels in fixed point, null to compute them with doubles.
+     */
+    void apply(TileStream stream, TileStream.Source source, TileStream.Sink sink, final TiledExecutor executor, final GrayWeights natural) throws IOException {
+        //histograms of the whole image for each contrast step, known after its pass:
+        final Global global = new Global(steps.size(), stream.getWidth() * stream.getHeight());
+        int streamPasses = 0;
+        for (int i = 0; i < steps.size(); i++) {
+            final Step step = steps.get(i);
+            if (step.histogram == null)
+                continue;
+            final int end = i;
+            TileStream.Processor processor = new TileStream.Processor() {
+                @Override
+                public void process(int left, int top, PixelBuffer region) {
+                    apply(region, executor, null, end, global, left, top, natural);
+                }
+            };
+            if (step.type == Effects.EffectType.ADAPTIVE_FLATTENING) {
+                final AdaptiveFlattening flattening = new AdaptiveFlattening(Effects.adaptiveKind(step.histogram), stream.getWidth(), stream.getHeight(),
+                        (int) step.parameters[0], step.parameters[1], natural);
+                stream.forEach(source, getHalo(end), processor, new TileStream.Sink() {
+                    @Override
+                    public void write(int left, int top, PixelBuffer tile) {
+                        flattening.count(tile, left, top, executor);
+                    }
+                });
+                global.flattenings.set(i, flattening);
+            } else {
+                final Histograms.Counts[] total = new Histograms.Counts[1];
+                stream.forEach(source, getHalo(end), processor, new TileStream.Sink() {
+                    @Override
+                    public void write(int left, int top, PixelBuffer tile) {
+                        Histograms.Counts counts = count(tile, step.histogram, executor, natural);
+                        if (total[0] == null)
+                            total[0] = counts;
+                        else
+                            total[0].add(counts);
+                    }
+                });
+                global.histograms.set(i, Picture.histograms(total[0], step.histogram));
+            }
+            streamPasses++;
+        }
+        stream.forEach(source, getHalo(steps.size()), new TileStream.Processor() {
+            @Override
+            public void process(int left, int top, PixelBuffer region) {
+                apply(region, executor, null, steps.size(), global, left, top, natural);
+            }
+        }, sink);
+        passes = streamPasses + 1;
+    }
+
+    /**
+     * @return Margin needed around a tile to compute all effects of the pipeline, in pixels.
+     */
+    int getHalo() {
+        return getHalo(steps.size());
+    }
+
+    private int getHalo(int end) {
+        int halo = 0;
+        for (int i = 0; i < end; i++) {
+            Step step = steps.get(i);
+            if (step.type == Effects.EffectType.SIMPLE_BLURRING)
+                halo += Effects.blurRadius((int) step.parameters[0]);
+            if (step.type == Effects.EffectType.FAST_GAUSSIAN_BLUR)
+                halo += GaussianBlur.getHalo(step.parameters[0]);
+            Kernel kernel = kernel(step);
+            if (kernel != null)
+                halo += kernel.getRadius();
+        }
+        return halo;
+    }
+
+    /**
+     * @return Kernel of a convolution step (Sobel gives one of its two kernels of the same size), null for other effects.
+     */
+    private static Kernel kernel(Step step) {
+        switch (step.type) {
+            case GAUSSIAN_BLUR:
+                return Kernel.gaussian(step.parameters[0]);
+            case SHARPEN:
+                return Kernel.sharpen(step.parameters[0]);
+            case SOBEL:
+                return Kernel.sobelX();
+            case EMBOSS:
+                return Kernel.emboss();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Apply effects before the step end.
+     *
+     * @param global  Histograms of the whole image for contrast steps, null to count pixels of the buffer.
+     * @param left    Position of the buffer in the whole image, used with global histograms.
+     * @param top     Position of the buffer in the whole image, used with global histograms.
+     * @param natural Tables of the natural gray level to compute all gray levels in fixed point, null to compute them with doubles.
+     */
+    private void apply(PixelBuffer buffer, TiledExecutor executor, Picture picture, int end, Global global, int left, int top, GrayWeights natural) {
+        passes = 0;
+        ArrayList<PointOperation> pending = new ArrayList<>();
+        for (int i = 0; i < end; i++) {
+            Step step = steps.get(i);
+            double[] parameters = step.parameters;
+            switch (step.type) {
+                case GRAY:
+                    if (natural == null)
+                        pending.add(PointOperation.grayLevel(parameters[0], parameters[1], parameters[2]));
+                    else
+                        pending.add(PointOperation.grayLevel(new GrayWeights(parameters[0], parameters[1], parameters[2])));
+                    break;
+                case HUE:
+                    pending.add(PointOperation.colorize((int) parameters[0]));
+                    break;
+                case HUE_SHIFT:
+                    pending.add(PointOperation.colorShift((int) parameters[0]));
+                    break;
+                case KEEP_COLOR:
+                    pending.add(PointOperation.keepColor((float) parameters[0], (float) parameters[1]));
+                    break;
+                case LINEAR_EXTENSION:
+                case FLATTENING:
+                    //barrier: histograms need all previous effects on all pixels.
+                    flush(buffer, executor, pending);
+                    List<int[]> histograms;
+                    int N = buffer.size();
+                    if (global != null) {
+                        histograms = global.histograms.get(i);
+                        N = global.pixelCount;
+                    } else if (picture != null && i == 0) {
+                        histograms = picture.getHistograms(step.histogram);
+                    } else {
+                        passes++;
+                        histograms = Picture.histograms(count(buffer, step.histogram, executor, natural), step.histogram);
+                    }
+                    PointOperation operation = step.type == Effects.EffectType.LINEAR_EXTENSION
+                            ? linearExtension(step.histogram, histograms, natural)
+                            : flattening(step.histogram, histograms, N, natural);
+                    if (operation != null)
+                        pending.add(operation);
+                    break;
+                case ADAPTIVE_FLATTENING:
+                    //barrier: histograms of tiles need all previous effects on all pixels.
+                    flush(buffer, executor, pending);
+                    if (global != null) {
+                        global.flattenings.get(i).apply(buffer, left, top, executor);
+                        passes++;
+                    } else {
+                        AdaptiveFlattening.flatten(buffer, Effects.adaptiveKind(step.histogram), (int) parameters[0], parameters[1], natural, executor);
+                        passes += 2;
+                    }
+                    break;
+                case SIMPLE_BLURRING:
+                    flush(buffer, executor, pending);
+                    BoxBlur.blur(buffer, Effects.blurRadius((int) parameters[0]), BorderMode.CLAMP, executor);
+                    passes++;
+                    break;
+                case FAST_GAUSSIAN_BLUR:
+                    flush(buffer, executor, pending);
+                    GaussianBlur.blur(buffer, parameters[0], BorderMode.CLAMP, executor);
+                    passes++;
+                    break;
+                case SOBEL:
+                    flush(buffer, executor, pending);
+                    Convolution.gradient(buffer, Kernel.sobelX(), Kernel.sobelY(), BorderMode.CLAMP, executor);
+                    passes++;
+                    break;
+                case GAUSSIAN_BLUR:
+                case SHARPEN:
+                case EMBOSS:
+                    flush(buffer, executor, pending);
+                    Convolution.convolve(buffer, kernel(step), BorderMode.CLAMP, executor);
+                    passes++;
+                    break;
+            }
+        }
+        flush(buffer, executor, pending);
+    }
+
+    /**
+     * Apply waiting effects in one loop.
+     */
+    private void flush(PixelBuffer buffer, TiledExecutor executor, final List<PointOperation> pending) {
+        if (pending.isEmpty())
+            return;
+        if (executor == null) {
+            PointOperation.apply(buffer, pending);
+        } else {
+            executor.forEachBand(buffer, new TiledExecutor.BandTask() {
+                @Override
+                public void apply(PixelBuffer band) {
+                    PointOperation.apply(band, pending);
+                }
+            });
+        }
+        pending.clear();
+        passes++;
+    }
+
+    private static Histograms.Counts count(PixelBuffer buffer, Picture.Histogram type, TiledExecutor executor, GrayWeights natural) {
+        return Histograms.count(buffer, type == Picture.Histogram.LUMINANCE, type == Picture.Histogram.GRAY_LEVEL_NATURAL, type == Picture.Histogram.RGB, executor, natural);
+    }
+
+    /**
+     * Same LUTs as {@link Effects#linearDynamicExtension(Bitmap, Picture.Histogram, List)}.
+     *
+     * @return The operation, or null if the picture is uniform (no visual effect).
+     */
+    private static PointOperation linearExtension(Picture.Histogram type, List<int[]> histograms, GrayWeights natural) {
+        ArrayList<int[]> LUTs = new ArrayList<>();
+        for (int[] histogram : histograms) {
+            int[] LUT = Contrast.linearExtensionLUT(histogram);
+            if (LUT == null)
+                return null;
+            LUTs.add(LUT);
+        }
+        return lookup(type, LUTs, natural);
+    }
+
+    /**
+     * Same LUTs as {@link Effects#histogramFlattening(Bitmap, Picture.Histogram, List)}, divisions are in the tables.
+     */
+    private static PointOperation flattening(Picture.Histogram type, List<int[]> histograms, int N, GrayWeights natural) {
+        ArrayList<int[]> LUTs = new ArrayList<>();
+        for (int[] histogram : histograms)
+            LUTs.add(Contrast.flatteningLUT(Histograms.cumulate(histogram), N));
+        return lookup(type, LUTs, natural);
+    }
+
+    /**
+     * Operation replacing values of the histogram type with their values in the LUTs, RGB tables are composed with next tables.
+     */
+    private static PointOperation lookup(Picture.Histogram type, List<int[]> LUTs, GrayWeights natural) {
+        if (type == Picture.Histogram.LUMINANCE)
+            return PointOperation.luminanceLUT(LUTs.get(0));
+        if (type == Picture.Histogram.GRAY_LEVEL_NATURAL)
+            return PointOperation.grayLevelNaturalLUT(LUTs.get(0), natural);
+        return PointOperation.rgbLUT(LUTs.get(0), LUTs.get(1), LUTs.get(2));
+    }
+}
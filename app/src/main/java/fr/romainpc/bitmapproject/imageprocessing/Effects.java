@@ -2,14 +2,29 @@ package fr.romainpc.bitmapproject.imageprocessing;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
-import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import fr.romainpc.bitmapproject.imageprocessing.core.AdaptiveFlattening;
+import fr.romainpc.bitmapproject.imageprocessing.core.BorderMode;
+import fr.romainpc.bitmapproject.imageprocessing.core.BoxBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.ChannelLUT;
+import fr.romainpc.bitmapproject.imageprocessing.core.Contrast;
+import fr.romainpc.bitmapproject.imageprocessing.core.Convolution;
+import fr.romainpc.bitmapproject.imageprocessing.core.GaussianBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.GrayWeights;
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.HueLUTCache;
+import fr.romainpc.bitmapproject.imageprocessing.core.Kernel;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.PointKernels;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
 
 /**
  * Class with methods to apply effects on Bitmap pictures.
+ * Pixels are copied in a {@link PixelBuffer} and computed by the classes of the core package.
  *
  * @see android.graphics.Bitmap
  */
@@ -25,7 +40,13 @@ public class Effects {
         KEEP_COLOR,
         LINEAR_EXTENSION,
         FLATTENING,
-        SIMPLE_BLURRING
+        ADAPTIVE_FLATTENING,
+        SIMPLE_BLURRING,
+        GAUSSIAN_BLUR,
+        FAST_GAUSSIAN_BLUR,
+        SHARPEN,
+        SOBEL,
+        EMBOSS
     }
 
     /**
@@ -57,27 +78,31 @@ public class Effects {
      * @param blue  Blue proportion (between 0.0 and 1.0)
      */
     public static void grayLevel(Bitmap bmp, double red, double green, double blue) {
-        red = red > 1.0 ? 1.0 : red;
-        red = red < 0.0 ? 0.0 : red;
-        green = green > 1.0 ? 1.0 : green;
-        green = green < 0.0 ? 0.0 : green;
-        blue = blue > 1.0 ? 1.0 : blue;
-        blue = blue < 0.0 ? 0.0 : blue;
-        int[] pixels = new int[bmp.getWidth() * bmp.getHeight()];
-        bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
-        for (int i = 0; i < pixels.length; i++) {
-            int px = pixels[i];
-            int gray = (int) (red * (double) Color.red(px) + blue * (double) Color.blue(px) + green * (double) Color.green(px));
-            pixels[i] = Color.argb(Color.alpha(px), gray, gray, gray); //Also limits values if out of [0:255]
-        }
-        bmp.setPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+        grayLevel(bmp, red, green, blue, null, false);
     }
 
     /**
-     * See {@link #grayLevel(Bitmap, double, double, double)} method
+     * See {@link #grayLevel(Bitmap, double, double, double)} method, computed in parallel if the picture has a {@link TiledExecutor},
+     * in fixed point if the picture asks it (see {@link Picture#setFixedPointGray(boolean)}).
      */
     public static void grayLevel(Picture p, double red, double green, double blue) {
-        grayLevel(p.getBitmap(), red, green, blue);
+        grayLevel(p.getBitmap(), red, green, blue, p.getTiledExecutor(), p.isFixedPointGray());
+        p.notifyPixelsChanged();
+    }
+
+    private static void grayLevel(Bitmap bmp, final double red, final double green, final double blue, TiledExecutor executor, boolean fixedPoint) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        final GrayWeights weights = fixedPoint ? new GrayWeights(red, green, blue) : null;
+        run(buffer, executor, new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                if (weights == null)
+                    PointKernels.grayLevel(band, red, green, blue);
+                else
+                    PointKernels.grayLevel(band, weights);
+            }
+        });
+        Utils.setPixels(bmp, buffer);
     }
 
     /**
@@ -87,14 +112,33 @@ public class Effects {
      * @param hueAngle Hue value, represented by an angle on the hue wheel [0;360]
      */
     public static void colorize(Bitmap bmp, int hueAngle) {
-        hueOperation(bmp, hueAngle, false);
+        colorize(bmp, hueAngle, null);
     }
 
     /**
-     * See {@link #colorize(Bitmap, int)} method
+     * See {@link #colorize(Bitmap, int)} method, use lookup tables if the picture has a {@link HueLUTCache},
+     * otherwise computed in parallel if the picture has a {@link TiledExecutor}.
      */
     public static void colorize(Picture p, int hueAngle) {
-        colorize(p.getBitmap(), hueAngle);
+        if (p.getHueLUTCache() == null) {
+            colorize(p.getBitmap(), hueAngle, p.getTiledExecutor());
+        } else {
+            PixelBuffer buffer = Utils.getPixels(p.getBitmap());
+            p.getHueLUTCache().colorize(buffer, hueAngle);
+            Utils.setPixels(p.getBitmap(), buffer);
+        }
+        p.notifyPixelsChanged();
+    }
+
+    private static void colorize(Bitmap bmp, final int hueAngle, TiledExecutor executor) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        run(buffer, executor, new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                PointKernels.colorize(band, hueAngle);
+            }
+        });
+        Utils.setPixels(bmp, buffer);
     }
 
     /**
@@ -104,37 +148,34 @@ public class Effects {
      * @param hueShift Hue value, represented by an angle on the hue wheel [0;360]
      */
     public static void colorShift(Bitmap bmp, int hueShift) {
-        hueOperation(bmp, hueShift, true);
+        colorShift(bmp, hueShift, null);
     }
 
     /**
-     * See {@link #colorShift(Bitmap, int)} method
+     * See {@link #colorShift(Bitmap, int)} method, use lookup tables if the picture has a {@link HueLUTCache},
+     * otherwise computed in parallel if the picture has a {@link TiledExecutor}.
      */
     public static void colorShift(Picture p, int hueAngle) {
-        colorShift(p.getBitmap(), hueAngle);
-    }
-
-    /**
-     * See {@link #colorShift(Bitmap, int)} and See {@link #colorize(Bitmap, int)}
-     *
-     * @param bmp      Bitmap to modify
-     * @param hueAngle hue shift or choice
-     * @param shift    Shift hue or just replace it
-     */
-    private static void hueOperation(Bitmap bmp, int hueAngle, boolean shift) {
-        int[] pixels = new int[bmp.getWidth() * bmp.getHeight()];
-        bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
-        float hue = (float) hueAngle;
-        for (int i = 0; i < pixels.length; i++) {
-            int px = pixels[i];
-            float[] hsv = new float[3];
-            Utils.RGBToHSV(Color.red(px), Color.green(px), Color.blue(px), hsv);
-            hsv[0] = shift ? hsv[0] + hue : hue;
-            pixels[i] = Utils.HSVToColor(Color.alpha(px), hsv); // already limit values out of ranges.
+        if (p.getHueLUTCache() == null) {
+            colorShift(p.getBitmap(), hueAngle, p.getTiledExecutor());
+        } else {
+            PixelBuffer buffer = Utils.getPixels(p.getBitmap());
+            p.getHueLUTCache().colorShift(buffer, hueAngle);
+            Utils.setPixels(p.getBitmap(), buffer);
         }
-        bmp.setPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+        p.notifyPixelsChanged();
     }
 
+    private static void colorShift(Bitmap bmp, final int hueShift, TiledExecutor executor) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        run(buffer, executor, new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                PointKernels.colorShift(band, hueShift);
+            }
+        });
+        Utils.setPixels(bmp, buffer);
+    }
 
     /**
      * Apply effect on the bitmap picture passed in parameter: Only conserve specific colors , other colors become gray by minimise saturation.
@@ -144,29 +185,33 @@ public class Effects {
      * @param toleranceAngle Colors in range "hueAngle" +/- this angle are kept.
      */
     public static void keepColor(Bitmap bmp, float hueAngle, float toleranceAngle) {
-        hueAngle = hueAngle % 360f;
-        toleranceAngle = toleranceAngle % 180f;
-        int[] pixels = new int[bmp.getWidth() * bmp.getHeight()];
-        bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
-
-        for (int i = 0; i < pixels.length; i++) {
-            int px = pixels[i];
-            float[] hsv = new float[3];
-            Utils.RGBToHSV(Color.red(px), Color.green(px), Color.blue(px), hsv);
-            float diff = Math.abs(hsv[0] - hueAngle);
-            if (!(Math.min(diff, 360 - diff) <= toleranceAngle)) {
-                hsv[1] = 0;
-            }
-            pixels[i] = Utils.HSVToColor(Color.alpha(px), hsv);
-        }
-        bmp.setPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+        keepColor(bmp, hueAngle, toleranceAngle, null);
     }
 
     /**
-     * See {@link #keepColor(Bitmap, float, float)} method
+     * See {@link #keepColor(Bitmap, float, float)} method, use lookup tables if the picture has a {@link HueLUTCache},
+     * otherwise computed in parallel if the picture has a {@link TiledExecutor}.
      */
     public static void keepColor(Picture p, float hueAngle, float toleranceAngle) {
-        keepColor(p.getBitmap(), hueAngle, toleranceAngle);
+        if (p.getHueLUTCache() == null) {
+            keepColor(p.getBitmap(), hueAngle, toleranceAngle, p.getTiledExecutor());
+        } else {
+            PixelBuffer buffer = Utils.getPixels(p.getBitmap());
+            p.getHueLUTCache().keepColor(buffer, hueAngle, toleranceAngle);
+            Utils.setPixels(p.getBitmap(), buffer);
+        }
+        p.notifyPixelsChanged();
+    }
+
+    private static void keepColor(Bitmap bmp, final float hueAngle, final float toleranceAngle, TiledExecutor executor) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        run(buffer, executor, new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                PointKernels.keepColor(band, hueAngle, toleranceAngle);
+            }
+        });
+        Utils.setPixels(bmp, buffer);
     }
 
     /**
@@ -177,73 +222,35 @@ public class Effects {
      * @param histograms The list of histogram arrays.
      */
     public static void linearDynamicExtension(Bitmap bmp, Picture.Histogram type, List<int[]> histograms) {
-        ArrayList<int[]> LUTs = new ArrayList<>();
-        for (int[] histogram : histograms) {
-            //make LUT:
-            int[] LUT = new int[histogram.length];
-            int[] extr = Utils.getHistogramMinMaxValue(histogram);
-            int min = extr[0];
-            int max = extr[1];
-            if (min == max)// if bitmap is uniform there will be a division by zero, to avoid it and because there should be no visual effect, the algorithm is skipped.
-                return;
-            for (int i = 0; i < histogram.length; i++)
-                LUT[i] = 255 * (i - min) / (max - min);
-            LUTs.add(LUT);
-        }
-        //apply LUT:
-        int[] pixels = new int[bmp.getWidth() * bmp.getHeight()];
-        bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
-
-
-        if (type == Picture.Histogram.LUMINANCE) {
-
-
-            int[] LUT = LUTs.get(0);
-            for (int i = 0; i < pixels.length; i++) {
-                int px = pixels[i];
-                float[] hsv = new float[3];
-                Utils.RGBToHSV(Color.red(px), Color.green(px), Color.blue(px), hsv);
-                hsv[2] = (float) LUT[(int) (hsv[2] * 255f)] / 255f;
-                pixels[i] = Utils.HSVToColor(Color.alpha(px), hsv);
-            }
-
-
-        } else if (type == Picture.Histogram.GRAY_LEVEL_NATURAL) {
-
-
-            int[] LUT = LUTs.get(0);
-            for (int i = 0; i < pixels.length; i++) {
-                int px = pixels[i];
-                int gray = (int) (0.3 * (double) Color.red(px) + 0.59 * (double) Color.blue(px) + 0.11 * (double) Color.green(px));
-                gray = LUT[gray];
-                pixels[i] = Color.argb(Color.alpha(px), gray, gray, gray);
-            }
-
-
-        } else if (type == Picture.Histogram.RGB) {
-            int[] LUTR = LUTs.get(0);
-            int[] LUTG = LUTs.get(1);
-            int[] LUTB = LUTs.get(2);
-            for (int i = 0; i < pixels.length; i++) {
-                int px = pixels[i];
-                pixels[i] = Color.argb(Color.alpha(px), LUTR[Color.red(px)], LUTG[Color.green(px)], LUTB[Color.blue(px)]);
-            }
-        } else {
-            return;
-        }
-
-
-        bmp.setPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+        linearDynamicExtension(bmp, type, histograms, null, null);
     }
 
     /**
-     * See {@link #linearDynamicExtension(Bitmap, Picture.Histogram, List)} method
+     * See {@link #linearDynamicExtension(Bitmap, Picture.Histogram, List)} method, LUTs applied in parallel if the picture has a {@link TiledExecutor}.
      *
      * @param p    Picture
      * @param type Histogram type to egalize.
      */
     public static void linearDynamicExtension(Picture p, Picture.Histogram type) {
-        linearDynamicExtension(p.getBitmap(), type, p.getHistograms(type));
+        //a uniform picture is not modified, its version and cached histograms are kept:
+        if (linearDynamicExtension(p.getBitmap(), type, p.getHistograms(type), p.getTiledExecutor(), p.getNaturalGrayWeights()))
+            p.notifyPixelsChanged();
+    }
+
+    /**
+     * @return False if pixels were not modified.
+     */
+    private static boolean linearDynamicExtension(Bitmap bmp, Picture.Histogram type, List<int[]> histograms, TiledExecutor executor, GrayWeights natural) {
+        //make LUTs:
+        ArrayList<int[]> LUTs = new ArrayList<>();
+        for (int[] histogram : histograms) {
+            int[] LUT = Contrast.linearExtensionLUT(histogram);
+            if (LUT == null)// if bitmap is uniform there will be a division by zero, to avoid it and because there should be no visual effect, the algorithm is skipped.
+                return false;
+            LUTs.add(LUT);
+        }
+        applyLUTs(bmp, type, LUTs, executor, natural);
+        return true;
     }
 
     /**
@@ -254,163 +261,325 @@ public class Effects {
      * @param histograms The list of histogram arrays.
      */
     public static void histogramFlattening(Bitmap bmp, Picture.Histogram type, List<int[]> histograms) {
-        //Compute cumulated histograms:
-        ArrayList<long[]> cumus = new ArrayList<>();
-        for (int[] histogram : histograms) {
-            long[] cumu = new long[histogram.length]; //use long because with multiplication by 255 than can overflow the integer size.
-            long sum = 0;
-            for (int i = 0; i < histogram.length; i++) {
-                sum += histogram[i];
-                cumu[i] = sum;
-            }
-            cumus.add(cumu);
-        }
-
-        //apply LUT:
-        int[] pixels = new int[bmp.getWidth() * bmp.getHeight()];
-        bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
-        int N = pixels.length;
+        histogramFlattening(bmp, type, histograms, null, null);
+    }
 
-        if (type == Picture.Histogram.LUMINANCE) {
+    /**
+     * See {@link #histogramFlattening(Bitmap, Picture.Histogram, List)} method, LUTs applied in parallel if the picture has a {@link TiledExecutor}.
+     *
+     * @param p    Picture
+     * @param type Histogram type to egalize.
+     */
+    public static void histogramFlattening(Picture p, Picture.Histogram type) {
+        if (histogramFlattening(p.getBitmap(), type, p.getHistograms(type), p.getTiledExecutor(), p.getNaturalGrayWeights()))
+            p.notifyPixelsChanged();
+    }
 
+    /**
+     * @return False if pixels were not modified.
+     */
+    private static boolean histogramFlattening(Bitmap bmp, Picture.Histogram type, List<int[]> histograms, TiledExecutor executor, GrayWeights natural) {
+        if (type == null)
+            return false;
+        //LUTs of the cumulated histograms, divided by the number of pixels of the whole picture:
+        int N = bmp.getWidth() * bmp.getHeight();
+        ArrayList<int[]> LUTs = new ArrayList<>();
+        for (int[] histogram : histograms)
+            LUTs.add(Contrast.flatteningLUT(Histograms.cumulate(histogram), N));
+        applyLUTs(bmp, type, LUTs, executor, natural);
+        return true;
+    }
 
-            long[] cumu = cumus.get(0);
-            for (int i = 0; i < N; i++) {
-                int px = pixels[i];
-                float[] hsv = new float[3];
-                Utils.RGBToHSV(Color.red(px), Color.green(px), Color.blue(px), hsv);
-                hsv[2] = (float) ((int) (cumu[(int) (hsv[2] * 255f)] * 255 / N)) / 255f;
-                pixels[i] = Utils.HSVToColor(Color.alpha(px), hsv);
-            }
+    /**
+     * Flatten the histogram of each part of the picture with a contrast limit (CLAHE), see {@link AdaptiveFlattening}:
+     * details of dark and bright areas are enhanced without amplifying the noise of uniform areas.
+     *
+     * @param bmp       Bitmap
+     * @param type      The type of the histogram.
+     * @param tiles     Number of tiles on each side of the picture, see {@link AdaptiveFlattening#DEFAULT_TILES}.
+     * @param clipLimit Contrast limit, see {@link AdaptiveFlattening#DEFAULT_CLIP_LIMIT}, 0 for no limit.
+     */
+    public static void adaptiveFlattening(Bitmap bmp, Picture.Histogram type, int tiles, double clipLimit) {
+        adaptiveFlattening(bmp, type, tiles, clipLimit, null, null);
+    }
 
+    /**
+     * See {@link #adaptiveFlattening(Bitmap, Picture.Histogram, int, double)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     */
+    public static void adaptiveFlattening(Picture p, Picture.Histogram type, int tiles, double clipLimit) {
+        adaptiveFlattening(p.getBitmap(), type, tiles, clipLimit, p.getTiledExecutor(), p.getNaturalGrayWeights());
+        p.notifyPixelsChanged();
+    }
 
-        } else if (type == Picture.Histogram.GRAY_LEVEL_NATURAL) {
+    private static void adaptiveFlattening(Bitmap bmp, Picture.Histogram type, int tiles, double clipLimit, TiledExecutor executor, GrayWeights natural) {
+        if (type == null)
+            return;
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        AdaptiveFlattening.flatten(buffer, adaptiveKind(type), tiles, clipLimit, natural, executor);
+        Utils.setPixels(bmp, buffer);
+    }
 
+    /**
+     * @return Kind of {@link AdaptiveFlattening} flattening the histogram type.
+     */
+    static int adaptiveKind(Picture.Histogram type) {
+        switch (type) {
+            case LUMINANCE:
+                return AdaptiveFlattening.LUMINANCE;
+            case GRAY_LEVEL_NATURAL:
+                return AdaptiveFlattening.GRAY_LEVEL_NATURAL;
+            default:
+                return AdaptiveFlattening.RGB;
+        }
+    }
 
-            long[] cumu = cumus.get(0);
-            for (int i = 0; i < N; i++) {
-                int px = pixels[i];
-                int gray = (int) (0.3 * (double) Color.red(px) + 0.59 * (double) Color.blue(px) + 0.11 * (double) Color.green(px));// Decolorize the bitmap.
-                gray = (int) (cumu[gray] * 255) / N;
-                pixels[i] = Color.argb(Color.alpha(px), gray, gray, gray);
+    /**
+     * Replace values of the histogram type with their values in the LUTs (one LUT, or three for RGB), by bands if there is an executor.
+     */
+    private static void applyLUTs(Bitmap bmp, final Picture.Histogram type, final List<int[]> LUTs, TiledExecutor executor, final GrayWeights natural) {
+        if (type == null)
+            return;
+        final ChannelLUT rgb = type == Picture.Histogram.RGB ? ChannelLUT.of(LUTs.get(0), LUTs.get(1), LUTs.get(2)) : null;
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        run(buffer, executor, new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                if (type == Picture.Histogram.LUMINANCE) {
+                    Contrast.applyLuminance(band, LUTs.get(0));
+                } else if (type == Picture.Histogram.GRAY_LEVEL_NATURAL) {
+                    Contrast.applyGrayLevelNatural(band, LUTs.get(0), natural);
+                } else if (type == Picture.Histogram.RGB) {
+                    rgb.apply(band);
+                }
             }
+        });
+        Utils.setPixels(bmp, buffer);
+    }
+
+    /**
+     * Replace red, green and blue values with their values in the table, for example a gamma correction or several composed tables.
+     *
+     * @param bmp Bitmap
+     * @param lut Tables of the three channels, see {@link ChannelLUT}.
+     */
+    public static void applyLUT(Bitmap bmp, ChannelLUT lut) {
+        applyLUT(bmp, lut, null);
+    }
 
+    /**
+     * See {@link #applyLUT(Bitmap, ChannelLUT)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     */
+    public static void applyLUT(Picture p, ChannelLUT lut) {
+        applyLUT(p.getBitmap(), lut, p.getTiledExecutor());
+        p.notifyPixelsChanged();
+    }
 
-        } else if (type == Picture.Histogram.RGB) {
-            long[] cumuR = cumus.get(0);
-            long[] cumuG = cumus.get(1);
-            long[] cumuB = cumus.get(2);
-            for (int i = 0; i < pixels.length; i++) {
-                int px = pixels[i];
-                pixels[i] = Color.argb(Color.alpha(px), (int) ((cumuR[Color.red(px)] * 255L) / N), (int) ((cumuG[Color.green(px)] * 255L) / N), (int) ((cumuB[Color.blue(px)] * 255L) / N));
+    private static void applyLUT(Bitmap bmp, final ChannelLUT lut, TiledExecutor executor) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        run(buffer, executor, new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                lut.apply(band);
             }
-        } else {
-            return;
-        }
-
-        bmp.setPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+        });
+        Utils.setPixels(bmp, buffer);
     }
 
     /**
-     * See {@link #histogramFlattening(Bitmap, Picture.Histogram, List)} method
+     * Apply simple blurring ont the image.
+     * Pixels near borders are blurred by repeating the edge pixels, see {@link #simpleBlurr(Bitmap, int, BorderMode)} to choose another border mode.
      *
-     * @param p    Picture
-     * @param type Histogram type to egalize.
+     * @param bmp       Bitmap
+     * @param intensity Size of the blurring square, minimum 1, the cost doesn't depend on it.
      */
-    public static void histogramFlattening(Picture p, Picture.Histogram type) {
-        histogramFlattening(p.getBitmap(), type, p.getHistograms(type));
+    public static void simpleBlurr(Bitmap bmp, int intensity) {
+        simpleBlurr(bmp, intensity, BorderMode.CLAMP);
     }
 
     /**
-     * Apply simple blurring ont the image.
+     * Apply simple blurring ont the image: each pixel become the average of the intensity x intensity square around it.
      *
      * @param bmp       Bitmap
-     * @param intensity Size of the convolution kernel, minimum 1, maximum : depends on the power of your hardware.
+     * @param intensity Size of the blurring square, minimum 1, even values are reduced to the previous odd value.
+     * @param border    How pixels out of the picture are read.
      */
-    public static void simpleBlurr(Bitmap bmp, int intensity) {
+    public static void simpleBlurr(Bitmap bmp, int intensity, BorderMode border) {
+        simpleBlurr(bmp, intensity, border, null);
+    }
+
+    /**
+     * See {@link #simpleBlurr(Bitmap, int)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     *
+     * @param p Picture to modify
+     */
+    public static void simpleBlurr(Picture p, int intensity) {
+        simpleBlurr(p, intensity, BorderMode.CLAMP);
+    }
+
+    /**
+     * See {@link #simpleBlurr(Bitmap, int, BorderMode)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     *
+     * @param p Picture to modify
+     */
+    public static void simpleBlurr(Picture p, int intensity, BorderMode border) {
+        simpleBlurr(p.getBitmap(), intensity, border, p.getTiledExecutor());
+        p.notifyPixelsChanged();
+    }
+
+    private static void simpleBlurr(Bitmap bmp, int intensity, BorderMode border, TiledExecutor executor) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        BoxBlur.blur(buffer, blurRadius(intensity), border, executor);
+        Utils.setPixels(bmp, buffer);
+    }
+
+    /**
+     * @param intensity Size of the blurring square given to {@link #simpleBlurr(Bitmap, int)}.
+     * @return Radius of the box blur.
+     */
+    static int blurRadius(int intensity) {
         intensity = intensity > 0 ? intensity : 1;
         if (intensity % 2 == 0)
             intensity--;
+        return intensity / 2;
+    }
+
+    /**
+     * Apply a convolution on the image, see {@link Convolution}.
+     *
+     * @param bmp    Bitmap
+     * @param kernel Weights, with odd dimensions.
+     * @param border How pixels out of the picture are read.
+     */
+    public static void convolve(Bitmap bmp, Kernel kernel, BorderMode border) {
+        convolve(bmp, kernel, border, null);
+    }
+
+    /**
+     * See {@link #convolve(Bitmap, Kernel, BorderMode)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     *
+     * @param p Picture to modify
+     */
+    public static void convolve(Picture p, Kernel kernel, BorderMode border) {
+        convolve(p.getBitmap(), kernel, border, p.getTiledExecutor());
+        p.notifyPixelsChanged();
+    }
 
+    private static void convolve(Bitmap bmp, Kernel kernel, BorderMode border, TiledExecutor executor) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        Convolution.convolve(buffer, kernel, border, executor);
+        Utils.setPixels(bmp, buffer);
+    }
 
-        int[][] kernel = new int[intensity][intensity];
-        for (int i = 0; i < intensity; i++)
-            for (int j = 0; j < intensity; j++)
-                kernel[i][j] = 1;
+    /**
+     * Apply a gaussian blur on the image, pixels near borders are blurred by repeating the edge pixels.
+     *
+     * @param bmp   Bitmap
+     * @param sigma Standard deviation of the gaussian in pixels, the kernel size is 2 * ceil(3 * sigma) + 1.
+     */
+    public static void gaussianBlur(Bitmap bmp, double sigma) {
+        convolve(bmp, Kernel.gaussian(sigma), BorderMode.CLAMP);
+    }
 
-        convolute(bmp, kernel);
+    /**
+     * See {@link #gaussianBlur(Bitmap, double)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     */
+    public static void gaussianBlur(Picture p, double sigma) {
+        convolve(p, Kernel.gaussian(sigma), BorderMode.CLAMP);
+    }
 
+    /**
+     * Apply an approximated gaussian blur on the image, see {@link GaussianBlur}: faster than {@link #gaussianBlur(Bitmap, double)},
+     * the cost doesn't depend on sigma. Pixels near borders are blurred by repeating the edge pixels.
+     *
+     * @param bmp   Bitmap
+     * @param sigma Standard deviation of the gaussian in pixels.
+     */
+    public static void fastGaussianBlur(Bitmap bmp, double sigma) {
+        fastGaussianBlur(bmp, sigma, BorderMode.CLAMP, null);
+    }
+
+    /**
+     * See {@link #fastGaussianBlur(Bitmap, double)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     */
+    public static void fastGaussianBlur(Picture p, double sigma) {
+        fastGaussianBlur(p.getBitmap(), sigma, BorderMode.CLAMP, p.getTiledExecutor());
+        p.notifyPixelsChanged();
+    }
+
+    private static void fastGaussianBlur(Bitmap bmp, double sigma, BorderMode border, TiledExecutor executor) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        GaussianBlur.blur(buffer, sigma, border, executor);
+        Utils.setPixels(bmp, buffer);
     }
 
     /**
-     * See {@link #simpleBlurr(Bitmap, int)} method
+     * Sharpen the image, see {@link Kernel#sharpen(double)}.
      *
-     * @param p Picture to modify
+     * @param bmp    Bitmap
+     * @param amount Strength, 0 let the picture unchanged.
      */
-    public static void simpleBlurr(Picture p, int intensity) {
-        simpleBlurr(p.getBitmap(), intensity);
+    public static void sharpen(Bitmap bmp, double amount) {
+        convolve(bmp, Kernel.sharpen(amount), BorderMode.CLAMP);
     }
 
+    /**
+     * See {@link #sharpen(Bitmap, double)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     */
+    public static void sharpen(Picture p, double amount) {
+        convolve(p, Kernel.sharpen(amount), BorderMode.CLAMP);
+    }
 
     /**
-     * Apply convolution effect on the Bitmap by ponderate values around each pixels by following weights in the kernel array.
+     * Replace each channel by the magnitude of its Sobel gradient: edges are bright, uniform areas black.
      *
-     * @param bmp    Bitmap to convolute
-     * @param kernel Constrainsts: square odd array
-     */
-    private static void convolute(Bitmap bmp, int[][] kernel) {
-        //float[x][y], y-down, x-right
-        //security:
-        int width = kernel.length;
-        boolean ok = width > 0 ? true : false;
-        for (int i = 0; i < width; i++)
-            if (kernel[i].length != width) {
-                ok = false;
-                i = width;
-            }
-        if (!ok || width % 2 == 0) {
-            Log.e("Convolution", "Invalid kernel size");
-            return;
-        }
-        int sumI = 0;
-        for (int i = 0; i < width; i++)
-            for (int j = 0; j < width; j++)
-                sumI += kernel[i][j];
-        float sum = sumI;
-        if (sumI == 0)
-            sum = 1;
-
-        //apply kernel on bitmap:
-        int[] pixels = new int[bmp.getWidth() * bmp.getHeight()];
-        bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
-        int N = pixels.length;
-        int hW = width / 2; //half-width kernel
-
-        for (int p = 0; p < N; p++) {
-
-            //kernel average:
-            int r = 0, g = 0, b = 0;
-            int X = p % bmp.getWidth();
-            int Y = p / bmp.getWidth();
-            if (X >= hW && X < bmp.getWidth() - hW && Y >= hW && Y < bmp.getHeight() - hW) { //does't do borders of picture.
-                for (int i = -hW; i <= hW; i++) {
-                    for (int j = -hW; j <= hW; j++) {
-                        int coord = (Y + j) * bmp.getWidth() + (X + i);
-                        r += Color.red(pixels[coord]) * (kernel[i + hW][j + hW] / sum);
-                        g += Color.green(pixels[coord]) * (kernel[i + hW][j + hW] / sum);
-                        b += Color.blue(pixels[coord]) * (kernel[i + hW][j + hW] / sum);
-
-                    }
-                }
-            }
+     * @param bmp Bitmap
+     */
+    public static void sobel(Bitmap bmp) {
+        sobel(bmp, null);
+    }
 
-            pixels[p] = Color.argb(Color.alpha(pixels[p]), r, g, b);
+    /**
+     * See {@link #sobel(Bitmap)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     */
+    public static void sobel(Picture p) {
+        sobel(p.getBitmap(), p.getTiledExecutor());
+        p.notifyPixelsChanged();
+    }
 
-        }
+    private static void sobel(Bitmap bmp, TiledExecutor executor) {
+        PixelBuffer buffer = Utils.getPixels(bmp);
+        Convolution.gradient(buffer, Kernel.sobelX(), Kernel.sobelY(), BorderMode.CLAMP, executor);
+        Utils.setPixels(bmp, buffer);
+    }
 
-        bmp.setPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+    /**
+     * Emboss the image, see {@link Kernel#emboss()}.
+     *
+     * @param bmp Bitmap
+     */
+    public static void emboss(Bitmap bmp) {
+        convolve(bmp, Kernel.emboss(), BorderMode.CLAMP);
+    }
 
+    /**
+     * See {@link #emboss(Bitmap)} method, computed in parallel if the picture has a {@link TiledExecutor}.
+     */
+    public static void emboss(Picture p) {
+        convolve(p, Kernel.emboss(), BorderMode.CLAMP);
+    }
 
+    /**
+     * Apply a task on the whole buffer, or on bands in parallel if an executor is given.
+     *
+     * @param buffer   Pixels to modify
+     * @param executor Executor splitting the buffer, can be null.
+     * @param task     Effect to apply, must only compute each pixel from its own value.
+     */
+    private static void run(PixelBuffer buffer, TiledExecutor executor, TiledExecutor.BandTask task) {
+        if (executor == null)
+            task.apply(buffer);
+        else
+            executor.forEachBand(buffer, task);
     }
 
 
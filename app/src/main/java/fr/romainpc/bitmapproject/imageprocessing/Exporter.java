@@ -0,0 +1,198 @@
+package fr.romainpc.bitmapproject.imageprocessing;
+
+import android.graphics.Bitmap;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.PngEncoder;
+import fr.romainpc.bitmapproject.imageprocessing.core.RawArgbSink;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Write pictures in files or streams, in PNG, JPEG or raw ARGB format (see {@link RawArgbSink}).
+ * PNG is compressed by strips in parallel with the executor (see {@link PngEncoder}), JPEG is compressed by Android in one thread.
+ * Output is streamed: no compressed file is built in memory.
+ * <p>
+ * The copy of pixels and buffers of the encoders are reused from a picture to the next one: use one exporter for many pictures,
+ * from one thread at a time.
+ */
+public class Exporter {
+
+    /**
+     * File formats.
+     */
+    public enum Format {
+        /**
+         * Lossless, RGB or RGBA.
+         */
+        PNG,
+        /**
+         * Lossy, without alpha.
+         */
+        JPEG,
+        /**
+         * 4 bytes per pixel without header, written without compression.
+         */
+        RAW
+    }
+
+    /**
+     * Default quality of JPEG files.
+     */
+    public static final int DEFAULT_JPEG_QUALITY = 90;
+
+    private final PngEncoder png;
+    private int jpegQuality = DEFAULT_JPEG_QUALITY;
+
+    //reused buffers:
+    private int[] pixels = new int[0];
+    private ByteBuffer row;
+    private Bitmap bitmap;
+
+    /**
+     * @param executor Executor compressing PNG strips in parallel, null to compress in the calling thread.
+     */
+    public Exporter(TiledExecutor executor) {
+        png = new PngEncoder(PngEncoder.DEFAULT_LEVEL, executor);
+    }
+
+    /**
+     * @param jpegQuality Quality of JPEG files from 0 to 100.
+     */
+    public void setJpegQuality(int jpegQuality) {
+        if (jpegQuality < 0 || jpegQuality > 100)
+            throw new IllegalArgumentException("quality must be in [0;100]");
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Write the pixels of a picture, lazy effects are computed before.
+     *
+     * @param picture Picture to write.
+     * @param format  Format of the output.
+     * @param output  Stream receiving the file, not closed.
+     * @throws IOException If the stream fails.
+     */
+    public void write(Picture picture, Format format, OutputStream output) throws IOException {
+        Bitmap bmp = picture.getBitmap();
+        if (format == Format.JPEG)
+            compress(bmp, output);
+        else
+            write(readPixels(bmp), format, output);
+    }
+
+    /**
+     * Write the pixels of a picture in a channel, from its current position.
+     *
+     * @param picture Picture to write.
+     * @param format  Format of the output.
+     * @param channel Channel open for writing, not closed.
+     * @throws IOException If the channel fails.
+     */
+    public void write(Picture picture, Format format, FileChannel channel) throws IOException {
+        if (format == Format.RAW) {
+            //rows are written from the reused row buffer, without stream:
+            PixelBuffer buffer = readPixels(picture.getBitmap());
+            for (int y = 0; y < buffer.getHeight(); y++) {
+                ByteBuffer bytes = rawRow(buffer, y);
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+            }
+            return;
+        }
+        OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+        write(picture, format, output);
+        output.flush();
+    }
+
+    /**
+     * Write the pixels of a picture in a file.
+     *
+     * @param picture Picture to write.
+     * @param format  Format of the output.
+     * @param file    File to write, replaced if it exists.
+     * @throws IOException If the file can't be written.
+     */
+    public void write(Picture picture, Format format, File file) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            write(picture, format, output.getChannel());
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Write pixels, for example the encode stage of a {@link fr.romainpc.bitmapproject.imageprocessing.core.BatchEngine}.
+     *
+     * @param buffer Pixels to write.
+     * @param format Format of the output.
+     * @param output Stream receiving the file, not closed.
+     * @throws IOException If the stream fails.
+     */
+    public void write(PixelBuffer buffer, Format format, OutputStream output) throws IOException {
+        switch (format) {
+            case PNG:
+                png.encode(buffer, output);
+                break;
+            case JPEG:
+                //the bitmap is reused while pictures have the same dimensions:
+                if (bitmap == null || bitmap.getWidth() != buffer.getWidth() || bitmap.getHeight() != buffer.getHeight()) {
+                    if (bitmap != null)
+                        bitmap.recycle();
+                    bitmap = Bitmap.createBitmap(buffer.getWidth(), buffer.getHeight(), Bitmap.Config.ARGB_8888);
+                }
+                Utils.setPixels(bitmap, buffer);
+                compress(bitmap, output);
+                break;
+            default:
+                writeRaw(buffer, output);
+        }
+    }
+
+    private void compress(Bitmap bmp, OutputStream output) throws IOException {
+        if (!bmp.compress(Bitmap.CompressFormat.JPEG, jpegQuality, output))
+            throw new IOException("JPEG compression failed");
+    }
+
+    /**
+     * Copy pixels of the bitmap in the reused array.
+     */
+    private PixelBuffer readPixels(Bitmap bmp) {
+        int size = bmp.getWidth() * bmp.getHeight();
+        if (pixels.length < size)
+            pixels = new int[size];
+        PixelBuffer buffer = new PixelBuffer(pixels, bmp.getWidth(), bmp.getHeight());
+        bmp.getPixels(pixels, 0, bmp.getWidth(), 0, 0, bmp.getWidth(), bmp.getHeight());
+        return buffer;
+    }
+
+    private void writeRaw(PixelBuffer buffer, OutputStream output) throws IOException {
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            ByteBuffer bytes = rawRow(buffer, y);
+            output.write(bytes.array(), bytes.arrayOffset(), bytes.remaining());
+        }
+    }
+
+    /**
+     * @return The reused row buffer with the bytes of the row, in the format of {@link RawArgbSink}.
+     */
+    private ByteBuffer rawRow(PixelBuffer buffer, int y) {
+        int bytes = buffer.getWidth() * 4;
+        if (row == null || row.capacity() < bytes)
+            row = ByteBuffer.allocate(bytes).order(ByteOrder.BIG_ENDIAN);
+        row.clear();
+        row.asIntBuffer().put(buffer.getPixels(), buffer.index(0, y), buffer.getWidth());
+        row.limit(bytes);
+        return row;
+    }
+}
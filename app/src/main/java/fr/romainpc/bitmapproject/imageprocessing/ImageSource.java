@@ -0,0 +1,320 @@
+package fr.romainpc.bitmapproject.imageprocessing;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.net.Uri;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.RawArgbSource;
+
+/**
+ * Where the pixels of a {@link Picture} or a {@link TiledPicture} come from: resource, file, content URI, stream or bytes in memory.
+ * Dimensions are decoded once and kept, so a reload or a copy of the picture only decodes the pixels.
+ * <p>
+ * Compressed images (JPEG, PNG, WEBP) are decoded by Android decoders. Raw ARGB pixels (see {@link RawArgbSource}) are not decoded:
+ * they are read directly from the buffer, usually a file mapped in memory.
+ */
+public abstract class ImageSource {
+
+    private int width = -1;
+    private int height = -1;
+
+    /**
+     * Decode with the options, like BitmapFactory methods: only outWidth and outHeight if inJustDecodeBounds is set.
+     *
+     * @return The bitmap, null if the image can't be decoded.
+     */
+    protected abstract Bitmap decodeBitmap(BitmapFactory.Options options);
+
+    /**
+     * @return New decoder of regions of the image.
+     * @throws IOException If the image can't be decoded by regions.
+     */
+    public abstract BitmapRegionDecoder newRegionDecoder() throws IOException;
+
+    /**
+     * @return Raw pixels of the image read without decoding, null if the image is compressed.
+     */
+    public RawArgbSource getRawPixels() {
+        return null;
+    }
+
+    /**
+     * Decode the image.
+     *
+     * @param options Options of the decoding, inSampleSize to reduce the size of the loaded image.
+     * @return The bitmap, null if the image can't be decoded.
+     */
+    public Bitmap decode(BitmapFactory.Options options) {
+        options.inJustDecodeBounds = false;
+        return decodeBitmap(options);
+    }
+
+    /**
+     * Decode dimensions of the image the first time only.
+     */
+    private synchronized void decodeBounds() {
+        if (width >= 0)
+            return;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeBitmap(options);
+        width = options.outWidth;
+        height = options.outHeight;
+    }
+
+    /**
+     * @return Width of the full image in pixels, -1 if the image can't be decoded.
+     */
+    public int getWidth() {
+        decodeBounds();
+        return width;
+    }
+
+    /**
+     * @return Height of the full image in pixels, -1 if the image can't be decoded.
+     */
+    public int getHeight() {
+        decodeBounds();
+        return height;
+    }
+
+    /**
+     * @param ctx Context of the application.
+     * @param id  Resource identifier of the picture.
+     * @return The source.
+     */
+    public static ImageSource fromResource(final Context ctx, final int id) {
+        return new ImageSource() {
+            @Override
+            protected Bitmap decodeBitmap(BitmapFactory.Options options) {
+                return BitmapFactory.decodeResource(ctx.getResources(), id, options);
+            }
+
+            @Override
+            public BitmapRegionDecoder newRegionDecoder() throws IOException {
+                InputStream stream = ctx.getResources().openRawResource(id);
+                try {
+                    return BitmapRegionDecoder.newInstance(stream, false);
+                } finally {
+                    stream.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param file Compressed image file in the storage.
+     * @return The source.
+     */
+    public static ImageSource fromFile(File file) {
+        final String path = file.getAbsolutePath();
+        return new ImageSource() {
+            @Override
+            protected Bitmap decodeBitmap(BitmapFactory.Options options) {
+                return BitmapFactory.decodeFile(path, options);
+            }
+
+            @Override
+            public BitmapRegionDecoder newRegionDecoder() throws IOException {
+                return BitmapRegionDecoder.newInstance(path, false);
+            }
+        };
+    }
+
+    /**
+     * The stream is opened again at each decoding.
+     *
+     * @param ctx Context of the application.
+     * @param uri Content URI of a compressed image (gallery, file picker).
+     * @return The source.
+     */
+    public static ImageSource fromUri(final Context ctx, final Uri uri) {
+        return new ImageSource() {
+            @Override
+            protected Bitmap decodeBitmap(BitmapFactory.Options options) {
+                try {
+                    InputStream stream = ctx.getContentResolver().openInputStream(uri);
+                    try {
+                        return BitmapFactory.decodeStream(stream, null, options);
+                    } finally {
+                        stream.close();
+                    }
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+
+            @Override
+            public BitmapRegionDecoder newRegionDecoder() throws IOException {
+                InputStream stream = ctx.getContentResolver().openInputStream(uri);
+                try {
+                    return BitmapRegionDecoder.newInstance(stream, false);
+                } finally {
+                    stream.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * A stream can be read only once: it is read completely in memory, then closed.
+     *
+     * @param stream Compressed image.
+     * @return The source.
+     * @throws IOException If the stream can't be read.
+     */
+    public static ImageSource fromStream(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = stream.read(chunk)) >= 0)
+                bytes.write(chunk, 0, read);
+        } finally {
+            stream.close();
+        }
+        return fromBytes(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * The bytes are not copied: an array is given as is to the decoders, other buffers (mapped files) are read by a stream on the buffer.
+     *
+     * @param buffer Compressed image from the position to the limit of the buffer, they are not modified.
+     * @return The source.
+     */
+    public static ImageSource fromBytes(ByteBuffer buffer) {
+        final ByteBuffer bytes = buffer.slice();
+        return new ImageSource() {
+            @Override
+            protected Bitmap decodeBitmap(BitmapFactory.Options options) {
+                if (bytes.hasArray())
+                    return BitmapFactory.decodeByteArray(bytes.array(), bytes.arrayOffset(), bytes.remaining(), options);
+                return BitmapFactory.decodeStream(new BufferInputStream(bytes.duplicate()), null, options);
+            }
+
+            @Override
+            public BitmapRegionDecoder newRegionDecoder() throws IOException {
+                if (bytes.hasArray())
+                    return BitmapRegionDecoder.newInstance(bytes.array(), bytes.arrayOffset(), bytes.remaining(), false);
+                return BitmapRegionDecoder.newInstance(new BufferInputStream(bytes.duplicate()), false);
+            }
+        };
+    }
+
+    /**
+     * Map a compressed image file in memory, it is read by the decoders without copy in the Java heap.
+     *
+     * @param file Compressed image file in the storage.
+     * @return The source.
+     * @throws IOException If the file can't be mapped.
+     */
+    public static ImageSource map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return fromBytes(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Raw pixels, read without decoding: a reduced decoding takes one pixel of each square, regions are copied from the buffer.
+     *
+     * @param pixels Raw ARGB pixels, for example {@link RawArgbSource#map(File, int)} on a file written by a {@link TiledPicture}.
+     * @return The source.
+     */
+    public static ImageSource fromRaw(final RawArgbSource pixels) {
+        ImageSource source = new ImageSource() {
+            @Override
+            protected Bitmap decodeBitmap(BitmapFactory.Options options) {
+                options.outWidth = pixels.getWidth();
+                options.outHeight = pixels.getHeight();
+                if (options.inJustDecodeBounds)
+                    return null;
+                PixelBuffer sample = pixels.sample(options.inSampleSize);
+                Bitmap bmp = Bitmap.createBitmap(sample.getWidth(), sample.getHeight(), Bitmap.Config.ARGB_8888);
+                Utils.setPixels(bmp, sample);
+                return bmp;
+            }
+
+            @Override
+            public BitmapRegionDecoder newRegionDecoder() throws IOException {
+                throw new IOException("raw pixels are read with getRawPixels()");
+            }
+
+            @Override
+            public RawArgbSource getRawPixels() {
+                return pixels;
+            }
+        };
+        source.width = pixels.getWidth();
+        source.height = pixels.getHeight();
+        return source;
+    }
+
+    /**
+     * Stream reading a buffer from its position, without copy of the buffer.
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(Math.min(n, buffer.remaining()), 0);
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            buffer.mark();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buffer.reset();
+        }
+    }
+}
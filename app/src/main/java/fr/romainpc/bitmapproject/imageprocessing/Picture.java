@@ -3,12 +3,25 @@ package fr.romainpc.bitmapproject.imageprocessing;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Color;
 
 import androidx.renderscript.RenderScript;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.History;
+import fr.romainpc.bitmapproject.imageprocessing.core.GrayWeights;
+import fr.romainpc.bitmapproject.imageprocessing.core.HueLUTCache;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.Pyramid;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
 
 /**
  * Class to manage an Picture, this class wrap a Bitmap instance and several others informations about the image.
@@ -36,16 +49,76 @@ public class Picture {
 
     private Bitmap bitmap;
     private BitmapFactory.Options options;
-    private int src;
-    private Context ctx;
+    private final ImageSource source;
+
+    /**
+     * Version of the pixels of a state of the history, with its cached histograms.
+     */
+    private static class Snapshot {
+        private final long version;
+        private final EnumMap<Histogram, List<int[]>> histograms;
+
+        private Snapshot(long version, EnumMap<Histogram, List<int[]>> histograms) {
+            this.version = version;
+            this.histograms = histograms;
+        }
+    }
+
+    /**
+     * Pixels of a level of the pyramid with the lazy effects, and the list of these effects.
+     */
+    private static class Render {
+        private final long version;
+        private final List<EffectPipeline> nodes;
+        private final PixelBuffer pixels;
+        private final Bitmap bitmap;
+
+        private Render(long version, List<EffectPipeline> nodes, PixelBuffer pixels, Bitmap bitmap) {
+            this.version = version;
+            this.nodes = nodes;
+            this.pixels = pixels;
+            this.bitmap = bitmap;
+        }
+    }
+
+    /**
+     * Maximum number of levels with memoized renders, levels rendered the least recently are removed.
+     */
+    public static final int MAX_RENDERS = 2;
 
     private int sourceWidth;
     private int sourceHeight;
-    private int[] original;
-    private int[] save;
+
+    //original and saved states, replacing copies of all pixels:
+    private History<Snapshot> history;
+    private long historyMemoryBudget = History.DEFAULT_MEMORY_BUDGET;
+
+    //histograms are cached by version of the pixels, states of the history keep their version and their histograms:
+    private long version;
+    private long lastVersion;
+    private EnumMap<Histogram, List<int[]>> histograms = new EnumMap<>(Histogram.class);
+    private long histogramHits;
+    private long histogramMisses;
+
+    //downscales of the pixels, valid for one version:
+    private Pyramid pyramid;
+    private long pyramidVersion;
+    private long pyramidMemoryBudget = Pyramid.DEFAULT_MEMORY_BUDGET;
+
+    //lazy effects, computed on the bitmap only when its pixels are read, or on levels of the pyramid for display:
+    private final ArrayList<EffectPipeline> pending = new ArrayList<>();
+    private final ArrayList<EffectPipeline> undonePending = new ArrayList<>();
+    private final LinkedHashMap<Integer, Render> renders = new LinkedHashMap<>(4, 0.75f, true); //access order for LRU eviction.
+    private long renderHits;
+    private long renderMisses;
 
 
     private RenderScript renderScript;
+    private RSPool rsPool;
+    private boolean ownRSPool;
+    private HueLUTCache hueLUTCache;
+    private TiledExecutor tiledExecutor;
+    private boolean fixedPointGray;
 
     /**
      * Just copy a Picture instance.
@@ -58,14 +131,15 @@ public class Picture {
 
     /**
      * Picture constructor by copying another Picture.
+     * A smaller copy is a level of the pyramid of the picture (see {@link #getPyramid()}), so pixels are averaged and not just sampled.
+     * Effect options (RenderScript, executor, lookup tables) are shared with the copy.
      *
      * @param pic          Picture to copy.
      * @param newReqHeight New size of the new picture.
      * @param newReqWidth  New size of the new picture.
      */
     public Picture(Picture pic, int newReqWidth, int newReqHeight) {
-        this.src = pic.getSource();
-        this.ctx = pic.ctx;
+        this.source = pic.source;
 
         //generate empty bitmap:
         sourceHeight = pic.getSourceHeight();
@@ -73,15 +147,30 @@ public class Picture {
 
         int sampleRatio = Utils.calculateInSampleSize(sourceWidth, sourceHeight, newReqWidth, newReqHeight);
 
+        //ratios are powers of two, the level is the ratio relative to the copied picture:
+        Pyramid pyr = pic.getPyramid();
+        int level = Integer.numberOfTrailingZeros(sampleRatio) - Integer.numberOfTrailingZeros(pic.options.inSampleSize);
+        level = Math.min(Math.max(level, 0), pyr.getLevelCount() - 1);
+
         //generate bitmap:
-        bitmap = Bitmap.createScaledBitmap(pic.getBitmap(), sourceWidth / sampleRatio, sourceHeight / sampleRatio, false);
-        original = new int[bitmap.getWidth() * bitmap.getHeight()];
-        bitmap.getPixels(original, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        PixelBuffer pixels = pyr.getLevel(level);
+        bitmap = Bitmap.createBitmap(pixels.getWidth(), pixels.getHeight(), pic.getBitmap().getConfig());
+        Utils.setPixels(bitmap, pixels);
+        historyMemoryBudget = pic.historyMemoryBudget;
+        newHistory();
 
         //set option for eventual reload:
         options = new BitmapFactory.Options();
         options.inMutable = true;
         options.inSampleSize = sampleRatio;
+
+        //share effect options:
+        renderScript = pic.renderScript;
+        rsPool = pic.rsPool;
+        hueLUTCache = pic.hueLUTCache;
+        tiledExecutor = pic.tiledExecutor;
+        fixedPointGray = pic.fixedPointGray;
+        pyramidMemoryBudget = pic.pyramidMemoryBudget;
     }
 
 
@@ -104,51 +193,350 @@ public class Picture {
      * @param reqHeight Required height. (pixels)
      */
     public Picture(Context ctx, int src, int reqWidth, int reqHeight) {
-        this.src = src;
-        this.ctx = ctx;
+        this(ImageSource.fromResource(ctx, src), reqWidth, reqHeight);
+    }
+
+    /**
+     * Picture constuctor from a file, an URI, a stream or bytes in memory.
+     *
+     * @param source    Source of the picture, kept for reloads and copies.
+     * @param reqWidth  Required width, usefull to reduce the size of the loaded image. (pixels)
+     * @param reqHeight Required height. (pixels)
+     * @throws IllegalArgumentException If the source can't be decoded.
+     */
+    public Picture(ImageSource source, int reqWidth, int reqHeight) {
+        this.source = source;
         options = new BitmapFactory.Options();
         options.inMutable = true;
 
-        //first decode:
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeResource(ctx.getResources(), src, options);
-
-        sourceHeight = options.outHeight; //pixel value
-        sourceWidth = options.outWidth; //pixel value
+        //dimensions are decoded once by the source:
+        sourceHeight = source.getHeight(); //pixel value
+        sourceWidth = source.getWidth(); //pixel value
         options.inSampleSize = Utils.calculateInSampleSize(sourceWidth, sourceHeight, reqWidth, reqHeight);
 
         //final decode:
-        options.inJustDecodeBounds = false;
-        bitmap = BitmapFactory.decodeResource(ctx.getResources(), src, options);
+        bitmap = source.decode(options);
+        if (bitmap == null)
+            throw new IllegalArgumentException("the source can't be decoded");
 
         //save original:
-        original = new int[bitmap.getWidth() * bitmap.getHeight()];
-        bitmap.getPixels(original, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        newHistory();
+    }
+
+    /**
+     * Start a history with the current pixels as original.
+     */
+    private void newHistory() {
+        history = new History<>(Utils.getPixels(bitmap), new Snapshot(version, histograms), historyMemoryBudget, History.DEFAULT_KEYFRAME_INTERVAL);
     }
 
     /**
      * Reset all pixels to the loaded version of the bitmap, keeping required dimensions.
+     * Previous states can be redone, lazy effects not computed yet are lost.
      */
     public void reset() {
-        bitmap.setPixels(original, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        discardPending();
+        load(history.first());
     }
 
     /**
-     * Reset all pixels to the last quicksave values.
+     * Reset all pixels to the last quicksave values (the current state of the history), lazy effects not computed yet are lost.
      */
     public void quickLoad() {
-        if (save != null)
-            bitmap.setPixels(save, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        discardPending();
+        load(history.getTag());
     }
 
     /**
-     * Save the current state of the picture (erase last quicksave). Remember original version is already stocked in memory and you can use {@link #reset()}.
-     * First call to quicksave will create a new copy of all pixels in  memory.
+     * Save the current state of the picture as a new state of the history, if pixels changed since the last state.
+     * Remember original version is already stocked in memory and you can use {@link #reset()}.
      */
     public void quickSave() {
-        if (save == null)
-            save = new int[bitmap.getWidth() * bitmap.getHeight()];
-        bitmap.getPixels(save, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        commit();
+    }
+
+    /**
+     * Add the current pixels to the history as a new state (a copy of all pixels), if they changed since the last state.
+     * Effects applied with {@link #apply(EffectPipeline)} don't need it and cost less memory.
+     */
+    public void commit() {
+        flush();
+        if (version != history.getTag().version)
+            history.record(Utils.getPixels(bitmap), null, new Snapshot(version, histograms));
+    }
+
+    /**
+     * Apply effects and add them to the history as an operation: the history doesn't keep a copy of all pixels for this state
+     * but applies the effects again if needed. The pipeline must not be modified after.
+     *
+     * @param pipeline Effects to apply.
+     */
+    public void apply(final EffectPipeline pipeline) {
+        //lazy effects are computed and saved before, the pipeline is a state of its own:
+        commit();
+        pipeline.apply(this);
+        final TiledExecutor executor = tiledExecutor;
+        final GrayWeights natural = getNaturalGrayWeights();
+        history.record(Utils.getPixels(bitmap), new History.Operation() {
+            @Override
+            public void apply(PixelBuffer buffer) {
+                pipeline.apply(buffer, executor, natural);
+            }
+        }, new Snapshot(version, histograms));
+    }
+
+    /**
+     * Record effects without computing them: the bitmap is modified when its pixels are read ({@link #getBitmap()},
+     * histograms, effects applied now), effects recorded until then are computed together in one pipeline.
+     * To display the result, {@link #render(int, int)} computes them only on a level of the pyramid.
+     * The pipeline must not be modified after.
+     *
+     * @param pipeline Effects to apply.
+     */
+    public void defer(EffectPipeline pipeline) {
+        if (pending.isEmpty())
+            history.truncate();
+        pending.add(pipeline);
+        undonePending.clear();
+    }
+
+    /**
+     * @return Number of lazy effect pipelines not computed on the bitmap yet.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Compute lazy effects on the bitmap, added to the history as one state.
+     */
+    private void flush() {
+        if (pending.isEmpty())
+            return;
+        EffectPipeline all = EffectPipeline.concat(pending);
+        pending.clear();
+        undonePending.clear();
+        apply(all);
+    }
+
+    private void discardPending() {
+        pending.clear();
+        undonePending.clear();
+    }
+
+    /**
+     * Give the current pixels with lazy effects, computed on the most detailed level of the pyramid fitting in required dimensions.
+     * Results are memoized by level: rendering again after new lazy effects only computes the new ones.
+     *
+     * @param maxWidth  Maximum width in pixels, 0 for no limit.
+     * @param maxHeight Maximum height in pixels, 0 for no limit.
+     * @return Bitmap of the render, it must not be modified. It is the bitmap of the picture if there is no lazy effect at full resolution.
+     */
+    public Bitmap render(int maxWidth, int maxHeight) {
+        int level = pyramid().levelFor(maxWidth, maxHeight);
+        if (level == 0 && pending.isEmpty())
+            return bitmap;
+        return renderLevel(level).bitmap;
+    }
+
+    /**
+     * Give a region of the current pixels with lazy effects, computed on the most detailed level where the region fits in required dimensions.
+     * Only the region (with a margin for blurs) is computed, except if a lazy effect needs histograms of the whole image:
+     * then the whole level is rendered and memoized. The result is the same as a part of {@link #render(int, int)} at this level.
+     *
+     * @param left      Position of the region in pixels of the picture.
+     * @param top       Position of the region in pixels of the picture.
+     * @param width     Width of the region in pixels of the picture.
+     * @param height    Height of the region in pixels of the picture.
+     * @param maxWidth  Maximum width of the result in pixels, 0 for no limit.
+     * @param maxHeight Maximum height of the result in pixels, 0 for no limit.
+     * @return New bitmap with the region at the chosen level.
+     */
+    public Bitmap render(int left, int top, int width, int height, int maxWidth, int maxHeight) {
+        if (left < 0 || top < 0 || width <= 0 || height <= 0 || left + width > getWidth() || top + height > getHeight())
+            throw new IllegalArgumentException("Region out of the picture");
+        Pyramid pyr = pyramid();
+        int level = 0;
+        while (level < pyr.getLevelCount() - 1
+                && ((maxWidth > 0 && scale(left + width, level) - (left >> level) > maxWidth)
+                || (maxHeight > 0 && scale(top + height, level) - (top >> level) > maxHeight)))
+            level++;
+        //region at this level:
+        int regionLeft = left >> level;
+        int regionTop = top >> level;
+        int regionWidth = scale(left + width, level) - regionLeft;
+        int regionHeight = scale(top + height, level) - regionTop;
+
+        PixelBuffer result;
+        EffectPipeline all = EffectPipeline.concat(pending);
+        if (all.hasContrast()) {
+            PixelBuffer pixels = renderLevel(level).pixels;
+            result = new PixelBuffer(pixels.getPixels(), pixels.index(regionLeft, regionTop), pixels.getStride(), regionWidth, regionHeight);
+        } else {
+            //region with a margin for blurs, clamped to the level:
+            int halo = all.getHalo();
+            int levelWidth = pyr.getLevelWidth(level);
+            int levelHeight = pyr.getLevelHeight(level);
+            int haloLeft = Math.max(0, regionLeft - halo);
+            int haloTop = Math.max(0, regionTop - halo);
+            int haloWidth = Math.min(levelWidth, regionLeft + regionWidth + halo) - haloLeft;
+            int haloHeight = Math.min(levelHeight, regionTop + regionHeight + halo) - haloTop;
+            PixelBuffer region = new PixelBuffer(haloWidth, haloHeight);
+            if (level == 0) {
+                bitmap.getPixels(region.getPixels(), 0, haloWidth, haloLeft, haloTop, haloWidth, haloHeight);
+            } else {
+                PixelBuffer pixels = pyr.getLevel(level);
+                for (int y = 0; y < haloHeight; y++)
+                    System.arraycopy(pixels.getPixels(), pixels.index(haloLeft, haloTop + y), region.getPixels(), region.index(0, y), haloWidth);
+            }
+            all.apply(region, tiledExecutor, getNaturalGrayWeights());
+            result = new PixelBuffer(region.getPixels(), region.index(regionLeft - haloLeft, regionTop - haloTop), region.getStride(), regionWidth, regionHeight);
+        }
+        Bitmap bmp = Bitmap.createBitmap(regionWidth, regionHeight, bitmap.getConfig());
+        Utils.setPixels(bmp, result);
+        return bmp;
+    }
+
+    /**
+     * Size divided by 2^level, rounded up like levels of the pyramid.
+     */
+    private static int scale(int size, int level) {
+        return (int) ((size + (1L << level) - 1) >> level);
+    }
+
+    /**
+     * Render a whole level, from the memoized render of this level if its effects are the first lazy effects.
+     */
+    private Render renderLevel(int level) {
+        Render render = renders.get(level);
+        if (render != null && render.version == version && render.nodes.equals(pending)) {
+            renderHits++;
+            return render;
+        }
+        renderMisses++;
+        PixelBuffer pixels;
+        int from;
+        if (render != null && render.version == version && render.nodes.size() < pending.size()
+                && render.nodes.equals(pending.subList(0, render.nodes.size()))) {
+            //only new effects are computed (the bitmap of the previous render is kept as is):
+            pixels = render.pixels;
+            from = render.nodes.size();
+        } else {
+            pixels = pyramid().getLevel(level);
+            if (level > 0)
+                pixels = pixels.copy(); //levels are shared by the pyramid.
+            from = 0;
+        }
+        if (from < pending.size())
+            EffectPipeline.concat(pending.subList(from, pending.size())).apply(pixels, tiledExecutor, getNaturalGrayWeights());
+        Bitmap bmp = Bitmap.createBitmap(pixels.getWidth(), pixels.getHeight(), bitmap.getConfig());
+        Utils.setPixels(bmp, pixels);
+        render = new Render(version, new ArrayList<>(pending), pixels, bmp);
+        renders.put(level, render);
+        Iterator<Render> iterator = renders.values().iterator();
+        while (renders.size() > MAX_RENDERS) {
+            iterator.next();
+            iterator.remove();
+        }
+        return render;
+    }
+
+    /**
+     * @return Number of renders given from memoized results without computing effects.
+     */
+    public long getRenderHits() {
+        return renderHits;
+    }
+
+    /**
+     * @return Number of renders which computed effects (all lazy effects, or only the new ones).
+     */
+    public long getRenderMisses() {
+        return renderMisses;
+    }
+
+    /**
+     * @return True if {@link #undo()} can go back.
+     */
+    public boolean canUndo() {
+        return !pending.isEmpty() || history.canUndo();
+    }
+
+    /**
+     * @return True if {@link #redo()} can go forward.
+     */
+    public boolean canRedo() {
+        return !undonePending.isEmpty() || (pending.isEmpty() && history.canRedo());
+    }
+
+    /**
+     * Go back to the previous state of the history, modifications not saved are lost.
+     * The last lazy effect not computed yet is just removed.
+     *
+     * @return False if there is no previous state.
+     */
+    public boolean undo() {
+        if (!pending.isEmpty()) {
+            undonePending.add(pending.remove(pending.size() - 1));
+            return true;
+        }
+        Snapshot snapshot = history.undo();
+        if (snapshot == null)
+            return false;
+        load(snapshot);
+        return true;
+    }
+
+    /**
+     * Go to the next state of the history (after an undo), modifications not saved are lost.
+     *
+     * @return False if there is no next state.
+     */
+    public boolean redo() {
+        if (pending.isEmpty() && history.canRedo()) {
+            redoHistory();
+            return true;
+        }
+        if (undonePending.isEmpty())
+            return false;
+        pending.add(undonePending.remove(undonePending.size() - 1));
+        return true;
+    }
+
+    private void redoHistory() {
+        if (version != history.getTag().version)
+            load(history.getTag());
+        PixelBuffer buffer = Utils.getPixels(bitmap);
+        Snapshot snapshot = history.redo(buffer);
+        Utils.setPixels(bitmap, buffer);
+        version = snapshot.version;
+        histograms = snapshot.histograms;
+    }
+
+    /**
+     * Copy pixels of the current state of the history in the bitmap.
+     */
+    private void load(Snapshot snapshot) {
+        Utils.setPixels(bitmap, history.pixels());
+        version = snapshot.version;
+        histograms = snapshot.histograms;
+    }
+
+    /**
+     * @return Undo and redo history of the picture, with its statistics.
+     */
+    public History<?> getHistory() {
+        return history;
+    }
+
+    /**
+     * Change the memory used by the history, old states are forgotten if needed (the original is kept).
+     *
+     * @param historyMemoryBudget Maximum memory used by copies of pixels in the history, in bytes.
+     */
+    public void setHistoryMemoryBudget(long historyMemoryBudget) {
+        this.historyMemoryBudget = historyMemoryBudget;
+        history.setMemoryBudget(historyMemoryBudget);
     }
 
     /**
@@ -156,18 +544,79 @@ public class Picture {
      */
     public void reload() {
 
-        //first decode:
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeResource(ctx.getResources(), src, options);
-        //no modification on options.inSampleSize;
-
-        //final decode:
-        options.inJustDecodeBounds = false;
+        //dimensions are kept by the source, only one decode with the same options.inSampleSize:
         options.inMutable = true;
-        bitmap = BitmapFactory.decodeResource(ctx.getResources(), src, options);
+        bitmap = source.decode(options);
+
+        //resave original, the history starts again:
+        discardPending();
+        notifyPixelsChanged();
+        newHistory();
+    }
+
+    /**
+     * Write the picture in a file, PNG is compressed in parallel if the picture has a {@link TiledExecutor}.
+     * To write many pictures, an {@link Exporter} reuses its buffers.
+     *
+     * @param file   File to write, replaced if it exists.
+     * @param format Format of the file.
+     * @throws IOException If the file can't be written.
+     */
+    public void save(File file, Exporter.Format format) throws IOException {
+        new Exporter(tiledExecutor).write(this, format, file);
+    }
+
+    /**
+     * Must be called after each modification of the pixels of the bitmap, to invalidate cached histograms.
+     * Effects applied on the Picture (and not on its Bitmap) already call it.
+     */
+    public void notifyPixelsChanged() {
+        version = ++lastVersion;
+        histograms = new EnumMap<>(Histogram.class);
+    }
+
+    /**
+     * @return Version of the pixels, changed by each modification. Going to a state of the history come back to the version of its pixels.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Give the downscales by powers of two of the current pixels, levels are built when asked.
+     * The pyramid is kept while the pixels don't change, and given again when resetting or loading the quicksave come back to its version.
+     *
+     * @return Pyramid of the current pixels, level 0 is the bitmap.
+     */
+    public Pyramid getPyramid() {
+        flush();
+        return pyramid();
+    }
+
+    /**
+     * Pyramid of the bitmap, without lazy effects.
+     */
+    private Pyramid pyramid() {
+        if (pyramid == null || pyramidVersion != version
+                || pyramid.getLevelWidth(0) != bitmap.getWidth() || pyramid.getLevelHeight(0) != bitmap.getHeight()) {
+            pyramid = new Pyramid(bitmap.getWidth(), bitmap.getHeight(), new Pyramid.Source() {
+                @Override
+                public PixelBuffer read() {
+                    return Utils.getPixels(bitmap);
+                }
+            }, pyramidMemoryBudget);
+            pyramidVersion = version;
+        }
+        return pyramid;
+    }
 
-        //resave original:
-        bitmap.getPixels(original, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    /**
+     * @param pyramidMemoryBudget Maximum memory used by levels of the pyramid, in bytes.
+     */
+    public void setPyramidMemoryBudget(long pyramidMemoryBudget) {
+        this.pyramidMemoryBudget = pyramidMemoryBudget;
+        if (pyramid != null)
+            pyramid.setMemoryBudget(pyramidMemoryBudget);
     }
 
     /**
@@ -199,66 +648,117 @@ public class Picture {
     }
 
     /**
+     * Lazy effects are computed before, see {@link #defer(EffectPipeline)}.
+     *
      * @return Bitmap associated to the picture.
      */
     public Bitmap getBitmap() {
+        flush();
         return bitmap;
     }
 
     /**
-     * @return R source integer associated to the picture.
+     * @return Source of the picture, shared with its copies.
      */
-    public int getSource() {
-        return src;
+    public ImageSource getSource() {
+        return source;
     }
 
 
     /**
-     * Compute an histogram.
+     * Compute an histogram, in parallel if the picture has a {@link TiledExecutor}.
+     * Histograms are cached until the pixels change, arrays must not be modified.
      *
      * @param type The histogram type.
      * @return List of Histograms in arrays with 256 values.
      */
     public List<int[]> getHistograms(Histogram type) {
-        ArrayList<int[]> list = new ArrayList<>();
+        if (type == null)
+            return null;
+        flush();
+        List<int[]> list = histograms.get(type);
+        if (list != null) {
+            histogramHits++;
+            return list;
+        }
+        histogramMisses++;
+        list = histograms(count(type == Histogram.LUMINANCE, type == Histogram.GRAY_LEVEL_NATURAL, type == Histogram.RGB), type);
+        histograms.put(type, list);
+        return list;
+    }
 
-        int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
-        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-        if (type == Histogram.LUMINANCE) {
+    /**
+     * Histograms of the current pixels only if they are in cache, for effects counting them in another way (RenderScript).
+     *
+     * @param type The histogram type.
+     * @return List of Histograms as given by {@link #getHistograms(Histogram)}, null if they must be counted.
+     */
+    List<int[]> getCachedHistograms(Histogram type) {
+        flush();
+        List<int[]> list = histograms.get(type);
+        if (list != null)
+            histogramHits++;
+        else
+            histogramMisses++;
+        return list;
+    }
 
-            int[] histogram = new int[256];
-            for (int px : pixels) {
-                float[] hsv = new float[3];
-                Utils.RGBToHSV(Color.red(px), Color.green(px), Color.blue(px), hsv);
-                histogram[(int) (hsv[2] * 255f)]++;
-            }
-            list.add(histogram);
+    /**
+     * Keep histograms of the current pixels counted in another way, they must have the values of {@link #getHistograms(Histogram)}.
+     */
+    void cacheHistograms(Histogram type, List<int[]> list) {
+        histograms.put(type, list);
+    }
 
-        } else if (type == Histogram.GRAY_LEVEL_NATURAL) {
+    /**
+     * Compute all types of histograms in one pass on the pixels, in parallel if the picture has a {@link TiledExecutor}.
+     * Only types not in cache are computed.
+     *
+     * @return For each histogram type, the list of histograms as returned by {@link #getHistograms(Histogram)}.
+     */
+    public Map<Histogram, List<int[]>> getAllHistograms() {
+        flush();
+        boolean luminance = !histograms.containsKey(Histogram.LUMINANCE);
+        boolean grayLevelNatural = !histograms.containsKey(Histogram.GRAY_LEVEL_NATURAL);
+        boolean rgb = !histograms.containsKey(Histogram.RGB);
+        if (luminance || grayLevelNatural || rgb) {
+            histogramMisses++;
+            Histograms.Counts counts = count(luminance, grayLevelNatural, rgb);
+            for (Histogram type : Histogram.values())
+                if (!histograms.containsKey(type))
+                    histograms.put(type, histograms(counts, type));
+        } else {
+            histogramHits++;
+        }
+        return new EnumMap<>(histograms);
+    }
 
-            int[] histogram = new int[256];
-            for (int px : pixels) {
-                int gray = (int) (0.3 * (double) Color.red(px) + 0.59 * (double) Color.blue(px) + 0.11 * (double) Color.green(px));
-                histogram[gray]++;
-            }
-            list.add(histogram);
+    /**
+     * @return Number of histogram requests answered by the cache.
+     */
+    public long getHistogramCacheHits() {
+        return histogramHits;
+    }
 
-        } else if (type == Histogram.RGB) {
+    /**
+     * @return Number of histogram requests which had to count pixels.
+     */
+    public long getHistogramCacheMisses() {
+        return histogramMisses;
+    }
 
-            int[] histogramR = new int[256];
-            int[] histogramG = new int[256];
-            int[] histogramB = new int[256];
-            for (int px : pixels) {
-                histogramR[Color.red(px)]++;
-                histogramG[Color.green(px)]++;
-                histogramB[Color.blue(px)]++;
-            }
-            list.add(histogramR);
-            list.add(histogramG);
-            list.add(histogramB);
+    private Histograms.Counts count(boolean luminance, boolean grayLevelNatural, boolean rgb) {
+        return Histograms.count(Utils.getPixels(bitmap), luminance, grayLevelNatural, rgb, tiledExecutor, getNaturalGrayWeights());
+    }
 
-        } else {
-            return null;
+    static List<int[]> histograms(Histograms.Counts counts, Histogram type) {
+        ArrayList<int[]> list = new ArrayList<>();
+        if (type == Histogram.LUMINANCE) {
+            list.add(counts.luminance);
+        } else if (type == Histogram.GRAY_LEVEL_NATURAL) {
+            list.add(counts.grayLevelNatural);
+        } else if (type == Histogram.RGB) {
+            list.addAll(counts.rgb());
         }
         return list;
     }
@@ -274,10 +774,114 @@ public class Picture {
 
     /**
      * To use RenderScript functions on Picture you need to associated a RenderScript instance to the picture, Instantiate it from a Context class (or extended classes)
+     * The picture creates its own {@link RSPool} at first RenderScript effect, see {@link #setRSPool(RSPool)} to share one.
      *
      * @param renderScript
      */
     public void setRenderScript(RenderScript renderScript) {
+        if (rsPool != null && rsPool.getRenderScript() != renderScript) {
+            if (ownRSPool)
+                rsPool.close();
+            rsPool = null;
+        }
         this.renderScript = renderScript;
     }
+
+    /**
+     * @return Resources used by RenderScript effects on this Picture, created at first call if a RenderScript is setted, null otherwise.
+     */
+    public RSPool getRSPool() {
+        if (rsPool == null && renderScript != null) {
+            rsPool = new RSPool(renderScript);
+            ownRSPool = true;
+        }
+        return rsPool;
+    }
+
+    /**
+     * Use a pool shared with other pictures, the RenderScript of the picture become the one of the pool.
+     * A shared pool must be closed by its creator.
+     *
+     * @param rsPool Pool to use, null to remove RenderScript from the picture.
+     */
+    public void setRSPool(RSPool rsPool) {
+        if (this.rsPool != null && this.rsPool != rsPool && ownRSPool)
+            this.rsPool.close();
+        this.rsPool = rsPool;
+        ownRSPool = false;
+        renderScript = rsPool != null ? rsPool.getRenderScript() : null;
+    }
+
+    /**
+     * Destroy RenderScript resources created by the picture, a shared pool is not closed.
+     */
+    public void closeRSPool() {
+        if (rsPool != null && ownRSPool)
+            rsPool.close();
+        rsPool = null;
+    }
+
+    /**
+     * @return Lookup tables used by hue effects on this Picture, or null if effects compute each pixel.
+     */
+    public HueLUTCache getHueLUTCache() {
+        return hueLUTCache;
+    }
+
+    /**
+     * Make hue effects (colorize, color shift, keep color) use lookup tables instead of computing each pixel.
+     * The same cache can be shared by several pictures because tables only depend on effect parameters.
+     *
+     * @param hueLUTCache Lookup tables, null to compute each pixel.
+     */
+    public void setHueLUTCache(HueLUTCache hueLUTCache) {
+        this.hueLUTCache = hueLUTCache;
+    }
+
+    /**
+     * @return Executor used by effects on this Picture, or null if effects run in the calling thread.
+     */
+    public TiledExecutor getTiledExecutor() {
+        return tiledExecutor;
+    }
+
+    /**
+     * Make effects split the picture in bands of rows computed on several threads, results are the same.
+     *
+     * @param tiledExecutor Executor to use, for example {@link TiledExecutor#getShared()}, null to compute in the calling thread.
+     */
+    public void setTiledExecutor(TiledExecutor tiledExecutor) {
+        this.tiledExecutor = tiledExecutor;
+    }
+
+    /**
+     * @return True if gray levels of effects on this Picture are computed in fixed point.
+     */
+    public boolean isFixedPointGray() {
+        return fixedPointGray;
+    }
+
+    /**
+     * Make gray level effects, natural gray level histograms and contrast compute gray levels with integer tables instead of doubles (see {@link GrayWeights}).
+     * It is faster, but a gray can differ by 1 from the double computation, which is the one of RenderScript effects.
+     * Cached natural gray level histograms are counted again.
+     *
+     * @param fixedPointGray True to compute gray levels in fixed point.
+     */
+    public void setFixedPointGray(boolean fixedPointGray) {
+        if (this.fixedPointGray == fixedPointGray)
+            return;
+        this.fixedPointGray = fixedPointGray;
+        //a copy, the map can be shared with a state of the history:
+        histograms = new EnumMap<>(histograms);
+        histograms.remove(Histogram.GRAY_LEVEL_NATURAL);
+        renders.clear();
+    }
+
+    /**
+     * @return Tables of the natural gray level if gray levels are computed in fixed point, null otherwise.
+     */
+    GrayWeights getNaturalGrayWeights() {
+        return fixedPointGray ? GrayWeights.NATURAL : null;
+    }
 }
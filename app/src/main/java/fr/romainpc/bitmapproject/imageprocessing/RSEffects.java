@@ -1,26 +1,44 @@
 package fr.romainpc.bitmapproject.imageprocessing;
 
 
+import android.graphics.Bitmap;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.BorderMode;
+import fr.romainpc.bitmapproject.imageprocessing.core.Contrast;
+import fr.romainpc.bitmapproject.imageprocessing.core.GaussianBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_blur;
 import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_gray;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_histogram;
 import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_hue;
 import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_hue_shift;
 import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_keep_color;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_lut;
 
 import androidx.renderscript.Allocation;
-import androidx.renderscript.ScriptC;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class with methods to apply effects on Pictures using Renderscript library.
+ * Allocations and scripts are taken from the {@link RSPool} of the picture and kept for next calls.
  *
  * @see android.graphics.Bitmap
  * @see Picture
  */
 public class RSEffects {
 
-    private static Allocation input;
-    private static Allocation output;
-    private static ScriptC script;
+    /**
+     * Maximum number of bands of rows counted in parallel by the histogram kernel.
+     */
+    private static final int MAX_BANDS = 64;
 
+    /**
+     * Maximum size of the blurring square, horizontal sums must fit in 16 bits.
+     */
+    private static final int MAX_BLUR_SIZE = 257;
 
     /**
      * Apply effect on Picture passed in parameter: put the picture in gray level.
@@ -32,18 +50,20 @@ public class RSEffects {
      * @param blue    Blue proportion (between 0.0 and 1.0)
      */
     public static void grayLevel(Picture picture, float red, float green, float blue) {
-        if (picture.getRenderScript() == null)
+        RSPool pool = picture.getRSPool();
+        if (pool == null)
             return;
-        allocate(picture);
-
-        script = new ScriptC_gray(picture.getRenderScript());
-        ((ScriptC_gray) script).set_redWeight(red);
-        ((ScriptC_gray) script).set_greenWeight(green);
-        ((ScriptC_gray) script).set_blueWeight(blue);
-        ((ScriptC_gray) script).forEach_gray(input, output);
-        output.copyTo(picture.getBitmap());
-
-        destroy();
+        synchronized (pool) {
+            Allocation input = pool.input(picture.getBitmap());
+            Allocation output = pool.output(picture.getBitmap());
+            ScriptC_gray script = pool.gray();
+            script.set_redWeight(red);
+            script.set_greenWeight(green);
+            script.set_blueWeight(blue);
+            script.forEach_gray(input, output);
+            output.copyTo(picture.getBitmap());
+        }
+        picture.notifyPixelsChanged();
     }
 
     /**
@@ -53,16 +73,18 @@ public class RSEffects {
      * @param hueAngle Hue value, represented by an angle on the hue wheel [0;360]
      */
     public static void colorize(Picture picture, int hueAngle) {
-        if (picture.getRenderScript() == null)
+        RSPool pool = picture.getRSPool();
+        if (pool == null)
             return;
-        allocate(picture);
-
-        script = new ScriptC_hue(picture.getRenderScript());
-        ((ScriptC_hue) script).set_hueAngle(hueAngle);
-        ((ScriptC_hue) script).forEach_hue(input, output);
-        output.copyTo(picture.getBitmap());
-
-        destroy();
+        synchronized (pool) {
+            Allocation input = pool.input(picture.getBitmap());
+            Allocation output = pool.output(picture.getBitmap());
+            ScriptC_hue script = pool.hue();
+            script.set_hueAngle(hueAngle);
+            script.forEach_hue(input, output);
+            output.copyTo(picture.getBitmap());
+        }
+        picture.notifyPixelsChanged();
     }
 
     /**
@@ -72,17 +94,18 @@ public class RSEffects {
      * @param hueShift Hue value, represented by an angle on the hue wheel [0;360]
      */
     public static void colorShift(Picture picture, int hueShift) {
-        if (picture.getRenderScript() == null)
+        RSPool pool = picture.getRSPool();
+        if (pool == null)
             return;
-        allocate(picture);
-
-
-        script = new ScriptC_hue_shift(picture.getRenderScript());
-        ((ScriptC_hue_shift) script).set_hueShift(hueShift);
-        ((ScriptC_hue_shift) script).forEach_hue_shift(input, output);
-        output.copyTo(picture.getBitmap());
-
-        destroy();
+        synchronized (pool) {
+            Allocation input = pool.input(picture.getBitmap());
+            Allocation output = pool.output(picture.getBitmap());
+            ScriptC_hue_shift script = pool.hueShift();
+            script.set_hueShift(hueShift);
+            script.forEach_hue_shift(input, output);
+            output.copyTo(picture.getBitmap());
+        }
+        picture.notifyPixelsChanged();
     }
 
     /**
@@ -93,38 +116,239 @@ public class RSEffects {
      * @param toleranceAngle Colors in range "hueAngle" +/- this angle are kept.
      */
     public static void keepColor(Picture picture, float hueAngle, float toleranceAngle) {
-        if (picture.getRenderScript() == null)
+        RSPool pool = picture.getRSPool();
+        if (pool == null)
+            return;
+        synchronized (pool) {
+            Allocation input = pool.input(picture.getBitmap());
+            Allocation output = pool.output(picture.getBitmap());
+            ScriptC_keep_color script = pool.keepColor();
+            script.set_hueAngle(hueAngle);
+            script.set_toleranceAngle(toleranceAngle);
+            script.forEach_keep_color(input, output);
+            output.copyTo(picture.getBitmap());
+        }
+        picture.notifyPixelsChanged();
+    }
+
+    /**
+     * Compute histograms with RenderScript, same values as {@link Picture#getHistograms(Picture.Histogram)}.
+     * Each band of rows is counted in its own part of an allocation, parts are summed at the end.
+     *
+     * @param picture Picture to count
+     * @param type    The histogram type.
+     * @return List of Histograms in arrays with 256 values, null if the picture has no RenderScript.
+     */
+    public static List<int[]> histograms(Picture picture, Picture.Histogram type) {
+        RSPool pool = picture.getRSPool();
+        if (pool == null || type == null)
+            return null;
+        Bitmap bmp = picture.getBitmap();
+        int height = bmp.getHeight();
+        int bandHeight = (height + MAX_BANDS - 1) / MAX_BANDS;
+        bandHeight = Math.max(bandHeight, TiledExecutor.MIN_BAND_HEIGHT);
+        int bands = (height + bandHeight - 1) / bandHeight;
+        int[] indexes = new int[bands];
+        for (int i = 0; i < bands; i++)
+            indexes[i] = i;
+        int[] parts = new int[bands * 256]; // zeros to clear allocations, then counts of all bands.
+
+        ArrayList<int[]> list = new ArrayList<>();
+        synchronized (pool) {
+            ScriptC_histogram script = pool.histogram();
+            script.set_image(pool.input(bmp));
+            script.set_width(bmp.getWidth());
+            script.set_height(height);
+            script.set_bandHeight(bandHeight);
+            script.set_countLuminance(type == Picture.Histogram.LUMINANCE ? 1 : 0);
+            script.set_countGray(type == Picture.Histogram.GRAY_LEVEL_NATURAL ? 1 : 0);
+            script.set_countRGB(type == Picture.Histogram.RGB ? 1 : 0);
+            Allocation[] partials;
+            if (type == Picture.Histogram.LUMINANCE) {
+                partials = new Allocation[]{pool.ints("luminance", parts.length)};
+                script.set_luminance(partials[0]);
+            } else if (type == Picture.Histogram.GRAY_LEVEL_NATURAL) {
+                partials = new Allocation[]{pool.ints("grayLevel", parts.length)};
+                script.set_grayLevel(partials[0]);
+            } else {
+                partials = new Allocation[]{pool.ints("red", parts.length), pool.ints("green", parts.length), pool.ints("blue", parts.length)};
+                script.set_red(partials[0]);
+                script.set_green(partials[1]);
+                script.set_blue(partials[2]);
+            }
+            for (Allocation partial : partials)
+                partial.copyFrom(parts);
+            Allocation bandIndexes = pool.ints("bands", bands);
+            bandIndexes.copyFrom(indexes);
+            script.forEach_count(bandIndexes);
+
+            //sum bands:
+            for (Allocation partial : partials) {
+                partial.copyTo(parts);
+                int[] histogram = new int[256];
+                for (int i = 0; i < parts.length; i++)
+                    histogram[i & 0xFF] += parts[i];
+                list.add(histogram);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Histograms of the picture from its cache, counted with RenderScript only when the pixels changed since the last count.
+     */
+    private static List<int[]> cachedHistograms(Picture picture, Picture.Histogram type) {
+        if (picture.getRSPool() == null || type == null)
+            return null;
+        List<int[]> list = picture.getCachedHistograms(type);
+        if (list != null)
+            return list;
+        list = histograms(picture, type);
+        //fixed point gray levels of the picture are not computed by the kernel, so its counts are not kept:
+        if (type != Picture.Histogram.GRAY_LEVEL_NATURAL || !picture.isFixedPointGray())
+            picture.cacheHistograms(type, list);
+        return list;
+    }
+
+    /**
+     * Same effect as {@link Effects#linearDynamicExtension(Picture, Picture.Histogram)}, histograms (if not in the cache of the picture) and LUTs are computed with RenderScript.
+     *
+     * @param picture Picture to modify
+     * @param type    Histogram type to egalize.
+     */
+    public static void linearDynamicExtension(Picture picture, Picture.Histogram type) {
+        List<int[]> histograms = cachedHistograms(picture, type);
+        if (histograms == null)
             return;
-        allocate(picture);
+        int[][] LUTs = new int[histograms.size()][];
+        for (int i = 0; i < LUTs.length; i++) {
+            LUTs[i] = Contrast.linearExtensionLUT(histograms.get(i));
+            if (LUTs[i] == null)// uniform picture, no visual effect.
+                return;
+        }
+        applyLUTs(picture, type, LUTs);
+    }
+
+    /**
+     * Same effect as {@link Effects#histogramFlattening(Picture, Picture.Histogram)}, histograms (if not in the cache of the picture) and LUTs are computed with RenderScript.
+     *
+     * @param picture Picture to modify
+     * @param type    Histogram type to egalize.
+     */
+    public static void histogramFlattening(Picture picture, Picture.Histogram type) {
+        List<int[]> histograms = cachedHistograms(picture, type);
+        if (histograms == null)
+            return;
+        int N = picture.getWidth() * picture.getHeight();
+        int[][] LUTs = new int[histograms.size()][];
+        //same tables as Contrast flattening methods:
+        for (int i = 0; i < LUTs.length; i++)
+            LUTs[i] = Contrast.flatteningLUT(Histograms.cumulate(histograms.get(i)), N);
+        applyLUTs(picture, type, LUTs);
+    }
 
-        script = new ScriptC_keep_color(picture.getRenderScript());
-        ((ScriptC_keep_color) script).set_hueAngle(hueAngle);
-        ((ScriptC_keep_color) script).set_toleranceAngle(toleranceAngle);
-        ((ScriptC_keep_color) script).forEach_keep_color(input, output);
-        output.copyTo(picture.getBitmap());
+    private static void applyLUTs(Picture picture, Picture.Histogram type, int[][] LUTs) {
+        RSPool pool = picture.getRSPool();
+        synchronized (pool) {
+            Allocation input = pool.input(picture.getBitmap());
+            Allocation output = pool.output(picture.getBitmap());
+            ScriptC_lut script = pool.lut();
+            Allocation lutR = pool.ints("lutR", 256);
+            lutR.copyFrom(LUTs[0]);
+            script.set_lutR(lutR);
+            if (type == Picture.Histogram.LUMINANCE) {
+                script.forEach_apply_luminance(input, output);
+            } else if (type == Picture.Histogram.GRAY_LEVEL_NATURAL) {
+                script.forEach_apply_gray(input, output);
+            } else {
+                Allocation lutG = pool.ints("lutG", 256);
+                Allocation lutB = pool.ints("lutB", 256);
+                lutG.copyFrom(LUTs[1]);
+                lutB.copyFrom(LUTs[2]);
+                script.set_lutG(lutG);
+                script.set_lutB(lutB);
+                script.forEach_apply_rgb(input, output);
+            }
+            output.copyTo(picture.getBitmap());
+        }
+        picture.notifyPixelsChanged();
+    }
 
-        destroy();
+    /**
+     * Same effect as {@link Effects#simpleBlurr(Picture, int)}: pixels near borders are blurred by repeating the edge pixels.
+     *
+     * @param picture   Picture to modify
+     * @param intensity Size of the blurring square, minimum 1.
+     */
+    public static void simpleBlurr(Picture picture, int intensity) {
+        simpleBlurr(picture, intensity, BorderMode.CLAMP);
     }
 
     /**
-     * Instantiate and load Allocation for RenderScript in static variables.
+     * Same effect as {@link Effects#simpleBlurr(Picture, int, BorderMode)}, computed in two passes (horizontal then vertical sums).
+     * Squares bigger than 257 pixels are computed by {@link Effects}.
      *
-     * @param picture Picture to allocate
+     * @param picture   Picture to modify
+     * @param intensity Size of the blurring square, minimum 1.
+     * @param border    How pixels out of the picture are read.
      */
-    private static void allocate(Picture picture) {
-        input = Allocation.createFromBitmap(picture.getRenderScript(), picture.getBitmap());
-        output = Allocation.createTyped(picture.getRenderScript(), input.getType());
-        script = null;
+    public static void simpleBlurr(Picture picture, int intensity, BorderMode border) {
+        RSPool pool = picture.getRSPool();
+        if (pool == null)
+            return;
+        int radius = Effects.blurRadius(intensity);
+        int size = 2 * radius + 1;
+        if (size > MAX_BLUR_SIZE) {
+            Effects.simpleBlurr(picture, intensity, border);
+            return;
+        }
+        if (radius == 0)
+            return;
+        Bitmap bmp = picture.getBitmap();
+        int[] tableX = indexTable(border, bmp.getWidth(), radius);
+        int[] tableY = indexTable(border, bmp.getHeight(), radius);
+        synchronized (pool) {
+            Allocation input = pool.input(bmp);
+            Allocation output = pool.output(bmp);
+            Allocation sums = pool.shorts4("sums", bmp);
+            Allocation x = pool.ints("tableX", tableX.length);
+            Allocation y = pool.ints("tableY", tableY.length);
+            x.copyFrom(tableX);
+            y.copyFrom(tableY);
+            ScriptC_blur script = pool.blur();
+            script.set_image(input);
+            script.set_sums(sums);
+            script.set_tableX(x);
+            script.set_tableY(y);
+            script.set_size(size);
+            script.forEach_horizontal(input, sums);
+            script.forEach_vertical(input, output);
+            output.copyTo(bmp);
+        }
+        picture.notifyPixelsChanged();
     }
 
     /**
-     * Destroy RenderScript allocations in static variables.
+     * Approximated gaussian blur, like {@link Effects#fastGaussianBlur(Picture, double)}: the three boxes of {@link GaussianBlur#boxRadii(double)}
+     * are computed by {@link #simpleBlurr(Picture, int)}. Averages are truncated after each box, so values can be 1 or 2 lower than in Java,
+     * and below {@link GaussianBlur#MIN_SIGMA} boxes are used too instead of the exact kernel.
+     *
+     * @param picture Picture to modify
+     * @param sigma   Standard deviation of the gaussian in pixels.
      */
-    private static void destroy() {
-        input.destroy();
-        output.destroy();
-        script.destroy();
+    public static void fastGaussianBlur(Picture picture, double sigma) {
+        for (int radius : GaussianBlur.boxRadii(sigma))
+            if (radius > 0)
+                simpleBlurr(picture, 2 * radius + 1);
     }
 
+    /**
+     * Coordinates of the window along an axis, index j is the coordinate j - radius mapped in the picture.
+     */
+    private static int[] indexTable(BorderMode border, int length, int radius) {
+        int[] table = new int[length + 2 * radius];
+        for (int j = 0; j < table.length; j++)
+            table[j] = border.map(j - radius, length);
+        return table;
+    }
 }
-
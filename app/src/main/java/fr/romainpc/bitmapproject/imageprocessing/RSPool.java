@@ -0,0 +1,268 @@
+package fr.romainpc.bitmapproject.imageprocessing;
+
+import android.graphics.Bitmap;
+
+import androidx.renderscript.Allocation;
+import androidx.renderscript.Element;
+import androidx.renderscript.RenderScript;
+import androidx.renderscript.ScriptC;
+import androidx.renderscript.Type;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_blur;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_gray;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_histogram;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_hue;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_hue_shift;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_keep_color;
+import fr.romainpc.bitmapproject.imageprocessing.rsclass.ScriptC_lut;
+
+/**
+ * RenderScript resources kept between effects of {@link RSEffects}: allocations by bitmap dimensions and compiled scripts by effect.
+ * Creating them costs more than running a kernel on a preview, so they are created at first use and destroyed only by {@link #close()}.
+ * <p>
+ * Several pictures using the same RenderScript context can share a pool. RSEffects lock the pool during an effect,
+ * so effects on pictures sharing a pool can be called from several threads.
+ */
+public class RSPool {
+
+    /**
+     * Maximum number of bitmap dimensions with allocations, allocations of the dimensions used the least recently are destroyed.
+     */
+    public static final int MAX_DIMENSIONS = 4;
+
+    /**
+     * Maximum number of work allocations (histograms, lookup tables, blur sums), the least recently used are destroyed.
+     */
+    public static final int MAX_WORK_ALLOCATIONS = 16;
+
+    /**
+     * Input and output allocations of a bitmap dimension.
+     */
+    private static class Allocations {
+        private final Allocation input;
+        private final Allocation output;
+
+        private Allocations(Allocation input, Allocation output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        private void destroy() {
+            input.destroy();
+            output.destroy();
+        }
+    }
+
+    private final RenderScript renderScript;
+    private final LinkedHashMap<String, Allocations> allocations = new LinkedHashMap<>(8, 0.75f, true); //access order to destroy least recently used.
+    private final LinkedHashMap<String, Allocation> work = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<Class<?>, ScriptC> scripts = new HashMap<>();
+    private boolean closed;
+
+    private int allocationsCreated;
+    private int scriptsCreated;
+
+    /**
+     * @param renderScript Context of all resources of the pool.
+     */
+    public RSPool(RenderScript renderScript) {
+        this.renderScript = renderScript;
+    }
+
+    /**
+     * @return Context of all resources of the pool.
+     */
+    public RenderScript getRenderScript() {
+        return renderScript;
+    }
+
+    /**
+     * Give the input allocation of the bitmap dimensions, filled with the pixels of the bitmap.
+     *
+     * @param bmp Bitmap to compute.
+     * @return Allocation to give to a kernel.
+     */
+    synchronized Allocation input(Bitmap bmp) {
+        Allocations pair = allocations.get(key(bmp));
+        if (pair == null)
+            return create(bmp).input; // already filled by createFromBitmap.
+        pair.input.copyFrom(bmp);
+        return pair.input;
+    }
+
+    /**
+     * Give the output allocation of the bitmap dimensions, {@link #input(Bitmap)} must be called before.
+     *
+     * @param bmp Bitmap to compute.
+     * @return Allocation of the same type as the input allocation.
+     */
+    synchronized Allocation output(Bitmap bmp) {
+        Allocations pair = allocations.get(key(bmp));
+        return pair != null ? pair.output : create(bmp).output;
+    }
+
+    private Allocations create(Bitmap bmp) {
+        checkOpen();
+        Allocation input = Allocation.createFromBitmap(renderScript, bmp);
+        Allocations pair = new Allocations(input, Allocation.createTyped(renderScript, input.getType()));
+        allocations.put(key(bmp), pair);
+        allocationsCreated++;
+        //destroy allocations of old dimensions:
+        Iterator<Allocations> iterator = allocations.values().iterator();
+        while (allocations.size() > MAX_DIMENSIONS) {
+            iterator.next().destroy();
+            iterator.remove();
+        }
+        return pair;
+    }
+
+    /**
+     * Give a 1D allocation of int, reused by next calls with the same name and size. Values are not initialized.
+     *
+     * @param name  Usage of the allocation.
+     * @param count Number of int.
+     * @return The allocation.
+     */
+    synchronized Allocation ints(String name, int count) {
+        String key = name + ":" + count;
+        Allocation allocation = work.get(key);
+        if (allocation == null)
+            allocation = addWork(key, Allocation.createSized(renderScript, Element.I32(renderScript), count));
+        return allocation;
+    }
+
+    /**
+     * Give a 2D allocation of ushort4 with the bitmap dimensions, reused by next calls with the same name. Values are not initialized.
+     *
+     * @param name Usage of the allocation.
+     * @param bmp  Bitmap giving dimensions.
+     * @return The allocation.
+     */
+    synchronized Allocation shorts4(String name, Bitmap bmp) {
+        String key = name + ":" + bmp.getWidth() + "x" + bmp.getHeight();
+        Allocation allocation = work.get(key);
+        if (allocation == null)
+            allocation = addWork(key, Allocation.createTyped(renderScript, Type.createXY(renderScript, Element.U16_4(renderScript), bmp.getWidth(), bmp.getHeight())));
+        return allocation;
+    }
+
+    private Allocation addWork(String key, Allocation allocation) {
+        checkOpen();
+        work.put(key, allocation);
+        allocationsCreated++;
+        Iterator<Allocation> iterator = work.values().iterator();
+        while (work.size() > MAX_WORK_ALLOCATIONS) {
+            iterator.next().destroy();
+            iterator.remove();
+        }
+        return allocation;
+    }
+
+    private static String key(Bitmap bmp) {
+        return bmp.getWidth() + "x" + bmp.getHeight() + ":" + bmp.getConfig();
+    }
+
+    synchronized ScriptC_gray gray() {
+        ScriptC_gray script = (ScriptC_gray) scripts.get(ScriptC_gray.class);
+        if (script == null)
+            script = add(ScriptC_gray.class, new ScriptC_gray(renderScript));
+        return script;
+    }
+
+    synchronized ScriptC_hue hue() {
+        ScriptC_hue script = (ScriptC_hue) scripts.get(ScriptC_hue.class);
+        if (script == null)
+            script = add(ScriptC_hue.class, new ScriptC_hue(renderScript));
+        return script;
+    }
+
+    synchronized ScriptC_hue_shift hueShift() {
+        ScriptC_hue_shift script = (ScriptC_hue_shift) scripts.get(ScriptC_hue_shift.class);
+        if (script == null)
+            script = add(ScriptC_hue_shift.class, new ScriptC_hue_shift(renderScript));
+        return script;
+    }
+
+    synchronized ScriptC_keep_color keepColor() {
+        ScriptC_keep_color script = (ScriptC_keep_color) scripts.get(ScriptC_keep_color.class);
+        if (script == null)
+            script = add(ScriptC_keep_color.class, new ScriptC_keep_color(renderScript));
+        return script;
+    }
+
+    synchronized ScriptC_histogram histogram() {
+        ScriptC_histogram script = (ScriptC_histogram) scripts.get(ScriptC_histogram.class);
+        if (script == null)
+            script = add(ScriptC_histogram.class, new ScriptC_histogram(renderScript));
+        return script;
+    }
+
+    synchronized ScriptC_lut lut() {
+        ScriptC_lut script = (ScriptC_lut) scripts.get(ScriptC_lut.class);
+        if (script == null)
+            script = add(ScriptC_lut.class, new ScriptC_lut(renderScript));
+        return script;
+    }
+
+    synchronized ScriptC_blur blur() {
+        ScriptC_blur script = (ScriptC_blur) scripts.get(ScriptC_blur.class);
+        if (script == null)
+            script = add(ScriptC_blur.class, new ScriptC_blur(renderScript));
+        return script;
+    }
+
+    private <T extends ScriptC> T add(Class<T> type, T script) {
+        checkOpen();
+        scripts.put(type, script);
+        scriptsCreated++;
+        return script;
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("RSPool is closed");
+    }
+
+    /**
+     * @return Number of allocations (pairs of input/output or work allocations) created since the creation of the pool.
+     */
+    public synchronized int getAllocationsCreated() {
+        return allocationsCreated;
+    }
+
+    /**
+     * @return Number of scripts created since the creation of the pool.
+     */
+    public synchronized int getScriptsCreated() {
+        return scriptsCreated;
+    }
+
+    /**
+     * Destroy all allocations and scripts, the pool can't be used anymore. The RenderScript context is not destroyed.
+     */
+    public synchronized void close() {
+        if (closed)
+            return;
+        for (Allocations pair : allocations.values())
+            pair.destroy();
+        allocations.clear();
+        for (Allocation allocation : work.values())
+            allocation.destroy();
+        work.clear();
+        for (ScriptC script : scripts.values())
+            script.destroy();
+        scripts.clear();
+        closed = true;
+    }
+
+    /**
+     * @return True if {@link #close()} was called.
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+}
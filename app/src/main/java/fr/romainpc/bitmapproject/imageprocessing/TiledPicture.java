@@ -0,0 +1,205 @@
+package fr.romainpc.bitmapproject.imageprocessing;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.GrayWeights;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.RawArgbSink;
+import fr.romainpc.bitmapproject.imageprocessing.core.RawArgbSource;
+import fr.romainpc.bitmapproject.imageprocessing.core.TileStream;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Picture at full resolution which is never completely in memory, for images too big for a Bitmap (camera pictures of 48 MP).
+ * Effects are applied by tiles decoded with a {@link BitmapRegionDecoder}, or read directly for raw pixels (see {@link ImageSource#getRawPixels()}), see {@link EffectPipeline#apply(TileStream, TileStream.Source, TileStream.Sink, TiledExecutor)}.
+ * The memory used only depends on the memory budget.
+ */
+public class TiledPicture {
+
+    /**
+     * Default maximum memory used by a tile and its processing, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 16L * 1024 * 1024;
+
+    /**
+     * Number of int per pixel of a region: decoded bitmap, pixels and sums of the blur.
+     */
+    private static final int REGION_COPIES = 5;
+
+    private final BitmapRegionDecoder decoder;
+    private final RawArgbSource raw;
+    private final BitmapFactory.Options options = new BitmapFactory.Options();
+    private final int width;
+    private final int height;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private TiledExecutor tiledExecutor;
+    private boolean fixedPointGray;
+    private TileStream lastStream;
+
+    /**
+     * @param ctx Context in which the Picture evolve.
+     * @param src Resource identifier of the picture, it must be a JPEG or PNG resource.
+     * @throws IOException If the resource can't be decoded.
+     */
+    public TiledPicture(Context ctx, int src) throws IOException {
+        this(ImageSource.fromResource(ctx, src));
+    }
+
+    /**
+     * @param source Source of the picture: compressed image decoded by regions, or raw pixels read without decoding.
+     * @throws IOException If the source can't be decoded by regions.
+     */
+    public TiledPicture(ImageSource source) throws IOException {
+        raw = source.getRawPixels();
+        if (raw != null) {
+            decoder = null;
+            width = raw.getWidth();
+            height = raw.getHeight();
+        } else {
+            decoder = source.newRegionDecoder();
+            width = decoder.getWidth();
+            height = decoder.getHeight();
+        }
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+    }
+
+    /**
+     * @return Width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Decode a region at full resolution.
+     *
+     * @param left   Position of the region in pixels.
+     * @param top    Position of the region in pixels.
+     * @param width  Width of the region in pixels.
+     * @param height Height of the region in pixels.
+     * @return Pixels of the region.
+     */
+    public PixelBuffer decodeRegion(int left, int top, int width, int height) {
+        //raw pixels are copied from the buffer, without decoder to share between threads:
+        if (raw != null)
+            return raw.read(left, top, width, height);
+        return decodeCompressedRegion(left, top, width, height);
+    }
+
+    private synchronized PixelBuffer decodeCompressedRegion(int left, int top, int width, int height) {
+        //reuse the bitmap of the previous region if it has the same dimensions (most tiles):
+        Bitmap reused = options.inBitmap;
+        if (reused != null && (reused.getWidth() != width || reused.getHeight() != height)) {
+            reused.recycle();
+            options.inBitmap = null;
+        }
+        Bitmap region = decoder.decodeRegion(new Rect(left, top, left + width, top + height), options);
+        options.inBitmap = region;
+        return Utils.getPixels(region);
+    }
+
+    /**
+     * Apply effects on the whole picture at full resolution, the result is given by tiles to the sink.
+     *
+     * @param pipeline Effects to apply.
+     * @param sink     Receive tiles of the result.
+     * @throws IOException If the sink fails.
+     */
+    public void apply(EffectPipeline pipeline, TileStream.Sink sink) throws IOException {
+        int tileSize = TileStream.tileSizeFor(memoryBudget, REGION_COPIES, pipeline.getHalo());
+        TileStream stream = new TileStream(width, height, tileSize);
+        pipeline.apply(stream, new TileStream.Source() {
+            @Override
+            public PixelBuffer read(int left, int top, int width, int height) {
+                return decodeRegion(left, top, width, height);
+            }
+        }, sink, tiledExecutor, fixedPointGray ? GrayWeights.NATURAL : null);
+        lastStream = stream;
+    }
+
+    /**
+     * Apply effects on the whole picture at full resolution, the result is written in a raw file (see {@link RawArgbSink}).
+     *
+     * @param pipeline Effects to apply.
+     * @param output   File to write, replaced if it exists.
+     * @throws IOException If the file can't be written.
+     */
+    public void apply(EffectPipeline pipeline, File output) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(output, "rw");
+        try {
+            file.setLength((long) width * height * 4);
+            apply(pipeline, new RawArgbSink(file.getChannel(), width));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return Tiles used by the last application of effects, with its statistics, null if no effect was applied.
+     */
+    public TileStream getLastStream() {
+        return lastStream;
+    }
+
+    /**
+     * @return Maximum memory used by a tile and its processing, in bytes.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Change the size of tiles of next applications of effects.
+     *
+     * @param memoryBudget Maximum memory used by a tile and its processing, in bytes.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Make effects split each tile in bands of rows computed on several threads, results are the same.
+     *
+     * @param tiledExecutor Executor to use, null to compute in the calling thread.
+     */
+    public void setTiledExecutor(TiledExecutor tiledExecutor) {
+        this.tiledExecutor = tiledExecutor;
+    }
+
+    /**
+     * Make effects compute gray levels in fixed point, see {@link Picture#setFixedPointGray(boolean)}.
+     *
+     * @param fixedPointGray True to compute gray levels in fixed point.
+     */
+    public void setFixedPointGray(boolean fixedPointGray) {
+        this.fixedPointGray = fixedPointGray;
+    }
+
+    /**
+     * Free the decoder, the picture can't be used anymore.
+     */
+    public synchronized void recycle() {
+        if (options.inBitmap != null) {
+            options.inBitmap.recycle();
+            options.inBitmap = null;
+        }
+        if (decoder != null)
+            decoder.recycle();
+    }
+}
@@ -1,8 +1,12 @@
 package fr.romainpc.bitmapproject.imageprocessing;
 
-import android.graphics.Color;
+import android.graphics.Bitmap;
 import android.util.Log;
 
+import fr.romainpc.bitmapproject.imageprocessing.core.Colors;
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+
 /**
  * Class with tools for image processing.
  */
@@ -11,10 +15,7 @@ public class Utils {
 
     /**
      * Tool to convert a HSV color contain in a float array to a RGB int value.
-     * Also need alpha value, transmitted to the RGB color.
-     * hsv[0] -> H:[0;360]
-     * hsv[1] -> S:[0;1]
-     * hsv[2] -> V:[0;1]
+     * See {@link Colors#HSVToColor(int, float[])} method
      *
      * @param alpha Alpha value
      * @param hsv   Array with hsv values
@@ -22,57 +23,12 @@ public class Utils {
      * @see android.graphics.Color
      */
     public static int HSVToColor(int alpha, float[] hsv) {
-        //use conversion describe at https://www.rapidtables.com/convert/color/hsv-to-rgb.html
-        int t = (int) ((hsv[0] / 60f) % 6);
-        float C = hsv[1] * hsv[2];
-        float X = C * (1 - Math.abs(((hsv[0] / 60) % 2) - 1));
-        float m = hsv[2] - C;
-
-        float r = 0;
-        float g = 0;
-        float b = 0;
-
-        switch (t) {
-            case 0:
-                r = C;
-                g = X;
-                b = 0;
-                break;
-            case 1:
-                r = X;
-                g = C;
-                b = 0;
-                break;
-            case 2:
-                r = 0;
-                g = C;
-                b = X;
-                break;
-            case 3:
-                r = 0;
-                g = X;
-                b = C;
-                break;
-            case 4:
-                r = X;
-                g = 0;
-                b = C;
-                break;
-            case 5:
-                r = C;
-                g = 0;
-                b = X;
-                break;
-        }
-        float r2 = (r + m) * 255;
-        float g2 = (g + m) * 255;
-        float b2 = (b + m) * 255;
-        return Color.argb(alpha, (int) r2, (int) g2, (int) b2);
+        return Colors.HSVToColor(alpha, hsv);
     }
 
     /**
      * Tool to convert RGB Color to HSV Color contain in a float array.
-     * NB: Doesn't use alpha value.
+     * See {@link Colors#RGBToHSV(int, int, int, float[])} method
      *
      * @param red   Red integer value in [0;255]
      * @param green Green integer value in [0;255]
@@ -80,33 +36,29 @@ public class Utils {
      * @param hsv   Modified, contain at the end the HSV value : hsv[0] -> H:[0;360] / hsv[1] -> S:[0;1] / hsv[2] -> V:[0;1]
      */
     public static void RGBToHSV(int red, int green, int blue, float[] hsv) {
-        //use conversion describe at https://fr.wikipedia.org/wiki/Teinte_Saturation_Valeur
-        float r = red / 255f;
-        float g = green / 255f;
-        float b = blue / 255f;
-
-        float max = Math.max(Math.max(r, g), b);
-        float min = Math.min(Math.min(r, g), b);
-
-        if (max == min) {
-            hsv[0] = 0;
-        } else if (max == r) {
-            hsv[0] = (60 * ((g - b) / (max - min)) + 360);
-            while (hsv[0] > 360) hsv[0] -= 360;
-        } else if (max == g) {
-            hsv[0] = (60 * ((b - r) / (max - min)) + 120);
-        } else if (max == b) {
-            hsv[0] = (60 * ((r - g) / (max - min)) + 240);
-        }
-
-        if (max == 0) {
-            hsv[1] = 0;
-        } else {
-            hsv[1] = 1 - (min / max);
-        }
+        Colors.RGBToHSV(red, green, blue, hsv);
+    }
 
-        hsv[2] = max;
+    /**
+     * Copy pixels of a Bitmap in a new buffer, to use methods of the core package.
+     *
+     * @param bmp Bitmap to read.
+     * @return A compact buffer with a copy of all pixels.
+     */
+    public static PixelBuffer getPixels(Bitmap bmp) {
+        PixelBuffer buffer = new PixelBuffer(bmp.getWidth(), bmp.getHeight());
+        bmp.getPixels(buffer.getPixels(), buffer.getOffset(), buffer.getStride(), 0, 0, buffer.getWidth(), buffer.getHeight());
+        return buffer;
+    }
 
+    /**
+     * Copy pixels of a buffer in a Bitmap of same dimensions.
+     *
+     * @param bmp    Bitmap to modify.
+     * @param buffer Pixels to copy.
+     */
+    public static void setPixels(Bitmap bmp, PixelBuffer buffer) {
+        bmp.setPixels(buffer.getPixels(), buffer.getOffset(), buffer.getStride(), 0, 0, buffer.getWidth(), buffer.getHeight());
     }
 
     /**
@@ -140,20 +92,7 @@ public class Utils {
      * @return An array with minimum value at index 0 and maximum at index 1.
      */
     public static int[] getHistogramMinMaxValue(int[] histogram) {
-        int min;
-        int max;
-
-        int i = 0;
-        while (histogram[i] == 0) {
-            i++;
-        }
-        min = i;
-        i = histogram.length - 1;
-        while (histogram[i] == 0) {
-            i--;
-        }
-        max = i;
-        return new int[]{min, max};
+        return Histograms.minMax(histogram);
     }
 
     /**
@@ -0,0 +1,349 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Contrast limited adaptive histogram flattening (CLAHE): the image is cut in a grid of tiles, each tile has its own flattening LUT,
+ * computed like {@link Contrast#flatteningLUT(long[], int)} from the histogram of the tile, and each pixel takes the bilinear interpolation
+ * of the LUTs of the four tiles around it, so there is no visible edge between tiles.
+ * Bins of tile histograms are clipped to clipLimit times the average bin before cumulating, the excess is spread on all bins:
+ * this limits the slope of LUTs and so the amplification of noise in uniform areas.
+ * <p>
+ * Counting and applying are separated, so the image can be counted and applied by parts at their position (tiles of a {@link TileStream}):
+ * integer counts and fixed point weights give exactly the same result as the whole image.
+ * The interpolation between the two tile rows around a row is done once for the row on the 256 values of each tile column,
+ * then each pixel only blends two values.
+ */
+public class AdaptiveFlattening {
+
+    /**
+     * Values flattened: V of HSV (red, green and blue are scaled so hue and saturation are kept), natural gray level, or red, green and blue separately.
+     */
+    public static final int LUMINANCE = 0;
+    public static final int GRAY_LEVEL_NATURAL = 1;
+    public static final int RGB = 2;
+
+    /**
+     * Default number of tiles on each side of the image.
+     */
+    public static final int DEFAULT_TILES = 8;
+
+    /**
+     * Default clip limit, in multiples of the average number of pixels per value in a tile.
+     */
+    public static final double DEFAULT_CLIP_LIMIT = 3.0;
+
+    private static final int WEIGHT_BITS = 8;
+    private static final int ONE = 1 << WEIGHT_BITS;
+
+    private final int kind;
+    private final double clipLimit;
+    private final GrayWeights natural;
+    private final int channels;
+    private final int tilesX;
+    private final int tilesY;
+
+    //tile of each column and row of the image (first tile and weight of the next tile), and first column and row of each tile:
+    private final int[] columnTile;
+    private final int[] columnWeight;
+    private final int[] rowTile;
+    private final int[] rowWeight;
+    private final int[] tileLeft;
+    private final int[] tileTop;
+
+    private final int[][] counts; //[channel][tile * 256 + value]
+    private int[][] LUTs;
+
+    /**
+     * @param kind      {@link #LUMINANCE}, {@link #GRAY_LEVEL_NATURAL} or {@link #RGB}.
+     * @param width     Width of the whole image in pixels.
+     * @param height    Height of the whole image in pixels.
+     * @param tiles     Number of tiles on each side, reduced for images smaller than it.
+     * @param clipLimit Maximum count of a value in a tile, in multiples of the average count. 0 or less doesn't clip.
+     * @param natural   Tables of the natural gray level, null to compute it with doubles. Only used by {@link #GRAY_LEVEL_NATURAL}.
+     */
+    public AdaptiveFlattening(int kind, int width, int height, int tiles, double clipLimit, GrayWeights natural) {
+        if (kind < LUMINANCE || kind > RGB)
+            throw new IllegalArgumentException("Unknown kind " + kind);
+        if (width <= 0 || height <= 0 || tiles <= 0)
+            throw new IllegalArgumentException("Invalid image dimensions or tile count");
+        this.kind = kind;
+        this.clipLimit = clipLimit;
+        this.natural = natural;
+        channels = kind == RGB ? 3 : 1;
+        tilesX = Math.min(tiles, width);
+        tilesY = Math.min(tiles, height);
+        tileLeft = bounds(width, tilesX);
+        tileTop = bounds(height, tilesY);
+        columnTile = new int[width];
+        columnWeight = new int[width];
+        weights(tileLeft, columnTile, columnWeight);
+        rowTile = new int[height];
+        rowWeight = new int[height];
+        weights(tileTop, rowTile, rowWeight);
+        counts = new int[channels][tilesX * tilesY * 256];
+    }
+
+    /**
+     * Flatten the whole buffer: count, then apply.
+     *
+     * @param buffer    Pixels to modify.
+     * @param kind      {@link #LUMINANCE}, {@link #GRAY_LEVEL_NATURAL} or {@link #RGB}.
+     * @param tiles     Number of tiles on each side.
+     * @param clipLimit Maximum count of a value in a tile, in multiples of the average count. 0 or less doesn't clip.
+     * @param natural   Tables of the natural gray level, null to compute it with doubles.
+     * @param executor  Executor splitting rows, null to compute in the calling thread.
+     */
+    public static void flatten(PixelBuffer buffer, int kind, int tiles, double clipLimit, GrayWeights natural, TiledExecutor executor) {
+        if (buffer.getWidth() <= 0 || buffer.getHeight() <= 0)
+            return;
+        AdaptiveFlattening flattening = new AdaptiveFlattening(kind, buffer.getWidth(), buffer.getHeight(), tiles, clipLimit, natural);
+        flattening.count(buffer, 0, 0, executor);
+        flattening.apply(buffer, 0, 0, executor);
+    }
+
+    /**
+     * Add pixels of a part of the image to the histograms of tiles. Each pixel of the image must be counted once, before any {@link #apply}.
+     *
+     * @param buffer   Pixels of the part.
+     * @param left     Position of the part in the image.
+     * @param top      Position of the part in the image.
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     */
+    public void count(final PixelBuffer buffer, final int left, final int top, TiledExecutor executor) {
+        if (LUTs != null)
+            throw new IllegalStateException("LUTs are already computed");
+        if (buffer.getWidth() <= 0 || buffer.getHeight() <= 0)
+            return;
+        run(buffer.getHeight(), executor, new TiledExecutor.RowTask() {
+            @Override
+            public void apply(int firstRow, int endRow) {
+                //bands count in their own arrays, only tile rows of the band are allocated:
+                int firstTile = tileOf(tileTop, top + firstRow);
+                int lastTile = tileOf(tileTop, top + endRow - 1);
+                int[][] local = new int[channels][(lastTile - firstTile + 1) * tilesX * 256];
+                int offset = firstTile * tilesX * 256;
+                for (int y = firstRow; y < endRow; y++)
+                    countRow(buffer, y, left, top, local, offset);
+                synchronized (counts) {
+                    for (int c = 0; c < channels; c++)
+                        for (int i = 0; i < local[c].length; i++)
+                            counts[c][offset + i] += local[c][i];
+                }
+            }
+        });
+    }
+
+    /**
+     * Replace values of a part of the image with the interpolation of the LUTs of tiles. LUTs are computed at the first call, after all counts.
+     *
+     * @param buffer   Pixels of the part, to modify.
+     * @param left     Position of the part in the image.
+     * @param top      Position of the part in the image.
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     */
+    public void apply(final PixelBuffer buffer, final int left, final int top, TiledExecutor executor) {
+        final int[][] LUTs = getLUTs();
+        if (buffer.getWidth() <= 0)
+            return;
+        run(buffer.getHeight(), executor, new TiledExecutor.RowTask() {
+            @Override
+            public void apply(int firstRow, int endRow) {
+                int[][] rowLUTs = new int[channels][tilesX * 256];
+                //only tile columns of the part are interpolated:
+                int firstColumn = columnTile[left];
+                int endColumn = Math.min(tilesX, columnTile[left + buffer.getWidth() - 1] + 2);
+                for (int y = firstRow; y < endRow; y++) {
+                    blendRows(LUTs, top + y, firstColumn, endColumn, rowLUTs);
+                    applyRow(buffer, y, left, rowLUTs);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Number of tile columns, less than asked for images narrower than it.
+     */
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    /**
+     * @return Number of tile rows, less than asked for images shorter than it.
+     */
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    private static void run(int height, TiledExecutor executor, TiledExecutor.RowTask task) {
+        if (executor == null)
+            task.apply(0, height);
+        else
+            executor.forEachRows(height, task);
+    }
+
+    /**
+     * @return First position of each tile, and the length at the end.
+     */
+    private static int[] bounds(int length, int tiles) {
+        int[] bounds = new int[tiles + 1];
+        for (int t = 0; t <= tiles; t++)
+            bounds[t] = (int) ((long) length * t / tiles);
+        return bounds;
+    }
+
+    /**
+     * For each position, the tile whose center is before it and the weight of the next tile, 0 before the first center and after the last one.
+     * Centers and positions are doubled to stay in integers.
+     */
+    private static void weights(int[] bounds, int[] tile, int[] weight) {
+        int last = bounds.length - 2;
+        int t = 0;
+        for (int p = 0; p < tile.length; p++) {
+            while (t < last && p * 2 >= center(bounds, t + 1))
+                t++;
+            tile[p] = t;
+            int center = center(bounds, t);
+            if (t < last && p * 2 > center) {
+                int distance = center(bounds, t + 1) - center;
+                weight[p] = (int) (((long) (p * 2 - center) * ONE * 2 + distance) / (2L * distance));
+            }
+        }
+    }
+
+    private static int center(int[] bounds, int t) {
+        return bounds[t] + bounds[t + 1] - 1;
+    }
+
+    private static int tileOf(int[] bounds, int p) {
+        int t = 0;
+        while (p >= bounds[t + 1])
+            t++;
+        return t;
+    }
+
+    private void countRow(PixelBuffer buffer, int y, int left, int top, int[][] local, int offset) {
+        int[] pixels = buffer.getPixels();
+        int rowStart = (tileOf(tileTop, top + y) * tilesX) * 256 - offset;
+        int i = buffer.index(0, y);
+        int tile = tileOf(tileLeft, left);
+        int tileEnd = tileLeft[tile + 1] - left;
+        for (int x = 0; x < buffer.getWidth(); x++, i++) {
+            if (x == tileEnd) {
+                tile++;
+                tileEnd = tileLeft[tile + 1] - left;
+            }
+            int base = rowStart + tile * 256;
+            int px = pixels[i];
+            if (kind == RGB) {
+                local[0][base + ((px >> 16) & 0xFF)]++;
+                local[1][base + ((px >> 8) & 0xFF)]++;
+                local[2][base + (px & 0xFF)]++;
+            } else {
+                local[0][base + value(px)]++;
+            }
+        }
+    }
+
+    /**
+     * @return Value flattened for a kind with one channel.
+     */
+    private int value(int px) {
+        if (kind == GRAY_LEVEL_NATURAL)
+            return natural == null ? Colors.grayNatural(px) : natural.gray(px);
+        int r = (px >> 16) & 0xFF;
+        int g = (px >> 8) & 0xFF;
+        int b = px & 0xFF;
+        int max = r > g ? r : g;
+        return max > b ? max : b;
+    }
+
+    private synchronized int[][] getLUTs() {
+        if (LUTs == null) {
+            int[][] tables = new int[channels][tilesX * tilesY * 256];
+            int[] histogram = new int[256];
+            for (int ty = 0; ty < tilesY; ty++) {
+                for (int tx = 0; tx < tilesX; tx++) {
+                    int tile = ty * tilesX + tx;
+                    int N = (tileLeft[tx + 1] - tileLeft[tx]) * (tileTop[ty + 1] - tileTop[ty]);
+                    for (int c = 0; c < channels; c++) {
+                        System.arraycopy(counts[c], tile * 256, histogram, 0, 256);
+                        clip(histogram, N);
+                        System.arraycopy(Contrast.flatteningLUT(Histograms.cumulate(histogram), N), 0, tables[c], tile * 256, 256);
+                    }
+                }
+            }
+            LUTs = tables;
+        }
+        return LUTs;
+    }
+
+    /**
+     * Limit bins to clipLimit times the average and spread the excess: the same part on all bins, the rest one by one on evenly spaced bins.
+     */
+    private void clip(int[] histogram, int N) {
+        if (clipLimit <= 0)
+            return;
+        int limit = Math.max(1, (int) (clipLimit * N / 256));
+        int excess = 0;
+        for (int v = 0; v < 256; v++) {
+            if (histogram[v] > limit) {
+                excess += histogram[v] - limit;
+                histogram[v] = limit;
+            }
+        }
+        int part = excess / 256;
+        int rest = excess % 256;
+        for (int v = 0; v < 256; v++)
+            histogram[v] += part;
+        for (int k = 0; k < rest; k++)
+            histogram[k * 256 / rest]++;
+    }
+
+    /**
+     * LUTs of each tile column for the row, interpolated between the two tile rows around it, values multiplied by ONE.
+     */
+    private void blendRows(int[][] LUTs, int y, int firstColumn, int endColumn, int[][] rowLUTs) {
+        int first = rowTile[y] * tilesX * 256;
+        int weight = rowWeight[y];
+        int second = weight == 0 ? first : first + tilesX * 256;
+        for (int c = 0; c < channels; c++) {
+            int[] src = LUTs[c];
+            int[] dst = rowLUTs[c];
+            for (int i = firstColumn * 256; i < endColumn * 256; i++)
+                dst[i] = src[first + i] * (ONE - weight) + src[second + i] * weight;
+        }
+    }
+
+    private void applyRow(PixelBuffer buffer, int y, int left, int[][] rowLUTs) {
+        int[] pixels = buffer.getPixels();
+        int round = 1 << (2 * WEIGHT_BITS - 1);
+        int i = buffer.index(0, y);
+        for (int x = 0; x < buffer.getWidth(); x++, i++) {
+            int first = columnTile[left + x] * 256;
+            int weight = columnWeight[left + x];
+            int second = weight == 0 ? first : first + 256;
+            int px = pixels[i];
+            if (kind == RGB) {
+                int r = (px >> 16) & 0xFF;
+                int g = (px >> 8) & 0xFF;
+                int b = px & 0xFF;
+                r = (rowLUTs[0][first + r] * (ONE - weight) + rowLUTs[0][second + r] * weight + round) >> (2 * WEIGHT_BITS);
+                g = (rowLUTs[1][first + g] * (ONE - weight) + rowLUTs[1][second + g] * weight + round) >> (2 * WEIGHT_BITS);
+                b = (rowLUTs[2][first + b] * (ONE - weight) + rowLUTs[2][second + b] * weight + round) >> (2 * WEIGHT_BITS);
+                pixels[i] = (px & 0xFF000000) | (r << 16) | (g << 8) | b;
+            } else {
+                int v = value(px);
+                int flat = (rowLUTs[0][first + v] * (ONE - weight) + rowLUTs[0][second + v] * weight + round) >> (2 * WEIGHT_BITS);
+                if (kind == GRAY_LEVEL_NATURAL || v == 0) {
+                    //a black pixel has no hue: it becomes gray like with HSV.
+                    pixels[i] = (px & 0xFF000000) | (flat << 16) | (flat << 8) | flat;
+                } else {
+                    //same hue and saturation: channels scaled by the new value.
+                    int r = (((px >> 16) & 0xFF) * flat + v / 2) / v;
+                    int g = (((px >> 8) & 0xFF) * flat + v / 2) / v;
+                    int b = ((px & 0xFF) * flat + v / 2) / v;
+                    pixels[i] = (px & 0xFF000000) | (r << 16) | (g << 8) | b;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Apply the same effects on many images, without Android: decode, process and encode are three stages with their own threads.
+ * Stages are linked by bounded queues: a stage waits when the next one is late (back-pressure), so the number of images in memory
+ * is limited whatever the number of inputs, and reading or writing files overlaps the computation of other images.
+ * <p>
+ * An image failing in a stage (any exception or error) is reported and dropped, other images continue.
+ *
+ * @param <I> Type of the inputs (files, names...).
+ */
+public class BatchEngine<I> {
+
+    /**
+     * Stage reading an input.
+     */
+    public interface Decoder<I> {
+        /**
+         * @return Pixels of the input, they can be modified by the effect. Null is a failure.
+         */
+        PixelBuffer decode(I input) throws IOException;
+    }
+
+    /**
+     * Stage computing the result, see the EffectPipeline of the application.
+     */
+    public interface Effect {
+        /**
+         * @param buffer Decoded pixels.
+         * @return The result, the buffer modified or a new buffer.
+         */
+        PixelBuffer apply(PixelBuffer buffer);
+    }
+
+    /**
+     * Stage writing the result of an input.
+     */
+    public interface Encoder<I> {
+        void encode(I input, PixelBuffer result) throws IOException;
+    }
+
+    /**
+     * Stage indexes, see {@link Report#getStageNanos(int)}.
+     */
+    public static final int DECODE = 0;
+    public static final int PROCESS = 1;
+    public static final int ENCODE = 2;
+
+    /**
+     * Default capacity of queues between stages, in images.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 2;
+
+    /**
+     * Input which failed in a stage.
+     */
+    public static class Failure<I> {
+        private final I input;
+        private final int stage;
+        private final Throwable error;
+
+        private Failure(I input, int stage, Throwable error) {
+            this.input = input;
+            this.stage = stage;
+            this.error = error;
+        }
+
+        public I getInput() {
+            return input;
+        }
+
+        /**
+         * @return {@link #DECODE}, {@link #PROCESS} or {@link #ENCODE}.
+         */
+        public int getStage() {
+            return stage;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Statistics of a run.
+     */
+    public static class Report<I> {
+        private int succeeded;
+        private long pixels;
+        private long elapsedNanos;
+        private final long[] stageNanos = new long[3];
+        private final List<Failure<I>> failures = new ArrayList<>();
+
+        /**
+         * @return Number of images encoded.
+         */
+        public synchronized int getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * @return Images which failed, in the order of the failures.
+         */
+        public synchronized List<Failure<I>> getFailures() {
+            return Collections.unmodifiableList(new ArrayList<>(failures));
+        }
+
+        /**
+         * @return Number of pixels of the encoded images.
+         */
+        public synchronized long getPixels() {
+            return pixels;
+        }
+
+        /**
+         * @return Duration of the run in nanoseconds.
+         */
+        public synchronized long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * The slowest stage is the one to give more workers.
+         *
+         * @param stage {@link #DECODE}, {@link #PROCESS} or {@link #ENCODE}.
+         * @return Time spent in the stage by all its workers, in nanoseconds, without waits on queues.
+         */
+        public synchronized long getStageNanos(int stage) {
+            return stageNanos[stage];
+        }
+
+        /**
+         * @return Encoded images per second.
+         */
+        public synchronized double getImagesPerSecond() {
+            return elapsedNanos == 0 ? 0 : succeeded * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return Encoded megapixels per second.
+         */
+        public synchronized double getMegapixelsPerSecond() {
+            return elapsedNanos == 0 ? 0 : pixels * 1e3 / elapsedNanos;
+        }
+
+        private synchronized void addTime(int stage, long nanos) {
+            stageNanos[stage] += nanos;
+        }
+
+        private synchronized void fail(I input, int stage, Throwable error) {
+            failures.add(new Failure<>(input, stage, error));
+        }
+
+        private synchronized void succeed(PixelBuffer result) {
+            succeeded++;
+            pixels += result.size();
+        }
+    }
+
+    /**
+     * Image between two stages, an item without input marks the end of the previous stage.
+     */
+    private static class Item<I> {
+        private final I input;
+        private final PixelBuffer pixels;
+
+        private Item(I input, PixelBuffer pixels) {
+            this.input = input;
+            this.pixels = pixels;
+        }
+    }
+
+    private final Decoder<I> decoder;
+    private final Effect effect;
+    private final Encoder<I> encoder;
+    private int decoders = 1;
+    private int processors = Runtime.getRuntime().availableProcessors();
+    private int encoders = 1;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * @param decoder Read inputs, called by the decode workers.
+     * @param effect  Compute results, called by the process workers.
+     * @param encoder Write results, called by the encode workers.
+     */
+    public BatchEngine(Decoder<I> decoder, Effect effect, Encoder<I> encoder) {
+        this.decoder = decoder;
+        this.effect = effect;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Change the number of threads of each stage, by default one to decode, one per processor to process and one to encode.
+     * An effect using a {@link TiledExecutor} is already parallel, one process worker can be enough.
+     *
+     * @param decoders   Number of decode workers.
+     * @param processors Number of process workers.
+     * @param encoders   Number of encode workers.
+     */
+    public void setWorkers(int decoders, int processors, int encoders) {
+        if (decoders < 1 || processors < 1 || encoders < 1)
+            throw new IllegalArgumentException("each stage needs a worker");
+        this.decoders = decoders;
+        this.processors = processors;
+        this.encoders = encoders;
+    }
+
+    /**
+     * At most decoders + processors + encoders + 2 * queueCapacity images are in memory.
+     *
+     * @param queueCapacity Number of images waiting between two stages.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("queues need a capacity");
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Decode, process and encode all inputs, and wait for the end.
+     *
+     * @param inputs Inputs, taken in this order by the decode workers.
+     * @return Statistics and failures of the run.
+     * @throws InterruptedException If the calling thread is interrupted, workers are interrupted too.
+     */
+    public Report<I> run(final List<I> inputs) throws InterruptedException {
+        final Report<I> report = new Report<>();
+        final BlockingQueue<Item<I>> decoded = new ArrayBlockingQueue<>(queueCapacity);
+        final BlockingQueue<Item<I>> processed = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+
+        List<Thread> threads = new ArrayList<>();
+        final AtomicInteger decoding = new AtomicInteger(decoders);
+        for (int i = 0; i < decoders; i++)
+            threads.add(new Worker("decode-" + i) {
+                @Override
+                void work() throws InterruptedException {
+                    try {
+                        int index;
+                        while ((index = next.getAndIncrement()) < inputs.size()) {
+                            I input = inputs.get(index);
+                            long t = System.nanoTime();
+                            PixelBuffer pixels = null;
+                            try {
+                                pixels = decoder.decode(input);
+                                if (pixels == null)
+                                    throw new IOException("can't decode " + input);
+                            } catch (Throwable e) {
+                                report.fail(input, DECODE, e);
+                            }
+                            report.addTime(DECODE, System.nanoTime() - t);
+                            //waits while the process stage is late:
+                            if (pixels != null)
+                                decoded.put(new Item<>(input, pixels));
+                        }
+                    } finally {
+                        end(decoding, decoded, processors);
+                    }
+                }
+            });
+        final AtomicInteger processing = new AtomicInteger(processors);
+        for (int i = 0; i < processors; i++)
+            threads.add(new Worker("process-" + i) {
+                @Override
+                void work() throws InterruptedException {
+                    try {
+                        Item<I> item;
+                        while ((item = decoded.take()).input != null) {
+                            long t = System.nanoTime();
+                            PixelBuffer result = null;
+                            try {
+                                result = effect.apply(item.pixels);
+                            } catch (Throwable e) {
+                                report.fail(item.input, PROCESS, e);
+                            }
+                            report.addTime(PROCESS, System.nanoTime() - t);
+                            if (result != null)
+                                processed.put(new Item<>(item.input, result));
+                        }
+                    } finally {
+                        end(processing, processed, encoders);
+                    }
+                }
+            });
+        for (int i = 0; i < encoders; i++)
+            threads.add(new Worker("encode-" + i) {
+                @Override
+                void work() throws InterruptedException {
+                    Item<I> item;
+                    while ((item = processed.take()).input != null) {
+                        long t = System.nanoTime();
+                        try {
+                            encoder.encode(item.input, item.pixels);
+                            report.succeed(item.pixels);
+                        } catch (Throwable e) {
+                            //a dead encode worker would block the process stage forever:
+                            report.fail(item.input, ENCODE, e);
+                        }
+                        report.addTime(ENCODE, System.nanoTime() - t);
+                    }
+                }
+            });
+
+        for (Thread thread : threads)
+            thread.start();
+        try {
+            for (Thread thread : threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            for (Thread thread : threads)
+                thread.interrupt();
+            throw e;
+        }
+        synchronized (report) {
+            report.elapsedNanos = System.nanoTime() - start;
+        }
+        return report;
+    }
+
+    /**
+     * When the last worker of a stage ends, send one end item to each worker of the next stage.
+     */
+    private void end(AtomicInteger running, BlockingQueue<Item<I>> queue, int nextWorkers) throws InterruptedException {
+        if (running.decrementAndGet() == 0)
+            for (int i = 0; i < nextWorkers; i++)
+                queue.put(new Item<I>(null, null));
+    }
+
+    /**
+     * Daemon thread of a stage, stopped by an interruption.
+     */
+    private static abstract class Worker extends Thread {
+        private Worker(String name) {
+            super("BatchEngine-" + name);
+            setDaemon(true);
+        }
+
+        abstract void work() throws InterruptedException;
+
+        @Override
+        public void run() {
+            try {
+                work();
+            } catch (InterruptedException e) {
+                //the run is abandoned.
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Enumeration of the ways to read pixels outside the picture, used by neighbourhood effects (blurring, convolution).
+ */
+public enum BorderMode {
+    /**
+     * Repeat the nearest edge pixel.
+     */
+    CLAMP,
+    /**
+     * Reflect the picture on its edges, the edge pixel is repeated once: ... 2 1 0 | 0 1 2 ...
+     */
+    MIRROR,
+    /**
+     * Tile the picture, the opposite edge is used.
+     */
+    WRAP;
+
+    /**
+     * Map a coordinate, possibly out of the picture, to a valid coordinate.
+     *
+     * @param i      Coordinate to map, can be negative or greater than length.
+     * @param length Number of pixels on this axis (at least 1).
+     * @return A coordinate in [0;length-1].
+     */
+    public int map(int i, int length) {
+        if (i >= 0 && i < length)
+            return i;
+        switch (this) {
+            case MIRROR:
+                int period = 2 * length;
+                int m = ((i % period) + period) % period;
+                return m < length ? m : period - 1 - m;
+            case WRAP:
+                return ((i % length) + length) % length;
+            case CLAMP:
+            default:
+                return i < 0 ? 0 : length - 1;
+        }
+    }
+
+    /**
+     * Build the table of mapped coordinates for a window of radius "radius" sliding along an axis.
+     * Index j of the table correspond to the coordinate j - radius.
+     *
+     * @param length Number of pixels on this axis.
+     * @param radius Half size of the window.
+     * @return Array of length + 2 * radius + 1 coordinates in [0;length-1].
+     */
+    int[] indexTable(int length, int radius) {
+        int[] table = new int[length + 2 * radius + 1];
+        for (int j = 0; j < table.length; j++)
+            table[j] = map(j - radius, length);
+        return table;
+    }
+}
@@ -0,0 +1,134 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Box blur working on pixel buffers.
+ * The blur is separated in a horizontal pass then a vertical pass, each one keep a running sum of the window,
+ * so the cost per pixel doesn't depend on the radius.
+ */
+public class BoxBlur {
+
+    /**
+     * Replace each pixel by the average of the square of size (2 * radius + 1) around it.
+     * Alpha channel is not blurred, each pixel keep its alpha value.
+     *
+     * @param buffer Pixels to modify.
+     * @param radius Half size of the square, 0 let the picture unchanged.
+     * @param border How pixels out of the picture are read.
+     */
+    public static void blur(PixelBuffer buffer, int radius, BorderMode border) {
+        blur(buffer, radius, border, null);
+    }
+
+    /**
+     * See {@link #blur(PixelBuffer, int, BorderMode)}, computed by bands of rows on several threads.
+     * Each band starts its vertical running sums from the rows around it (halo), so the result is the same as the sequential blur.
+     *
+     * @param buffer   Pixels to modify.
+     * @param radius   Half size of the square, 0 let the picture unchanged.
+     * @param border   How pixels out of the picture are read.
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     */
+    public static void blur(final PixelBuffer buffer, final int radius, BorderMode border, TiledExecutor executor) {
+        final int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        if (radius <= 0 || width <= 0 || height <= 0)
+            return;
+
+        //horizontal pass keep sums (not averages) to divide only once at the end:
+        final int[][] sums = {new int[width * height], new int[width * height], new int[width * height]};
+        final int[] tableX = border.indexTable(width, radius);
+        final int[] tableY = border.indexTable(height, radius);
+        TiledExecutor.RowTask horizontal = new TiledExecutor.RowTask() {
+            @Override
+            public void apply(int firstRow, int endRow) {
+                horizontal(buffer, radius, tableX, sums, firstRow, endRow);
+            }
+        };
+        //vertical pass only reads sums, so bands can write their own rows of the buffer without waiting for others.
+        TiledExecutor.RowTask vertical = new TiledExecutor.RowTask() {
+            @Override
+            public void apply(int firstRow, int endRow) {
+                vertical(buffer, radius, tableY, sums, firstRow, endRow);
+            }
+        };
+        if (executor == null) {
+            horizontal.apply(0, height);
+            vertical.apply(0, height);
+        } else {
+            executor.forEachRows(height, horizontal);
+            executor.forEachRows(height, vertical);
+        }
+    }
+
+    /**
+     * Sum of the horizontal window around each pixel of rows [firstRow;endRow[, for red, green and blue.
+     */
+    private static void horizontal(PixelBuffer buffer, int radius, int[] tableX, int[][] sums, int firstRow, int endRow) {
+        int[] pixels = buffer.getPixels();
+        int width = buffer.getWidth();
+        int size = 2 * radius + 1;
+        int[] sumR = sums[0];
+        int[] sumG = sums[1];
+        int[] sumB = sums[2];
+        for (int y = firstRow; y < endRow; y++) {
+            int src = buffer.index(0, y);
+            int row = y * width;
+            int r = 0, g = 0, b = 0;
+            for (int j = 0; j < size; j++) {
+                int px = pixels[src + tableX[j]];
+                r += (px >> 16) & 0xFF;
+                g += (px >> 8) & 0xFF;
+                b += px & 0xFF;
+            }
+            for (int x = 0; x < width; x++) {
+                sumR[row + x] = r;
+                sumG[row + x] = g;
+                sumB[row + x] = b;
+                //slide window: add entering pixel, remove leaving pixel.
+                int in = pixels[src + tableX[x + size]];
+                int out = pixels[src + tableX[x]];
+                r += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+                g += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+                b += (in & 0xFF) - (out & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Sum horizontal sums of the vertical window and write averages of rows [firstRow;endRow[.
+     * A running sum for each column, walking rows to stay cache friendly.
+     */
+    private static void vertical(PixelBuffer buffer, int radius, int[] tableY, int[][] sums, int firstRow, int endRow) {
+        int[] pixels = buffer.getPixels();
+        int width = buffer.getWidth();
+        int size = 2 * radius + 1;
+        int area = size * size;
+        int[] sumR = sums[0];
+        int[] sumG = sums[1];
+        int[] sumB = sums[2];
+        int[] colR = new int[width];
+        int[] colG = new int[width];
+        int[] colB = new int[width];
+        for (int j = 0; j < size; j++) {
+            int row = tableY[firstRow + j] * width;
+            for (int x = 0; x < width; x++) {
+                colR[x] += sumR[row + x];
+                colG[x] += sumG[row + x];
+                colB[x] += sumB[row + x];
+            }
+        }
+        for (int y = firstRow; y < endRow; y++) {
+            int dst = buffer.index(0, y);
+            for (int x = 0; x < width; x++) {
+                pixels[dst + x] = (pixels[dst + x] & 0xFF000000) | ((colR[x] / area) << 16) | ((colG[x] / area) << 8) | (colB[x] / area);
+            }
+            int in = tableY[y + size] * width;
+            int out = tableY[y] * width;
+            for (int x = 0; x < width; x++) {
+                colR[x] += sumR[in + x] - sumR[out + x];
+                colG[x] += sumG[in + x] - sumG[out + x];
+                colB[x] += sumB[in + x] - sumB[out + x];
+            }
+        }
+    }
+}
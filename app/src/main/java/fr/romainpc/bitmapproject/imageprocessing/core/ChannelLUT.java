@@ -0,0 +1,148 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Lookup tables giving the final 8 bits value of each of the 256 values of red, green and blue.
+ * Everything depending only on the value of a channel (divisions of the flattening, gamma, curves) is computed once when the table is built,
+ * then each pixel is three lookups, shifts and masks, in one loop without branch. The alpha channel is not modified.
+ * <p>
+ * Tables can be composed with {@link #then(ChannelLUT)}: several stages applied one after the other give the same result as one table.
+ */
+public class ChannelLUT {
+
+    /**
+     * Number of values of a channel.
+     */
+    public static final int SIZE = 256;
+
+    //outputs already shifted at the position of their channel:
+    private final int[] red = new int[SIZE];
+    private final int[] green = new int[SIZE];
+    private final int[] blue = new int[SIZE];
+
+    private ChannelLUT() {
+    }
+
+    /**
+     * @return Table keeping each value.
+     */
+    public static ChannelLUT identity() {
+        int[] LUT = new int[SIZE];
+        for (int v = 0; v < SIZE; v++)
+            LUT[v] = v;
+        return of(LUT);
+    }
+
+    /**
+     * @param LUT Lookup table of 256 values used for the three channels, values are limited to [0;255].
+     * @return The table.
+     */
+    public static ChannelLUT of(int[] LUT) {
+        return of(LUT, LUT, LUT);
+    }
+
+    /**
+     * @param LUTR Lookup table for red, 256 values limited to [0;255].
+     * @param LUTG Lookup table for green
+     * @param LUTB Lookup table for blue
+     * @return The table.
+     */
+    public static ChannelLUT of(int[] LUTR, int[] LUTG, int[] LUTB) {
+        if (LUTR.length != SIZE || LUTG.length != SIZE || LUTB.length != SIZE)
+            throw new IllegalArgumentException("lookup tables must have " + SIZE + " values");
+        ChannelLUT lut = new ChannelLUT();
+        for (int v = 0; v < SIZE; v++) {
+            lut.red[v] = clamp(LUTR[v]) << 16;
+            lut.green[v] = clamp(LUTG[v]) << 8;
+            lut.blue[v] = clamp(LUTB[v]);
+        }
+        return lut;
+    }
+
+    /**
+     * Gamma correction of the three channels: v = 255 * (v / 255)^(1 / gamma), rounded.
+     *
+     * @param gamma Greater than 1 lightens the picture, between 0 and 1 darkens it.
+     * @return The table.
+     */
+    public static ChannelLUT gamma(double gamma) {
+        if (gamma <= 0)
+            throw new IllegalArgumentException("gamma must be positive");
+        int[] LUT = new int[SIZE];
+        for (int v = 0; v < SIZE; v++)
+            LUT[v] = (int) Math.round(255 * Math.pow(v / 255.0, 1 / gamma));
+        return of(LUT);
+    }
+
+    /**
+     * Brightness and contrast of the three channels: v = (v - 128) * contrast + 128 + brightness, rounded and limited to [0;255].
+     *
+     * @param brightness Value added, between -255 and 255.
+     * @param contrast   Factor of the distance to the middle gray, 1 keeps the contrast.
+     * @return The table.
+     */
+    public static ChannelLUT brightnessContrast(int brightness, double contrast) {
+        int[] LUT = new int[SIZE];
+        for (int v = 0; v < SIZE; v++)
+            LUT[v] = (int) Math.round((v - 128) * contrast + 128 + brightness);
+        return of(LUT);
+    }
+
+    /**
+     * @param next Table applied after this one.
+     * @return One table giving the same result as this table then next.
+     */
+    public ChannelLUT then(ChannelLUT next) {
+        ChannelLUT lut = new ChannelLUT();
+        for (int v = 0; v < SIZE; v++) {
+            lut.red[v] = next.red[red[v] >> 16];
+            lut.green[v] = next.green[green[v] >> 8];
+            lut.blue[v] = next.blue[blue[v]];
+        }
+        return lut;
+    }
+
+    /**
+     * @param px ARGB color
+     * @return The color with its red, green and blue values replaced.
+     */
+    public int apply(int px) {
+        return (px & 0xFF000000) | red[(px >> 16) & 0xFF] | green[(px >> 8) & 0xFF] | blue[px & 0xFF];
+    }
+
+    /**
+     * Replace red, green and blue values of each pixel.
+     *
+     * @param buffer Pixels to modify
+     */
+    public void apply(PixelBuffer buffer) {
+        int[] pixels = buffer.getPixels();
+        int[] r = red;
+        int[] g = green;
+        int[] b = blue;
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                int px = pixels[i];
+                pixels[i] = (px & 0xFF000000) | r[(px >> 16) & 0xFF] | g[(px >> 8) & 0xFF] | b[px & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * @return Output of the value for red, green and blue (index 0, 1 and 2).
+     */
+    public int get(int channel, int value) {
+        switch (channel) {
+            case 0:
+                return red[value] >> 16;
+            case 1:
+                return green[value] >> 8;
+            default:
+                return blue[value];
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,168 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Color tools on ARGB integers, same results as android.graphics.Color but usable without android classes.
+ */
+public class Colors {
+
+    /**
+     * @param color ARGB color
+     * @return Alpha value in [0;255]
+     */
+    public static int alpha(int color) {
+        return color >>> 24;
+    }
+
+    /**
+     * @param color ARGB color
+     * @return Red value in [0;255]
+     */
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    /**
+     * @param color ARGB color
+     * @return Green value in [0;255]
+     */
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    /**
+     * @param color ARGB color
+     * @return Blue value in [0;255]
+     */
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    /**
+     * Pack components in an ARGB color, values are not checked (like android.graphics.Color.argb).
+     *
+     * @return ARGB color
+     */
+    public static int argb(int alpha, int red, int green, int blue) {
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Natural gray level of a color: 0.3 * R + 0.59 * B + 0.11 * G
+     *
+     * @param color ARGB color
+     * @return Gray value in [0;255]
+     */
+    public static int grayNatural(int color) {
+        return (int) (0.3 * (double) red(color) + 0.59 * (double) blue(color) + 0.11 * (double) green(color));
+    }
+
+    /**
+     * Tool to convert a HSV color contain in a float array to a RGB int value.
+     * Also need alpha value, transmitted to the RGB color.
+     * hsv[0] -> H:[0;360]
+     * hsv[1] -> S:[0;1]
+     * hsv[2] -> V:[0;1]
+     *
+     * @param alpha Alpha value
+     * @param hsv   Array with hsv values
+     * @return the ARGB color.
+     */
+    public static int HSVToColor(int alpha, float[] hsv) {
+        //use conversion describe at https://www.rapidtables.com/convert/color/hsv-to-rgb.html
+        int t = (int) ((hsv[0] / 60f) % 6);
+        float C = hsv[1] * hsv[2];
+        float X = C * (1 - Math.abs(((hsv[0] / 60) % 2) - 1));
+        float m = hsv[2] - C;
+
+        float r = 0;
+        float g = 0;
+        float b = 0;
+
+        switch (t) {
+            case 0:
+                r = C;
+                g = X;
+                b = 0;
+                break;
+            case 1:
+                r = X;
+                g = C;
+                b = 0;
+                break;
+            case 2:
+                r = 0;
+                g = C;
+                b = X;
+                break;
+            case 3:
+                r = 0;
+                g = X;
+                b = C;
+                break;
+            case 4:
+                r = X;
+                g = 0;
+                b = C;
+                break;
+            case 5:
+                r = C;
+                g = 0;
+                b = X;
+                break;
+        }
+        float r2 = (r + m) * 255;
+        float g2 = (g + m) * 255;
+        float b2 = (b + m) * 255;
+        return argb(alpha, (int) r2, (int) g2, (int) b2);
+    }
+
+    /**
+     * Convert an ARGB color to HSV, see {@link #RGBToHSV(int, int, int, float[])}.
+     * Effects on whole buffers give the same array for all pixels, so no memory is allocated per pixel.
+     *
+     * @param color ARGB color, alpha is not used.
+     * @param hsv   Modified, contain at the end the HSV value
+     */
+    public static void colorToHSV(int color, float[] hsv) {
+        RGBToHSV((color >> 16) & 0xFF, (color >> 8) & 0xFF, color & 0xFF, hsv);
+    }
+
+    /**
+     * Tool to convert RGB Color to HSV Color contain in a float array.
+     * NB: Doesn't use alpha value.
+     *
+     * @param red   Red integer value in [0;255]
+     * @param green Green integer value in [0;255]
+     * @param blue  Blue integer value in [0;255]
+     * @param hsv   Modified, contain at the end the HSV value : hsv[0] -> H:[0;360] / hsv[1] -> S:[0;1] / hsv[2] -> V:[0;1]
+     */
+    public static void RGBToHSV(int red, int green, int blue, float[] hsv) {
+        //use conversion describe at https://fr.wikipedia.org/wiki/Teinte_Saturation_Valeur
+        float r = red / 255f;
+        float g = green / 255f;
+        float b = blue / 255f;
+
+        float max = Math.max(Math.max(r, g), b);
+        float min = Math.min(Math.min(r, g), b);
+
+        if (max == min) {
+            hsv[0] = 0;
+        } else if (max == r) {
+            hsv[0] = (60 * ((g - b) / (max - min)) + 360);
+            while (hsv[0] > 360) hsv[0] -= 360;
+        } else if (max == g) {
+            hsv[0] = (60 * ((b - r) / (max - min)) + 120);
+        } else if (max == b) {
+            hsv[0] = (60 * ((r - g) / (max - min)) + 240);
+        }
+
+        if (max == 0) {
+            hsv[1] = 0;
+        } else {
+            hsv[1] = 1 - (min / max);
+        }
+
+        hsv[2] = max;
+
+    }
+}
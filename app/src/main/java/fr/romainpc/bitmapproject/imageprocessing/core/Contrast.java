@@ -0,0 +1,157 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Contrast operations on pixel buffers: linear dynamic extension and histogram flattening.
+ * Each operation exists for the three kinds of histograms: luminance, natural gray level and RGB.
+ * Both build lookup tables of the final values first, so the loops on pixels only read tables (see {@link ChannelLUT} for RGB).
+ */
+public class Contrast {
+
+    /**
+     * Build the lookup table of a linear extension: values between min and max of the histogram are stretched to [0;255].
+     *
+     * @param histogram Histogram with 256 values.
+     * @return The LUT, or null if the histogram has only one value (uniform picture, extension would divide by zero).
+     */
+    public static int[] linearExtensionLUT(int[] histogram) {
+        int[] LUT = new int[histogram.length];
+        int[] extr = Histograms.minMax(histogram);
+        int min = extr[0];
+        int max = extr[1];
+        if (min == max)
+            return null;
+        for (int i = 0; i < histogram.length; i++)
+            LUT[i] = 255 * (i - min) / (max - min);
+        return LUT;
+    }
+
+    /**
+     * Build the lookup table of a flattening: the cumulated count of each value is scaled to [0;255], divisions are done once per value.
+     *
+     * @param cumu Cumulated histogram, see {@link Histograms#cumulate(int[])}
+     * @param N    Number of pixels counted in the histogram.
+     * @return The LUT.
+     */
+    public static int[] flatteningLUT(long[] cumu, int N) {
+        int[] LUT = new int[cumu.length];
+        for (int i = 0; i < cumu.length; i++)
+            LUT[i] = (int) (cumu[i] * 255 / N);
+        return LUT;
+    }
+
+    /**
+     * Replace the luminance (V in HSV) of each pixel with its value in the LUT.
+     *
+     * @param buffer Pixels to modify
+     * @param LUT    Lookup table of 256 values in [0;255]
+     */
+    public static void applyLuminance(PixelBuffer buffer, int[] LUT) {
+        int[] pixels = buffer.getPixels();
+        float[] hsv = new float[3];
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                pixels[i] = applyLuminance(pixels[i], LUT, hsv);
+            }
+        }
+    }
+
+    /**
+     * Put each pixel in natural gray level, then replace the gray with its value in the LUT.
+     *
+     * @param buffer Pixels to modify
+     * @param LUT    Lookup table of 256 values in [0;255]
+     */
+    public static void applyGrayLevelNatural(PixelBuffer buffer, int[] LUT) {
+        applyGrayLevelNatural(buffer, LUT, null);
+    }
+
+    /**
+     * See {@link #applyGrayLevelNatural(PixelBuffer, int[])}, with the gray computed in fixed point.
+     *
+     * @param buffer  Pixels to modify
+     * @param LUT     Lookup table of 256 values in [0;255]
+     * @param natural Tables of the natural gray level ({@link GrayWeights#NATURAL}), null to compute it with doubles.
+     */
+    public static void applyGrayLevelNatural(PixelBuffer buffer, int[] LUT, GrayWeights natural) {
+        int[] pixels = buffer.getPixels();
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                pixels[i] = applyGrayLevelNatural(pixels[i], LUT, natural);
+            }
+        }
+    }
+
+    /**
+     * Replace red, green and blue values of each pixel with their values in the LUTs.
+     *
+     * @param buffer Pixels to modify
+     * @param LUTR   Lookup table for red
+     * @param LUTG   Lookup table for green
+     * @param LUTB   Lookup table for blue
+     */
+    public static void applyRGB(PixelBuffer buffer, int[] LUTR, int[] LUTG, int[] LUTB) {
+        ChannelLUT.of(LUTR, LUTG, LUTB).apply(buffer);
+    }
+
+    /**
+     * Flatten the luminance histogram.
+     *
+     * @param buffer Pixels to modify
+     * @param cumu   Cumulated luminance histogram, see {@link Histograms#cumulate(int[])}
+     * @param N      Number of pixels counted in the histogram.
+     */
+    public static void flattenLuminance(PixelBuffer buffer, long[] cumu, int N) {
+        applyLuminance(buffer, flatteningLUT(cumu, N));
+    }
+
+    /**
+     * Decolorize the buffer and flatten the natural gray level histogram.
+     *
+     * @param buffer Pixels to modify
+     * @param cumu   Cumulated gray level histogram, see {@link Histograms#cumulate(int[])}
+     * @param N      Number of pixels counted in the histogram.
+     */
+    public static void flattenGrayLevelNatural(PixelBuffer buffer, long[] cumu, int N) {
+        flattenGrayLevelNatural(buffer, cumu, N, null);
+    }
+
+    /**
+     * See {@link #flattenGrayLevelNatural(PixelBuffer, long[], int)}, with the gray computed in fixed point.
+     *
+     * @param buffer  Pixels to modify
+     * @param cumu    Cumulated gray level histogram, counted with the same natural tables.
+     * @param N       Number of pixels counted in the histogram.
+     * @param natural Tables of the natural gray level ({@link GrayWeights#NATURAL}), null to compute it with doubles.
+     */
+    public static void flattenGrayLevelNatural(PixelBuffer buffer, long[] cumu, int N, GrayWeights natural) {
+        applyGrayLevelNatural(buffer, flatteningLUT(cumu, N), natural);
+    }
+
+    /**
+     * Flatten the red, green and blue histograms.
+     *
+     * @param buffer Pixels to modify
+     * @param cumuR  Cumulated red histogram
+     * @param cumuG  Cumulated green histogram
+     * @param cumuB  Cumulated blue histogram
+     * @param N      Number of pixels counted in the histograms.
+     */
+    public static void flattenRGB(PixelBuffer buffer, long[] cumuR, long[] cumuG, long[] cumuB, int N) {
+        ChannelLUT.of(flatteningLUT(cumuR, N), flatteningLUT(cumuG, N), flatteningLUT(cumuB, N)).apply(buffer);
+    }
+
+    //operations on one pixel, used by loops above and by PointOperation:
+
+    static int applyLuminance(int px, int[] LUT, float[] hsv) {
+        Colors.colorToHSV(px, hsv);
+        hsv[2] = (float) LUT[(int) (hsv[2] * 255f)] / 255f;
+        return Colors.HSVToColor(Colors.alpha(px), hsv);
+    }
+
+    static int applyGrayLevelNatural(int px, int[] LUT, GrayWeights natural) {
+        int gray = LUT[natural == null ? Colors.grayNatural(px) : natural.gray(px)];
+        return Colors.argb(Colors.alpha(px), gray, gray, gray);
+    }
+}
@@ -0,0 +1,219 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Convolution of pixel buffers with float kernels.
+ * <p>
+ * Pixels are first split in three float planes (red, green, blue), each row padded on both sides with the pixels given by the border mode.
+ * Then every loop adds one weight times a contiguous row of a plane to a contiguous row of the result,
+ * without branch or index table in the inner loop, so the JIT can vectorize it.
+ * Separable kernels (see {@link Kernel}) are computed by a horizontal pass then a vertical pass.
+ * Results are rounded and limited to [0;255], the alpha channel is not modified.
+ */
+public class Convolution {
+
+    /**
+     * Float planes of the red, green and blue values, rows of stride values.
+     */
+    private static class Planes {
+        private final float[][] channels;
+        private final int stride;
+
+        private Planes(int stride, int height) {
+            this.stride = stride;
+            channels = new float[][]{new float[stride * height], new float[stride * height], new float[stride * height]};
+        }
+    }
+
+    /**
+     * Replace each pixel by the weighted sum of the pixels around it: weight (i, j) of the kernel is applied to the pixel (x + j - w/2, y + i - h/2).
+     *
+     * @param buffer Pixels to modify.
+     * @param kernel Weights, centered on the pixel.
+     * @param border How pixels out of the picture are read.
+     */
+    public static void convolve(PixelBuffer buffer, Kernel kernel, BorderMode border) {
+        convolve(buffer, kernel, border, null);
+    }
+
+    /**
+     * See {@link #convolve(PixelBuffer, Kernel, BorderMode)}, computed by bands of rows on several threads, the result is the same.
+     *
+     * @param buffer   Pixels to modify.
+     * @param kernel   Weights, centered on the pixel.
+     * @param border   How pixels out of the picture are read.
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     */
+    public static void convolve(PixelBuffer buffer, Kernel kernel, BorderMode border, TiledExecutor executor) {
+        if (buffer.getWidth() <= 0 || buffer.getHeight() <= 0)
+            return;
+        Planes input = split(buffer, kernel.getWidth() / 2, border, executor);
+        Planes output = filter(input, buffer.getWidth(), buffer.getHeight(), kernel, border, executor);
+        join(buffer, output, null, executor);
+    }
+
+    /**
+     * Replace each pixel by the magnitude of the gradient: sqrt(gx * gx + gy * gy) for each channel,
+     * with gx and gy the convolutions with kernelX and kernelY (for example {@link Kernel#sobelX()} and {@link Kernel#sobelY()}).
+     *
+     * @param buffer   Pixels to modify.
+     * @param kernelX  Horizontal gradient.
+     * @param kernelY  Vertical gradient.
+     * @param border   How pixels out of the picture are read.
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     */
+    public static void gradient(PixelBuffer buffer, Kernel kernelX, Kernel kernelY, BorderMode border, TiledExecutor executor) {
+        if (buffer.getWidth() <= 0 || buffer.getHeight() <= 0)
+            return;
+        Planes input = split(buffer, Math.max(kernelX.getWidth(), kernelY.getWidth()) / 2, border, executor);
+        Planes x = filter(input, buffer.getWidth(), buffer.getHeight(), kernelX, border, executor);
+        Planes y = filter(input, buffer.getWidth(), buffer.getHeight(), kernelY, border, executor);
+        join(buffer, x, y, executor);
+    }
+
+    private static void run(int height, TiledExecutor executor, TiledExecutor.RowTask task) {
+        if (executor == null)
+            task.apply(0, height);
+        else
+            executor.forEachRows(height, task);
+    }
+
+    /**
+     * Copy pixels in planes with pad columns on each side of rows.
+     */
+    private static Planes split(final PixelBuffer buffer, final int pad, BorderMode border, TiledExecutor executor) {
+        final int width = buffer.getWidth();
+        final Planes planes = new Planes(width + 2 * pad, buffer.getHeight());
+        final int[] tableX = border.indexTable(width, pad);
+        run(buffer.getHeight(), executor, new TiledExecutor.RowTask() {
+            @Override
+            public void apply(int firstRow, int endRow) {
+                int[] pixels = buffer.getPixels();
+                float[] r = planes.channels[0];
+                float[] g = planes.channels[1];
+                float[] b = planes.channels[2];
+                for (int y = firstRow; y < endRow; y++) {
+                    int src = buffer.index(0, y);
+                    int dst = y * planes.stride;
+                    for (int x = 0; x < planes.stride; x++) {
+                        int px = pixels[src + tableX[x]];
+                        r[dst + x] = (px >> 16) & 0xFF;
+                        g[dst + x] = (px >> 8) & 0xFF;
+                        b[dst + x] = px & 0xFF;
+                    }
+                }
+            }
+        });
+        return planes;
+    }
+
+    /**
+     * Convolution of padded planes, the result has no padding (stride = width).
+     */
+    private static Planes filter(final Planes input, final int width, int height, Kernel kernel, BorderMode border, TiledExecutor executor) {
+        final int offset = (input.stride - width) / 2 - kernel.getWidth() / 2; //first padded column read for x = 0.
+        final Planes output = new Planes(width, height);
+        if (kernel.isSeparable()) {
+            final float[] row = kernel.getRow();
+            final float[] column = kernel.getColumn();
+            final int[] tableY = border.indexTable(height, column.length / 2);
+            final Planes rows = new Planes(width, height);
+            run(height, executor, new TiledExecutor.RowTask() {
+                @Override
+                public void apply(int firstRow, int endRow) {
+                    for (int c = 0; c < 3; c++)
+                        for (int y = firstRow; y < endRow; y++)
+                            horizontal(input.channels[c], y * input.stride + offset, row, rows.channels[c], y * width, width);
+                }
+            });
+            //vertical pass only reads the horizontal pass, bands write their own rows:
+            run(height, executor, new TiledExecutor.RowTask() {
+                @Override
+                public void apply(int firstRow, int endRow) {
+                    for (int c = 0; c < 3; c++)
+                        for (int y = firstRow; y < endRow; y++)
+                            for (int i = 0; i < column.length; i++)
+                                add(rows.channels[c], tableY[y + i] * width, column[i], output.channels[c], y * width, width);
+                }
+            });
+        } else {
+            final float[] weights = kernel.getWeights();
+            final int kernelWidth = kernel.getWidth();
+            final int kernelHeight = kernel.getHeight();
+            final int[] tableY = border.indexTable(height, kernelHeight / 2);
+            run(height, executor, new TiledExecutor.RowTask() {
+                @Override
+                public void apply(int firstRow, int endRow) {
+                    for (int c = 0; c < 3; c++)
+                        for (int y = firstRow; y < endRow; y++)
+                            for (int i = 0; i < kernelHeight; i++) {
+                                int src = tableY[y + i] * input.stride + offset;
+                                for (int j = 0; j < kernelWidth; j++)
+                                    add(input.channels[c], src + j, weights[i * kernelWidth + j], output.channels[c], y * width, width);
+                            }
+                }
+            });
+        }
+        return output;
+    }
+
+    /**
+     * One output row of the horizontal pass.
+     */
+    private static void horizontal(float[] src, int srcStart, float[] row, float[] dst, int dstStart, int width) {
+        for (int j = 0; j < row.length; j++)
+            add(src, srcStart + j, row[j], dst, dstStart, width);
+    }
+
+    /**
+     * dst[dstStart + x] += weight * src[srcStart + x] for x in [0;width[, the loop which is vectorized.
+     */
+    private static void add(float[] src, int srcStart, float weight, float[] dst, int dstStart, int width) {
+        if (weight == 0f)
+            return;
+        for (int x = 0; x < width; x++)
+            dst[dstStart + x] += weight * src[srcStart + x];
+    }
+
+    /**
+     * Write planes in the buffer, or the magnitude of two planes if second is not null.
+     */
+    private static void join(final PixelBuffer buffer, final Planes first, final Planes second, TiledExecutor executor) {
+        final int width = buffer.getWidth();
+        run(buffer.getHeight(), executor, new TiledExecutor.RowTask() {
+            @Override
+            public void apply(int firstRow, int endRow) {
+                int[] pixels = buffer.getPixels();
+                for (int y = firstRow; y < endRow; y++) {
+                    int dst = buffer.index(0, y);
+                    int src = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int r = channel(first, second, 0, src + x);
+                        int g = channel(first, second, 1, src + x);
+                        int b = channel(first, second, 2, src + x);
+                        pixels[dst + x] = (pixels[dst + x] & 0xFF000000) | (r << 16) | (g << 8) | b;
+                    }
+                }
+            }
+        });
+    }
+
+    private static int channel(Planes first, Planes second, int c, int i) {
+        float v = first.channels[c][i];
+        if (second != null) {
+            float w = second.channels[c][i];
+            v = (float) Math.sqrt(v * v + w * w);
+        }
+        return clamp(v);
+    }
+
+    /**
+     * @return The value rounded and limited to [0;255].
+     */
+    static int clamp(float value) {
+        if (value <= 0f)
+            return 0;
+        if (value >= 255f)
+            return 255;
+        return (int) (value + 0.5f);
+    }
+}
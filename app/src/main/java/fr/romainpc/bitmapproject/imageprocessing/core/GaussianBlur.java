@@ -0,0 +1,202 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Gaussian blur approximated by three successive box blurs, each one computed with running sums like {@link BoxBlur}:
+ * the cost per pixel is the same for any sigma, unlike the convolution with {@link Kernel#gaussian(double)}.
+ * Sizes of the boxes are chosen so the variance of the three boxes is the nearest to sigma^2.
+ * Below {@link #MIN_SIGMA} boxes of 1 or 3 pixels are too coarse, the small exact kernel is used instead.
+ * <p>
+ * Each channel is blurred alone in integer planes with 8 fractional bits, rounded after each pass.
+ * Integer running sums are exact, so bands of rows computed in parallel and tiles with a halo of {@link #getHalo(double)} pixels
+ * give exactly the same result as the whole image.
+ */
+public class GaussianBlur {
+
+    /**
+     * Number of box blurs, three gives an error of a few percent with the gaussian.
+     */
+    public static final int PASSES = 3;
+
+    /**
+     * Smallest sigma blurred with boxes, below the convolution with {@link Kernel#gaussian(double)} is cheap (at most 9 weights).
+     */
+    public static final double MIN_SIGMA = 1.5;
+
+    private static final int FRACTION_BITS = 8;
+
+    /**
+     * Blur the buffer, alpha channel is not blurred.
+     *
+     * @param buffer   Pixels to modify.
+     * @param sigma    Standard deviation of the gaussian in pixels, 0 or less does nothing.
+     * @param border   How pixels out of the picture are read.
+     * @param executor Executor splitting rows, null to compute in the calling thread.
+     */
+    public static void blur(final PixelBuffer buffer, double sigma, BorderMode border, TiledExecutor executor) {
+        if (sigma < MIN_SIGMA) {
+            if (sigma > 0)
+                Convolution.convolve(buffer, Kernel.gaussian(sigma), border, executor);
+            return;
+        }
+        final int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        final int[] radii = boxRadii(sigma);
+        if (radii[PASSES - 1] == 0 || width <= 0 || height <= 0)
+            return;
+        final int[][] tablesX = new int[PASSES][];
+        final int[][] tablesY = new int[PASSES][];
+        for (int k = 0; k < PASSES; k++) {
+            tablesX[k] = border.indexTable(width, radii[k]);
+            tablesY[k] = border.indexTable(height, radii[k]);
+        }
+        int[] first = new int[width * height];
+        int[] second = new int[width * height];
+        for (int c = 0; c < 3; c++) {
+            final int shift = 16 - 8 * c;
+            final int[] horizontal = first;
+            run(height, executor, new TiledExecutor.RowTask() {
+                @Override
+                public void apply(int firstRow, int endRow) {
+                    horizontal(buffer, shift, radii, tablesX, horizontal, firstRow, endRow);
+                }
+            });
+            //each vertical pass reads rows of the whole previous pass:
+            for (int k = 0; k < PASSES; k++) {
+                final int[] src = k % 2 == 0 ? first : second;
+                final int[] dst = k % 2 == 0 ? second : first;
+                final int radius = radii[k];
+                final int[] tableY = tablesY[k];
+                run(height, executor, new TiledExecutor.RowTask() {
+                    @Override
+                    public void apply(int firstRow, int endRow) {
+                        vertical(src, dst, width, radius, tableY, firstRow, endRow);
+                    }
+                });
+            }
+            final int[] result = PASSES % 2 == 0 ? first : second;
+            run(height, executor, new TiledExecutor.RowTask() {
+                @Override
+                public void apply(int firstRow, int endRow) {
+                    write(buffer, shift, result, firstRow, endRow);
+                }
+            });
+        }
+    }
+
+    /**
+     * Radii of the boxes, from "Fast Almost-Gaussian Filtering" (Kovesi): the m first boxes have the odd size wl,
+     * the others wl + 2, m is chosen so the sum of variances (size^2 - 1) / 12 is the nearest to sigma^2.
+     *
+     * @param sigma Standard deviation of the gaussian in pixels.
+     * @return {@link #PASSES} radii, in increasing order.
+     */
+    public static int[] boxRadii(double sigma) {
+        int[] radii = new int[PASSES];
+        if (sigma <= 0)
+            return radii;
+        double variance = sigma * sigma;
+        int lower = (int) Math.floor(Math.sqrt(12 * variance / PASSES + 1));
+        if (lower % 2 == 0)
+            lower--;
+        int m = (int) Math.round((12 * variance - PASSES * lower * lower - 4 * PASSES * lower - 3 * PASSES) / (-4.0 * lower - 4));
+        for (int k = 0; k < PASSES; k++)
+            radii[k] = ((k < m ? lower : lower + 2) - 1) / 2;
+        return radii;
+    }
+
+    /**
+     * @param sigma Standard deviation of the gaussian in pixels.
+     * @return Margin needed around a tile to blur it like the whole image, the sum of the radii.
+     */
+    public static int getHalo(double sigma) {
+        if (sigma < MIN_SIGMA)
+            return sigma > 0 ? Kernel.gaussian(sigma).getRadius() : 0;
+        int halo = 0;
+        for (int radius : boxRadii(sigma))
+            halo += radius;
+        return halo;
+    }
+
+    private static void run(int height, TiledExecutor executor, TiledExecutor.RowTask task) {
+        if (executor == null)
+            task.apply(0, height);
+        else
+            executor.forEachRows(height, task);
+    }
+
+    /**
+     * All horizontal boxes of rows [firstRow;endRow[ of a channel, each row in two small arrays.
+     */
+    private static void horizontal(PixelBuffer buffer, int shift, int[] radii, int[][] tablesX, int[] dst, int firstRow, int endRow) {
+        int[] pixels = buffer.getPixels();
+        int width = buffer.getWidth();
+        int[] row = new int[width];
+        int[] next = new int[width];
+        for (int y = firstRow; y < endRow; y++) {
+            int src = buffer.index(0, y);
+            for (int x = 0; x < width; x++)
+                row[x] = ((pixels[src + x] >> shift) & 0xFF) << FRACTION_BITS;
+            for (int k = 0; k < PASSES; k++) {
+                box(row, next, width, radii[k], tablesX[k]);
+                int[] swap = row;
+                row = next;
+                next = swap;
+            }
+            System.arraycopy(row, 0, dst, y * width, width);
+        }
+    }
+
+    /**
+     * One horizontal box of a row: running sum of the window, rounded average.
+     */
+    private static void box(int[] src, int[] dst, int width, int radius, int[] tableX) {
+        int size = 2 * radius + 1;
+        int half = size / 2;
+        int sum = 0;
+        for (int j = 0; j < size; j++)
+            sum += src[tableX[j]];
+        for (int x = 0; x < width; x++) {
+            dst[x] = (sum + half) / size;
+            sum += src[tableX[x + size]] - src[tableX[x]];
+        }
+    }
+
+    /**
+     * One vertical box of rows [firstRow;endRow[, a running sum for each column like {@link BoxBlur}.
+     */
+    private static void vertical(int[] src, int[] dst, int width, int radius, int[] tableY, int firstRow, int endRow) {
+        int size = 2 * radius + 1;
+        int half = size / 2;
+        int[] col = new int[width];
+        for (int j = 0; j < size; j++) {
+            int row = tableY[firstRow + j] * width;
+            for (int x = 0; x < width; x++)
+                col[x] += src[row + x];
+        }
+        for (int y = firstRow; y < endRow; y++) {
+            int out = y * width;
+            for (int x = 0; x < width; x++)
+                dst[out + x] = (col[x] + half) / size;
+            int in = tableY[y + size] * width;
+            int leaving = tableY[y] * width;
+            for (int x = 0; x < width; x++)
+                col[x] += src[in + x] - src[leaving + x];
+        }
+    }
+
+    /**
+     * Replace a channel of rows [firstRow;endRow[ with the blurred values rounded to 8 bits.
+     */
+    private static void write(PixelBuffer buffer, int shift, int[] src, int firstRow, int endRow) {
+        int[] pixels = buffer.getPixels();
+        int width = buffer.getWidth();
+        int mask = ~(0xFF << shift);
+        int round = 1 << (FRACTION_BITS - 1);
+        for (int y = firstRow; y < endRow; y++) {
+            int dst = buffer.index(0, y);
+            int row = y * width;
+            for (int x = 0; x < width; x++)
+                pixels[dst + x] = (pixels[dst + x] & mask) | (((src[row + x] + round) >> FRACTION_BITS) << shift);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Gray level computed in fixed point integers: for each channel, a table gives the weighted value of the 256 possible values,
+ * multiplied by 2^{@link #SHIFT}. A gray is then two shifts and masks, three lookups, two additions and one shift, without any double.
+ * <p>
+ * Table values are rounded, so the sum is at most 1.5 / 2^SHIFT away from the exact weighted sum:
+ * the gray is the same as the double computation ({@link PointKernels#grayLevel(PixelBuffer, double, double, double)},
+ * {@link Colors#grayNatural(int)}), or differs by 1 when the exact sum is very close to an integer.
+ */
+public class GrayWeights {
+
+    /**
+     * Number of fractional bits of table values. With 16 bits, three tables of values up to 255 * 2^16 can be added without overflow.
+     */
+    public static final int SHIFT = 16;
+
+    /**
+     * Weights of the natural gray level: 0.3 * R + 0.59 * B + 0.11 * G, see {@link Colors#grayNatural(int)}.
+     */
+    public static final GrayWeights NATURAL = new GrayWeights(0.3, 0.11, 0.59);
+
+    private final int[] red = new int[256];
+    private final int[] green = new int[256];
+    private final int[] blue = new int[256];
+
+    /**
+     * Build tables of the proportions, limited to [0.0;1.0] like {@link PointKernels#grayLevel(PixelBuffer, double, double, double)}.
+     *
+     * @param red   Red proportion (between 0.0 and 1.0)
+     * @param green Green proportion (between 0.0 and 1.0)
+     * @param blue  Blue proportion (between 0.0 and 1.0)
+     */
+    public GrayWeights(double red, double green, double blue) {
+        fill(this.red, PointKernels.clamp(red));
+        fill(this.green, PointKernels.clamp(green));
+        fill(this.blue, PointKernels.clamp(blue));
+    }
+
+    private static void fill(int[] table, double weight) {
+        double scale = weight * (1 << SHIFT);
+        for (int v = 0; v < 256; v++)
+            table[v] = (int) (scale * v + 0.5);
+    }
+
+    /**
+     * @param color ARGB color
+     * @return Gray value of the color, in [0;255] if the sum of proportions is at most 1.
+     */
+    public int gray(int color) {
+        return (red[(color >> 16) & 0xFF] + green[(color >> 8) & 0xFF] + blue[color & 0xFF]) >> SHIFT;
+    }
+}
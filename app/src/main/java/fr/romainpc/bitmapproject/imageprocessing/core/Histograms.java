@@ -0,0 +1,208 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computation of histograms on pixel buffers, each histogram is an array of 256 values.
+ */
+public class Histograms {
+
+    /**
+     * Luminance bin of each value of max(R, G, B), same as (int) (V * 255f) with V computed by {@link Colors#RGBToHSV(int, int, int, float[])}.
+     */
+    private static final int[] VALUE_BIN = new int[256];
+
+    static {
+        for (int max = 0; max < 256; max++)
+            VALUE_BIN[max] = (int) ((max / 255f) * 255f);
+    }
+
+    /**
+     * Histograms computed in one pass by {@link #count(PixelBuffer, boolean, boolean, boolean, TiledExecutor)}, arrays not asked are null.
+     */
+    public static class Counts {
+        public final int[] luminance;
+        public final int[] grayLevelNatural;
+        public final int[] red;
+        public final int[] green;
+        public final int[] blue;
+
+        private Counts(boolean luminance, boolean grayLevelNatural, boolean rgb) {
+            this.luminance = luminance ? new int[256] : null;
+            this.grayLevelNatural = grayLevelNatural ? new int[256] : null;
+            this.red = rgb ? new int[256] : null;
+            this.green = rgb ? new int[256] : null;
+            this.blue = rgb ? new int[256] : null;
+        }
+
+        /**
+         * @return List of the red, green and blue histograms (in this order), null if RGB histograms were not asked.
+         */
+        public List<int[]> rgb() {
+            if (red == null)
+                return null;
+            ArrayList<int[]> list = new ArrayList<>();
+            list.add(red);
+            list.add(green);
+            list.add(blue);
+            return list;
+        }
+
+        /**
+         * Add counts of other pixels (another band or tile), the same histograms must have been counted.
+         *
+         * @param partial Counts to add.
+         */
+        public void add(Counts partial) {
+            add(luminance, partial.luminance);
+            add(grayLevelNatural, partial.grayLevelNatural);
+            add(red, partial.red);
+            add(green, partial.green);
+            add(blue, partial.blue);
+        }
+
+        private static void add(int[] total, int[] partial) {
+            if (total != null)
+                for (int i = 0; i < 256; i++)
+                    total[i] += partial[i];
+        }
+    }
+
+    /**
+     * Compute several types of histograms in one pass on the pixels.
+     * With an executor, each band of rows is counted in its own arrays (threads never write the same memory) and bands are summed at the end.
+     *
+     * @param buffer           Pixels to count.
+     * @param luminance        Compute luminance histogram.
+     * @param grayLevelNatural Compute natural gray level histogram.
+     * @param rgb              Compute red, green and blue histograms.
+     * @param executor         Executor splitting rows, null to count in the calling thread.
+     * @return The histograms, same values as {@link #luminance(PixelBuffer)}, {@link #grayLevelNatural(PixelBuffer)} and {@link #rgb(PixelBuffer)}.
+     */
+    public static Counts count(PixelBuffer buffer, boolean luminance, boolean grayLevelNatural, boolean rgb, TiledExecutor executor) {
+        return count(buffer, luminance, grayLevelNatural, rgb, executor, null);
+    }
+
+    /**
+     * See {@link #count(PixelBuffer, boolean, boolean, boolean, TiledExecutor)}, with the natural gray level computed in fixed point.
+     *
+     * @param natural Tables of the natural gray level ({@link GrayWeights#NATURAL}), null to compute it with doubles.
+     */
+    public static Counts count(final PixelBuffer buffer, final boolean luminance, final boolean grayLevelNatural, final boolean rgb, TiledExecutor executor, final GrayWeights natural) {
+        final Counts total = new Counts(luminance, grayLevelNatural, rgb);
+        if (executor == null) {
+            count(buffer, total, 0, buffer.getHeight(), natural);
+            return total;
+        }
+        executor.forEachRows(buffer.getHeight(), new TiledExecutor.RowTask() {
+            @Override
+            public void apply(int firstRow, int endRow) {
+                Counts partial = new Counts(luminance, grayLevelNatural, rgb);
+                count(buffer, partial, firstRow, endRow, natural);
+                synchronized (total) {
+                    total.add(partial);
+                }
+            }
+        });
+        return total;
+    }
+
+    private static void count(PixelBuffer buffer, Counts counts, int firstRow, int endRow, GrayWeights natural) {
+        int[] pixels = buffer.getPixels();
+        int[] luminance = counts.luminance;
+        int[] gray = counts.grayLevelNatural;
+        int[] red = counts.red;
+        int[] green = counts.green;
+        int[] blue = counts.blue;
+        for (int y = firstRow; y < endRow; y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                int px = pixels[i];
+                int r = (px >> 16) & 0xFF;
+                int g = (px >> 8) & 0xFF;
+                int b = px & 0xFF;
+                if (luminance != null) {
+                    int max = r > g ? r : g;
+                    luminance[VALUE_BIN[max > b ? max : b]]++;
+                }
+                if (gray != null)
+                    gray[natural == null ? Colors.grayNatural(px) : natural.gray(px)]++;
+                if (red != null) {
+                    red[r]++;
+                    green[g]++;
+                    blue[b]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Histogram of luminance, the V in the color system HSV.
+     *
+     * @param buffer Pixels to count.
+     * @return Histogram array with 256 values.
+     */
+    public static int[] luminance(PixelBuffer buffer) {
+        return count(buffer, true, false, false, null).luminance;
+    }
+
+    /**
+     * Histogram of natural gray level, see {@link Colors#grayNatural(int)}.
+     *
+     * @param buffer Pixels to count.
+     * @return Histogram array with 256 values.
+     */
+    public static int[] grayLevelNatural(PixelBuffer buffer) {
+        return count(buffer, false, true, false, null).grayLevelNatural;
+    }
+
+    /**
+     * Three histograms, for red, green and blue values.
+     *
+     * @param buffer Pixels to count.
+     * @return List of the red, green and blue histograms (in this order).
+     */
+    public static List<int[]> rgb(PixelBuffer buffer) {
+        return count(buffer, false, false, true, null).rgb();
+    }
+
+    /**
+     * Compute minimum and maximum value in an histogram array.
+     *
+     * @param histogram Histogram to compute.
+     * @return An array with minimum value at index 0 and maximum at index 1.
+     */
+    public static int[] minMax(int[] histogram) {
+        int min;
+        int max;
+
+        int i = 0;
+        while (histogram[i] == 0) {
+            i++;
+        }
+        min = i;
+        i = histogram.length - 1;
+        while (histogram[i] == 0) {
+            i--;
+        }
+        max = i;
+        return new int[]{min, max};
+    }
+
+    /**
+     * Cumulated histogram: value at index i is the number of pixels with a value lower or equal to i.
+     *
+     * @param histogram Histogram to cumulate.
+     * @return Cumulated histogram, in long because multiplications by 255 can overflow the integer size.
+     */
+    public static long[] cumulate(int[] histogram) {
+        long[] cumu = new long[histogram.length];
+        long sum = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            sum += histogram[i];
+            cumu[i] = sum;
+        }
+        return cumu;
+    }
+}
@@ -0,0 +1,331 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.util.ArrayList;
+
+/**
+ * Undo and redo history of an image. Each state is either a keyframe (copy of all pixels)
+ * or an operation replayed on the previous state, which costs no memory.
+ * <p>
+ * The first state (the original image) is always a keyframe. A state recorded with an operation gets a keyframe every
+ * keyframeInterval operations, so going to a state replays at most keyframeInterval - 1 operations from the nearest keyframe,
+ * instead of all effects from the original. The current state also keeps a keyframe once it was computed, to be loaded again quickly.
+ * <p>
+ * When keyframes exceed the memory budget, keyframes of replayable states are removed first, from the oldest.
+ * Then oldest states are forgotten: a state without operation and all following states up to the next one are removed,
+ * undo goes from the next state directly to the previous ones. The original and the current state are never removed.
+ *
+ * @param <T> Information stored with each state, given back when going to the state.
+ */
+public class History<T> {
+
+    /**
+     * Default maximum memory used by keyframes, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    /**
+     * Default maximum number of operations between two keyframes.
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 4;
+
+    /**
+     * Modification of pixels which can be replayed, it must give the same result each time.
+     */
+    public interface Operation {
+        void apply(PixelBuffer buffer);
+    }
+
+    private static class State<T> {
+        private final Operation operation; //null if pixels can only be given by the keyframe.
+        private final T tag;
+        private int[] keyframe;
+
+        private State(Operation operation, T tag) {
+            this.operation = operation;
+            this.tag = tag;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final ArrayList<State<T>> states = new ArrayList<>();
+    private int position;
+    private long memoryBudget;
+    private long memoryUsed;
+    private int keyframeInterval;
+
+    private long replayed;
+    private long keyframesEvicted;
+    private long statesForgotten;
+
+    /**
+     * @param initial          Pixels of the first state, kept without copy, they must not be modified after.
+     * @param tag              Information of the first state.
+     * @param memoryBudget     Maximum memory used by keyframes, in bytes. The first keyframe is counted.
+     * @param keyframeInterval Maximum number of operations replayed to go to a state, at least 1.
+     */
+    public History(PixelBuffer initial, T tag, long memoryBudget, int keyframeInterval) {
+        if (keyframeInterval < 1)
+            throw new IllegalArgumentException("Keyframe interval must be at least 1");
+        width = initial.getWidth();
+        height = initial.getHeight();
+        this.memoryBudget = memoryBudget;
+        this.keyframeInterval = keyframeInterval;
+        State<T> state = new State<>(null, tag);
+        state.keyframe = initial.getStride() == width && initial.getOffset() == 0 ? initial.getPixels() : initial.copy().getPixels();
+        memoryUsed = 4L * width * height;
+        states.add(state);
+    }
+
+    /**
+     * Add a state after the current one, states which could be redone are removed.
+     *
+     * @param current   Pixels of the new state, copied if a keyframe is needed.
+     * @param operation Operation giving the new state from the current one, null if the new state can't be replayed (a keyframe is stored).
+     * @param tag       Information of the new state.
+     */
+    public synchronized void record(PixelBuffer current, Operation operation, T tag) {
+        checkDimensions(current);
+        truncate();
+        State<T> state = new State<>(operation, tag);
+        if (operation == null || operationsSinceKeyframe(position) + 1 >= keyframeInterval)
+            keep(state, current.copy().getPixels());
+        states.add(state);
+        position++;
+        evict();
+    }
+
+    /**
+     * Remove states after the current one, they can't be redone anymore.
+     */
+    public synchronized void truncate() {
+        while (states.size() > position + 1)
+            free(states.remove(states.size() - 1));
+    }
+
+    /**
+     * @return Information of the current state.
+     */
+    public synchronized T getTag() {
+        return states.get(position).tag;
+    }
+
+    /**
+     * Give the pixels of the current state, replayed from the nearest keyframe if needed.
+     *
+     * @return Pixels of the current state, shared with the history: they must not be modified.
+     */
+    public synchronized PixelBuffer pixels() {
+        State<T> state = states.get(position);
+        if (state.keyframe == null) {
+            PixelBuffer buffer = replay(position);
+            //kept to load the current state again without replay (previews):
+            keep(state, buffer.getPixels());
+            evict();
+        }
+        return new PixelBuffer(state.keyframe, width, height);
+    }
+
+    /**
+     * Compute pixels of a state from the nearest keyframe before it.
+     */
+    private PixelBuffer replay(int index) {
+        int first = index;
+        while (states.get(first).keyframe == null)
+            first--;
+        PixelBuffer buffer = new PixelBuffer(states.get(first).keyframe.clone(), width, height);
+        for (int i = first + 1; i <= index; i++) {
+            states.get(i).operation.apply(buffer);
+            replayed++;
+        }
+        return buffer;
+    }
+
+    /**
+     * @return True if there is a state before the current one.
+     */
+    public synchronized boolean canUndo() {
+        return position > 0;
+    }
+
+    /**
+     * @return True if there is a state after the current one.
+     */
+    public synchronized boolean canRedo() {
+        return position < states.size() - 1;
+    }
+
+    /**
+     * Go to the previous state, its pixels are given by {@link #pixels()}.
+     *
+     * @return Information of the previous state, null if there is no previous state.
+     */
+    public synchronized T undo() {
+        if (position == 0)
+            return null;
+        position--;
+        return states.get(position).tag;
+    }
+
+    /**
+     * Go to the next state.
+     *
+     * @param buffer Pixels of the current state, modified to the pixels of the next state (the operation is applied on it if possible).
+     * @return Information of the next state, null if there is no next state.
+     */
+    public synchronized T redo(PixelBuffer buffer) {
+        if (position == states.size() - 1)
+            return null;
+        checkDimensions(buffer);
+        position++;
+        State<T> state = states.get(position);
+        if (state.keyframe != null) {
+            PixelBuffer keyframe = new PixelBuffer(state.keyframe, width, height);
+            for (int y = 0; y < height; y++)
+                System.arraycopy(keyframe.getPixels(), keyframe.index(0, y), buffer.getPixels(), buffer.index(0, y), width);
+        } else {
+            state.operation.apply(buffer);
+            replayed++;
+        }
+        return state.tag;
+    }
+
+    /**
+     * Go to the first state (the original), states after it can be redone.
+     *
+     * @return Information of the first state.
+     */
+    public synchronized T first() {
+        position = 0;
+        return states.get(0).tag;
+    }
+
+    private int operationsSinceKeyframe(int index) {
+        int count = 0;
+        while (states.get(index).keyframe == null) {
+            count++;
+            index--;
+        }
+        return count;
+    }
+
+    private void keep(State<T> state, int[] keyframe) {
+        state.keyframe = keyframe;
+        memoryUsed += 4L * keyframe.length;
+    }
+
+    private void free(State<T> state) {
+        if (state.keyframe != null) {
+            memoryUsed -= 4L * state.keyframe.length;
+            state.keyframe = null;
+        }
+    }
+
+    /**
+     * Remove keyframes and forget old states until the memory budget is respected, see the class documentation.
+     */
+    private void evict() {
+        //keyframes which can be replayed:
+        for (int i = 1; i < states.size() && memoryUsed > memoryBudget; i++) {
+            State<T> state = states.get(i);
+            if (i != position && state.keyframe != null && state.operation != null) {
+                free(state);
+                keyframesEvicted++;
+            }
+        }
+        //forget the oldest states without operation, with the states replayed from them:
+        while (memoryUsed > memoryBudget) {
+            int start = 1;
+            while (start < position && states.get(start).operation != null)
+                start++;
+            int end = start + 1;
+            while (end < states.size() && states.get(end).operation != null)
+                end++;
+            //the current state is in this group, it can't be removed:
+            if (start >= position || end > position)
+                return;
+            for (int i = start; i < end; i++)
+                free(states.get(i));
+            states.subList(start, end).clear();
+            position -= end - start;
+            statesForgotten += end - start;
+        }
+    }
+
+    private void checkDimensions(PixelBuffer buffer) {
+        if (buffer.getWidth() != width || buffer.getHeight() != height)
+            throw new IllegalArgumentException("Dimensions of the history are " + width + "x" + height);
+    }
+
+    /**
+     * @return Number of states.
+     */
+    public synchronized int size() {
+        return states.size();
+    }
+
+    /**
+     * @return Index of the current state, 0 is the original.
+     */
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    /**
+     * Change the memory budget, keyframes and old states are removed if needed.
+     *
+     * @param memoryBudget Maximum memory used by keyframes, in bytes.
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        evict();
+    }
+
+    /**
+     * @param keyframeInterval Maximum number of operations between two keyframes for next records, at least 1.
+     */
+    public synchronized void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1)
+            throw new IllegalArgumentException("Keyframe interval must be at least 1");
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * @return Memory used by keyframes, in bytes.
+     */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * @return Number of states with a keyframe.
+     */
+    public synchronized int getKeyframeCount() {
+        int count = 0;
+        for (State<T> state : states)
+            if (state.keyframe != null)
+                count++;
+        return count;
+    }
+
+    /**
+     * @return Number of operations replayed since the creation.
+     */
+    public synchronized long getReplayed() {
+        return replayed;
+    }
+
+    /**
+     * @return Number of keyframes removed to respect the budget.
+     */
+    public synchronized long getKeyframesEvicted() {
+        return keyframesEvicted;
+    }
+
+    /**
+     * @return Number of old states forgotten to respect the budget.
+     */
+    public synchronized long getStatesForgotten() {
+        return statesForgotten;
+    }
+}
@@ -0,0 +1,313 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lookup tables for hue effects (colorize, color shift, keep color), as an alternative to {@link PointKernels}.
+ * The result of these effects only depends on the 24 bits RGB value of the pixel and the effect parameters,
+ * so it is stored in a table per parameters and reused, for example when a slider stays on the same value.
+ * <p>
+ * A full table has 2^24 colors (64 MB), so tables are split in pages of 4096 colors built only when a pixel needs them.
+ * A page costs 4096 pixel computations: the first call with some parameters computes each pixel directly,
+ * pages are built only when the same parameters come back on a buffer of at least one page of pixels.
+ * When the memory used by pages exceeds the budget, tables used the least recently are removed,
+ * never the table being applied: its pixels without page are computed directly.
+ * Results are the same as {@link PointKernels}.
+ */
+public class HueLUTCache {
+
+    /**
+     * Default maximum memory used by tables, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 32L * 1024 * 1024;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int PAGE_BYTES = PAGE_SIZE * 4;
+
+    private static final int COLORIZE = 0;
+    private static final int COLOR_SHIFT = 1;
+    private static final int KEEP_COLOR = 2;
+
+    /**
+     * Number of parameters remembered to detect a second call, without table.
+     */
+    private static final int SEEN_CAPACITY = 64;
+
+    /**
+     * Table of one effect with its parameters, pages are null until built.
+     */
+    private static class Table {
+        private final int operation;
+        private final float hue;
+        private final float tolerance;
+        private final int[][] pages = new int[1 << (24 - PAGE_BITS)][];
+        private int pageCount;
+
+        private Table(int operation, float hue, float tolerance) {
+            this.operation = operation;
+            this.hue = hue;
+            this.tolerance = tolerance;
+        }
+    }
+
+    private final LinkedHashMap<String, Table> tables = new LinkedHashMap<>(16, 0.75f, true); //access order for LRU eviction.
+    //parameters called once, a table is created at the second call:
+    private final LinkedHashMap<String, Boolean> seen = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > SEEN_CAPACITY;
+        }
+    };
+    private long memoryBudget;
+    private long memoryUsed;
+
+    private long hits;
+    private long misses;
+    private long pagesBuilt;
+    private long pagesEvicted;
+    private long buildTime;
+
+    /**
+     * Cache with the default memory budget.
+     */
+    public HueLUTCache() {
+        this(DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * @param memoryBudget Maximum memory used by tables, in bytes.
+     */
+    public HueLUTCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Same effect as {@link PointKernels#colorize(PixelBuffer, int)}.
+     *
+     * @param buffer   Pixels to modify
+     * @param hueAngle Hue value, represented by an angle on the hue wheel [0;360]
+     */
+    public synchronized void colorize(PixelBuffer buffer, int hueAngle) {
+        apply(buffer, "colorize:" + hueAngle, COLORIZE, hueAngle, 0);
+    }
+
+    /**
+     * Same effect as {@link PointKernels#colorShift(PixelBuffer, int)}.
+     *
+     * @param buffer   Pixels to modify
+     * @param hueShift Hue value, represented by an angle on the hue wheel [0;360]
+     */
+    public synchronized void colorShift(PixelBuffer buffer, int hueShift) {
+        apply(buffer, "shift:" + hueShift, COLOR_SHIFT, hueShift, 0);
+    }
+
+    /**
+     * Same effect as {@link PointKernels#keepColor(PixelBuffer, float, float)}.
+     *
+     * @param buffer         Pixels to modify
+     * @param hueAngle       Hue value to keep, represented by an angle on the hue wheel [0;360]
+     * @param toleranceAngle Colors in range "hueAngle" +/- this angle are kept.
+     */
+    public synchronized void keepColor(PixelBuffer buffer, float hueAngle, float toleranceAngle) {
+        hueAngle = hueAngle % 360f;
+        toleranceAngle = toleranceAngle % 180f;
+        apply(buffer, "keep:" + hueAngle + ":" + toleranceAngle, KEEP_COLOR, hueAngle, toleranceAngle);
+    }
+
+    /**
+     * Apply with the table of the parameters when it is worth it, else compute each pixel.
+     */
+    private void apply(PixelBuffer buffer, String key, int operation, float hue, float tolerance) {
+        Table table = tables.get(key);
+        if (table != null) {
+            hits++;
+        } else {
+            misses++;
+            //a table is only built for parameters coming back, on a buffer paying at least the cost of a page:
+            if (seen.remove(key) != null && buffer.size() >= PAGE_SIZE) {
+                table = new Table(operation, hue, tolerance);
+                tables.put(key, table);
+            } else {
+                seen.put(key, Boolean.TRUE);
+            }
+        }
+        if (table == null || buffer.size() < PAGE_SIZE) {
+            applyDirect(buffer, operation, hue, tolerance);
+            return;
+        }
+
+        int[] pixels = buffer.getPixels();
+        int[][] pages = table.pages;
+        float[] hsv = new float[3];
+        boolean full = false; //no room for more pages of this table during this call.
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                int px = pixels[i];
+                int[] page = pages[(px >> PAGE_BITS) & 0xFFF];
+                if (page == null && !full) {
+                    if (makeRoom(table))
+                        page = build(table, (px >> PAGE_BITS) & 0xFFF);
+                    else
+                        full = true;
+                }
+                //tables are computed with alpha 0, alpha bits are just added.
+                pixels[i] = page != null ? (px & 0xFF000000) | page[px & PAGE_MASK] : (px & 0xFF000000) | compute(operation, hue, tolerance, px, hsv);
+            }
+        }
+    }
+
+    private static void applyDirect(PixelBuffer buffer, int operation, float hue, float tolerance) {
+        int[] pixels = buffer.getPixels();
+        float[] hsv = new float[3];
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                int px = pixels[i];
+                pixels[i] = (px & 0xFF000000) | compute(operation, hue, tolerance, px, hsv);
+            }
+        }
+    }
+
+    /**
+     * @return Result of the effect on the RGB bits of the pixel, with alpha 0.
+     */
+    private static int compute(int operation, float hue, float tolerance, int px, float[] hsv) {
+        px &= 0xFFFFFF;
+        switch (operation) {
+            case COLORIZE:
+                return PointKernels.hue(px, hue, false, hsv);
+            case COLOR_SHIFT:
+                return PointKernels.hue(px, hue, true, hsv);
+            default:
+                return PointKernels.keepColor(px, hue, tolerance, hsv);
+        }
+    }
+
+    /**
+     * Compute a page of a table.
+     */
+    private int[] build(Table table, int index) {
+        long start = System.nanoTime();
+        int[] page = new int[PAGE_SIZE];
+        float[] hsv = new float[3];
+        int first = index << PAGE_BITS;
+        for (int c = 0; c < PAGE_SIZE; c++)
+            page[c] = compute(table.operation, table.hue, table.tolerance, first | c, hsv);
+        table.pages[index] = page;
+        table.pageCount++;
+        memoryUsed += PAGE_BYTES;
+        pagesBuilt++;
+        buildTime += System.nanoTime() - start;
+        return page;
+    }
+
+    /**
+     * Free memory for one more page by removing least recently used tables, the current table is never removed.
+     *
+     * @return False if there is no room for a page of the current table.
+     */
+    private boolean makeRoom(Table current) {
+        Iterator<Table> iterator = tables.values().iterator();
+        while (memoryUsed + PAGE_BYTES > memoryBudget && iterator.hasNext()) {
+            Table table = iterator.next();
+            if (table != current) {
+                drop(table);
+                iterator.remove();
+            }
+        }
+        return memoryUsed + PAGE_BYTES <= memoryBudget;
+    }
+
+    private void drop(Table table) {
+        for (int i = 0; i < table.pages.length && table.pageCount > 0; i++) {
+            if (table.pages[i] != null) {
+                table.pages[i] = null;
+                table.pageCount--;
+                memoryUsed -= PAGE_BYTES;
+                pagesEvicted++;
+            }
+        }
+    }
+
+    /**
+     * Remove all tables.
+     */
+    public synchronized void clear() {
+        for (Table table : tables.values())
+            drop(table);
+        tables.clear();
+        seen.clear();
+    }
+
+    /**
+     * @param memoryBudget New maximum memory used by tables, in bytes. Tables are removed when the next page is built.
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return Maximum memory used by tables, in bytes.
+     */
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return Memory currently used by tables, in bytes.
+     */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * @return Number of effect calls which found the table of their parameters already in cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of effect calls which found no table of their parameters (computed directly or with a new table).
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Number of pages computed since creation or last reset.
+     */
+    public synchronized long getPagesBuilt() {
+        return pagesBuilt;
+    }
+
+    /**
+     * @return Number of pages removed to respect the memory budget.
+     */
+    public synchronized long getPagesEvicted() {
+        return pagesEvicted;
+    }
+
+    /**
+     * @return Total time spent to compute pages, in nanoseconds.
+     */
+    public synchronized long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * Set all statistics to zero, tables are kept.
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        pagesBuilt = 0;
+        pagesEvicted = 0;
+        buildTime = 0;
+    }
+}
@@ -0,0 +1,175 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Convolution kernel of float weights, with odd width and height, centered on the computed pixel.
+ * When the kernel is the product of a column and a row (rank 1, like a Gaussian or Sobel kernel), they are found at creation:
+ * {@link Convolution} then does a horizontal pass and a vertical pass, width + height operations per pixel instead of width * height.
+ */
+public class Kernel {
+
+    private final int width;
+    private final int height;
+    private final float[] weights;
+    private final float[] column; //null if not separable.
+    private final float[] row;
+
+    /**
+     * @param width   Number of columns, odd.
+     * @param height  Number of rows, odd.
+     * @param weights Weights row by row, width * height values, copied.
+     */
+    public Kernel(int width, int height, float... weights) {
+        if (width < 1 || height < 1 || width % 2 == 0 || height % 2 == 0)
+            throw new IllegalArgumentException("Kernel dimensions must be odd: " + width + "x" + height);
+        if (weights.length != width * height)
+            throw new IllegalArgumentException("Kernel needs " + width * height + " weights");
+        this.width = width;
+        this.height = height;
+        this.weights = weights.clone();
+
+        //rank 1 decomposition from the largest weight: K[i][j] = K[i][c] * K[r][j] / K[r][c]
+        int pivot = 0;
+        for (int i = 1; i < weights.length; i++)
+            if (Math.abs(weights[i]) > Math.abs(weights[pivot]))
+                pivot = i;
+        float max = Math.abs(weights[pivot]);
+        float[] column = new float[height];
+        float[] row = new float[width];
+        for (int i = 0; i < height; i++)
+            column[i] = weights[i * width + pivot % width];
+        for (int j = 0; j < width; j++)
+            row[j] = max == 0f ? 0f : weights[pivot / width * width + j] / weights[pivot];
+        boolean separable = max != 0f;
+        for (int i = 0; i < height && separable; i++)
+            for (int j = 0; j < width && separable; j++)
+                separable = Math.abs(column[i] * row[j] - weights[i * width + j]) <= max * 1e-5f;
+        this.column = separable ? column : null;
+        this.row = separable ? row : null;
+    }
+
+    /**
+     * Kernel which is the product of a column and a row, it is always separable.
+     *
+     * @param column Vertical weights, odd length.
+     * @param row    Horizontal weights, odd length.
+     * @return The kernel column * row.
+     */
+    public static Kernel separable(float[] column, float[] row) {
+        float[] weights = new float[column.length * row.length];
+        for (int i = 0; i < column.length; i++)
+            for (int j = 0; j < row.length; j++)
+                weights[i * row.length + j] = column[i] * row[j];
+        return new Kernel(row.length, column.length, weights);
+    }
+
+    /**
+     * Gaussian blur kernel, weights are cut at 3 sigma and normalized.
+     *
+     * @param sigma Standard deviation in pixels, 0 or less gives the identity.
+     * @return Separable kernel of size 2 * ceil(3 * sigma) + 1.
+     */
+    public static Kernel gaussian(double sigma) {
+        float[] weights = gaussianWeights(sigma);
+        return separable(weights, weights);
+    }
+
+    /**
+     * @param sigma Standard deviation in pixels, 0 or less gives the identity.
+     * @return Normalized weights of size 2 * ceil(3 * sigma) + 1.
+     */
+    static float[] gaussianWeights(double sigma) {
+        if (sigma <= 0)
+            return new float[]{1f};
+        int radius = (int) Math.ceil(3 * sigma);
+        double[] weights = new double[2 * radius + 1];
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            weights[i + radius] = Math.exp(-(double) (i * i) / (2 * sigma * sigma));
+            sum += weights[i + radius];
+        }
+        float[] normalized = new float[weights.length];
+        for (int i = 0; i < weights.length; i++)
+            normalized[i] = (float) (weights[i] / sum);
+        return normalized;
+    }
+
+    /**
+     * Sharpen kernel: the pixel plus amount times its difference with its 4 neighbours.
+     *
+     * @param amount Strength, 0 gives the identity.
+     * @return 3x3 kernel, not separable.
+     */
+    public static Kernel sharpen(double amount) {
+        float a = (float) amount;
+        return new Kernel(3, 3,
+                0f, -a, 0f,
+                -a, 1f + 4f * a, -a,
+                0f, -a, 0f);
+    }
+
+    /**
+     * @return Horizontal Sobel gradient kernel (3x3, separable).
+     */
+    public static Kernel sobelX() {
+        return separable(new float[]{1f, 2f, 1f}, new float[]{-1f, 0f, 1f});
+    }
+
+    /**
+     * @return Vertical Sobel gradient kernel (3x3, separable).
+     */
+    public static Kernel sobelY() {
+        return separable(new float[]{-1f, 0f, 1f}, new float[]{1f, 2f, 1f});
+    }
+
+    /**
+     * Emboss kernel: edges look like a relief, uniform areas keep their color (weights sum to 1).
+     *
+     * @return 3x3 kernel, not separable.
+     */
+    public static Kernel emboss() {
+        return new Kernel(3, 3,
+                -2f, -1f, 0f,
+                -1f, 1f, 1f,
+                0f, 1f, 2f);
+    }
+
+    /**
+     * @return Number of columns.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Number of rows.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Largest half size, margin of pixels read around each pixel.
+     */
+    public int getRadius() {
+        return Math.max(width, height) / 2;
+    }
+
+    /**
+     * @return True if the kernel is the product of a column and a row.
+     */
+    public boolean isSeparable() {
+        return column != null;
+    }
+
+    float[] getWeights() {
+        return weights;
+    }
+
+    float[] getColumn() {
+        return column;
+    }
+
+    float[] getRow() {
+        return row;
+    }
+}
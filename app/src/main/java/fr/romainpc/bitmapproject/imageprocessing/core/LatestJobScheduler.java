@@ -0,0 +1,295 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Run jobs one at a time on a background thread, only the latest submitted job matters (previews of a slider).
+ * A job waiting to start is replaced by a newer one (dropped), a running job is cancelled when a newer one is submitted:
+ * its {@link Token} says it is cancelled and its result is not delivered.
+ * Results are delivered with the result executor, for example the UI thread.
+ * A job can also {@link #publish(Token, Object)} intermediate results, to show a coarse result first and refine it while no newer job comes.
+ *
+ * @param <T> Type of the result of jobs.
+ */
+public class LatestJobScheduler<T> {
+
+    /**
+     * Work to compute in background.
+     */
+    public interface Job<T> {
+        /**
+         * @param token Check it between long steps, the result of a cancelled job is not used.
+         * @return The result, null to deliver nothing.
+         */
+        T compute(Token token);
+    }
+
+    /**
+     * Receive results, called by the result executor.
+     */
+    public interface Listener<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * Cancellation state of a job.
+     */
+    public static class Token {
+        private volatile boolean cancelled;
+
+        /**
+         * @return True if a newer job was submitted or the scheduler was cancelled.
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static class Entry<T> {
+        private final Job<T> job;
+        private final Listener<T> listener;
+        private final Token token = new Token();
+        private final long generation;
+
+        private Entry(Job<T> job, Listener<T> listener, long generation) {
+            this.job = job;
+            this.listener = listener;
+            this.generation = generation;
+        }
+    }
+
+    private final ExecutorService worker;
+    private final Executor resultExecutor;
+
+    private Entry<T> waiting;
+    private Entry<T> running;
+    private boolean draining;
+    //changed by each submit and cancel, results of entries of an older generation are not delivered:
+    private long generation;
+
+    private long submitted;
+    private long completed;
+    private long dropped;
+    private long cancelled;
+    private int maxQueueDepth;
+    private long burstStart;
+    private boolean firstFrameDelivered = true;
+    private long lastTimeToFirstFrame = -1;
+
+    /**
+     * @param resultExecutor Executor delivering results, must run tasks in submission order (the UI thread).
+     */
+    public LatestJobScheduler(Executor resultExecutor) {
+        this.resultExecutor = resultExecutor;
+        worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LatestJobScheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submit a job, replacing the waiting job and cancelling the running one.
+     *
+     * @param job      Work to compute in background.
+     * @param listener Receive the result if the job is not cancelled.
+     */
+    public synchronized void submit(Job<T> job, Listener<T> listener) {
+        submitted++;
+        if (waiting == null && running == null) {
+            //start of a burst of jobs: measure time until its first result.
+            burstStart = System.nanoTime();
+            firstFrameDelivered = false;
+        }
+        if (waiting != null) {
+            waiting.token.cancelled = true;
+            dropped++;
+        }
+        if (running != null && !running.token.cancelled) {
+            running.token.cancelled = true;
+            cancelled++;
+        }
+        waiting = new Entry<>(job, listener, ++generation);
+        maxQueueDepth = Math.max(maxQueueDepth, getQueueDepth());
+        if (!draining) {
+            draining = true;
+            worker.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            });
+        }
+    }
+
+    /**
+     * Compute waiting jobs until there is none, in the worker thread.
+     */
+    private void drain() {
+        while (true) {
+            final Entry<T> entry;
+            synchronized (this) {
+                entry = waiting;
+                waiting = null;
+                running = entry;
+                if (entry == null) {
+                    draining = false;
+                    notifyAll();
+                    return;
+                }
+            }
+            T result = null;
+            boolean computed = false;
+            boolean stopped = true; //true until the job ends normally or with an exception.
+            try {
+                if (!entry.token.cancelled)
+                    result = entry.job.compute(entry.token);
+                computed = true;
+                stopped = false;
+            } catch (RuntimeException e) {
+                //a failed job delivers nothing, next jobs are still computed.
+                stopped = false;
+            } finally {
+                synchronized (this) {
+                    running = null;
+                    if (computed && !entry.token.cancelled)
+                        completed++;
+                    //an error stops this drain, the next submit starts another one:
+                    if (stopped)
+                        draining = false;
+                    notifyAll();
+                }
+            }
+            if (result != null && !entry.token.cancelled)
+                post(entry, result);
+        }
+    }
+
+    private void post(final Entry<T> entry, final T result) {
+        resultExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                //checked again in deliver: a newer job could have been submitted while waiting for the result executor.
+                deliver(entry, result);
+            }
+        });
+    }
+
+    /**
+     * Deliver an intermediate result of the running job (a coarse preview before the final one), with the listener of the job.
+     * Nothing is delivered if the job is cancelled.
+     *
+     * @param token  Token given to the running job.
+     * @param result Intermediate result.
+     */
+    public void publish(Token token, T result) {
+        Entry<T> entry;
+        synchronized (this) {
+            if (running == null || running.token != token || token.cancelled)
+                return;
+            entry = running;
+        }
+        post(entry, result);
+    }
+
+    private void deliver(Entry<T> entry, T result) {
+        synchronized (this) {
+            //a finished job is not cancelled by its token anymore, but by the generation:
+            if (entry.token.cancelled || entry.generation != generation)
+                return;
+            if (!firstFrameDelivered) {
+                firstFrameDelivered = true;
+                lastTimeToFirstFrame = System.nanoTime() - burstStart;
+            }
+        }
+        entry.listener.onResult(result);
+    }
+
+    /**
+     * Cancel the waiting and running jobs, and wait for the end of the running job.
+     * After this call, no result of previous jobs will be delivered, even the ones already given to the result executor,
+     * and the scheduler doesn't use anything given by jobs.
+     *
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public synchronized void cancelAndWait() throws InterruptedException {
+        generation++;
+        if (waiting != null) {
+            waiting.token.cancelled = true;
+            waiting = null;
+            dropped++;
+        }
+        if (running != null && !running.token.cancelled) {
+            running.token.cancelled = true;
+            cancelled++;
+        }
+        while (running != null)
+            wait();
+    }
+
+    /**
+     * Stop the background thread, jobs can't be submitted anymore.
+     */
+    public synchronized void shutdown() {
+        if (waiting != null)
+            waiting.token.cancelled = true;
+        if (running != null)
+            running.token.cancelled = true;
+        worker.shutdown();
+    }
+
+    /**
+     * @return Number of jobs waiting or running (0, 1 or 2).
+     */
+    public synchronized int getQueueDepth() {
+        return (waiting != null ? 1 : 0) + (running != null ? 1 : 0);
+    }
+
+    /**
+     * @return Maximum queue depth since creation.
+     */
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return Number of submitted jobs.
+     */
+    public synchronized long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return Number of jobs computed until the end without being cancelled.
+     */
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return Number of jobs replaced before starting (dropped slider ticks).
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return Number of running jobs cancelled by a newer job.
+     */
+    public synchronized long getCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return Time between the first job submitted to an idle scheduler and the delivery of the first result, in nanoseconds. -1 if no result yet.
+     */
+    public synchronized long getLastTimeToFirstFrame() {
+        return lastTimeToFirstFrame;
+    }
+}
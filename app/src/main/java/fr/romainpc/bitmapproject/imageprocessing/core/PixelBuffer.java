@@ -0,0 +1,168 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Rectangle of ARGB pixels stored in an int array, independent of android classes.
+ * Pixel (x, y) is at index offset + y * stride + x, so a buffer can be a view on a part of a bigger array.
+ */
+public class PixelBuffer {
+
+    private final int[] pixels;
+    private final int width;
+    private final int height;
+    private final int offset;
+    private final int stride;
+
+    /**
+     * Allocate a new buffer, all pixels are transparent black.
+     *
+     * @param width  Width in pixels.
+     * @param height Height in pixels.
+     */
+    public PixelBuffer(int width, int height) {
+        this(new int[width * height], width, height);
+    }
+
+    /**
+     * Wrap an array of pixels stored row after row, without copy.
+     *
+     * @param pixels Pixels in ARGB format.
+     * @param width  Width in pixels.
+     * @param height Height in pixels.
+     */
+    public PixelBuffer(int[] pixels, int width, int height) {
+        this(pixels, 0, width, width, height);
+    }
+
+    /**
+     * Wrap a part of an array of pixels, without copy.
+     *
+     * @param pixels Pixels in ARGB format.
+     * @param offset Index of the first pixel (top left).
+     * @param stride Number of array entries between the beginning of two rows, at least width.
+     * @param width  Width in pixels.
+     * @param height Height in pixels.
+     */
+    public PixelBuffer(int[] pixels, int offset, int stride, int width, int height) {
+        if (width < 0 || height < 0 || stride < width || offset < 0)
+            throw new IllegalArgumentException("Invalid buffer dimensions");
+        if (height > 0 && width > 0 && offset + (long) (height - 1) * stride + width > pixels.length)
+            throw new IllegalArgumentException("Array too small for buffer dimensions");
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return Backing array, shared with the buffer.
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return Width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Index of the first pixel in the backing array.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Number of array entries between the beginning of two rows.
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * @return Number of pixels (width x height).
+     */
+    public int size() {
+        return width * height;
+    }
+
+    /**
+     * @return True if rows follow each other without gap from index 0, pixel i is then at index i.
+     */
+    public boolean isCompact() {
+        return offset == 0 && stride == width;
+    }
+
+    /**
+     * @param x Column.
+     * @param y Row.
+     * @return Index of the pixel in the backing array.
+     */
+    public int index(int x, int y) {
+        return offset + y * stride + x;
+    }
+
+    /**
+     * @param x Column.
+     * @param y Row.
+     * @return ARGB color of the pixel.
+     */
+    public int get(int x, int y) {
+        return pixels[offset + y * stride + x];
+    }
+
+    /**
+     * @param x     Column.
+     * @param y     Row.
+     * @param color New ARGB color of the pixel.
+     */
+    public void set(int x, int y, int color) {
+        pixels[offset + y * stride + x] = color;
+    }
+
+    /**
+     * @return A compact copy of the buffer, with its own array.
+     */
+    public PixelBuffer copy() {
+        PixelBuffer copy = new PixelBuffer(width, height);
+        copyTo(copy);
+        return copy;
+    }
+
+    /**
+     * Copy all pixels in another buffer of same dimensions.
+     *
+     * @param destination Buffer to modify.
+     */
+    public void copyTo(PixelBuffer destination) {
+        if (destination.width != width || destination.height != height)
+            throw new IllegalArgumentException("Buffers dimensions differ");
+        for (int y = 0; y < height; y++)
+            System.arraycopy(pixels, offset + y * stride, destination.pixels, destination.offset + y * destination.stride, width);
+    }
+
+    /**
+     * View on a rectangle of this buffer, sharing the same array.
+     *
+     * @param x      Left column of the rectangle.
+     * @param y      Top row of the rectangle.
+     * @param width  Width of the rectangle.
+     * @param height Height of the rectangle.
+     * @return A buffer sharing pixels with this one.
+     */
+    public PixelBuffer region(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height)
+            throw new IllegalArgumentException("Region out of buffer");
+        return new PixelBuffer(pixels, index(x, y), stride, width, height);
+    }
+}
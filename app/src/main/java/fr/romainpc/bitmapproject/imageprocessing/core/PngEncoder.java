@@ -0,0 +1,288 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG writer compressing strips of rows in parallel, for big images where the compression is much longer than the filtering.
+ * Each strip is filtered (Paeth) and deflated alone, ended by a sync flush: the compressed strips one after the other are one valid zlib stream,
+ * written as one IDAT chunk per strip. Strips are written as soon as a group of strips is compressed, so the whole file is never in memory.
+ * <p>
+ * Deflaters and buffers of strips are reused from an image to the next one. An encoder is used by one thread at a time.
+ */
+public class PngEncoder {
+
+    /**
+     * Default zlib level, a good compromise between size and speed for photos.
+     */
+    public static final int DEFAULT_LEVEL = 6;
+
+    /**
+     * Maximum bytes of filtered rows compressed at the same time, it limits the memory used by strips.
+     */
+    private static final int GROUP_BYTES = 8 * 1024 * 1024;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int ADLER_BASE = 65521;
+
+    /**
+     * Rows of the image filtered then compressed, with its reused buffers.
+     */
+    private static class Strip {
+        private Deflater deflater;
+        private byte[] filtered = new byte[0];
+        private byte[] up = new byte[0];
+        private byte[] row = new byte[0];
+        private byte[] compressed = new byte[0];
+        private int compressedLength;
+        private int firstRow;
+        private int rawLength;
+        private long adler;
+    }
+
+    private final int level;
+    private final TiledExecutor executor;
+    private final ArrayDeque<Strip> free = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[8];
+
+    /**
+     * @param level    Zlib level from 0 (no compression) to 9 (smallest files).
+     * @param executor Executor compressing strips in parallel, null to compress in the calling thread.
+     */
+    public PngEncoder(int level, TiledExecutor executor) {
+        if (level < 0 || level > 9)
+            throw new IllegalArgumentException("level must be in [0;9]");
+        this.level = level;
+        this.executor = executor;
+    }
+
+    /**
+     * Write the pixels as a PNG image: RGB if all pixels are opaque, else RGBA (not premultiplied, like ARGB colors).
+     *
+     * @param buffer Pixels to write.
+     * @param output Stream receiving the file, not closed.
+     * @throws IOException If the stream fails.
+     */
+    public void encode(final PixelBuffer buffer, OutputStream output) throws IOException {
+        final int width = buffer.getWidth();
+        final int height = buffer.getHeight();
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("empty image");
+        final int channels = isOpaque(buffer) ? 3 : 4;
+
+        output.write(SIGNATURE);
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = 8; //bits per channel
+        ihdr[9] = (byte) (channels == 3 ? 2 : 6); //color type RGB or RGBA
+        writeChunk(output, "IHDR", ihdr, ihdr.length);
+
+        //zlib header, the level is only informative:
+        byte[] zlib = {0x78, (byte) (level < 2 ? 0x01 : level < 6 ? 0x5E : level == 6 ? 0x9C : 0xDA)};
+        writeChunk(output, "IDAT", zlib, 2);
+
+        final long rowBytes = 1 + (long) width * channels;
+        final int groupRows = (int) Math.max(1, Math.min(height, GROUP_BYTES / rowBytes));
+        long adler = 1;
+        for (int first = 0; first < height; first += groupRows) {
+            final int groupFirst = first;
+            final int groupEnd = Math.min(height, first + groupRows);
+            final List<Strip> strips = Collections.synchronizedList(new ArrayList<Strip>());
+            TiledExecutor.RowTask task = new TiledExecutor.RowTask() {
+                @Override
+                public void apply(int firstRow, int endRow) {
+                    Strip strip = take();
+                    compress(strip, buffer, channels, groupFirst + firstRow, groupFirst + endRow, groupFirst + endRow == height);
+                    strips.add(strip);
+                }
+            };
+            if (executor != null)
+                executor.forEachRows(groupEnd - groupFirst, task);
+            else
+                task.apply(0, groupEnd - groupFirst);
+
+            //strips in the order of rows:
+            Collections.sort(strips, new Comparator<Strip>() {
+                @Override
+                public int compare(Strip a, Strip b) {
+                    return a.firstRow - b.firstRow;
+                }
+            });
+            for (Strip strip : strips) {
+                writeChunk(output, "IDAT", strip.compressed, strip.compressedLength);
+                adler = combineAdler(adler, strip.adler, strip.rawLength);
+                release(strip);
+            }
+        }
+
+        byte[] checksum = new byte[4];
+        putInt(checksum, 0, (int) adler);
+        writeChunk(output, "IDAT", checksum, 4);
+        writeChunk(output, "IEND", checksum, 0);
+    }
+
+    private synchronized Strip take() {
+        Strip strip = free.poll();
+        return strip != null ? strip : new Strip();
+    }
+
+    private synchronized void release(Strip strip) {
+        free.push(strip);
+    }
+
+    /**
+     * Filter and deflate rows [firstRow;endRow[ in the strip, the last strip ends the deflate stream.
+     */
+    private void compress(Strip strip, PixelBuffer buffer, int channels, int firstRow, int endRow, boolean last) {
+        int width = buffer.getWidth();
+        int rowBytes = 1 + width * channels;
+        int rawLength = rowBytes * (endRow - firstRow);
+        if (strip.filtered.length < rawLength)
+            strip.filtered = new byte[rawLength];
+        byte[] raw = strip.filtered;
+        //rows before filtering, the previous one and the current one:
+        if (strip.up.length != width * channels) {
+            strip.up = new byte[width * channels];
+            strip.row = new byte[width * channels];
+        }
+        byte[] up = strip.up;
+        byte[] row = strip.row;
+        if (firstRow > 0)
+            toBytes(buffer, firstRow - 1, channels, up);
+        else
+            Arrays.fill(up, (byte) 0); //the first row has no row above.
+        for (int y = firstRow; y < endRow; y++) {
+            toBytes(buffer, y, channels, row);
+            int i = (y - firstRow) * rowBytes;
+            raw[i++] = 4; //Paeth filter
+            for (int x = 0; x < row.length; x++) {
+                int a = x >= channels ? row[x - channels] & 0xFF : 0;
+                int b = up[x] & 0xFF;
+                int c = x >= channels ? up[x - channels] & 0xFF : 0;
+                raw[i++] = (byte) (row[x] - paeth(a, b, c));
+            }
+            byte[] swap = up;
+            up = row;
+            row = swap;
+        }
+        Adler32 adler = new Adler32();
+        adler.update(raw, 0, rawLength);
+        strip.adler = adler.getValue();
+        strip.rawLength = rawLength;
+        strip.firstRow = firstRow;
+
+        if (strip.deflater == null)
+            strip.deflater = new Deflater(level, true);
+        Deflater deflater = strip.deflater;
+        deflater.reset();
+        deflater.setInput(raw, 0, rawLength);
+        if (strip.compressed.length < rawLength / 4 + 64)
+            strip.compressed = new byte[rawLength / 4 + 64];
+        int length = 0;
+        if (last)
+            deflater.finish();
+        while (true) {
+            if (length == strip.compressed.length) {
+                byte[] bigger = new byte[strip.compressed.length * 2];
+                System.arraycopy(strip.compressed, 0, bigger, 0, length);
+                strip.compressed = bigger;
+            }
+            length += deflater.deflate(strip.compressed, length, strip.compressed.length - length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+            //a flush is complete when the output is not full, the end when the deflater is finished:
+            if (last ? deflater.finished() : length < strip.compressed.length)
+                break;
+        }
+        strip.compressedLength = length;
+    }
+
+    private static void toBytes(PixelBuffer buffer, int y, int channels, byte[] row) {
+        int[] pixels = buffer.getPixels();
+        int i = buffer.index(0, y);
+        int j = 0;
+        for (int x = 0; x < buffer.getWidth(); x++) {
+            int px = pixels[i++];
+            row[j++] = (byte) (px >> 16);
+            row[j++] = (byte) (px >> 8);
+            row[j++] = (byte) px;
+            if (channels == 4)
+                row[j++] = (byte) (px >>> 24);
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc)
+            return a;
+        return pb <= pc ? b : c;
+    }
+
+    private static boolean isOpaque(PixelBuffer buffer) {
+        int[] pixels = buffer.getPixels();
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++)
+                if ((pixels[i] >>> 24) != 0xFF)
+                    return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adler-32 of two consecutive parts from the Adler-32 of each part (as adler32_combine of zlib).
+     *
+     * @param adler1  Checksum of the first part.
+     * @param adler2  Checksum of the second part.
+     * @param length2 Length of the second part in bytes.
+     * @return Checksum of both parts.
+     */
+    static long combineAdler(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE)
+            sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE)
+            sum1 -= ADLER_BASE;
+        if (sum2 >= ((long) ADLER_BASE << 1))
+            sum2 -= ((long) ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE)
+            sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private void writeChunk(OutputStream output, String type, byte[] data, int length) throws IOException {
+        putInt(header, 0, length);
+        for (int i = 0; i < 4; i++)
+            header[4 + i] = (byte) type.charAt(i);
+        crc.reset();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+        output.write(header, 0, 8);
+        output.write(data, 0, length);
+        putInt(header, 0, (int) crc.getValue());
+        output.write(header, 0, 4);
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
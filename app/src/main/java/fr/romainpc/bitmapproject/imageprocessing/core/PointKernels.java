@@ -0,0 +1,167 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+/**
+ * Effects where each pixel is computed only from its own value, applied in place on pixel buffers.
+ */
+public class PointKernels {
+
+    /**
+     * Put the buffer in gray level. Adjust red green and blue value to adjust which of them will impact the more the gray level.
+     *
+     * @param buffer Pixels to modify
+     * @param red    Red proportion (between 0.0 and 1.0)
+     * @param green  Green proportion (between 0.0 and 1.0)
+     * @param blue   Blue proportion (between 0.0 and 1.0)
+     */
+    public static void grayLevel(PixelBuffer buffer, double red, double green, double blue) {
+        red = clamp(red);
+        green = clamp(green);
+        blue = clamp(blue);
+        int[] pixels = buffer.getPixels();
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                pixels[i] = grayLevel(pixels[i], red, green, blue);
+            }
+        }
+    }
+
+    /**
+     * Gray level operation on one pixel, proportions must be already in [0.0;1.0].
+     *
+     * @param px ARGB color
+     * @return The new ARGB color.
+     */
+    static int grayLevel(int px, double red, double green, double blue) {
+        int gray = (int) (red * (double) Colors.red(px) + blue * (double) Colors.blue(px) + green * (double) Colors.green(px));
+        return Colors.argb(Colors.alpha(px), gray, gray, gray);
+    }
+
+    /**
+     * Put the buffer in gray level with fixed point proportions, faster than {@link #grayLevel(PixelBuffer, double, double, double)}
+     * and within 1 of its result, see {@link GrayWeights}.
+     *
+     * @param buffer  Pixels to modify
+     * @param weights Tables of the red, green and blue proportions.
+     */
+    public static void grayLevel(PixelBuffer buffer, GrayWeights weights) {
+        int[] pixels = buffer.getPixels();
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                pixels[i] = grayLevel(pixels[i], weights);
+            }
+        }
+    }
+
+    /**
+     * Fixed point gray level operation on one pixel.
+     *
+     * @param px ARGB color
+     * @return The new ARGB color.
+     */
+    static int grayLevel(int px, GrayWeights weights) {
+        int gray = weights.gray(px);
+        return Colors.argb(Colors.alpha(px), gray, gray, gray);
+    }
+
+    /**
+     * @return The proportion limited to [0.0;1.0]
+     */
+    static double clamp(double proportion) {
+        proportion = proportion > 1.0 ? 1.0 : proportion;
+        return proportion < 0.0 ? 0.0 : proportion;
+    }
+
+    /**
+     * Colorize the buffer with the specified hue.
+     *
+     * @param buffer   Pixels to modify
+     * @param hueAngle Hue value, represented by an angle on the hue wheel [0;360]
+     */
+    public static void colorize(PixelBuffer buffer, int hueAngle) {
+        hueOperation(buffer, hueAngle, false);
+    }
+
+    /**
+     * Translate the hue of pixels.
+     *
+     * @param buffer   Pixels to modify
+     * @param hueShift Hue value, represented by an angle on the hue wheel [0;360]
+     */
+    public static void colorShift(PixelBuffer buffer, int hueShift) {
+        hueOperation(buffer, hueShift, true);
+    }
+
+    /**
+     * See {@link #colorShift(PixelBuffer, int)} and See {@link #colorize(PixelBuffer, int)}
+     *
+     * @param buffer   Pixels to modify
+     * @param hueAngle hue shift or choice
+     * @param shift    Shift hue or just replace it
+     */
+    private static void hueOperation(PixelBuffer buffer, int hueAngle, boolean shift) {
+        int[] pixels = buffer.getPixels();
+        float[] hsv = new float[3];
+        float hue = (float) hueAngle;
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                pixels[i] = hue(pixels[i], hue, shift, hsv);
+            }
+        }
+    }
+
+    /**
+     * Hue operation on one pixel.
+     *
+     * @param px    ARGB color
+     * @param hue   hue shift or choice
+     * @param shift Shift hue or just replace it
+     * @param hsv   Array of 3 floats used for the conversion, its values are overwritten.
+     * @return The new ARGB color.
+     */
+    static int hue(int px, float hue, boolean shift, float[] hsv) {
+        Colors.colorToHSV(px, hsv);
+        hsv[0] = shift ? hsv[0] + hue : hue;
+        return Colors.HSVToColor(Colors.alpha(px), hsv); // already limit values out of ranges.
+    }
+
+    /**
+     * Only conserve specific colors , other colors become gray by minimise saturation.
+     *
+     * @param buffer         Pixels to modify
+     * @param hueAngle       Hue value to keep, represented by an angle on the hue wheel [0;360]
+     * @param toleranceAngle Colors in range "hueAngle" +/- this angle are kept.
+     */
+    public static void keepColor(PixelBuffer buffer, float hueAngle, float toleranceAngle) {
+        hueAngle = hueAngle % 360f;
+        toleranceAngle = toleranceAngle % 180f;
+        int[] pixels = buffer.getPixels();
+        float[] hsv = new float[3];
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                pixels[i] = keepColor(pixels[i], hueAngle, toleranceAngle, hsv);
+            }
+        }
+    }
+
+    /**
+     * Keep color operation on one pixel.
+     *
+     * @param px             ARGB color
+     * @param hueAngle       Hue value to keep, in [0;360[
+     * @param toleranceAngle Tolerance, in [0;180[
+     * @param hsv            Array of 3 floats used for the conversion, its values are overwritten.
+     * @return The new ARGB color.
+     */
+    static int keepColor(int px, float hueAngle, float toleranceAngle, float[] hsv) {
+        Colors.colorToHSV(px, hsv);
+        float diff = Math.abs(hsv[0] - hueAngle);
+        if (!(Math.min(diff, 360 - diff) <= toleranceAngle)) {
+            hsv[1] = 0;
+        }
+        return Colors.HSVToColor(Colors.alpha(px), hsv);
+    }
+}
@@ -0,0 +1,217 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Effect computing each pixel only from its own value.
+ * Several operations can be applied in one loop on the pixels: each pixel is read once, goes through all operations and is written once.
+ * Results are the same as applying {@link PointKernels} and {@link Contrast} methods one after the other.
+ * Consecutive {@link ChannelLUT} operations are composed in one table before the loop.
+ */
+public abstract class PointOperation {
+
+    /**
+     * Operation of a table, kept apart to be composed with the next tables.
+     */
+    private static class LUTOperation extends PointOperation {
+        private final ChannelLUT lut;
+
+        private LUTOperation(ChannelLUT lut) {
+            this.lut = lut;
+        }
+
+        @Override
+        public int apply(int px, float[] hsv) {
+            return lut.apply(px);
+        }
+    }
+
+    /**
+     * @param px  ARGB color
+     * @param hsv Array of 3 floats used for HSV conversions, its values are overwritten.
+     * @return The new ARGB color.
+     */
+    public abstract int apply(int px, float[] hsv);
+
+    /**
+     * Apply operations in this order on each pixel, in one loop.
+     *
+     * @param buffer     Pixels to modify
+     * @param operations Operations to apply.
+     */
+    public static void apply(PixelBuffer buffer, List<PointOperation> operations) {
+        PointOperation[] array = compose(operations);
+        if (array.length == 1 && array[0] instanceof LUTOperation) {
+            //only tables: the loop of the table, without call per pixel.
+            ((LUTOperation) array[0]).lut.apply(buffer);
+            return;
+        }
+        int[] pixels = buffer.getPixels();
+        float[] hsv = new float[3];
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++) {
+                int px = pixels[i];
+                for (PointOperation operation : array)
+                    px = operation.apply(px, hsv);
+                pixels[i] = px;
+            }
+        }
+    }
+
+    /**
+     * @return Operations with each sequence of LUT operations replaced by one composed table.
+     */
+    static PointOperation[] compose(List<PointOperation> operations) {
+        ArrayList<PointOperation> composed = new ArrayList<>(operations.size());
+        for (PointOperation operation : operations) {
+            int last = composed.size() - 1;
+            if (operation instanceof LUTOperation && last >= 0 && composed.get(last) instanceof LUTOperation)
+                composed.set(last, new LUTOperation(((LUTOperation) composed.get(last)).lut.then(((LUTOperation) operation).lut)));
+            else
+                composed.add(operation);
+        }
+        return composed.toArray(new PointOperation[composed.size()]);
+    }
+
+    /**
+     * See {@link ChannelLUT#apply(PixelBuffer)}.
+     */
+    public static PointOperation lut(ChannelLUT lut) {
+        return new LUTOperation(lut);
+    }
+
+    /**
+     * See {@link PointKernels#grayLevel(PixelBuffer, double, double, double)}.
+     */
+    public static PointOperation grayLevel(double red, double green, double blue) {
+        final double r = PointKernels.clamp(red);
+        final double g = PointKernels.clamp(green);
+        final double b = PointKernels.clamp(blue);
+        return new PointOperation() {
+            @Override
+            public int apply(int px, float[] hsv) {
+                return PointKernels.grayLevel(px, r, g, b);
+            }
+        };
+    }
+
+    /**
+     * See {@link PointKernels#grayLevel(PixelBuffer, GrayWeights)}.
+     */
+    public static PointOperation grayLevel(final GrayWeights weights) {
+        return new PointOperation() {
+            @Override
+            public int apply(int px, float[] hsv) {
+                return PointKernels.grayLevel(px, weights);
+            }
+        };
+    }
+
+    /**
+     * See {@link PointKernels#colorize(PixelBuffer, int)}.
+     */
+    public static PointOperation colorize(int hueAngle) {
+        final float hue = (float) hueAngle;
+        return new PointOperation() {
+            @Override
+            public int apply(int px, float[] hsv) {
+                return PointKernels.hue(px, hue, false, hsv);
+            }
+        };
+    }
+
+    /**
+     * See {@link PointKernels#colorShift(PixelBuffer, int)}.
+     */
+    public static PointOperation colorShift(int hueShift) {
+        final float hue = (float) hueShift;
+        return new PointOperation() {
+            @Override
+            public int apply(int px, float[] hsv) {
+                return PointKernels.hue(px, hue, true, hsv);
+            }
+        };
+    }
+
+    /**
+     * See {@link PointKernels#keepColor(PixelBuffer, float, float)}.
+     */
+    public static PointOperation keepColor(float hueAngle, float toleranceAngle) {
+        final float hue = hueAngle % 360f;
+        final float tolerance = toleranceAngle % 180f;
+        return new PointOperation() {
+            @Override
+            public int apply(int px, float[] hsv) {
+                return PointKernels.keepColor(px, hue, tolerance, hsv);
+            }
+        };
+    }
+
+    /**
+     * See {@link Contrast#applyLuminance(PixelBuffer, int[])}.
+     */
+    public static PointOperation luminanceLUT(final int[] LUT) {
+        return new PointOperation() {
+            @Override
+            public int apply(int px, float[] hsv) {
+                return Contrast.applyLuminance(px, LUT, hsv);
+            }
+        };
+    }
+
+    /**
+     * See {@link Contrast#applyGrayLevelNatural(PixelBuffer, int[])}.
+     */
+    public static PointOperation grayLevelNaturalLUT(int[] LUT) {
+        return grayLevelNaturalLUT(LUT, null);
+    }
+
+    /**
+     * See {@link Contrast#applyGrayLevelNatural(PixelBuffer, int[], GrayWeights)}.
+     */
+    public static PointOperation grayLevelNaturalLUT(final int[] LUT, final GrayWeights natural) {
+        return new PointOperation() {
+            @Override
+            public int apply(int px, float[] hsv) {
+                return Contrast.applyGrayLevelNatural(px, LUT, natural);
+            }
+        };
+    }
+
+    /**
+     * See {@link Contrast#applyRGB(PixelBuffer, int[], int[], int[])}.
+     */
+    public static PointOperation rgbLUT(int[] LUTR, int[] LUTG, int[] LUTB) {
+        return lut(ChannelLUT.of(LUTR, LUTG, LUTB));
+    }
+
+    /**
+     * See {@link Contrast#flattenLuminance(PixelBuffer, long[], int)}.
+     */
+    public static PointOperation flattenLuminance(long[] cumu, int N) {
+        return luminanceLUT(Contrast.flatteningLUT(cumu, N));
+    }
+
+    /**
+     * See {@link Contrast#flattenGrayLevelNatural(PixelBuffer, long[], int)}.
+     */
+    public static PointOperation flattenGrayLevelNatural(long[] cumu, int N) {
+        return flattenGrayLevelNatural(cumu, N, null);
+    }
+
+    /**
+     * See {@link Contrast#flattenGrayLevelNatural(PixelBuffer, long[], int, GrayWeights)}.
+     */
+    public static PointOperation flattenGrayLevelNatural(long[] cumu, int N, GrayWeights natural) {
+        return grayLevelNaturalLUT(Contrast.flatteningLUT(cumu, N), natural);
+    }
+
+    /**
+     * See {@link Contrast#flattenRGB(PixelBuffer, long[], long[], long[], int)}.
+     */
+    public static PointOperation flattenRGB(long[] cumuR, long[] cumuG, long[] cumuB, int N) {
+        return rgbLUT(Contrast.flatteningLUT(cumuR, N), Contrast.flatteningLUT(cumuG, N), Contrast.flatteningLUT(cumuB, N));
+    }
+}
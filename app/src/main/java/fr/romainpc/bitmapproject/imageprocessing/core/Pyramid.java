@@ -0,0 +1,256 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Downscales of an image by powers of two (mipmaps), level 0 is the image itself and level k has dimensions divided by 2^k (rounded up).
+ * Each pixel of a level is the average of the 2x2 pixels of the previous level (box filter), alpha included.
+ * On odd dimensions, the last column or row averages only the existing pixels.
+ * <p>
+ * Levels are built only when asked, from the nearest finer level still in memory.
+ * When the memory used by levels exceeds the budget, levels used the least recently are removed and will be built again if needed.
+ */
+public class Pyramid {
+
+    /**
+     * Default maximum memory used by levels, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 8L * 1024 * 1024;
+
+    /**
+     * Give the pixels of level 0 when a level must be built from it.
+     */
+    public interface Source {
+        /**
+         * @return Pixels of the full resolution image, not modified by the pyramid.
+         */
+        PixelBuffer read();
+    }
+
+    private final Source source;
+    private final int width;
+    private final int height;
+    private final int levelCount;
+    private final LinkedHashMap<Integer, PixelBuffer> levels = new LinkedHashMap<>(16, 0.75f, true); //access order for LRU eviction.
+    private long memoryBudget;
+    private long memoryUsed;
+
+    private long hits;
+    private long levelsBuilt;
+    private long levelsEvicted;
+
+    /**
+     * @param width        Width of level 0 in pixels.
+     * @param height       Height of level 0 in pixels.
+     * @param source       Give pixels of level 0.
+     * @param memoryBudget Maximum memory used by levels, in bytes (level 0 is not kept).
+     */
+    public Pyramid(int width, int height, Source source, long memoryBudget) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid image dimensions");
+        this.width = width;
+        this.height = height;
+        this.source = source;
+        this.memoryBudget = memoryBudget;
+        int count = 1;
+        //last level has 1 pixel on its biggest side:
+        for (int size = Math.max(width, height); size > 1; size = (size + 1) / 2)
+            count++;
+        levelCount = count;
+    }
+
+    /**
+     * @return Number of levels, the last one is 1 pixel wide or high.
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @param level Level index.
+     * @return Width of the level in pixels.
+     */
+    public int getLevelWidth(int level) {
+        return scale(width, level);
+    }
+
+    /**
+     * @param level Level index.
+     * @return Height of the level in pixels.
+     */
+    public int getLevelHeight(int level) {
+        return scale(height, level);
+    }
+
+    private static int scale(int size, int level) {
+        for (int i = 0; i < level; i++)
+            size = (size + 1) / 2;
+        return size;
+    }
+
+    /**
+     * Find the most detailed level fitting in required dimensions.
+     *
+     * @param maxWidth  Maximum width in pixels, 0 for no limit.
+     * @param maxHeight Maximum height in pixels, 0 for no limit.
+     * @return Level index, the last level if no level fits.
+     */
+    public int levelFor(int maxWidth, int maxHeight) {
+        int level = 0;
+        while (level < levelCount - 1
+                && ((maxWidth > 0 && getLevelWidth(level) > maxWidth) || (maxHeight > 0 && getLevelHeight(level) > maxHeight)))
+            level++;
+        return level;
+    }
+
+    /**
+     * Give the pixels of a level, built if they are not in memory.
+     * Buffers of levels above 0 are shared by all callers and must not be modified.
+     *
+     * @param level Level index, in [0;levelCount[.
+     * @return Pixels of the level, a new read of the source for level 0.
+     */
+    public synchronized PixelBuffer getLevel(int level) {
+        if (level < 0 || level >= levelCount)
+            throw new IllegalArgumentException("Level " + level + " not in [0;" + levelCount + "[");
+        if (level == 0)
+            return source.read();
+        PixelBuffer buffer = levels.get(level);
+        if (buffer != null) {
+            hits++;
+            return buffer;
+        }
+        //start from the nearest finer level in memory:
+        int from = level - 1;
+        while (from > 0 && !levels.containsKey(from))
+            from--;
+        buffer = from == 0 ? source.read() : levels.get(from);
+        for (int l = from + 1; l <= level; l++) {
+            buffer = downscale(buffer);
+            levelsBuilt++;
+            keep(l, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Keep a level in memory, removing least recently used levels to respect the budget.
+     * A level bigger than the whole budget is not kept.
+     */
+    private void keep(int level, PixelBuffer buffer) {
+        long bytes = 4L * buffer.size();
+        if (bytes > memoryBudget)
+            return;
+        Iterator<PixelBuffer> iterator = levels.values().iterator();
+        while (memoryUsed + bytes > memoryBudget && iterator.hasNext()) {
+            memoryUsed -= 4L * iterator.next().size();
+            iterator.remove();
+            levelsEvicted++;
+        }
+        levels.put(level, buffer);
+        memoryUsed += bytes;
+    }
+
+    /**
+     * Remove all levels from memory, for example because pixels of the source changed.
+     */
+    public synchronized void clear() {
+        levels.clear();
+        memoryUsed = 0;
+    }
+
+    /**
+     * Change the memory budget, levels are removed if needed.
+     *
+     * @param memoryBudget Maximum memory used by levels, in bytes.
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        Iterator<PixelBuffer> iterator = levels.values().iterator();
+        while (memoryUsed > memoryBudget && iterator.hasNext()) {
+            memoryUsed -= 4L * iterator.next().size();
+            iterator.remove();
+            levelsEvicted++;
+        }
+    }
+
+    /**
+     * @return Maximum memory used by levels, in bytes.
+     */
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return Memory used by levels in memory, in bytes.
+     */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * @return Number of levels given without building them.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of levels built (a level can be built again after eviction).
+     */
+    public synchronized long getLevelsBuilt() {
+        return levelsBuilt;
+    }
+
+    /**
+     * @return Number of levels removed to respect the budget.
+     */
+    public synchronized long getLevelsEvicted() {
+        return levelsEvicted;
+    }
+
+    /**
+     * Halve dimensions with a 2x2 box filter, each channel of a pixel is the rounded average of the pixels covered.
+     *
+     * @param src Pixels to downscale, not modified.
+     * @return New buffer of dimensions (width+1)/2 x (height+1)/2.
+     */
+    public static PixelBuffer downscale(PixelBuffer src) {
+        int srcWidth = src.getWidth();
+        int srcHeight = src.getHeight();
+        PixelBuffer dst = new PixelBuffer((srcWidth + 1) / 2, (srcHeight + 1) / 2);
+        int[] in = src.getPixels();
+        int[] out = dst.getPixels();
+        int o = 0;
+        for (int y = 0; y < dst.getHeight(); y++) {
+            int row0 = src.index(0, 2 * y);
+            //last row of an odd height is used twice, counted once:
+            boolean twoRows = 2 * y + 1 < srcHeight;
+            int row1 = twoRows ? row0 + src.getStride() : row0;
+            for (int x = 0; x < dst.getWidth(); x++) {
+                int x0 = 2 * x;
+                int x1 = x0 + 1 < srcWidth ? x0 + 1 : x0;
+                int count = (twoRows ? 2 : 1) * (x1 != x0 ? 2 : 1);
+                int a = 0, r = 0, g = 0, b = 0;
+                int p = in[row0 + x0];
+                a += p >>> 24; r += (p >> 16) & 0xFF; g += (p >> 8) & 0xFF; b += p & 0xFF;
+                if (x1 != x0) {
+                    p = in[row0 + x1];
+                    a += p >>> 24; r += (p >> 16) & 0xFF; g += (p >> 8) & 0xFF; b += p & 0xFF;
+                }
+                if (twoRows) {
+                    p = in[row1 + x0];
+                    a += p >>> 24; r += (p >> 16) & 0xFF; g += (p >> 8) & 0xFF; b += p & 0xFF;
+                    if (x1 != x0) {
+                        p = in[row1 + x1];
+                        a += p >>> 24; r += (p >> 16) & 0xFF; g += (p >> 8) & 0xFF; b += p & 0xFF;
+                    }
+                }
+                int half = count / 2;
+                out[o++] = ((a + half) / count) << 24 | ((r + half) / count) << 16 | ((g + half) / count) << 8 | (b + half) / count;
+            }
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,43 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Write tiles in a raw file of ARGB pixels: 4 bytes per pixel (big endian int), rows one after the other without header.
+ * Tiles can be written in any order, each row of a tile is written at its position in the file.
+ */
+public class RawArgbSink implements TileStream.Sink {
+
+    private final FileChannel channel;
+    private final int width;
+    private ByteBuffer row;
+
+    /**
+     * @param channel Channel open for writing, not closed by the sink.
+     * @param width   Width of the image in pixels.
+     */
+    public RawArgbSink(FileChannel channel, int width) {
+        this.channel = channel;
+        this.width = width;
+    }
+
+    @Override
+    public void write(int left, int top, PixelBuffer tile) throws IOException {
+        int bytes = tile.getWidth() * 4;
+        if (row == null || row.capacity() < bytes)
+            row = ByteBuffer.allocateDirect(bytes).order(ByteOrder.BIG_ENDIAN);
+        for (int y = 0; y < tile.getHeight(); y++) {
+            row.clear();
+            IntBuffer ints = row.asIntBuffer();
+            ints.put(tile.getPixels(), tile.index(0, y), tile.getWidth());
+            row.limit(bytes);
+            long position = ((long) (top + y) * width + left) * 4;
+            while (row.hasRemaining())
+                position += channel.write(row, position);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read regions of raw ARGB pixels, in the format written by {@link RawArgbSink}: 4 bytes per pixel (big endian int), rows without header.
+ * Nothing is decoded: pixels of a region are copied from the buffer (a file mapped in memory) directly in the buffer of the region,
+ * so a region costs only its own pixels, even for images bigger than the memory.
+ */
+public class RawArgbSource implements TileStream.Source {
+
+    private final IntBuffer pixels;
+    private final int width;
+    private final int height;
+
+    /**
+     * @param buffer Raw pixels from its position, not copied. Its position and limit are not modified.
+     * @param width  Width of the image in pixels.
+     * @param height Height of the image in pixels.
+     */
+    public RawArgbSource(ByteBuffer buffer, int width, int height) {
+        if (width <= 0 || height <= 0 || buffer.remaining() < (long) width * height * 4)
+            throw new IllegalArgumentException("buffer too small for " + width + "x" + height + " pixels");
+        this.pixels = buffer.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Map a raw file in memory, the file can be closed after: the mapping stays valid.
+     *
+     * @param file  Raw file of ARGB pixels.
+     * @param width Width of the image in pixels, the height is deduced from the length of the file.
+     * @return The source.
+     * @throws IOException If the file can't be mapped.
+     */
+    public static RawArgbSource map(File file, int width) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long rowBytes = (long) width * 4;
+            int height = (int) (channel.size() / rowBytes);
+            //a mapping is limited to 2 GB, like arrays of pixels:
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, rowBytes * height);
+            return new RawArgbSource(buffer, width, height);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return Width in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Height in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public PixelBuffer read(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || width < 0 || height < 0 || left + width > this.width || top + height > this.height)
+            throw new IllegalArgumentException("region out of the image");
+        PixelBuffer region = new PixelBuffer(width, height);
+        //duplicate for the position, reads of several threads don't share it:
+        IntBuffer ints = pixels.duplicate();
+        for (int y = 0; y < height; y++) {
+            ints.position((top + y) * this.width + left);
+            ints.get(region.getPixels(), region.index(0, y), width);
+        }
+        return region;
+    }
+
+    /**
+     * Read the image with one pixel of each square of sampleSize x sampleSize pixels, like the sample size of Android decoders.
+     *
+     * @param sampleSize Power of two, 1 to read all pixels.
+     * @return New buffer of (width / sampleSize) x (height / sampleSize) pixels, at least 1x1.
+     */
+    public PixelBuffer sample(int sampleSize) {
+        if (sampleSize <= 1)
+            return read(0, 0, width, height);
+        int w = Math.max(width / sampleSize, 1);
+        int h = Math.max(height / sampleSize, 1);
+        PixelBuffer sample = new PixelBuffer(w, h);
+        int[] dst = sample.getPixels();
+        for (int y = 0; y < h; y++) {
+            int row = y * sampleSize * width;
+            int i = sample.index(0, y);
+            for (int x = 0; x < w; x++)
+                dst[i++] = pixels.get(row + x * sampleSize);
+        }
+        return sample;
+    }
+}
@@ -0,0 +1,374 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of effects keyed by the content of the source image and the recipe of effects applied on it (a prefix of a recipe for intermediate results).
+ * The source is identified by a hash of its pixels ({@link #hash(PixelBuffer)}), so the same image loaded twice gives the same results.
+ * <p>
+ * Results are kept in memory within a budget, the least recently used are removed first.
+ * With a directory, results are also written in files within a disk budget, and read again when they are not in memory anymore.
+ */
+public class ResultCache {
+
+    /**
+     * Default maximum memory used by results, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x52435031; //"RCP1"
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SUFFIX = ".argb";
+
+    private final long memoryBudget;
+    private final File directory;
+    private final long diskBudget;
+
+    //access order for LRU eviction:
+    private final LinkedHashMap<String, PixelBuffer> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memorySize;
+    private long diskSize;
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Cache in memory only.
+     *
+     * @param memoryBudget Maximum memory used by results, in bytes.
+     */
+    public ResultCache(long memoryBudget) {
+        this(memoryBudget, null, 0);
+    }
+
+    /**
+     * Cache in memory and in files, files already in the directory are used.
+     *
+     * @param memoryBudget Maximum memory used by results, in bytes.
+     * @param directory    Directory of the files, created if needed, null to keep results only in memory.
+     * @param diskBudget   Maximum size of the files, in bytes.
+     */
+    public ResultCache(long memoryBudget, File directory, long diskBudget) {
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+        this.diskBudget = diskBudget;
+        if (directory == null)
+            return;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalArgumentException("can't create " + directory);
+        //previous files, from the least recently written:
+        File[] files = directory.listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files)
+            if (file.getName().endsWith(SUFFIX)) {
+                disk.put(file.getName(), file.length());
+                diskSize += file.length();
+            }
+        trimDisk();
+    }
+
+    /**
+     * 64 bits hash of the dimensions and the pixels, different images have different hashes except with a negligible probability.
+     *
+     * @param buffer Pixels of an image.
+     * @return The hash.
+     */
+    public static long hash(PixelBuffer buffer) {
+        int[] pixels = buffer.getPixels();
+        long h = mix(buffer.getWidth() * 0x9E3779B97F4A7C15L + buffer.getHeight());
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            int i = buffer.index(0, y);
+            for (int end = i + buffer.getWidth(); i < end; i++)
+                h = Long.rotateLeft(h ^ ((pixels[i] & 0xFFFFFFFFL) * 0xC2B2AE3D27D4EB4FL), 31) * 0x9E3779B97F4A7C15L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Final mix of MurmurHash3, each bit of the result depends on all bits.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static String key(long sourceHash, String recipe) {
+        return Long.toHexString(sourceHash) + "/" + recipe;
+    }
+
+    /**
+     * @return Name of the file of a key, the key itself is written in the file to detect collisions.
+     */
+    private static String fileName(String key) {
+        byte[] bytes = key.getBytes(UTF8);
+        long h = 0x84222325CBF29CE4L;
+        for (byte b : bytes)
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        return Long.toHexString(mix(h)) + Long.toHexString(h) + SUFFIX;
+    }
+
+    /**
+     * @return True if the result is in memory or in a file, without changing statistics.
+     */
+    public synchronized boolean contains(long sourceHash, String recipe) {
+        String key = key(sourceHash, recipe);
+        return memory.containsKey(key) || (directory != null && disk.containsKey(fileName(key)));
+    }
+
+    /**
+     * @param sourceHash Hash of the source image.
+     * @param recipe     Recipe of the effects applied on the source.
+     * @return The result, shared with the cache: it must not be modified. Null if the result is not cached.
+     */
+    public synchronized PixelBuffer get(long sourceHash, String recipe) {
+        PixelBuffer result = find(key(sourceHash, recipe));
+        if (result == null)
+            misses++;
+        return result;
+    }
+
+    /**
+     * Copy the result of the longest cached prefix of a recipe, counted as one request: a hit if a prefix is found, else a miss.
+     *
+     * @param sourceHash Hash of the source image.
+     * @param prefixes   Recipes of the prefixes, from the shortest to the longest.
+     * @param buffer     Buffer receiving the result, with the dimensions of the result.
+     * @return Index of the prefix copied in the buffer, -1 if no prefix is cached.
+     */
+    public synchronized int copyLongest(long sourceHash, List<String> prefixes, PixelBuffer buffer) {
+        for (int i = prefixes.size() - 1; i >= 0; i--) {
+            PixelBuffer result = find(key(sourceHash, prefixes.get(i)));
+            if (result != null) {
+                result.copyTo(buffer);
+                return i;
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * @return The result in memory or read from its file, null without counting a miss.
+     */
+    private PixelBuffer find(String key) {
+        PixelBuffer result = memory.get(key);
+        if (result != null) {
+            hits++;
+            return result;
+        }
+        if (directory != null && disk.containsKey(fileName(key))) {
+            result = read(key);
+            if (result != null) {
+                diskHits++;
+                keep(key, result);
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keep a copy of a result, replacing the previous result of the recipe.
+     *
+     * @param sourceHash Hash of the source image.
+     * @param recipe     Recipe of the effects applied on the source.
+     * @param result     Result, copied.
+     */
+    public synchronized void put(long sourceHash, String recipe, PixelBuffer result) {
+        String key = key(sourceHash, recipe);
+        PixelBuffer copy = result.copy();
+        keep(key, copy);
+        if (directory != null)
+            write(key, copy);
+    }
+
+    private void keep(String key, PixelBuffer result) {
+        PixelBuffer previous = memory.put(key, result);
+        if (previous != null)
+            memorySize -= (long) previous.size() * 4;
+        memorySize += (long) result.size() * 4;
+        Iterator<PixelBuffer> it = memory.values().iterator();
+        while (memorySize > memoryBudget && it.hasNext()) {
+            memorySize -= (long) it.next().size() * 4;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private void write(String key, PixelBuffer result) {
+        String name = fileName(key);
+        File temporary = new File(directory, name + ".tmp");
+        try {
+            RandomAccessFile file = new RandomAccessFile(temporary, "rw");
+            try {
+                file.setLength(0); //a file left by an interrupted write.
+                FileChannel channel = file.getChannel();
+                byte[] keyBytes = key.getBytes(UTF8);
+                ByteBuffer header = ByteBuffer.allocate(16 + keyBytes.length).order(ByteOrder.BIG_ENDIAN);
+                header.putInt(MAGIC).putInt(keyBytes.length).put(keyBytes).putInt(result.getWidth()).putInt(result.getHeight());
+                header.flip();
+                while (header.hasRemaining())
+                    channel.write(header);
+                ByteBuffer chunk = ByteBuffer.allocate(64 * 1024).order(ByteOrder.BIG_ENDIAN);
+                IntBuffer ints = chunk.asIntBuffer();
+                int[] pixels = result.getPixels(); //compact copy
+                for (int i = 0; i < pixels.length; ) {
+                    int n = Math.min(ints.capacity(), pixels.length - i);
+                    ints.clear();
+                    ints.put(pixels, i, n);
+                    chunk.clear();
+                    chunk.limit(n * 4);
+                    while (chunk.hasRemaining())
+                        channel.write(chunk);
+                    i += n;
+                }
+            } finally {
+                file.close();
+            }
+            File target = new File(directory, name);
+            if (!temporary.renameTo(target))
+                throw new IOException("can't rename " + temporary);
+            Long previous = disk.put(name, target.length());
+            if (previous != null)
+                diskSize -= previous;
+            diskSize += target.length();
+            trimDisk();
+        } catch (IOException e) {
+            //the result stays in memory only:
+            temporary.delete();
+        }
+    }
+
+    private PixelBuffer read(String key) {
+        File file = new File(directory, fileName(key));
+        try {
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+                if (bytes.getInt() != MAGIC)
+                    return null;
+                byte[] keyBytes = new byte[bytes.getInt()];
+                bytes.get(keyBytes);
+                if (!key.equals(new String(keyBytes, UTF8)))
+                    return null; //collision of file names.
+                PixelBuffer result = new PixelBuffer(bytes.getInt(), bytes.getInt());
+                bytes.asIntBuffer().get(result.getPixels());
+                return result;
+            } finally {
+                input.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            //missing or truncated file:
+            Long size = disk.remove(file.getName());
+            if (size != null)
+                diskSize -= size;
+            return null;
+        }
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+        while (diskSize > diskBudget && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            new File(directory, entry.getKey()).delete();
+            diskSize -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove all results from memory and files.
+     */
+    public synchronized void clear() {
+        memory.clear();
+        memorySize = 0;
+        if (directory != null) {
+            for (String name : disk.keySet())
+                new File(directory, name).delete();
+            disk.clear();
+            diskSize = 0;
+        }
+    }
+
+    /**
+     * @return Memory used by results in memory, in bytes.
+     */
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * @return Size of the files, in bytes.
+     */
+    public synchronized long getDiskSize() {
+        return diskSize;
+    }
+
+    /**
+     * @return Number of results in memory.
+     */
+    public synchronized int getEntryCount() {
+        return memory.size();
+    }
+
+    /**
+     * @return Number of results found in memory.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of results read from files.
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * @return Number of results not found.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Number of results removed from memory to stay within the budget.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Part of the requests which found a result, in memory or in a file, 0 without request.
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + diskHits + misses;
+        return requests == 0 ? 0 : (double) (hits + diskHits) / requests;
+    }
+}
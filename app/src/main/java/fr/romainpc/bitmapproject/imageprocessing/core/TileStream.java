@@ -0,0 +1,163 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.io.IOException;
+
+/**
+ * Cut an image too big for memory in square tiles, read, processed and written one after the other.
+ * Only one tile is in memory at a time, so the memory used only depends on the tile size and not on the image size.
+ * <p>
+ * Effects using neighbour pixels (blur) need a margin (halo) around each tile: the region read is the tile with the halo,
+ * clamped to the image, and only the tile is given to the next step. With a halo at least as big as the radius of the effects,
+ * the result is the same as the effect on the whole image.
+ */
+public class TileStream {
+
+    /**
+     * Default size of tiles in pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    /**
+     * Give pixels of a region of the image.
+     */
+    public interface Source {
+        /**
+         * @return New buffer with pixels of the region, it can be modified by the caller.
+         */
+        PixelBuffer read(int left, int top, int width, int height) throws IOException;
+    }
+
+    /**
+     * Receive the result of a tile.
+     */
+    public interface Sink {
+        /**
+         * @param left Position of the tile in the image.
+         * @param top  Position of the tile in the image.
+         * @param tile Pixels of the tile, only valid during the call.
+         */
+        void write(int left, int top, PixelBuffer tile) throws IOException;
+    }
+
+    /**
+     * Modify a region read before its tile is given to the sink.
+     */
+    public interface Processor {
+        /**
+         * @param left   Position of the region in the image.
+         * @param top    Position of the region in the image.
+         * @param region Pixels of the tile and its halo.
+         */
+        void process(int left, int top, PixelBuffer region);
+    }
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+
+    private long tilesProcessed;
+    private long maxRegionPixels;
+
+    /**
+     * @param width    Width of the image in pixels.
+     * @param height   Height of the image in pixels.
+     * @param tileSize Width and height of tiles in pixels, tiles on the right and bottom sides can be smaller.
+     */
+    public TileStream(int width, int height, int tileSize) {
+        if (width <= 0 || height <= 0 || tileSize <= 0)
+            throw new IllegalArgumentException("Invalid image or tile dimensions");
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Find the biggest tile size keeping a region (tile and halo) in a memory budget.
+     *
+     * @param memoryBudget Maximum memory for a region, in bytes.
+     * @param copies       Number of int per pixel used to process a region (buffer of the source, copies of effects).
+     * @param halo         Margin read around tiles, in pixels.
+     * @return Tile size in pixels, a multiple of 16 and at least 16.
+     */
+    public static int tileSizeFor(long memoryBudget, int copies, int halo) {
+        int side = (int) Math.sqrt(memoryBudget / (4.0 * copies));
+        return Math.max(16, (side - 2 * halo) / 16 * 16);
+    }
+
+    /**
+     * @return Number of tiles covering the image.
+     */
+    public int getTileCount() {
+        return ((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize);
+    }
+
+    /**
+     * Read each tile with its halo, process the region and give the tile to the sink, from left to right and top to bottom.
+     *
+     * @param source    Pixels of the image.
+     * @param halo      Margin read around each tile, in pixels.
+     * @param processor Called on each region, can be null.
+     * @param sink      Receive each tile after processing.
+     * @throws IOException If the source or the sink fails.
+     */
+    public void forEach(Source source, int halo, Processor processor, Sink sink) throws IOException {
+        for (int top = 0; top < height; top += tileSize) {
+            for (int left = 0; left < width; left += tileSize) {
+                int tileWidth = Math.min(tileSize, width - left);
+                int tileHeight = Math.min(tileSize, height - top);
+                //region clamped to the image, border effects of the image are the same as without tiles:
+                int regionLeft = Math.max(0, left - halo);
+                int regionTop = Math.max(0, top - halo);
+                int regionRight = Math.min(width, left + tileWidth + halo);
+                int regionBottom = Math.min(height, top + tileHeight + halo);
+
+                PixelBuffer region = source.read(regionLeft, regionTop, regionRight - regionLeft, regionBottom - regionTop);
+                if (processor != null)
+                    processor.process(regionLeft, regionTop, region);
+                PixelBuffer tile = new PixelBuffer(region.getPixels(), region.index(left - regionLeft, top - regionTop),
+                        region.getStride(), tileWidth, tileHeight);
+                sink.write(left, top, tile);
+
+                synchronized (this) {
+                    tilesProcessed++;
+                    maxRegionPixels = Math.max(maxRegionPixels, region.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Width of the image in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Height of the image in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Width and height of tiles in pixels.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return Number of tiles given to sinks since the creation.
+     */
+    public synchronized long getTilesProcessed() {
+        return tilesProcessed;
+    }
+
+    /**
+     * @return Number of pixels of the biggest region read, the memory used by a pass is proportional to it.
+     */
+    public synchronized long getMaxRegionPixels() {
+        return maxRegionPixels;
+    }
+}
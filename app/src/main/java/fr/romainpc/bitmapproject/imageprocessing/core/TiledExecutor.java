@@ -0,0 +1,137 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Run effects on several cores: the picture is split in bands of rows computed in parallel on a ForkJoinPool.
+ * Each band gives exactly the same pixels as the sequential computation, so the result doesn't depend on the parallelism.
+ */
+public class TiledExecutor {
+
+    /**
+     * Work on a band of a buffer.
+     */
+    public interface BandTask {
+        /**
+         * @param band View on some rows of the buffer, sharing its pixels.
+         */
+        void apply(PixelBuffer band);
+    }
+
+    /**
+     * Work on a range of rows.
+     */
+    public interface RowTask {
+        /**
+         * @param firstRow First row to compute.
+         * @param endRow   Row after the last row to compute.
+         */
+        void apply(int firstRow, int endRow);
+    }
+
+    /**
+     * Minimum number of rows of a band, smaller bands cost more to schedule than to compute.
+     */
+    public static final int MIN_BAND_HEIGHT = 16;
+
+    private static TiledExecutor shared;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism Number of threads, 1 computes everything in the calling thread.
+     */
+    public TiledExecutor(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * @return Executor shared by the application, with one thread per available processor.
+     */
+    public static synchronized TiledExecutor getShared() {
+        if (shared == null)
+            shared = new TiledExecutor(Runtime.getRuntime().availableProcessors());
+        return shared;
+    }
+
+    /**
+     * @return Number of threads.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Apply a task on bands of the buffer, and wait for the end of all bands.
+     *
+     * @param buffer Pixels to split.
+     * @param task   Work to do on each band, bands don't share any pixel.
+     */
+    public void forEachBand(final PixelBuffer buffer, final BandTask task) {
+        forEachRows(buffer.getHeight(), new RowTask() {
+            @Override
+            public void apply(int firstRow, int endRow) {
+                task.apply(buffer.region(0, firstRow, buffer.getWidth(), endRow - firstRow));
+            }
+        });
+    }
+
+    /**
+     * Split rows [0;height[ in ranges, apply the task on each range, and wait for the end of all ranges.
+     *
+     * @param height Number of rows.
+     * @param task   Work to do on each range.
+     */
+    public void forEachRows(int height, RowTask task) {
+        int bands = Math.min(parallelism * 4, height / MIN_BAND_HEIGHT); //more bands than threads to balance the load.
+        if (pool == null || bands <= 1) {
+            if (height > 0)
+                task.apply(0, height);
+            return;
+        }
+        pool.invoke(new Bands(task, 0, height, bands));
+    }
+
+    /**
+     * Stop the threads, the executor can't be used anymore.
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * Split rows in two until there is one band left.
+     */
+    private static class Bands extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RowTask task;
+        private final int firstRow;
+        private final int endRow;
+        private final int bands;
+
+        private Bands(RowTask task, int firstRow, int endRow, int bands) {
+            this.task = task;
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.bands = bands;
+        }
+
+        @Override
+        protected void compute() {
+            if (bands <= 1) {
+                task.apply(firstRow, endRow);
+                return;
+            }
+            int half = bands / 2;
+            int middle = firstRow + (int) ((long) (endRow - firstRow) * half / bands);
+            invokeAll(new Bands(task, firstRow, middle, half), new Bands(task, middle, endRow, bands - half));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+#pragma version(1)
+#pragma rs java_package_name(fr.romainpc.bitmapproject.imageprocessing.rsclass)
+
+// box blur in two passes, sums are kept as integers and divided once at the end (same result as Java side).
+
+rs_allocation image;  // uchar4 pixels to blur
+rs_allocation sums;   // ushort4 horizontal sums, same dimensions as image (size must be at most 257 to fit)
+rs_allocation tableX; // mapped x coordinates of the window, index j is the coordinate j - radius
+rs_allocation tableY; // mapped y coordinates of the window
+int size;             // 2 * radius + 1
+
+// in is not used, an input allocation gives the dimensions of the launch.
+ushort4 RS_KERNEL horizontal(uchar4 in, uint32_t x, uint32_t y) {
+    int4 sum = 0;
+    for (int j = 0; j < size; j++) {
+        sum += convert_int4(rsGetElementAt_uchar4(image, rsGetElementAt_int(tableX, x + j), y));
+    }
+    return convert_ushort4(sum);
+}
+
+uchar4 RS_KERNEL vertical(uchar4 in, uint32_t x, uint32_t y) {
+    int4 sum = 0;
+    for (int j = 0; j < size; j++) {
+        sum += convert_int4(rsGetElementAt_ushort4(sums, x, rsGetElementAt_int(tableY, y + j)));
+    }
+    uchar4 out = convert_uchar4(sum / (size * size));
+    out.a = in.a; // alpha is not blurred.
+    return out;
+}
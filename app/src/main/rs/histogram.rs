@@ -0,0 +1,49 @@
+#pragma version(1)
+#pragma rs java_package_name(fr.romainpc.bitmapproject.imageprocessing.rsclass)
+
+// picture to count, uchar4 pixels:
+rs_allocation image;
+int width;
+int height;
+int bandHeight;
+
+// which histograms to count (0 or 1):
+int countLuminance;
+int countGray;
+int countRGB;
+
+// partial histograms, 256 int per band. Each band only writes its own part, Java side sums bands.
+rs_allocation luminance;
+rs_allocation grayLevel;
+rs_allocation red;
+rs_allocation green;
+rs_allocation blue;
+
+static void increment(rs_allocation histogram, int index) {
+    rsSetElementAt_int(histogram, rsGetElementAt_int(histogram, index) + 1, index);
+}
+
+// in: index of the band of rows.
+void RS_KERNEL count(int band) {
+    int first = band * bandHeight;
+    int end = min(first + bandHeight, height);
+    int offset = band * 256;
+    for (int y = first; y < end; y++) {
+        for (int x = 0; x < width; x++) {
+            uchar4 px = rsGetElementAt_uchar4(image, x, y);
+            if (countLuminance) {
+                int maxi = max(max(px.r, px.g), px.b);
+                //same bin as (int) (V * 255f) with V of HSV in Java:
+                increment(luminance, offset + (int) ((maxi / 255.f) * 255.f));
+            }
+            if (countGray) {
+                increment(grayLevel, offset + (int) (0.3 * (double) px.r + 0.59 * (double) px.b + 0.11 * (double) px.g));
+            }
+            if (countRGB) {
+                increment(red, offset + px.r);
+                increment(green, offset + px.g);
+                increment(blue, offset + px.b);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+#pragma version(1)
+#pragma rs java_package_name(fr.romainpc.bitmapproject.imageprocessing.rsclass)
+
+// lookup tables of 256 int in [0;255], only lutR is used for luminance and gray level:
+rs_allocation lutR;
+rs_allocation lutG;
+rs_allocation lutB;
+
+uchar4 RS_KERNEL apply_rgb(uchar4 in) {
+    uchar4 out;
+    out.r = rsGetElementAt_int(lutR, in.r);
+    out.g = rsGetElementAt_int(lutG, in.g);
+    out.b = rsGetElementAt_int(lutB, in.b);
+    out.a = in.a;
+    return out;
+}
+
+uchar4 RS_KERNEL apply_gray(uchar4 in) {
+    uchar gray = rsGetElementAt_int(lutR, (int) (0.3 * (double) in.r + 0.59 * (double) in.b + 0.11 * (double) in.g));
+    uchar4 out;
+    out.r = gray;
+    out.g = gray;
+    out.b = gray;
+    out.a = in.a;
+    return out;
+}
+
+uchar4 RS_KERNEL apply_luminance(uchar4 in) {
+
+    //Convert pixel from RGB to HSV, same operations as Java side:
+    float r = in.r / 255.f;
+    float g = in.g / 255.f;
+    float b = in.b / 255.f;
+    float maxi = max(max(r, g), b);
+    float mini = min(min(r, g), b);
+    float h = 0;
+    float s, v;
+
+    if (maxi == mini) {
+        h = 0;
+    } else if (maxi == r) {
+        h = (60 * ((g - b) / (maxi - mini)) + 360);
+        while (h > 360){ h -= 360;}
+    } else if (maxi == g) {
+        h = (60 * ((b - r) / (maxi - mini)) + 120);
+    } else if (maxi == b) {
+        h = (60 * ((r - g) / (maxi - mini)) + 240);
+    }
+
+    if (maxi == 0) {
+        s = 0;
+    } else {
+        s = 1 - (mini / maxi);
+    }
+
+    //apply effect:
+    v = (float) rsGetElementAt_int(lutR, (int) (maxi * 255.f)) / 255.f;
+
+
+    //convert HSV to RGB:
+    int t = (int) fmod((h / 60.f), 6.f);
+    float C = s * v;
+    float X = C * (1 - fabs(fmod((h / 60), 2.f) - 1));
+    float m = v - C;
+    r = 0; g = 0; b = 0;
+    switch (t) {
+                case 0:
+                    r = C;
+                    g = X;
+                    break;
+                case 1:
+                    r = X;
+                    g = C;
+                    break;
+                case 2:
+                    g = C;
+                    b = X;
+                    break;
+                case 3:
+                    g = X;
+                    b = C;
+                    break;
+                case 4:
+                    r = X;
+                    b = C;
+                    break;
+                case 5:
+                    r = C;
+                    b = X;
+                    break;
+    }
+    uchar4 out;
+    out.r = (int) ((r + m) * 255);
+    out.g = (int) ((g + m) * 255);
+    out.b = (int) ((b + m) * 255);
+    out.a = in.a;
+    return out;
+}
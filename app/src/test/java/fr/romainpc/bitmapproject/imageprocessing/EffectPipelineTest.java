@@ -0,0 +1,223 @@
+package fr.romainpc.bitmapproject.imageprocessing;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.BorderMode;
+import fr.romainpc.bitmapproject.imageprocessing.core.BoxBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.Contrast;
+import fr.romainpc.bitmapproject.imageprocessing.core.GaussianBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.PointKernels;
+import fr.romainpc.bitmapproject.imageprocessing.core.ResultCache;
+import fr.romainpc.bitmapproject.imageprocessing.core.TileStream;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomOpaqueBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests of {@link EffectPipeline}, compared with effects applied one after the other.
+ */
+public class EffectPipelineTest {
+
+    @Test
+    public void pointEffects_fusedInOnePass() {
+        PixelBuffer expected = randomOpaqueBuffer(64, 48, 1);
+        PixelBuffer buffer = expected.copy();
+
+        PointKernels.colorShift(expected, 75);
+        PointKernels.keepColor(expected, 200, 40);
+        PointKernels.grayLevel(expected, 0.3, 0.5, 1.2);
+
+        EffectPipeline pipeline = new EffectPipeline()
+                .add(Effects.EffectType.HUE_SHIFT, 75)
+                .add(Effects.EffectType.KEEP_COLOR, 200, 40)
+                .add(Effects.EffectType.GRAY, 0.3, 0.5, 1.2);
+        pipeline.apply(buffer, null);
+        assertArrayEquals(expected.getPixels(), buffer.getPixels());
+        assertEquals(1, pipeline.getPasses());
+    }
+
+    @Test
+    public void barriers_sameAsUnfused() {
+        for (int parallelism : new int[]{1, 3}) {
+            TiledExecutor executor = parallelism > 1 ? new TiledExecutor(parallelism) : null;
+            PixelBuffer expected = randomOpaqueBuffer(70, 90, 2);
+            PixelBuffer buffer = expected.copy();
+
+            PointKernels.colorize(expected, 30);
+            List<int[]> rgb = Histograms.rgb(expected);
+            Contrast.flattenRGB(expected, Histograms.cumulate(rgb.get(0)), Histograms.cumulate(rgb.get(1)), Histograms.cumulate(rgb.get(2)), expected.size());
+            PointKernels.colorShift(expected, 120);
+            BoxBlur.blur(expected, 2, BorderMode.CLAMP);
+            Contrast.applyLuminance(expected, Contrast.linearExtensionLUT(Histograms.luminance(expected)));
+            PointKernels.keepColor(expected, 90, 60);
+
+            EffectPipeline pipeline = new EffectPipeline()
+                    .add(Effects.EffectType.HUE, 30)
+                    .add(Effects.EffectType.FLATTENING, Picture.Histogram.RGB)
+                    .add(Effects.EffectType.HUE_SHIFT, 120)
+                    .add(Effects.EffectType.SIMPLE_BLURRING, 5)
+                    .add(Effects.EffectType.LINEAR_EXTENSION, Picture.Histogram.LUMINANCE)
+                    .add(Effects.EffectType.KEEP_COLOR, 90, 60);
+            pipeline.apply(buffer, executor);
+            assertArrayEquals(expected.getPixels(), buffer.getPixels());
+            // hue | histogram | flattening + shift | blur | histogram | extension + keep color
+            assertEquals(6, pipeline.getPasses());
+            if (executor != null)
+                executor.shutdown();
+        }
+    }
+
+    @Test
+    public void uniformPicture_extensionSkipped() {
+        PixelBuffer buffer = new PixelBuffer(20, 20);
+        Arrays.fill(buffer.getPixels(), 0xFF808080);
+        new EffectPipeline().add(Effects.EffectType.LINEAR_EXTENSION, Picture.Histogram.GRAY_LEVEL_NATURAL).apply(buffer, null);
+        assertEquals(0xFF808080, buffer.get(5, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongParameters() {
+        new EffectPipeline().add(Effects.EffectType.GRAY, 0.5);
+    }
+
+    /**
+     * Apply the pipeline on the image read and written by tiles of the given size.
+     */
+    private static PixelBuffer applyByTiles(EffectPipeline pipeline, final PixelBuffer image, TileStream stream) throws IOException {
+        final PixelBuffer result = new PixelBuffer(image.getWidth(), image.getHeight());
+        pipeline.apply(stream, new TileStream.Source() {
+            @Override
+            public PixelBuffer read(int left, int top, int width, int height) {
+                PixelBuffer region = new PixelBuffer(width, height);
+                for (int y = 0; y < height; y++)
+                    System.arraycopy(image.getPixels(), image.index(left, top + y), region.getPixels(), region.index(0, y), width);
+                return region;
+            }
+        }, new TileStream.Sink() {
+            @Override
+            public void write(int left, int top, PixelBuffer tile) {
+                for (int y = 0; y < tile.getHeight(); y++)
+                    System.arraycopy(tile.getPixels(), tile.index(0, y), result.getPixels(), result.index(left, top + y), tile.getWidth());
+            }
+        }, null);
+        return result;
+    }
+
+    @Test
+    public void tiles_sameAsWholeImage() throws IOException {
+        PixelBuffer image = randomOpaqueBuffer(100, 70, 4);
+        PixelBuffer expected = image.copy();
+        EffectPipeline pipeline = new EffectPipeline()
+                .add(Effects.EffectType.SIMPLE_BLURRING, 3)
+                .add(Effects.EffectType.FLATTENING, Picture.Histogram.GRAY_LEVEL_NATURAL)
+                .add(Effects.EffectType.HUE_SHIFT, 60)
+                .add(Effects.EffectType.SIMPLE_BLURRING, 5)
+                .add(Effects.EffectType.LINEAR_EXTENSION, Picture.Histogram.RGB);
+        pipeline.apply(expected, null);
+
+        TileStream stream = new TileStream(100, 70, 16);
+        assertArrayEquals(expected.getPixels(), applyByTiles(pipeline, image, stream).getPixels());
+        // 2 histogram passes and the final pass, each on 7 x 5 tiles:
+        assertEquals(3, pipeline.getPasses());
+        assertEquals(3 * 35, stream.getTilesProcessed());
+        assertEquals(pipeline.getHalo(), Effects.blurRadius(3) + Effects.blurRadius(5));
+    }
+
+    @Test
+    public void adaptiveFlattening_tilesSameAsWholeImage() throws IOException {
+        PixelBuffer image = randomOpaqueBuffer(93, 67, 6);
+        PixelBuffer expected = image.copy();
+        EffectPipeline pipeline = new EffectPipeline()
+                .add(Effects.EffectType.SIMPLE_BLURRING, 3)
+                .add(Effects.EffectType.ADAPTIVE_FLATTENING, Picture.Histogram.LUMINANCE, 4, 2.0)
+                .add(Effects.EffectType.HUE_SHIFT, 60)
+                .add(Effects.EffectType.ADAPTIVE_FLATTENING, Picture.Histogram.RGB, 3, 0);
+        pipeline.apply(expected, TiledExecutor.getShared());
+        // blur | tile histograms | interpolation | shift | tile histograms | interpolation
+        assertEquals(6, pipeline.getPasses());
+
+        //tiles of the stream are not aligned on tiles of the flattening:
+        TileStream stream = new TileStream(93, 67, 20);
+        assertArrayEquals(expected.getPixels(), applyByTiles(pipeline, image, stream).getPixels());
+        assertEquals(3, pipeline.getPasses());
+    }
+
+    @Test
+    public void convolutions_tilesSameAsWholeImage() throws IOException {
+        PixelBuffer image = randomOpaqueBuffer(90, 61, 5);
+        PixelBuffer expected = image.copy();
+        EffectPipeline pipeline = new EffectPipeline()
+                .add(Effects.EffectType.GAUSSIAN_BLUR, 1.5)
+                .add(Effects.EffectType.SHARPEN, 0.8)
+                .add(Effects.EffectType.EMBOSS)
+                .add(Effects.EffectType.SOBEL)
+                .add(Effects.EffectType.FAST_GAUSSIAN_BLUR, 2.5);
+        pipeline.apply(expected, TiledExecutor.getShared());
+        assertEquals(5 + 1 + 1 + 1 + GaussianBlur.getHalo(2.5), pipeline.getHalo());
+        assertArrayEquals(expected.getPixels(), applyByTiles(pipeline, image, new TileStream(90, 61, 32)).getPixels());
+    }
+
+    @Test
+    public void recipe_roundTrip() {
+        EffectPipeline pipeline = new EffectPipeline()
+                .add(Effects.EffectType.GRAY, 0.3, 0.59, 0.11)
+                .add(Effects.EffectType.HUE_SHIFT, 90)
+                .add(Effects.EffectType.ADAPTIVE_FLATTENING, Picture.Histogram.LUMINANCE, 8, 2.5)
+                .add(Effects.EffectType.FLATTENING, Picture.Histogram.RGB)
+                .add(Effects.EffectType.FAST_GAUSSIAN_BLUR, 1.0 / 3)
+                .add(Effects.EffectType.SOBEL);
+        String recipe = pipeline.toRecipe();
+        assertEquals("GRAY(0.3,0.59,0.11);HUE_SHIFT(90);ADAPTIVE_FLATTENING[LUMINANCE](8,2.5);FLATTENING[RGB];FAST_GAUSSIAN_BLUR(0.3333333333333333);SOBEL", recipe);
+        assertEquals(recipe, EffectPipeline.parse(recipe).toRecipe());
+        assertEquals(recipe, EffectPipeline.parse(" " + recipe.replace(";", " ; ")).toRecipe());
+        assertEquals(0, EffectPipeline.parse("").size());
+
+        PixelBuffer expected = randomOpaqueBuffer(60, 40, 9);
+        PixelBuffer buffer = expected.copy();
+        pipeline.apply(expected, null);
+        EffectPipeline.parse(recipe).apply(buffer, null);
+        assertArrayEquals(expected.getPixels(), buffer.getPixels());
+
+        for (String invalid : new String[]{"BLUR(3)", "HUE(1,2)", "FLATTENING", "SOBEL[RGB]", "GRAY(0.3,x,1)", "HUE(3"})
+            try {
+                EffectPipeline.parse(invalid);
+                throw new AssertionError(invalid + " accepted");
+            } catch (IllegalArgumentException e) {
+                //expected.
+            }
+    }
+
+    @Test
+    public void cache_reusesLongestPrefix() {
+        PixelBuffer image = randomOpaqueBuffer(80, 60, 10);
+        long source = ResultCache.hash(image);
+        ResultCache cache = new ResultCache(ResultCache.DEFAULT_MEMORY_BUDGET);
+        EffectPipeline first = EffectPipeline.parse("GRAY(0.3,0.5,0.2);GAUSSIAN_BLUR(2);HUE_SHIFT(90)");
+        EffectPipeline second = EffectPipeline.parse("GRAY(0.3,0.5,0.2);GAUSSIAN_BLUR(2);SOBEL");
+
+        for (EffectPipeline pipeline : new EffectPipeline[]{first, second, first}) {
+            PixelBuffer expected = image.copy();
+            pipeline.apply(expected, null);
+            PixelBuffer buffer = image.copy();
+            pipeline.apply(buffer, TiledExecutor.getShared(), cache, source);
+            assertArrayEquals(expected.getPixels(), buffer.getPixels());
+        }
+        //first: nothing cached, second: the blurred gray picture, third: the whole recipe.
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getEntryCount());
+
+        //another source doesn't use these results:
+        PixelBuffer other = randomOpaqueBuffer(80, 60, 11);
+        first.apply(other, null, cache, ResultCache.hash(other));
+        assertEquals(2, cache.getMisses());
+    }
+}
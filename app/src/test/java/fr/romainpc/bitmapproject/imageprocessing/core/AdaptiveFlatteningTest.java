@@ -0,0 +1,121 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link AdaptiveFlattening}.
+ */
+public class AdaptiveFlatteningTest {
+
+    /**
+     * Dark picture with a brighter gradient, the kind of picture adaptive flattening is made for.
+     */
+    private static PixelBuffer lowLightBuffer(int width, int height, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer buffer = new PixelBuffer(width, height);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                int base = 10 + 60 * x / width;
+                buffer.set(x, y, Colors.argb(0x80 + random.nextInt(0x80), base + random.nextInt(30), base / 2 + random.nextInt(20), base + random.nextInt(10)));
+            }
+        return buffer;
+    }
+
+    @Test
+    public void oneTileWithoutClip_sameAsFlattening() {
+        PixelBuffer image = lowLightBuffer(57, 41, 1);
+
+        PixelBuffer expected = image.copy();
+        List<int[]> rgb = Histograms.rgb(expected);
+        Contrast.flattenRGB(expected, Histograms.cumulate(rgb.get(0)), Histograms.cumulate(rgb.get(1)), Histograms.cumulate(rgb.get(2)), expected.size());
+        PixelBuffer result = image.copy();
+        AdaptiveFlattening.flatten(result, AdaptiveFlattening.RGB, 1, 0, null, null);
+        assertArrayEquals(expected.getPixels(), result.getPixels());
+
+        expected = image.copy();
+        Contrast.flattenGrayLevelNatural(expected, Histograms.cumulate(Histograms.count(expected, false, true, false, null, GrayWeights.NATURAL).grayLevelNatural),
+                expected.size(), GrayWeights.NATURAL);
+        result = image.copy();
+        AdaptiveFlattening.flatten(result, AdaptiveFlattening.GRAY_LEVEL_NATURAL, 1, 0, GrayWeights.NATURAL, null);
+        assertArrayEquals(expected.getPixels(), result.getPixels());
+    }
+
+    @Test
+    public void partsAndBands_sameAsWholeImage() {
+        PixelBuffer image = lowLightBuffer(150, 110, 2);
+        for (int kind = AdaptiveFlattening.LUMINANCE; kind <= AdaptiveFlattening.RGB; kind++) {
+            PixelBuffer expected = image.copy();
+            AdaptiveFlattening.flatten(expected, kind, 5, 2.5, null, null);
+
+            PixelBuffer parallel = image.copy();
+            AdaptiveFlattening.flatten(parallel, kind, 5, 2.5, null, TiledExecutor.getShared());
+            assertArrayEquals(expected.getPixels(), parallel.getPixels());
+
+            //four parts counted then applied at their position:
+            PixelBuffer parts = image.copy();
+            AdaptiveFlattening flattening = new AdaptiveFlattening(kind, 150, 110, 5, 2.5, null);
+            int[][] rectangles = {{0, 0, 61, 47}, {61, 0, 89, 47}, {0, 47, 61, 63}, {61, 47, 89, 63}};
+            for (int[] r : rectangles)
+                flattening.count(parts.region(r[0], r[1], r[2], r[3]), r[0], r[1], null);
+            for (int[] r : rectangles)
+                flattening.apply(parts.region(r[0], r[1], r[2], r[3]), r[0], r[1], TiledExecutor.getShared());
+            assertArrayEquals(expected.getPixels(), parts.getPixels());
+        }
+    }
+
+    @Test
+    public void luminance_keepsHueAndAlpha() {
+        PixelBuffer image = lowLightBuffer(64, 64, 3);
+        PixelBuffer result = image.copy();
+        AdaptiveFlattening.flatten(result, AdaptiveFlattening.LUMINANCE, 4, AdaptiveFlattening.DEFAULT_CLIP_LIMIT, null, null);
+        float[] before = new float[3];
+        float[] after = new float[3];
+        long brightness = 0;
+        for (int i = 0; i < image.size(); i++) {
+            int px = image.getPixels()[i];
+            int flat = result.getPixels()[i];
+            assertEquals(Colors.alpha(px), Colors.alpha(flat));
+            Colors.colorToHSV(px, before);
+            Colors.colorToHSV(flat, after);
+            //rounding of channels moves the hue a little on dark pixels:
+            if (before[2] > 0.1f && after[2] > 0.1f)
+                assertTrue(Math.abs(before[0] - after[0]) < 12f || Math.abs(before[0] - after[0]) > 348f);
+            brightness += Math.max(Colors.red(flat), Math.max(Colors.green(flat), Colors.blue(flat)))
+                    - Math.max(Colors.red(px), Math.max(Colors.green(px), Colors.blue(px)));
+        }
+        //a low light picture is brightened:
+        assertTrue(brightness > 0);
+    }
+
+    @Test
+    public void clipLimit_limitsContrast() {
+        PixelBuffer image = lowLightBuffer(80, 60, 4);
+        int[] changes = new int[2];
+        double[] limits = {1.0, 0};
+        for (int k = 0; k < limits.length; k++) {
+            PixelBuffer result = image.copy();
+            AdaptiveFlattening.flatten(result, AdaptiveFlattening.GRAY_LEVEL_NATURAL, 4, limits[k], null, null);
+            for (int i = 0; i < image.size(); i++)
+                changes[k] = Math.max(changes[k], Math.abs(Colors.red(result.getPixels()[i]) - Colors.grayNatural(image.getPixels()[i])));
+        }
+        //a limit of 1 keeps LUTs near the identity, without limit the dark values are stretched on [0;255]:
+        assertTrue(changes[0] * 4 < changes[1]);
+        assertTrue(changes[1] > 100);
+    }
+
+    @Test
+    public void smallImage_lessTiles() {
+        PixelBuffer buffer = lowLightBuffer(3, 2, 5);
+        AdaptiveFlattening flattening = new AdaptiveFlattening(AdaptiveFlattening.RGB, 3, 2, 8, 2.0, null);
+        assertEquals(3, flattening.getTilesX());
+        assertEquals(2, flattening.getTilesY());
+        AdaptiveFlattening.flatten(buffer, AdaptiveFlattening.RGB, 8, 2.0, null, null);
+    }
+}
@@ -0,0 +1,101 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that effects on whole buffers don't allocate memory for each pixel.
+ * Allocated bytes are counted by the JVM for the current thread (HotSpot), the test is skipped on other JVMs.
+ */
+public class AllocationTest {
+
+    private static final int SIZE = 512;
+
+    private com.sun.management.ThreadMXBean threads;
+    private PixelBuffer buffer;
+
+    @Before
+    public void setUp() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        Random random = new Random(0);
+        buffer = new PixelBuffer(SIZE, SIZE);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = random.nextInt();
+    }
+
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Run the effect once and check it allocated less than one byte per pixel
+     * (a float[3] per pixel would be at least 16 bytes per pixel).
+     */
+    private void assertNoAllocationPerPixel(String name, Runnable effect) {
+        long before = allocated();
+        effect.run();
+        long bytes = allocated() - before;
+        assertTrue(name + " allocated " + bytes + " bytes for " + buffer.size() + " pixels", bytes < buffer.size());
+    }
+
+    @Test
+    public void hueOperations() {
+        assertNoAllocationPerPixel("colorize", new Runnable() {
+            @Override
+            public void run() {
+                PointKernels.colorize(buffer, 120);
+            }
+        });
+        assertNoAllocationPerPixel("colorShift", new Runnable() {
+            @Override
+            public void run() {
+                PointKernels.colorShift(buffer, 120);
+            }
+        });
+    }
+
+    @Test
+    public void keepColor() {
+        assertNoAllocationPerPixel("keepColor", new Runnable() {
+            @Override
+            public void run() {
+                PointKernels.keepColor(buffer, 200, 30);
+            }
+        });
+    }
+
+    @Test
+    public void luminance() {
+        assertNoAllocationPerPixel("luminance histogram", new Runnable() {
+            @Override
+            public void run() {
+                Histograms.luminance(buffer);
+            }
+        });
+        final int[] histogram = Histograms.luminance(buffer);
+        assertNoAllocationPerPixel("luminance extension", new Runnable() {
+            @Override
+            public void run() {
+                Contrast.applyLuminance(buffer, Contrast.linearExtensionLUT(histogram));
+            }
+        });
+        assertNoAllocationPerPixel("luminance flattening", new Runnable() {
+            @Override
+            public void run() {
+                Contrast.flattenLuminance(buffer, Histograms.cumulate(histogram), buffer.size());
+            }
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link BatchEngine}.
+ */
+public class BatchEngineTest {
+
+    private static List<Integer> inputs(int count) {
+        List<Integer> inputs = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            inputs.add(i);
+        return inputs;
+    }
+
+    /**
+     * Image of the input, with the number in each pixel.
+     */
+    private static PixelBuffer image(int input) {
+        PixelBuffer buffer = new PixelBuffer(20 + input % 7, 10);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = Colors.argb(0xFF, input & 0xFF, i & 0xFF, 0x40);
+        return buffer;
+    }
+
+    private static final BatchEngine.Effect INVERT = new BatchEngine.Effect() {
+        @Override
+        public PixelBuffer apply(PixelBuffer buffer) {
+            for (int i = 0; i < buffer.size(); i++)
+                buffer.getPixels()[i] ^= 0x00FFFFFF;
+            return buffer;
+        }
+    };
+
+    @Test
+    public void run_processesAllInputs() throws InterruptedException {
+        final Map<Integer, int[]> results = new ConcurrentHashMap<>();
+        BatchEngine<Integer> engine = new BatchEngine<>(new BatchEngine.Decoder<Integer>() {
+            @Override
+            public PixelBuffer decode(Integer input) {
+                return image(input);
+            }
+        }, INVERT, new BatchEngine.Encoder<Integer>() {
+            @Override
+            public void encode(Integer input, PixelBuffer result) {
+                results.put(input, result.getPixels().clone());
+            }
+        });
+        engine.setWorkers(2, 3, 2);
+        BatchEngine.Report<Integer> report = engine.run(inputs(50));
+
+        assertEquals(50, report.getSucceeded());
+        assertTrue(report.getFailures().isEmpty());
+        assertEquals(50, results.size());
+        long pixels = 0;
+        for (int input = 0; input < 50; input++) {
+            PixelBuffer expected = INVERT.apply(image(input));
+            assertArrayEquals(expected.getPixels(), results.get(input));
+            pixels += expected.size();
+        }
+        assertEquals(pixels, report.getPixels());
+        assertTrue(report.getImagesPerSecond() > 0);
+    }
+
+    @Test
+    public void run_isolatesFailures() throws InterruptedException {
+        final AtomicInteger encoded = new AtomicInteger();
+        BatchEngine<Integer> engine = new BatchEngine<>(new BatchEngine.Decoder<Integer>() {
+            @Override
+            public PixelBuffer decode(Integer input) throws IOException {
+                if (input == 3)
+                    throw new IOException("corrupted");
+                return input == 4 ? null : image(input);
+            }
+        }, new BatchEngine.Effect() {
+            @Override
+            public PixelBuffer apply(PixelBuffer buffer) {
+                if (Colors.red(buffer.getPixels()[0]) == 7)
+                    throw new IllegalStateException("effect failed");
+                return INVERT.apply(buffer);
+            }
+        }, new BatchEngine.Encoder<Integer>() {
+            @Override
+            public void encode(Integer input, PixelBuffer result) throws IOException {
+                if (input == 11)
+                    throw new IOException("disk full");
+                encoded.incrementAndGet();
+            }
+        });
+        BatchEngine.Report<Integer> report = engine.run(inputs(20));
+
+        assertEquals(16, report.getSucceeded());
+        assertEquals(16, encoded.get());
+        int[] stages = new int[20];
+        for (BatchEngine.Failure<Integer> failure : report.getFailures())
+            stages[failure.getInput()] = failure.getStage() + 1;
+        assertEquals(BatchEngine.DECODE + 1, stages[3]);
+        assertEquals(BatchEngine.DECODE + 1, stages[4]);
+        assertEquals(BatchEngine.PROCESS + 1, stages[7]);
+        assertEquals(BatchEngine.ENCODE + 1, stages[11]);
+        assertEquals(4, report.getFailures().size());
+    }
+
+    @Test(timeout = 10000)
+    public void run_isolatesErrors() throws InterruptedException {
+        BatchEngine<Integer> engine = new BatchEngine<>(new BatchEngine.Decoder<Integer>() {
+            @Override
+            public PixelBuffer decode(Integer input) {
+                if (input == 2)
+                    throw new NoClassDefFoundError("codec");
+                return image(input);
+            }
+        }, new BatchEngine.Effect() {
+            @Override
+            public PixelBuffer apply(PixelBuffer buffer) {
+                if (Colors.red(buffer.getPixels()[0]) == 5)
+                    throw new StackOverflowError();
+                return buffer;
+            }
+        }, new BatchEngine.Encoder<Integer>() {
+            @Override
+            public void encode(Integer input, PixelBuffer result) {
+                if (input % 4 == 3)
+                    throw new AssertionError("encoder failed");
+            }
+        });
+        //one worker per stage and small queues: a dead worker would block the others.
+        engine.setWorkers(1, 1, 1);
+        engine.setQueueCapacity(1);
+        BatchEngine.Report<Integer> report = engine.run(inputs(20));
+
+        assertEquals(13, report.getSucceeded());
+        assertEquals(7, report.getFailures().size());
+        int[] stages = new int[20];
+        for (BatchEngine.Failure<Integer> failure : report.getFailures())
+            stages[failure.getInput()] = failure.getStage() + 1;
+        assertEquals(BatchEngine.DECODE + 1, stages[2]);
+        assertEquals(BatchEngine.PROCESS + 1, stages[5]);
+        assertEquals(BatchEngine.ENCODE + 1, stages[3]);
+        assertEquals(BatchEngine.ENCODE + 1, stages[19]);
+    }
+
+    @Test
+    public void run_limitsImagesInMemory() throws InterruptedException {
+        final AtomicInteger inMemory = new AtomicInteger();
+        final AtomicInteger maxInMemory = new AtomicInteger();
+        BatchEngine<Integer> engine = new BatchEngine<>(new BatchEngine.Decoder<Integer>() {
+            @Override
+            public PixelBuffer decode(Integer input) {
+                int count = inMemory.incrementAndGet();
+                synchronized (maxInMemory) {
+                    maxInMemory.set(Math.max(maxInMemory.get(), count));
+                }
+                return image(input);
+            }
+        }, INVERT, new BatchEngine.Encoder<Integer>() {
+            @Override
+            public void encode(Integer input, PixelBuffer result) throws IOException {
+                //slow writing: decoders must wait for it.
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                inMemory.decrementAndGet();
+            }
+        });
+        engine.setWorkers(2, 2, 1);
+        engine.setQueueCapacity(3);
+        BatchEngine.Report<Integer> report = engine.run(inputs(60));
+
+        assertEquals(60, report.getSucceeded());
+        assertTrue(maxInMemory.get() <= 2 + 2 + 1 + 2 * 3);
+        assertTrue(report.getStageNanos(BatchEngine.ENCODE) > report.getStageNanos(BatchEngine.DECODE));
+    }
+}
@@ -0,0 +1,123 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link BoxBlur}, compared with the previous convolution based blurring.
+ */
+public class BoxBlurTest {
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    private static int[] randomPixels(long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = random.nextInt();
+        return pixels;
+    }
+
+    /**
+     * Copy of the previous Effects.convolute with a kernel of ones, without android classes.
+     * Borders of size radius are black.
+     */
+    private static int[] convolute(int[] pixels, int width, int height, int size) {
+        int[] result = new int[pixels.length];
+        float weight = 1f / (size * size);
+        int hW = size / 2;
+        for (int p = 0; p < pixels.length; p++) {
+            int r = 0, g = 0, b = 0;
+            int X = p % width;
+            int Y = p / width;
+            if (X >= hW && X < width - hW && Y >= hW && Y < height - hW) {
+                for (int i = -hW; i <= hW; i++) {
+                    for (int j = -hW; j <= hW; j++) {
+                        int px = pixels[(Y + j) * width + (X + i)];
+                        r += ((px >> 16) & 0xFF) * weight;
+                        g += ((px >> 8) & 0xFF) * weight;
+                        b += (px & 0xFF) * weight;
+                    }
+                }
+            }
+            result[p] = (pixels[p] & 0xFF000000) | (r << 16) | (g << 8) | b;
+        }
+        return result;
+    }
+
+    /**
+     * Exact average of the square around (x, y), reading pixels with the border mode.
+     */
+    private static int average(int[] pixels, int x, int y, int radius, BorderMode border, int shift) {
+        int sum = 0;
+        for (int j = -radius; j <= radius; j++)
+            for (int i = -radius; i <= radius; i++)
+                sum += (pixels[border.map(y + j, HEIGHT) * WIDTH + border.map(x + i, WIDTH)] >> shift) & 0xFF;
+        return sum / ((2 * radius + 1) * (2 * radius + 1));
+    }
+
+    @Test
+    public void interior_matchesConvolution() {
+        for (int size = 3; size <= 11; size += 2) {
+            int[] pixels = randomPixels(size);
+            int[] expected = convolute(pixels, WIDTH, HEIGHT, size);
+            int[] result = pixels.clone();
+            BoxBlur.blur(new PixelBuffer(result, WIDTH, HEIGHT), size / 2, BorderMode.CLAMP);
+            int hW = size / 2;
+            for (int y = hW; y < HEIGHT - hW; y++) {
+                for (int x = hW; x < WIDTH - hW; x++) {
+                    int p = y * WIDTH + x;
+                    assertEquals(pixels[p] >>> 24, result[p] >>> 24);
+                    for (int shift = 0; shift <= 16; shift += 8) {
+                        int exact = average(pixels, x, y, hW, BorderMode.CLAMP, shift);
+                        assertEquals(exact, (result[p] >> shift) & 0xFF);
+                        // previous convolution truncated each weighted value, so it was up to one unit darker per kernel cell.
+                        int old = (expected[p] >> shift) & 0xFF;
+                        assertTrue(Math.abs(exact - old) <= size * size);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void borders_followBorderMode() {
+        for (BorderMode border : BorderMode.values()) {
+            int[] pixels = randomPixels(42);
+            int[] result = pixels.clone();
+            int radius = 4;
+            BoxBlur.blur(new PixelBuffer(result, WIDTH, HEIGHT), radius, border);
+            for (int y = 0; y < HEIGHT; y++)
+                for (int x = 0; x < WIDTH; x++)
+                    for (int shift = 0; shift <= 16; shift += 8)
+                        assertEquals(border + " at " + x + "," + y, average(pixels, x, y, radius, border, shift), (result[y * WIDTH + x] >> shift) & 0xFF);
+        }
+    }
+
+    @Test
+    public void radiusLargerThanPicture() {
+        for (BorderMode border : BorderMode.values()) {
+            int[] pixels = randomPixels(7);
+            int[] result = pixels.clone();
+            int radius = 50;
+            BoxBlur.blur(new PixelBuffer(result, WIDTH, HEIGHT), radius, border);
+            for (int shift = 0; shift <= 16; shift += 8)
+                assertEquals(average(pixels, 3, 5, radius, border, shift), (result[5 * WIDTH + 3] >> shift) & 0xFF);
+        }
+    }
+
+    @Test
+    public void borderMode_map() {
+        assertEquals(0, BorderMode.CLAMP.map(-3, 5));
+        assertEquals(4, BorderMode.CLAMP.map(9, 5));
+        assertEquals(2, BorderMode.MIRROR.map(-3, 5));
+        assertEquals(3, BorderMode.MIRROR.map(6, 5));
+        assertEquals(2, BorderMode.WRAP.map(-3, 5));
+        assertEquals(1, BorderMode.WRAP.map(6, 5));
+    }
+}
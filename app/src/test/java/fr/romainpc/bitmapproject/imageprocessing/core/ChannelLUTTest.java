@@ -0,0 +1,87 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests of {@link ChannelLUT} and of the tables built by {@link Contrast}.
+ */
+public class ChannelLUTTest {
+
+    private static int[] randomLUT(Random random) {
+        int[] LUT = new int[ChannelLUT.SIZE];
+        for (int v = 0; v < LUT.length; v++)
+            LUT[v] = random.nextInt(256);
+        return LUT;
+    }
+
+    @Test
+    public void apply_sameAsLookups() {
+        Random random = new Random(1);
+        int[] r = randomLUT(random);
+        int[] g = randomLUT(random);
+        int[] b = randomLUT(random);
+        PixelBuffer image = randomBuffer(31, 17, 2);
+        PixelBuffer result = image.copy();
+        ChannelLUT.of(r, g, b).apply(result);
+        for (int i = 0; i < image.size(); i++) {
+            int px = image.getPixels()[i];
+            assertEquals(Colors.argb(Colors.alpha(px), r[Colors.red(px)], g[Colors.green(px)], b[Colors.blue(px)]), result.getPixels()[i]);
+        }
+    }
+
+    @Test
+    public void then_sameAsTwoTables() {
+        Random random = new Random(3);
+        ChannelLUT first = ChannelLUT.of(randomLUT(random), randomLUT(random), randomLUT(random));
+        ChannelLUT second = ChannelLUT.gamma(2.2).then(ChannelLUT.brightnessContrast(-20, 1.4));
+        PixelBuffer expected = randomBuffer(20, 20, 4);
+        PixelBuffer composed = expected.copy();
+        first.apply(expected);
+        second.apply(expected);
+        first.then(second).apply(composed);
+        assertArrayEquals(expected.getPixels(), composed.getPixels());
+
+        //the same with point operations fused in one loop:
+        PixelBuffer fused = randomBuffer(20, 20, 4);
+        PointOperation.apply(fused, Arrays.asList(PointOperation.lut(first), PointOperation.lut(ChannelLUT.gamma(2.2)), PointOperation.lut(ChannelLUT.brightnessContrast(-20, 1.4))));
+        assertArrayEquals(expected.getPixels(), fused.getPixels());
+        assertEquals(1, PointOperation.compose(Arrays.asList(PointOperation.lut(first), PointOperation.lut(second))).length);
+    }
+
+    @Test
+    public void factories() {
+        ChannelLUT identity = ChannelLUT.identity();
+        assertEquals(0x12345678, identity.apply(0x12345678));
+        assertEquals(0, ChannelLUT.gamma(2.0).get(0, 0));
+        assertEquals(255, ChannelLUT.gamma(2.0).get(1, 255));
+        assertEquals(Math.round(255 * Math.sqrt(64 / 255.0)), ChannelLUT.gamma(2.0).get(2, 64));
+        //values out of [0;255] are limited:
+        assertEquals(255, ChannelLUT.brightnessContrast(100, 2).get(0, 200));
+        assertEquals(0, ChannelLUT.brightnessContrast(-100, 2).get(0, 50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_wrongLength() {
+        ChannelLUT.of(new int[255]);
+    }
+
+    @Test
+    public void flatteningLUT_bigPicture() {
+        //16 million pixels: cumu * 255 doesn't fit in an int.
+        int N = 4096 * 4096;
+        long[] cumu = new long[256];
+        for (int v = 0; v < 256; v++)
+            cumu[v] = (long) N * (v + 1) / 256;
+        int[] LUT = Contrast.flatteningLUT(cumu, N);
+        assertEquals(0, LUT[0]);
+        assertEquals(127, LUT[127]);
+        assertEquals(255, LUT[255]);
+    }
+}
@@ -0,0 +1,128 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link Convolution} and {@link Kernel}, compared with a direct computation of each pixel.
+ */
+public class ConvolutionTest {
+
+    /**
+     * Weighted sum of each pixel with doubles, reading pixels out of the picture with the border mode.
+     */
+    private static PixelBuffer reference(PixelBuffer buffer, int kernelWidth, int kernelHeight, float[] weights, BorderMode border) {
+        PixelBuffer result = new PixelBuffer(buffer.getWidth(), buffer.getHeight());
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            for (int x = 0; x < buffer.getWidth(); x++) {
+                double[] sums = new double[3];
+                for (int i = 0; i < kernelHeight; i++) {
+                    for (int j = 0; j < kernelWidth; j++) {
+                        int px = buffer.get(border.map(x + j - kernelWidth / 2, buffer.getWidth()), border.map(y + i - kernelHeight / 2, buffer.getHeight()));
+                        double w = weights[i * kernelWidth + j];
+                        sums[0] += w * Colors.red(px);
+                        sums[1] += w * Colors.green(px);
+                        sums[2] += w * Colors.blue(px);
+                    }
+                }
+                int[] channels = new int[3];
+                for (int c = 0; c < 3; c++)
+                    channels[c] = (int) Math.round(Math.min(Math.max(sums[c], 0), 255));
+                result.set(x, y, Colors.argb(Colors.alpha(buffer.get(x, y)), channels[0], channels[1], channels[2]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Float sums can be rounded differently from doubles when a value is very close to a half.
+     */
+    private static void assertClose(PixelBuffer expected, PixelBuffer actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            int e = expected.getPixels()[i];
+            int a = actual.getPixels()[i];
+            assertEquals(Colors.alpha(e), Colors.alpha(a));
+            assertTrue(Math.abs(Colors.red(e) - Colors.red(a)) <= 1);
+            assertTrue(Math.abs(Colors.green(e) - Colors.green(a)) <= 1);
+            assertTrue(Math.abs(Colors.blue(e) - Colors.blue(a)) <= 1);
+        }
+    }
+
+    @Test
+    public void kernel_separableDetection() {
+        assertTrue(Kernel.gaussian(2.0).isSeparable());
+        assertEquals(13, Kernel.gaussian(2.0).getWidth());
+        assertTrue(Kernel.sobelX().isSeparable());
+        assertTrue(new Kernel(3, 3, 1, 2, 1, 2, 4, 2, 1, 2, 1).isSeparable());
+        assertFalse(Kernel.sharpen(1.0).isSeparable());
+        assertFalse(Kernel.emboss().isSeparable());
+        assertFalse(new Kernel(3, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0).isSeparable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void kernel_evenSize() {
+        new Kernel(2, 1, 1, 1);
+    }
+
+    @Test
+    public void convolve_sameAsReference() {
+        PixelBuffer image = randomBuffer(37, 23, 1);
+        float[] asymmetric = {0.1f, -0.3f, 0.5f, 0.2f, 1f, 0.4f, -0.2f, 0f, 0.3f, 0.1f, 0.05f, -0.1f, 0.2f, 0.3f, 0.1f};
+        Kernel[] kernels = {Kernel.gaussian(1.5), Kernel.sharpen(0.7), Kernel.emboss(), new Kernel(5, 3, asymmetric),
+                Kernel.separable(new float[]{0.2f, 0.5f, 0.3f}, new float[]{-1f, 0.5f, 2f, 0.5f, -1f})};
+        for (BorderMode border : BorderMode.values()) {
+            for (Kernel kernel : kernels) {
+                PixelBuffer result = image.copy();
+                Convolution.convolve(result, kernel, border);
+                assertClose(reference(image, kernel.getWidth(), kernel.getHeight(), kernel.getWeights(), border), result);
+
+                //same result by bands:
+                PixelBuffer parallel = image.copy();
+                Convolution.convolve(parallel, kernel, border, TiledExecutor.getShared());
+                assertArrayEquals(result.getPixels(), parallel.getPixels());
+            }
+        }
+    }
+
+    @Test
+    public void convolve_view() {
+        //a view of a part of a bigger buffer, pixels around it are not modified:
+        PixelBuffer image = randomBuffer(30, 30, 2);
+        PixelBuffer copy = image.copy();
+        PixelBuffer view = image.region(5, 4, 20, 21);
+        PixelBuffer expected = view.copy();
+        Convolution.convolve(expected, Kernel.sharpen(1.0), BorderMode.MIRROR);
+        Convolution.convolve(view, Kernel.sharpen(1.0), BorderMode.MIRROR);
+        for (int y = 0; y < 30; y++)
+            for (int x = 0; x < 30; x++)
+                if (x < 5 || x >= 25 || y < 4 || y >= 25)
+                    assertEquals(copy.get(x, y), image.get(x, y));
+                else
+                    assertEquals(expected.get(x - 5, y - 4), image.get(x, y));
+    }
+
+    @Test
+    public void gradient_uniformIsBlack() {
+        PixelBuffer buffer = new PixelBuffer(10, 10);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = 0x80123456;
+        Convolution.gradient(buffer, Kernel.sobelX(), Kernel.sobelY(), BorderMode.CLAMP, null);
+        for (int px : buffer.getPixels())
+            assertEquals(0x80000000, px);
+
+        //vertical edge: gradient of 4 * 100 on the two columns around it, limited to 255
+        for (int y = 0; y < 10; y++)
+            for (int x = 0; x < 10; x++)
+                buffer.set(x, y, x < 5 ? 0xFF000000 : 0xFF000064);
+        Convolution.gradient(buffer, Kernel.sobelX(), Kernel.sobelY(), BorderMode.CLAMP, null);
+        assertEquals(0xFF000000, buffer.get(3, 5));
+        assertEquals(0xFF0000FF, buffer.get(4, 5));
+        assertEquals(0xFF0000FF, buffer.get(5, 5));
+        assertEquals(0xFF000000, buffer.get(6, 5));
+    }
+}
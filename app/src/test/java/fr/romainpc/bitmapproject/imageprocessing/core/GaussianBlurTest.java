@@ -0,0 +1,77 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link GaussianBlur}, compared with the exact convolution of {@link Kernel#gaussian(double)}.
+ */
+public class GaussianBlurTest {
+
+    @Test
+    public void boxRadii_varianceNearSigma() {
+        for (double sigma = GaussianBlur.MIN_SIGMA; sigma < 40; sigma += 0.7) {
+            double variance = 0;
+            for (int radius : GaussianBlur.boxRadii(sigma))
+                variance += ((2 * radius + 1) * (2 * radius + 1) - 1) / 12.0;
+            //changing a box of 2 pixels changes the variance of about 2 * size / 3:
+            assertTrue(Math.abs(variance - sigma * sigma) <= 2 * (2 * sigma + 1) / 3);
+        }
+    }
+
+    @Test
+    public void blur_nearExactGaussian() {
+        PixelBuffer image = randomBuffer(160, 120, 1);
+        for (double sigma : new double[]{0.8, 1.5, 3.7, 6}) {
+            PixelBuffer exact = image.copy();
+            Convolution.convolve(exact, Kernel.gaussian(sigma), BorderMode.MIRROR);
+            PixelBuffer fast = image.copy();
+            GaussianBlur.blur(fast, sigma, BorderMode.MIRROR, null);
+            //borders are read differently by boxes and by the kernel, only the center is compared:
+            int margin = (int) Math.ceil(3 * sigma) + GaussianBlur.getHalo(sigma);
+            long sum = 0;
+            int count = 0;
+            for (int y = margin; y < 120 - margin; y++)
+                for (int x = margin; x < 160 - margin; x++) {
+                    int e = exact.get(x, y);
+                    int f = fast.get(x, y);
+                    assertEquals(Colors.alpha(e), Colors.alpha(f));
+                    int[] d = {Colors.red(e) - Colors.red(f), Colors.green(e) - Colors.green(f), Colors.blue(e) - Colors.blue(f)};
+                    for (int c : d) {
+                        assertTrue(Math.abs(c) <= 5);
+                        sum += Math.abs(c);
+                    }
+                    count += 3;
+                }
+            assertTrue(sum < count);
+        }
+    }
+
+    @Test
+    public void blur_uniformUnchanged() {
+        PixelBuffer buffer = new PixelBuffer(17, 11);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = 0x80C0FF01;
+        for (BorderMode border : BorderMode.values()) {
+            GaussianBlur.blur(buffer, 4.2, border, null);
+            for (int px : buffer.getPixels())
+                assertEquals(0x80C0FF01, px);
+        }
+    }
+
+    @Test
+    public void blur_parallelSameAsSequential() {
+        PixelBuffer image = randomBuffer(64, 203, 2);
+        for (BorderMode border : BorderMode.values()) {
+            PixelBuffer sequential = image.copy();
+            GaussianBlur.blur(sequential, 6.0, border, null);
+            PixelBuffer parallel = image.copy();
+            GaussianBlur.blur(parallel, 6.0, border, TiledExecutor.getShared());
+            assertArrayEquals(sequential.getPixels(), parallel.getPixels());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link GrayWeights}, compared with the gray level computed with doubles.
+ */
+public class GrayWeightsTest {
+
+    private static void assertWithinOne(int expected, int actual, int color) {
+        assertTrue(Integer.toHexString(color) + ": " + expected + " / " + actual, Math.abs(expected - actual) <= 1);
+    }
+
+    @Test
+    public void natural_withinOneOfDouble() {
+        //every RGB color:
+        int same = 0;
+        for (int color = 0; color < 1 << 24; color++) {
+            int expected = Colors.grayNatural(color);
+            int actual = GrayWeights.NATURAL.gray(color);
+            assertWithinOne(expected, actual, color);
+            if (expected == actual)
+                same++;
+        }
+        //almost always the same value:
+        assertTrue(same > (1 << 24) * 0.99);
+    }
+
+    @Test
+    public void proportions_withinOneOfDouble() {
+        Random random = new Random(3);
+        double[][] proportions = {{0, 0, 0}, {1, 1, 1}, {1, 0, 0}, {0.2126, 0.7152, 0.0722}, {1.5, -0.5, 0.5}};
+        for (double[] p : proportions) {
+            GrayWeights weights = new GrayWeights(p[0], p[1], p[2]);
+            double r = PointKernels.clamp(p[0]);
+            double g = PointKernels.clamp(p[1]);
+            double b = PointKernels.clamp(p[2]);
+            for (int i = 0; i < 100000; i++) {
+                int color = random.nextInt();
+                int expected = (int) (r * (double) Colors.red(color) + b * (double) Colors.blue(color) + g * (double) Colors.green(color));
+                assertWithinOne(expected, weights.gray(color), color);
+            }
+        }
+    }
+
+    @Test
+    public void kernelsAndHistograms_useTables() {
+        Random random = new Random(4);
+        PixelBuffer buffer = new PixelBuffer(60, 40);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = random.nextInt();
+        int[] expected = new int[256];
+        for (int px : buffer.getPixels())
+            expected[GrayWeights.NATURAL.gray(px)]++;
+        Histograms.Counts counts = Histograms.count(buffer, false, true, false, TiledExecutor.getShared(), GrayWeights.NATURAL);
+        for (int v = 0; v < 256; v++)
+            assertEquals(expected[v], counts.grayLevelNatural[v]);
+
+        PixelBuffer gray = buffer.copy();
+        PointKernels.grayLevel(gray, GrayWeights.NATURAL);
+        for (int i = 0; i < buffer.size(); i++) {
+            int px = buffer.getPixels()[i];
+            int value = GrayWeights.NATURAL.gray(px);
+            assertEquals(Colors.argb(Colors.alpha(px), value, value, value), gray.getPixels()[i]);
+        }
+    }
+}
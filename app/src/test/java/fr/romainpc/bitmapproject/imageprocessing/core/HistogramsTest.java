@@ -0,0 +1,88 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Local unit tests of {@link Histograms}, compared with counting loops computing each pixel with HSV conversion.
+ */
+public class HistogramsTest {
+
+    private static int[] luminanceWithHSV(PixelBuffer buffer) {
+        int[] histogram = new int[256];
+        float[] hsv = new float[3];
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            for (int x = 0; x < buffer.getWidth(); x++) {
+                Colors.colorToHSV(buffer.get(x, y), hsv);
+                histogram[(int) (hsv[2] * 255f)]++;
+            }
+        }
+        return histogram;
+    }
+
+    @Test
+    public void luminance_sameAsHSV() {
+        // every possible maximum value, with various other components.
+        PixelBuffer buffer = new PixelBuffer(256, 3);
+        for (int v = 0; v < 256; v++) {
+            buffer.set(v, 0, Colors.argb(255, v, v, v));
+            buffer.set(v, 1, Colors.argb(255, 0, v, v / 2));
+            buffer.set(v, 2, Colors.argb(255, v / 3, 0, v));
+        }
+        assertArrayEquals(luminanceWithHSV(buffer), Histograms.luminance(buffer));
+
+        buffer = randomBuffer(100, 70, 1);
+        assertArrayEquals(luminanceWithHSV(buffer), Histograms.luminance(buffer));
+    }
+
+    @Test
+    public void count_onePass() {
+        PixelBuffer buffer = randomBuffer(100, 70, 2);
+        Histograms.Counts counts = Histograms.count(buffer, true, true, true, null);
+        assertArrayEquals(luminanceWithHSV(buffer), counts.luminance);
+        int[] gray = new int[256];
+        int[] red = new int[256];
+        for (int i = 0; i < buffer.size(); i++) {
+            gray[Colors.grayNatural(buffer.getPixels()[i])]++;
+            red[Colors.red(buffer.getPixels()[i])]++;
+        }
+        assertArrayEquals(gray, counts.grayLevelNatural);
+        assertArrayEquals(red, counts.red);
+        List<int[]> rgb = Histograms.rgb(buffer);
+        assertArrayEquals(rgb.get(1), counts.green);
+        assertArrayEquals(rgb.get(2), counts.blue);
+
+        counts = Histograms.count(buffer, false, true, false, null);
+        assertNull(counts.luminance);
+        assertNull(counts.rgb());
+    }
+
+    @Test
+    public void count_parallel() {
+        TiledExecutor executor = new TiledExecutor(4);
+        try {
+            for (int height : new int[]{1, 33, 301}) {
+                PixelBuffer buffer = randomBuffer(57, height, height);
+                Histograms.Counts expected = Histograms.count(buffer, true, true, true, null);
+                Histograms.Counts result = Histograms.count(buffer, true, true, true, executor);
+                assertArrayEquals(expected.luminance, result.luminance);
+                assertArrayEquals(expected.grayLevelNatural, result.grayLevelNatural);
+                assertArrayEquals(expected.red, result.red);
+                assertArrayEquals(expected.green, result.green);
+                assertArrayEquals(expected.blue, result.blue);
+                int total = 0;
+                for (int value : result.red)
+                    total += value;
+                assertEquals(buffer.size(), total);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link History}: replay from keyframes, undo/redo and memory budget.
+ */
+public class HistoryTest {
+
+    private static final int SIZE = 8;
+    private static final long FRAME_BYTES = 4L * SIZE * SIZE;
+
+    /**
+     * Operation adding a value to all pixels.
+     */
+    private static History.Operation add(final int value) {
+        return new History.Operation() {
+            @Override
+            public void apply(PixelBuffer buffer) {
+                for (int i = 0; i < buffer.size(); i++)
+                    buffer.getPixels()[i] += value;
+            }
+        };
+    }
+
+    private static PixelBuffer filled(int value) {
+        PixelBuffer buffer = new PixelBuffer(SIZE, SIZE);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = value;
+        return buffer;
+    }
+
+    /**
+     * History of states 0, 1, ... count where pixels of state i are i, recorded with operations.
+     */
+    private static History<Integer> operations(int count, long budget, int interval) {
+        History<Integer> history = new History<>(filled(0), 0, budget, interval);
+        PixelBuffer current = filled(0);
+        for (int i = 1; i <= count; i++) {
+            add(1).apply(current);
+            history.record(current, add(1), i);
+        }
+        return history;
+    }
+
+    @Test
+    public void operations_replayedFromKeyframes() {
+        History<Integer> history = operations(9, History.DEFAULT_MEMORY_BUDGET, 4);
+        //keyframes of states 0, 4 and 8:
+        assertEquals(3, history.getKeyframeCount());
+        assertEquals(3 * FRAME_BYTES, history.getMemoryUsed());
+
+        assertEquals(9, history.pixels().getPixels()[0]);
+        assertEquals(1, history.getReplayed());
+
+        for (int state = 8; state >= 0; state--) {
+            assertEquals(Integer.valueOf(state), history.undo());
+            assertArrayEquals(filled(state).getPixels(), history.pixels().getPixels());
+        }
+        assertNull(history.undo());
+        assertFalse(history.canUndo());
+        //never more than 3 operations replayed for a state:
+        assertTrue(history.getReplayed() <= 1 + 3 * 9);
+    }
+
+    @Test
+    public void redo_appliesOperation() {
+        History<Integer> history = operations(3, History.DEFAULT_MEMORY_BUDGET, 4);
+        history.undo();
+        history.undo();
+        PixelBuffer buffer = history.pixels().copy();
+        long replayed = history.getReplayed();
+        assertEquals(Integer.valueOf(2), history.redo(buffer));
+        assertArrayEquals(filled(2).getPixels(), buffer.getPixels());
+        assertEquals(replayed + 1, history.getReplayed());
+        assertTrue(history.canRedo());
+
+        //a new state removes states which could be redone:
+        buffer.getPixels()[0] = 100;
+        history.record(buffer, null, 10);
+        assertFalse(history.canRedo());
+        assertEquals(4, history.size());
+        assertEquals(100, history.pixels().getPixels()[0]);
+
+        assertEquals(Integer.valueOf(0), history.first());
+        assertArrayEquals(filled(0).getPixels(), history.pixels().getPixels());
+    }
+
+    @Test
+    public void memoryBudget_evictsKeyframesThenOldStates() {
+        //room for 3 keyframes:
+        History<Integer> history = operations(8, 3 * FRAME_BYTES, 2);
+        assertTrue(history.getMemoryUsed() <= 3 * FRAME_BYTES);
+        assertTrue(history.getKeyframesEvicted() > 0);
+        assertEquals(9, history.size());
+        for (int state = 7; state >= 0; state--) {
+            history.undo();
+            assertArrayEquals(filled(state).getPixels(), history.pixels().getPixels());
+        }
+
+        //states without operation can only be forgotten:
+        History<Integer> snapshots = new History<>(filled(0), 0, 3 * FRAME_BYTES, 4);
+        for (int i = 1; i <= 5; i++)
+            snapshots.record(filled(i), null, i);
+        assertEquals(3 * FRAME_BYTES, snapshots.getMemoryUsed());
+        assertEquals(3, snapshots.getStatesForgotten());
+        assertEquals(3, snapshots.size());
+        assertEquals(Integer.valueOf(4), snapshots.undo());
+        assertEquals(4, snapshots.pixels().getPixels()[0]);
+        //the original is kept:
+        assertEquals(Integer.valueOf(0), snapshots.undo());
+        assertEquals(0, snapshots.pixels().getPixels()[0]);
+    }
+}
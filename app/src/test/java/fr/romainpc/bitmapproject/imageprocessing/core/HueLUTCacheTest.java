@@ -0,0 +1,114 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link HueLUTCache}: same results as {@link PointKernels}, statistics and memory budget.
+ */
+public class HueLUTCacheTest {
+
+    private static final int PAGE_BYTES = 4096 * 4;
+
+    /**
+     * Buffer where all colors are in the same page of 4096 colors.
+     */
+    private static PixelBuffer onePageBuffer(int page) {
+        PixelBuffer buffer = new PixelBuffer(64, 64);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = 0xFF000000 | (page << 12) | i;
+        return buffer;
+    }
+
+    @Test
+    public void sameResultsAsPointKernels() {
+        HueLUTCache cache = new HueLUTCache();
+        for (int hue = 0; hue < 360; hue += 119) {
+            PixelBuffer expected = randomBuffer(32, 32, hue);
+            PixelBuffer result = expected.copy();
+            PointKernels.colorize(expected, hue);
+            cache.colorize(result, hue);
+            assertArrayEquals(expected.getPixels(), result.getPixels());
+
+            expected = randomBuffer(32, 32, hue + 1);
+            result = expected.copy();
+            PointKernels.colorShift(expected, hue);
+            cache.colorShift(result, hue);
+            assertArrayEquals(expected.getPixels(), result.getPixels());
+
+            expected = randomBuffer(32, 32, hue + 2);
+            result = expected.copy();
+            PointKernels.keepColor(expected, hue, 40);
+            cache.keepColor(result, hue, 40);
+            assertArrayEquals(expected.getPixels(), result.getPixels());
+        }
+    }
+
+    @Test
+    public void tablesReusedForSameParameters() {
+        HueLUTCache cache = new HueLUTCache();
+        //first call: computed directly, no table.
+        cache.colorShift(onePageBuffer(5), 90);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getPagesBuilt());
+        assertEquals(0, cache.getMemoryUsed());
+
+        //same parameters again: the table is built.
+        cache.colorShift(onePageBuffer(5), 90);
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getPagesBuilt());
+        assertTrue(cache.getBuildTime() > 0);
+
+        cache.colorShift(onePageBuffer(5), 90);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getPagesBuilt());
+
+        //other parameters and buffers smaller than a page are computed directly:
+        cache.colorShift(onePageBuffer(5), 91);
+        cache.colorShift(randomBuffer(8, 8, 1), 92);
+        cache.colorShift(randomBuffer(8, 8, 1), 92);
+        assertEquals(1, cache.getPagesBuilt());
+        assertEquals(PAGE_BYTES, cache.getMemoryUsed());
+    }
+
+    @Test
+    public void memoryBudgetRespected() {
+        HueLUTCache cache = new HueLUTCache(2 * PAGE_BYTES);
+        for (int hue : new int[]{10, 10, 20, 20, 10, 30, 30}) // 10 is more recently used than 20 when 30 is built.
+            cache.colorize(onePageBuffer(1), hue);
+        assertEquals(2 * PAGE_BYTES, cache.getMemoryUsed());
+        assertEquals(1, cache.getPagesEvicted());
+
+        cache.resetStatistics();
+        cache.colorize(onePageBuffer(1), 10);
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getPagesBuilt());
+
+        cache.clear();
+        assertEquals(0, cache.getMemoryUsed());
+    }
+
+    @Test
+    public void tableBiggerThanBudget_keepsItsPages() {
+        HueLUTCache cache = new HueLUTCache(4 * PAGE_BYTES);
+        //each pixel in its own page: many more pages than the budget.
+        PixelBuffer expected = randomBuffer(64, 64, 3);
+        cache.colorize(expected.copy(), 250);
+        for (int i = 0; i < 3; i++) {
+            PixelBuffer result = expected.copy();
+            cache.colorize(result, 250);
+            PixelBuffer reference = expected.copy();
+            PointKernels.colorize(reference, 250);
+            assertArrayEquals(reference.getPixels(), result.getPixels());
+        }
+        //pages are built until the budget, other pixels are computed directly:
+        assertEquals(4, cache.getPagesBuilt());
+        assertEquals(0, cache.getPagesEvicted());
+        assertEquals(4 * PAGE_BYTES, cache.getMemoryUsed());
+    }
+}
@@ -0,0 +1,204 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link LatestJobScheduler}, results are delivered in the worker thread.
+ */
+public class LatestJobSchedulerTest {
+
+    private LatestJobScheduler<Integer> scheduler;
+    private final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setUp() {
+        scheduler = new LatestJobScheduler<>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Job returning its value, after waiting the latch if there is one.
+     */
+    private static LatestJobScheduler.Job<Integer> job(final int value, final CountDownLatch started, final CountDownLatch release, final boolean[] sawCancel) {
+        return new LatestJobScheduler.Job<Integer>() {
+            @Override
+            public Integer compute(LatestJobScheduler.Token token) {
+                if (started != null)
+                    started.countDown();
+                try {
+                    if (release != null)
+                        release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (sawCancel != null)
+                    sawCancel[0] = token.isCancelled();
+                return value;
+            }
+        };
+    }
+
+    private LatestJobScheduler.Listener<Integer> listener(final CountDownLatch done) {
+        return new LatestJobScheduler.Listener<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                results.add(result);
+                if (done != null)
+                    done.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void latestWins() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] sawCancel = new boolean[1];
+
+        scheduler.submit(job(1, started, release, sawCancel), listener(null));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.submit(job(2, null, null, null), listener(null));
+        scheduler.submit(job(3, null, null, null), listener(null));
+        scheduler.submit(job(4, null, null, null), listener(done));
+        assertEquals(2, scheduler.getQueueDepth());
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(4), results);
+        assertTrue(sawCancel[0]);
+        assertEquals(4, scheduler.getSubmitted());
+        assertEquals(2, scheduler.getDropped());
+        assertEquals(1, scheduler.getCancelled());
+        assertEquals(1, scheduler.getCompleted());
+        assertEquals(2, scheduler.getMaxQueueDepth());
+        assertTrue(scheduler.getLastTimeToFirstFrame() > 0);
+    }
+
+    @Test
+    public void cancelAndWait() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(job(1, started, release, null), listener(null));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                release.countDown();
+            }
+        }).start();
+        scheduler.cancelAndWait();
+        assertEquals(0, scheduler.getQueueDepth());
+        assertTrue(results.isEmpty());
+
+        //scheduler still usable:
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.submit(job(2, null, null, null), listener(done));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(2), results);
+    }
+
+    @Test
+    public void cancelAndWait_dropsResultsNotDeliveredYet() throws InterruptedException {
+        //results wait in a queue like tasks posted to the UI thread:
+        final BlockingQueue<Runnable> posted = new LinkedBlockingQueue<>();
+        scheduler.shutdown();
+        scheduler = new LatestJobScheduler<>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                posted.add(command);
+            }
+        });
+        scheduler.submit(job(1, null, null, null), listener(null));
+        Runnable result = posted.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(1, scheduler.getCompleted());
+
+        //the job is finished, its result is delivered after the cancel:
+        scheduler.cancelAndWait();
+        result.run();
+        assertTrue(results.isEmpty());
+
+        scheduler.submit(job(2, null, null, null), listener(null));
+        result = posted.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        result.run();
+        assertEquals(Collections.singletonList(2), results);
+    }
+
+    @Test
+    public void failedJob_nextJobsStillComputed() throws InterruptedException {
+        //an exception is caught in the drain, an error ends it:
+        final Throwable[] failures = {new IllegalStateException("job failed"), new AssertionError("job failed")};
+        for (int i = 0; i < failures.length; i++) {
+            final Throwable failure = failures[i];
+            final CountDownLatch started = new CountDownLatch(1);
+            scheduler.submit(new LatestJobScheduler.Job<Integer>() {
+                @Override
+                public Integer compute(LatestJobScheduler.Token token) {
+                    started.countDown();
+                    if (failure instanceof Error)
+                        throw (Error) failure;
+                    throw (RuntimeException) failure;
+                }
+            }, listener(null));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            scheduler.cancelAndWait();
+
+            CountDownLatch done = new CountDownLatch(1);
+            scheduler.submit(job(i, null, null, null), listener(done));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(i + 1, results.size());
+            assertEquals(i, (int) results.get(i));
+        }
+        assertEquals(2, scheduler.getCompleted());
+    }
+
+    @Test
+    public void publish_intermediateResults() throws InterruptedException {
+        //the listener counts down for each result, intermediate ones included:
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.submit(new LatestJobScheduler.Job<Integer>() {
+            @Override
+            public Integer compute(LatestJobScheduler.Token token) {
+                scheduler.publish(token, 1);
+                scheduler.publish(token, 2);
+                //token of another job is ignored:
+                scheduler.publish(new LatestJobScheduler.Token(), 10);
+                return 3;
+            }
+        }, listener(done));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2, 3), results);
+        assertEquals(1, scheduler.getCompleted());
+    }
+}
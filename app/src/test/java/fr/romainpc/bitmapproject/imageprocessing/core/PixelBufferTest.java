@@ -0,0 +1,92 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests of {@link PixelBuffer} and of kernels working on buffer views (offset and stride).
+ */
+public class PixelBufferTest {
+
+    /**
+     * Apply the same effect on a compact buffer and on a region of a bigger buffer, the region must give the same pixels and the rest of the bigger buffer must not change.
+     */
+    private static void assertRegionEquivalent(Effect effect) {
+        PixelBuffer compact = randomBuffer(19, 13, 1);
+        PixelBuffer big = randomBuffer(30, 20, 2);
+        PixelBuffer region = big.region(5, 4, 19, 13);
+        compact.copyTo(region);
+        PixelBuffer before = big.copy();
+
+        effect.apply(compact);
+        effect.apply(region);
+
+        assertArrayEquals(compact.getPixels(), region.copy().getPixels());
+        for (int y = 0; y < big.getHeight(); y++)
+            for (int x = 0; x < big.getWidth(); x++)
+                if (x < 5 || x >= 24 || y < 4 || y >= 17)
+                    assertEquals(before.get(x, y), big.get(x, y));
+    }
+
+    private interface Effect {
+        void apply(PixelBuffer buffer);
+    }
+
+    @Test
+    public void region_sharesPixels() {
+        PixelBuffer buffer = randomBuffer(8, 6, 3);
+        PixelBuffer region = buffer.region(2, 1, 4, 3);
+        assertEquals(buffer.index(2, 1), region.getOffset());
+        assertEquals(8, region.getStride());
+        region.set(0, 0, 42);
+        assertEquals(42, buffer.get(2, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallArray_throws() {
+        new PixelBuffer(new int[10], 0, 5, 5, 3);
+    }
+
+    @Test
+    public void kernels_onRegion() {
+        assertRegionEquivalent(new Effect() {
+            @Override
+            public void apply(PixelBuffer buffer) {
+                PointKernels.grayLevel(buffer, 0.3, 0.11, 0.59);
+            }
+        });
+        assertRegionEquivalent(new Effect() {
+            @Override
+            public void apply(PixelBuffer buffer) {
+                PointKernels.colorShift(buffer, 120);
+            }
+        });
+        assertRegionEquivalent(new Effect() {
+            @Override
+            public void apply(PixelBuffer buffer) {
+                PointKernels.keepColor(buffer, 200, 40);
+            }
+        });
+        assertRegionEquivalent(new Effect() {
+            @Override
+            public void apply(PixelBuffer buffer) {
+                Contrast.applyLuminance(buffer, Contrast.linearExtensionLUT(Histograms.luminance(buffer)));
+            }
+        });
+        assertRegionEquivalent(new Effect() {
+            @Override
+            public void apply(PixelBuffer buffer) {
+                Contrast.flattenGrayLevelNatural(buffer, Histograms.cumulate(Histograms.grayLevelNatural(buffer)), buffer.size());
+            }
+        });
+        assertRegionEquivalent(new Effect() {
+            @Override
+            public void apply(PixelBuffer buffer) {
+                BoxBlur.blur(buffer, 3, BorderMode.MIRROR);
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests of {@link PngEncoder}, files are read back with the PNG decoder of the JVM.
+ */
+public class PngEncoderTest {
+
+    private static PixelBuffer image(int width, int height, boolean opaque, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer buffer = new PixelBuffer(width, height);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                buffer.set(x, y, Colors.argb(opaque ? 0xFF : random.nextInt(256), (x + y) & 0xFF, (x * y / 7 + random.nextInt(8)) & 0xFF, random.nextInt(256)));
+        return buffer;
+    }
+
+    private static byte[] encode(PngEncoder encoder, PixelBuffer buffer) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        encoder.encode(buffer, output);
+        return output.toByteArray();
+    }
+
+    private static int[] decode(byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    @Test
+    public void encode_readBackSamePixels() throws IOException {
+        for (boolean opaque : new boolean[]{true, false}) {
+            PixelBuffer buffer = image(131, 97, opaque, 1);
+            byte[] sequential = encode(new PngEncoder(PngEncoder.DEFAULT_LEVEL, null), buffer);
+            assertArrayEquals(buffer.getPixels(), decode(sequential));
+
+            //strips compressed in parallel, several times with the same reused buffers:
+            PngEncoder parallel = new PngEncoder(PngEncoder.DEFAULT_LEVEL, new TiledExecutor(4));
+            for (int i = 0; i < 3; i++)
+                assertArrayEquals(buffer.getPixels(), decode(encode(parallel, buffer)));
+        }
+    }
+
+    @Test
+    public void encode_regionAndSeveralGroups() throws IOException {
+        //more than one group of strips compressed at the same time:
+        PixelBuffer big = image(2100, 1400, true, 2);
+        PngEncoder encoder = new PngEncoder(1, new TiledExecutor(3));
+        assertArrayEquals(big.getPixels(), decode(encode(encoder, big)));
+
+        PixelBuffer region = big.region(17, 30, 200, 150);
+        assertArrayEquals(region.copy().getPixels(), decode(encode(encoder, region)));
+    }
+
+    @Test
+    public void combineAdler_sameAsWholeChecksum() {
+        byte[] bytes = new byte[100000];
+        new Random(3).nextBytes(bytes);
+        Adler32 whole = new Adler32();
+        whole.update(bytes);
+        Adler32 first = new Adler32();
+        first.update(bytes, 0, 70001);
+        Adler32 second = new Adler32();
+        second.update(bytes, 70001, bytes.length - 70001);
+        assertEquals(whole.getValue(), PngEncoder.combineAdler(first.getValue(), second.getValue(), bytes.length - 70001));
+    }
+}
@@ -0,0 +1,118 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link Pyramid}: box filter, dimensions of levels, lazy build and memory budget.
+ */
+public class PyramidTest {
+
+    /**
+     * Source counting its reads.
+     */
+    private static class CountingSource implements Pyramid.Source {
+        private final PixelBuffer buffer;
+        private int reads;
+
+        private CountingSource(PixelBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public PixelBuffer read() {
+            reads++;
+            return buffer.copy();
+        }
+    }
+
+    @Test
+    public void downscale_averagesBlocks() {
+        PixelBuffer src = new PixelBuffer(new int[]{
+                0xFF000000, 0xFF040404, 0x00102030,
+                0x80000000, 0x800C0C0C, 0x00102030
+        }, 3, 2);
+        PixelBuffer dst = Pyramid.downscale(src);
+        assertEquals(2, dst.getWidth());
+        assertEquals(1, dst.getHeight());
+        //alpha (255+255+128+128)/4 rounded, colors (0+4+0+12)/4:
+        assertArrayEquals(new int[]{0xC0040404, 0x00102030}, dst.getPixels());
+    }
+
+    @Test
+    public void downscale_oddDimensions() {
+        PixelBuffer src = randomBuffer(5, 3, 1);
+        PixelBuffer dst = Pyramid.downscale(src);
+        assertEquals(3, dst.getWidth());
+        assertEquals(2, dst.getHeight());
+        //corner pixel of odd width and height is kept:
+        assertEquals(src.getPixels()[src.index(4, 2)], dst.getPixels()[dst.index(2, 1)]);
+
+        //a view gives the same result as a copy:
+        PixelBuffer big = randomBuffer(9, 7, 2);
+        PixelBuffer view = new PixelBuffer(big.getPixels(), big.index(2, 1), big.getStride(), 5, 3);
+        assertArrayEquals(Pyramid.downscale(view.copy()).getPixels(), Pyramid.downscale(view).getPixels());
+    }
+
+    @Test
+    public void levels_dimensions() {
+        Pyramid pyramid = new Pyramid(300, 100, new CountingSource(new PixelBuffer(300, 100)), Pyramid.DEFAULT_MEMORY_BUDGET);
+        //300, 150, 75, 38, 19, 10, 5, 3, 2, 1
+        assertEquals(10, pyramid.getLevelCount());
+        assertEquals(38, pyramid.getLevelWidth(3));
+        assertEquals(13, pyramid.getLevelHeight(3));
+        assertEquals(1, pyramid.getLevelHeight(9));
+        assertEquals(0, pyramid.levelFor(0, 0));
+        assertEquals(2, pyramid.levelFor(100, 100));
+        assertEquals(3, pyramid.levelFor(40, 0));
+        assertEquals(9, pyramid.levelFor(1, 1));
+    }
+
+    @Test
+    public void levels_builtLazilyAndReused() {
+        PixelBuffer image = randomBuffer(64, 48, 3);
+        CountingSource source = new CountingSource(image);
+        Pyramid pyramid = new Pyramid(64, 48, source, Pyramid.DEFAULT_MEMORY_BUDGET);
+        assertEquals(0, source.reads);
+
+        PixelBuffer level2 = pyramid.getLevel(2);
+        assertEquals(1, source.reads);
+        assertEquals(2, pyramid.getLevelsBuilt());
+        assertArrayEquals(Pyramid.downscale(Pyramid.downscale(image)).getPixels(), level2.getPixels());
+
+        //level 1 was kept, level 3 is built from level 2:
+        pyramid.getLevel(1);
+        pyramid.getLevel(3);
+        assertEquals(1, source.reads);
+        assertEquals(3, pyramid.getLevelsBuilt());
+        assertSame(level2, pyramid.getLevel(2));
+        assertEquals(2, pyramid.getHits());
+        assertEquals(4L * (32 * 24 + 16 * 12 + 8 * 6), pyramid.getMemoryUsed());
+    }
+
+    @Test
+    public void memoryBudgetRespected() {
+        CountingSource source = new CountingSource(randomBuffer(64, 64, 4));
+        //room for level 1 (4 KB) only:
+        Pyramid pyramid = new Pyramid(64, 64, source, 4 * 32 * 32);
+        pyramid.getLevel(1);
+        pyramid.getLevel(2);
+        assertTrue(pyramid.getMemoryUsed() <= 4 * 32 * 32);
+        assertEquals(1, pyramid.getLevelsEvicted());
+
+        //level 1 was removed for level 2, it must be read again:
+        pyramid.getLevel(1);
+        assertEquals(2, source.reads);
+
+        //a level bigger than the budget is given but not kept:
+        pyramid.setMemoryBudget(100);
+        assertEquals(0, pyramid.getMemoryUsed());
+        assertEquals(32, pyramid.getLevel(1).getWidth());
+        assertEquals(0, pyramid.getMemoryUsed());
+    }
+}
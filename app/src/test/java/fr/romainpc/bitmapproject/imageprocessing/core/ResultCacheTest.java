@@ -0,0 +1,105 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link ResultCache}.
+ */
+public class ResultCacheTest {
+
+    private static PixelBuffer buffer(int width, int height, int seed) {
+        PixelBuffer buffer = new PixelBuffer(width, height);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = 0xFF000000 | (i * 7919 + seed * 104729);
+        return buffer;
+    }
+
+    @Test
+    public void hash_dependsOnContentOnly() {
+        PixelBuffer image = buffer(40, 30, 1);
+        PixelBuffer region = new PixelBuffer(50, 40).region(5, 5, 40, 30);
+        image.copyTo(region);
+        assertEquals(ResultCache.hash(image), ResultCache.hash(region));
+
+        PixelBuffer modified = image.copy();
+        modified.set(39, 29, modified.get(39, 29) ^ 1);
+        assertNotEquals(ResultCache.hash(image), ResultCache.hash(modified));
+        //same pixels, other dimensions:
+        assertNotEquals(ResultCache.hash(image), ResultCache.hash(new PixelBuffer(image.getPixels(), 30, 40)));
+    }
+
+    @Test
+    public void memory_leastRecentlyUsedRemoved() {
+        //room for two results of 100 pixels:
+        ResultCache cache = new ResultCache(2 * 100 * 4);
+        cache.put(1, "A", buffer(10, 10, 1));
+        cache.put(1, "B", buffer(10, 10, 2));
+        assertArrayEquals(buffer(10, 10, 1).getPixels(), cache.get(1, "A").getPixels());
+        cache.put(2, "A", buffer(10, 10, 3));
+
+        assertNull(cache.get(1, "B"));
+        assertTrue(cache.contains(1, "A"));
+        assertTrue(cache.contains(2, "A"));
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(800, cache.getMemorySize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void copyLongest_oneRequestPerLookup() {
+        ResultCache cache = new ResultCache(ResultCache.DEFAULT_MEMORY_BUDGET);
+        List<String> prefixes = Arrays.asList("GRAY", "GRAY;SOBEL", "GRAY;SOBEL;EMBOSS");
+        PixelBuffer buffer = new PixelBuffer(10, 10);
+        assertEquals(-1, cache.copyLongest(1, prefixes, buffer));
+        assertEquals(1, cache.getMisses());
+
+        cache.put(1, "GRAY", buffer(10, 10, 1));
+        cache.put(1, "GRAY;SOBEL", buffer(10, 10, 2));
+        assertEquals(1, cache.copyLongest(1, prefixes, buffer));
+        assertArrayEquals(buffer(10, 10, 2).getPixels(), buffer.getPixels());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void disk_keepsResultsBetweenCaches() throws IOException {
+        File directory = File.createTempFile("cache", "");
+        assertTrue(directory.delete());
+        try {
+            ResultCache cache = new ResultCache(100 * 4, directory, 3 * (100 * 4 + 64));
+            for (int i = 0; i < 4; i++)
+                cache.put(7, "HUE(" + i + ")", buffer(10, 10, i));
+            //the first file is removed to stay within the disk budget:
+            assertTrue(cache.getDiskSize() <= 3 * (100 * 4 + 64));
+
+            ResultCache reopened = new ResultCache(100 * 4, directory, 3 * (100 * 4 + 64));
+            assertNull(reopened.get(7, "HUE(0)"));
+            for (int i = 1; i < 4; i++)
+                assertArrayEquals(buffer(10, 10, i).getPixels(), reopened.get(7, "HUE(" + i + ")").getPixels());
+            assertEquals(3, reopened.getDiskHits());
+            assertEquals(1, reopened.getMisses());
+
+            reopened.clear();
+            assertEquals(0, reopened.getDiskSize());
+            assertNull(new ResultCache(100 * 4, directory, 1 << 20).get(7, "HUE(3)"));
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null)
+                for (File file : files)
+                    file.delete();
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import java.util.Random;
+
+/**
+ * Pictures shared by the local unit tests.
+ */
+public final class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * @return Buffer of random pixels, alpha included, the same for the same seed.
+     */
+    public static PixelBuffer randomBuffer(int width, int height, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer buffer = new PixelBuffer(width, height);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = random.nextInt();
+        return buffer;
+    }
+
+    /**
+     * @return Buffer of random opaque pixels with colors in a reduced range, so contrast effects have something to stretch.
+     */
+    public static PixelBuffer randomOpaqueBuffer(int width, int height, long seed) {
+        Random random = new Random(seed);
+        PixelBuffer buffer = new PixelBuffer(width, height);
+        for (int i = 0; i < buffer.size(); i++)
+            buffer.getPixels()[i] = 0xFF000000 | (40 + random.nextInt(150)) << 16 | (30 + random.nextInt(120)) << 8 | (60 + random.nextInt(170));
+        return buffer;
+    }
+}
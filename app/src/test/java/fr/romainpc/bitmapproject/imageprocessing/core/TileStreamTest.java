@@ -0,0 +1,142 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of {@link TileStream}, {@link RawArgbSink} and {@link RawArgbSource}.
+ */
+public class TileStreamTest {
+
+    /**
+     * Source giving pixels with their index in the image as value.
+     */
+    private static class IndexSource implements TileStream.Source {
+        private final int imageWidth;
+        private final List<int[]> regions = new ArrayList<>();
+
+        private IndexSource(int imageWidth) {
+            this.imageWidth = imageWidth;
+        }
+
+        @Override
+        public PixelBuffer read(int left, int top, int width, int height) {
+            regions.add(new int[]{left, top, width, height});
+            PixelBuffer region = new PixelBuffer(width, height);
+            for (int y = 0; y < height; y++)
+                for (int x = 0; x < width; x++)
+                    region.getPixels()[region.index(x, y)] = (top + y) * imageWidth + left + x;
+            return region;
+        }
+    }
+
+    @Test
+    public void tiles_coverImageOnce() throws IOException {
+        final int[] image = new int[50 * 37];
+        IndexSource source = new IndexSource(50);
+        TileStream stream = new TileStream(50, 37, 16);
+        assertEquals(4 * 3, stream.getTileCount());
+        stream.forEach(source, 3, null, new TileStream.Sink() {
+            @Override
+            public void write(int left, int top, PixelBuffer tile) {
+                for (int y = 0; y < tile.getHeight(); y++)
+                    for (int x = 0; x < tile.getWidth(); x++)
+                        image[(top + y) * 50 + left + x] += tile.getPixels()[tile.index(x, y)] + 1;
+            }
+        });
+        for (int i = 0; i < image.length; i++)
+            assertEquals(i + 1, image[i]);
+        assertEquals(12, stream.getTilesProcessed());
+
+        //regions are tiles with the halo, clamped to the image:
+        assertArrayEquals(new int[]{0, 0, 19, 19}, source.regions.get(0));
+        assertArrayEquals(new int[]{13, 0, 22, 19}, source.regions.get(1));
+        assertArrayEquals(new int[]{45, 29, 5, 8}, source.regions.get(11));
+        assertEquals(22 * 22, stream.getMaxRegionPixels());
+    }
+
+    @Test
+    public void tileSizeFor_respectsBudget() {
+        int size = TileStream.tileSizeFor(16L * 1024 * 1024, 5, 10);
+        assertEquals(0, size % 16);
+        assertTrue(4L * 5 * (size + 20) * (size + 20) <= 16L * 1024 * 1024);
+        assertEquals(16, TileStream.tileSizeFor(100, 5, 10));
+    }
+
+    @Test
+    public void rawArgbSink_writesRows() throws IOException {
+        File file = File.createTempFile("tiles", ".argb");
+        try {
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                new TileStream(20, 9, 8).forEach(new IndexSource(20), 0, null, new RawArgbSink(output.getChannel(), 20));
+            } finally {
+                output.close();
+            }
+            assertEquals(20 * 9 * 4, file.length());
+            ByteBuffer bytes = ByteBuffer.allocate(20 * 9 * 4);
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                input.getChannel().read(bytes, 0);
+            } finally {
+                input.close();
+            }
+            bytes.flip();
+            for (int i = 0; i < 20 * 9; i++)
+                assertEquals(i, bytes.getInt());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void rawArgbSource_readsWrittenPixels() throws IOException {
+        File file = File.createTempFile("tiles", ".argb");
+        try {
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                new TileStream(30, 17, 8).forEach(new IndexSource(30), 0, null, new RawArgbSink(output.getChannel(), 30));
+            } finally {
+                output.close();
+            }
+            RawArgbSource source = RawArgbSource.map(file, 30);
+            assertEquals(30, source.getWidth());
+            assertEquals(17, source.getHeight());
+
+            PixelBuffer region = source.read(7, 5, 11, 9);
+            for (int y = 0; y < 9; y++)
+                for (int x = 0; x < 11; x++)
+                    assertEquals((5 + y) * 30 + 7 + x, region.get(x, y));
+
+            //tiles read back from the file are the same as from the first source:
+            final int[] pixels = new int[30 * 17];
+            new TileStream(30, 17, 8).forEach(source, 0, null, new TileStream.Sink() {
+                @Override
+                public void write(int left, int top, PixelBuffer tile) {
+                    for (int y = 0; y < tile.getHeight(); y++)
+                        for (int x = 0; x < tile.getWidth(); x++)
+                            pixels[(top + y) * 30 + left + x] = tile.get(x, y);
+                }
+            });
+            for (int i = 0; i < pixels.length; i++)
+                assertEquals(i, pixels[i]);
+
+            PixelBuffer sample = source.sample(4);
+            assertEquals(7, sample.getWidth());
+            assertEquals(4, sample.getHeight());
+            assertEquals(2 * 4 * 30 + 3 * 4, sample.get(3, 2));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package fr.romainpc.bitmapproject.imageprocessing.core;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static fr.romainpc.bitmapproject.imageprocessing.core.TestImages.randomBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests of {@link TiledExecutor}: parallel results must be bit-identical to sequential ones.
+ */
+public class TiledExecutorTest {
+
+    private static final int[] PARALLELISMS = {1, 2, 3, 8};
+    private static final int[] HEIGHTS = {1, 15, 67, 200};
+
+    private static TiledExecutor[] executors;
+
+    @BeforeClass
+    public static void createExecutors() {
+        executors = new TiledExecutor[PARALLELISMS.length];
+        for (int i = 0; i < PARALLELISMS.length; i++)
+            executors[i] = new TiledExecutor(PARALLELISMS[i]);
+    }
+
+    @AfterClass
+    public static void shutdownExecutors() {
+        for (TiledExecutor executor : executors)
+            executor.shutdown();
+    }
+
+    private static void assertSameAsSequential(TiledExecutor.BandTask task) {
+        for (int height : HEIGHTS) {
+            PixelBuffer expected = randomBuffer(41, height, height);
+            PixelBuffer source = expected.copy();
+            task.apply(expected);
+            for (TiledExecutor executor : executors) {
+                PixelBuffer result = source.copy();
+                executor.forEachBand(result, task);
+                assertArrayEquals("height " + height + ", parallelism " + executor.getParallelism(), expected.getPixels(), result.getPixels());
+            }
+        }
+    }
+
+    @Test
+    public void forEachRows_coversEachRowOnce() {
+        for (TiledExecutor executor : executors) {
+            for (int height : HEIGHTS) {
+                final AtomicIntegerArray counts = new AtomicIntegerArray(height);
+                executor.forEachRows(height, new TiledExecutor.RowTask() {
+                    @Override
+                    public void apply(int firstRow, int endRow) {
+                        for (int y = firstRow; y < endRow; y++)
+                            counts.incrementAndGet(y);
+                    }
+                });
+                for (int y = 0; y < height; y++)
+                    assertEquals(1, counts.get(y));
+            }
+        }
+    }
+
+    @Test
+    public void pointKernels() {
+        assertSameAsSequential(new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                PointKernels.grayLevel(band, 0.3, 0.11, 0.59);
+            }
+        });
+        assertSameAsSequential(new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                PointKernels.colorShift(band, 77);
+            }
+        });
+        assertSameAsSequential(new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                PointKernels.keepColor(band, 300, 25);
+            }
+        });
+    }
+
+    @Test
+    public void contrast() {
+        final int[] LUT = Contrast.linearExtensionLUT(Histograms.luminance(randomBuffer(41, 200, 4)));
+        assertSameAsSequential(new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                Contrast.applyLuminance(band, LUT);
+            }
+        });
+        final long[] cumu = Histograms.cumulate(Histograms.grayLevelNatural(randomBuffer(41, 200, 5)));
+        assertSameAsSequential(new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                Contrast.flattenGrayLevelNatural(band, cumu, 41 * 200);
+            }
+        });
+    }
+
+    @Test
+    public void blur() {
+        for (BorderMode border : BorderMode.values()) {
+            for (int radius : new int[]{1, 7, 40}) {
+                for (int height : HEIGHTS) {
+                    PixelBuffer expected = randomBuffer(53, height, radius + height);
+                    PixelBuffer source = expected.copy();
+                    BoxBlur.blur(expected, radius, border);
+                    for (TiledExecutor executor : executors) {
+                        PixelBuffer result = source.copy();
+                        BoxBlur.blur(result, radius, border, executor);
+                        assertArrayEquals(border + " radius " + radius + " height " + height, expected.getPixels(), result.getPixels());
+                    }
+                }
+            }
+        }
+    }
+}
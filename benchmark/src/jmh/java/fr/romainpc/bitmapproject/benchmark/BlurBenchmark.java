@@ -0,0 +1,58 @@
+package fr.romainpc.bitmapproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.BorderMode;
+import fr.romainpc.bitmapproject.imageprocessing.core.BoxBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.GaussianBlur;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Benchmarks of blurring for several radii, the cost per pixel should not depend on the radius.
+ * The fast gaussian blur uses the radius as sigma.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class BlurBenchmark {
+
+    @Param({"1", "7", "15", "50"})
+    public int radius;
+
+    @Benchmark
+    public PixelBuffer boxBlur(SyntheticImage image, PixelCounter counter) {
+        BoxBlur.blur(image.buffer, radius, BorderMode.CLAMP);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer boxBlurParallel(SyntheticImage image, PixelCounter counter) {
+        BoxBlur.blur(image.buffer, radius, BorderMode.CLAMP, TiledExecutor.getShared());
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer fastGaussian(SyntheticImage image, PixelCounter counter) {
+        GaussianBlur.blur(image.buffer, radius, BorderMode.CLAMP, null);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer fastGaussianParallel(SyntheticImage image, PixelCounter counter) {
+        GaussianBlur.blur(image.buffer, radius, BorderMode.CLAMP, TiledExecutor.getShared());
+        counter.add(image);
+        return image.buffer;
+    }
+}
@@ -0,0 +1,93 @@
+package fr.romainpc.bitmapproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.AdaptiveFlattening;
+import fr.romainpc.bitmapproject.imageprocessing.core.Contrast;
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Benchmarks of contrast effects for each histogram type (names of Picture.Histogram), histogram computation included like in Effects.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ContrastBenchmark {
+
+    @Param({"LUMINANCE", "GRAY_LEVEL_NATURAL", "RGB"})
+    public String histogram;
+
+    @Benchmark
+    public PixelBuffer linearExtension(SyntheticImage image, PixelCounter counter) {
+        PixelBuffer buffer = image.buffer;
+        switch (histogram) {
+            case "LUMINANCE":
+                Contrast.applyLuminance(buffer, Contrast.linearExtensionLUT(Histograms.luminance(buffer)));
+                break;
+            case "GRAY_LEVEL_NATURAL":
+                Contrast.applyGrayLevelNatural(buffer, Contrast.linearExtensionLUT(Histograms.grayLevelNatural(buffer)));
+                break;
+            case "RGB":
+                List<int[]> rgb = Histograms.rgb(buffer);
+                Contrast.applyRGB(buffer, Contrast.linearExtensionLUT(rgb.get(0)), Contrast.linearExtensionLUT(rgb.get(1)), Contrast.linearExtensionLUT(rgb.get(2)));
+                break;
+        }
+        counter.add(image);
+        return buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer flattening(SyntheticImage image, PixelCounter counter) {
+        PixelBuffer buffer = image.buffer;
+        switch (histogram) {
+            case "LUMINANCE":
+                Contrast.flattenLuminance(buffer, Histograms.cumulate(Histograms.luminance(buffer)), buffer.size());
+                break;
+            case "GRAY_LEVEL_NATURAL":
+                Contrast.flattenGrayLevelNatural(buffer, Histograms.cumulate(Histograms.grayLevelNatural(buffer)), buffer.size());
+                break;
+            case "RGB":
+                List<int[]> rgb = Histograms.rgb(buffer);
+                Contrast.flattenRGB(buffer, Histograms.cumulate(rgb.get(0)), Histograms.cumulate(rgb.get(1)), Histograms.cumulate(rgb.get(2)), buffer.size());
+                break;
+        }
+        counter.add(image);
+        return buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer adaptiveFlattening(SyntheticImage image, PixelCounter counter) {
+        AdaptiveFlattening.flatten(image.buffer, kind(), AdaptiveFlattening.DEFAULT_TILES, AdaptiveFlattening.DEFAULT_CLIP_LIMIT, null, null);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer adaptiveFlatteningParallel(SyntheticImage image, PixelCounter counter) {
+        AdaptiveFlattening.flatten(image.buffer, kind(), AdaptiveFlattening.DEFAULT_TILES, AdaptiveFlattening.DEFAULT_CLIP_LIMIT, null, TiledExecutor.getShared());
+        counter.add(image);
+        return image.buffer;
+    }
+
+    private int kind() {
+        switch (histogram) {
+            case "LUMINANCE":
+                return AdaptiveFlattening.LUMINANCE;
+            case "GRAY_LEVEL_NATURAL":
+                return AdaptiveFlattening.GRAY_LEVEL_NATURAL;
+            default:
+                return AdaptiveFlattening.RGB;
+        }
+    }
+}
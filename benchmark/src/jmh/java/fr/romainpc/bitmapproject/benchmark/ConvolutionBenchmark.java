@@ -0,0 +1,83 @@
+package fr.romainpc.bitmapproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.BorderMode;
+import fr.romainpc.bitmapproject.imageprocessing.core.Convolution;
+import fr.romainpc.bitmapproject.imageprocessing.core.Kernel;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Benchmarks of convolutions: a separable gaussian (13x13 computed as 13 + 13 weights),
+ * the same size without separation, and 3x3 kernels.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ConvolutionBenchmark {
+
+    private final Kernel gaussian = Kernel.gaussian(2.0);
+    private final Kernel dense = dense(13);
+
+    /**
+     * Gaussian weights of sigma 2 with a tiny weight added in a corner, so the kernel is not separable.
+     */
+    private static Kernel dense(int size) {
+        float[] row = new float[size];
+        float sum = 0f;
+        for (int i = 0; i < size; i++) {
+            int d = i - size / 2;
+            row[i] = (float) Math.exp(-d * d / 8.0);
+            sum += row[i];
+        }
+        float[] weights = new float[size * size];
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                weights[i * size + j] = row[i] * row[j] / (sum * sum);
+        weights[0] += 0.01f;
+        return new Kernel(size, size, weights);
+    }
+
+    @Benchmark
+    public PixelBuffer gaussianSeparable(SyntheticImage image, PixelCounter counter) {
+        Convolution.convolve(image.buffer, gaussian, BorderMode.CLAMP);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer gaussianDense(SyntheticImage image, PixelCounter counter) {
+        Convolution.convolve(image.buffer, dense, BorderMode.CLAMP);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer gaussianSeparableParallel(SyntheticImage image, PixelCounter counter) {
+        Convolution.convolve(image.buffer, gaussian, BorderMode.CLAMP, TiledExecutor.getShared());
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer sharpen(SyntheticImage image, PixelCounter counter) {
+        Convolution.convolve(image.buffer, Kernel.sharpen(0.5), BorderMode.CLAMP);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer sobel(SyntheticImage image, PixelCounter counter) {
+        Convolution.gradient(image.buffer, Kernel.sobelX(), Kernel.sobelY(), BorderMode.CLAMP, null);
+        counter.add(image);
+        return image.buffer;
+    }
+}
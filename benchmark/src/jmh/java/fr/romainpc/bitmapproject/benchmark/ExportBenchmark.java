@@ -0,0 +1,60 @@
+package fr.romainpc.bitmapproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.PngEncoder;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Benchmarks of the PNG encoder, in one thread or by strips in parallel. The file is discarded, only the encoding is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class ExportBenchmark {
+
+    /**
+     * Stream counting bytes without keeping them.
+     */
+    private static class CountingStream extends OutputStream {
+        private long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    private final PngEncoder sequential = new PngEncoder(PngEncoder.DEFAULT_LEVEL, null);
+    private final PngEncoder parallel = new PngEncoder(PngEncoder.DEFAULT_LEVEL, TiledExecutor.getShared());
+
+    @Benchmark
+    public long png(SyntheticImage image, PixelCounter counter) throws IOException {
+        CountingStream output = new CountingStream();
+        sequential.encode(image.buffer, output);
+        counter.add(image);
+        return output.bytes;
+    }
+
+    @Benchmark
+    public long pngParallel(SyntheticImage image, PixelCounter counter) throws IOException {
+        CountingStream output = new CountingStream();
+        parallel.encode(image.buffer, output);
+        counter.add(image);
+        return output.bytes;
+    }
+}
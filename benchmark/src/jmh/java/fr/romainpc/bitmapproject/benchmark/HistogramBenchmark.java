@@ -0,0 +1,82 @@
+package fr.romainpc.bitmapproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.Colors;
+import fr.romainpc.bitmapproject.imageprocessing.core.GrayWeights;
+import fr.romainpc.bitmapproject.imageprocessing.core.Histograms;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Benchmarks of the computation of all histogram types: one loop per type with HSV conversion for luminance (old way),
+ * one pass for all types, and one pass split on the shared executor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class HistogramBenchmark {
+
+    @Benchmark
+    public int[][] separateLoops(SyntheticImage image, PixelCounter counter) {
+        PixelBuffer buffer = image.buffer;
+        int[] pixels = buffer.getPixels();
+        int[][] histograms = new int[5][256];
+        float[] hsv = new float[3];
+        for (int px : pixels) {
+            Colors.colorToHSV(px, hsv);
+            histograms[0][(int) (hsv[2] * 255f)]++;
+        }
+        for (int px : pixels)
+            histograms[1][Colors.grayNatural(px)]++;
+        for (int px : pixels) {
+            histograms[2][Colors.red(px)]++;
+            histograms[3][Colors.green(px)]++;
+            histograms[4][Colors.blue(px)]++;
+        }
+        counter.add(image);
+        return histograms;
+    }
+
+    @Benchmark
+    public Histograms.Counts onePass(SyntheticImage image, PixelCounter counter) {
+        Histograms.Counts counts = Histograms.count(image.buffer, true, true, true, null);
+        counter.add(image);
+        return counts;
+    }
+
+    @Benchmark
+    public Histograms.Counts onePassFixedGray(SyntheticImage image, PixelCounter counter) {
+        Histograms.Counts counts = Histograms.count(image.buffer, true, true, true, null, GrayWeights.NATURAL);
+        counter.add(image);
+        return counts;
+    }
+
+    @Benchmark
+    public int[] grayNatural(SyntheticImage image, PixelCounter counter) {
+        int[] histogram = Histograms.grayLevelNatural(image.buffer);
+        counter.add(image);
+        return histogram;
+    }
+
+    @Benchmark
+    public int[] grayNaturalFixed(SyntheticImage image, PixelCounter counter) {
+        int[] histogram = Histograms.count(image.buffer, false, true, false, null, GrayWeights.NATURAL).grayLevelNatural;
+        counter.add(image);
+        return histogram;
+    }
+
+    @Benchmark
+    public Histograms.Counts onePassParallel(SyntheticImage image, PixelCounter counter) {
+        Histograms.Counts counts = Histograms.count(image.buffer, true, true, true, TiledExecutor.getShared());
+        counter.add(image);
+        return counts;
+    }
+}
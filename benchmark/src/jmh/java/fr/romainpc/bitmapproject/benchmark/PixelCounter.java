@@ -0,0 +1,38 @@
+package fr.romainpc.bitmapproject.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary result of benchmarks: number of megapixels processed, reported by JMH as megapixels per second.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class PixelCounter {
+
+    private long pixels;
+
+    @Setup(Level.Iteration)
+    public void clean() {
+        pixels = 0;
+    }
+
+    /**
+     * Count a processed picture.
+     *
+     * @param image Picture given to the effect.
+     */
+    public void add(SyntheticImage image) {
+        pixels += image.pixels();
+    }
+
+    /**
+     * @return Megapixels processed during the iteration.
+     */
+    public double megapixels() {
+        return pixels / 1e6;
+    }
+}
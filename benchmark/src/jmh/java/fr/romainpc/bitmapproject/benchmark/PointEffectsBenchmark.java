@@ -0,0 +1,132 @@
+package fr.romainpc.bitmapproject.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.ChannelLUT;
+import fr.romainpc.bitmapproject.imageprocessing.core.GrayWeights;
+import fr.romainpc.bitmapproject.imageprocessing.core.HueLUTCache;
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+import fr.romainpc.bitmapproject.imageprocessing.core.PointKernels;
+import fr.romainpc.bitmapproject.imageprocessing.core.PointOperation;
+import fr.romainpc.bitmapproject.imageprocessing.core.TiledExecutor;
+
+/**
+ * Benchmarks of effects computing each pixel from its own value.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PointEffectsBenchmark {
+
+    @Benchmark
+    public PixelBuffer grayLevel(SyntheticImage image, PixelCounter counter) {
+        PointKernels.grayLevel(image.buffer, 0.3, 0.11, 0.59);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer grayLevelFixed(SyntheticImage image, PixelCounter counter) {
+        PointKernels.grayLevel(image.buffer, new GrayWeights(0.3, 0.11, 0.59));
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer toneCurve(SyntheticImage image, PixelCounter counter) {
+        //gamma then brightness and contrast, composed in one table:
+        ChannelLUT.gamma(1.8).then(ChannelLUT.brightnessContrast(10, 1.2)).apply(image.buffer);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer colorize(SyntheticImage image, PixelCounter counter) {
+        PointKernels.colorize(image.buffer, 200);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer colorShift(SyntheticImage image, PixelCounter counter) {
+        PointKernels.colorShift(image.buffer, 90);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer keepColor(SyntheticImage image, PixelCounter counter) {
+        PointKernels.keepColor(image.buffer, 200, 30);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    /**
+     * Lookup tables kept between calls, as when a slider stays on the same value.
+     */
+    @State(Scope.Thread)
+    public static class Tables {
+        public HueLUTCache cache = new HueLUTCache(HueLUTCache.DEFAULT_MEMORY_BUDGET * 2);
+    }
+
+    @Benchmark
+    public PixelBuffer colorizeLUT(SyntheticImage image, Tables tables, PixelCounter counter) {
+        tables.cache.colorize(image.buffer, 200);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer colorShiftLUT(SyntheticImage image, Tables tables, PixelCounter counter) {
+        tables.cache.colorShift(image.buffer, 90);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer keepColorLUT(SyntheticImage image, Tables tables, PixelCounter counter) {
+        tables.cache.keepColor(image.buffer, 200, 30);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer colorShiftParallel(SyntheticImage image, PixelCounter counter) {
+        TiledExecutor.getShared().forEachBand(image.buffer, new TiledExecutor.BandTask() {
+            @Override
+            public void apply(PixelBuffer band) {
+                PointKernels.colorShift(band, 90);
+            }
+        });
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer chain(SyntheticImage image, PixelCounter counter) {
+        PointKernels.colorShift(image.buffer, 90);
+        PointKernels.keepColor(image.buffer, 200, 30);
+        PointKernels.grayLevel(image.buffer, 0.3, 0.11, 0.59);
+        counter.add(image);
+        return image.buffer;
+    }
+
+    @Benchmark
+    public PixelBuffer chainFused(SyntheticImage image, PixelCounter counter) {
+        List<PointOperation> operations = Arrays.asList(
+                PointOperation.colorShift(90),
+                PointOperation.keepColor(200, 30),
+                PointOperation.grayLevel(0.3, 0.11, 0.59));
+        PointOperation.apply(image.buffer, operations);
+        counter.add(image);
+        return image.buffer;
+    }
+}
@@ -0,0 +1,60 @@
+package fr.romainpc.bitmapproject.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+import fr.romainpc.bitmapproject.imageprocessing.core.PixelBuffer;
+
+/**
+ * Square picture of random pixels, restored before each iteration.
+ * Effects modify pixels in place, so calls of an iteration work on pixels already processed: it doesn't change their cost,
+ * and a copy before each call would be measured with the effect (and flush the caches for big pictures).
+ */
+@State(Scope.Thread)
+public class SyntheticImage {
+
+    /**
+     * Side of the square picture in pixels.
+     */
+    @Param({"256", "1024", "2048", "4096"})
+    public int size;
+
+    /**
+     * Pixels given to the effect.
+     */
+    public PixelBuffer buffer;
+
+    private PixelBuffer source;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random random = new Random(size);
+        source = new PixelBuffer(size, size);
+        int[] pixels = source.getPixels();
+        for (int i = 0; i < pixels.length; i++) {
+            // colors in a reduced range, so contrast effects have something to stretch.
+            int red = 40 + random.nextInt(150);
+            int green = 30 + random.nextInt(120);
+            int blue = 60 + random.nextInt(170);
+            pixels[i] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+        }
+        buffer = new PixelBuffer(size, size);
+    }
+
+    @Setup(Level.Iteration)
+    public void restore() {
+        source.copyTo(buffer);
+    }
+
+    /**
+     * @return Number of pixels of the picture.
+     */
+    public int pixels() {
+        return size * size;
+    }
+}